@@ -10,6 +10,7 @@ import javax.inject.Inject;
 
 import org.scb.downloader.config.Constants;
 import org.scb.downloader.config.DefaultProfileUtil;
+import org.scb.downloader.config.DownloaderProperties;
 import org.scb.downloader.config.JHipsterProperties;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -25,7 +26,7 @@ import org.springframework.scheduling.annotation.EnableScheduling;
 
 @ComponentScan
 @EnableAutoConfiguration(exclude = { MetricFilterAutoConfiguration.class, MetricRepositoryAutoConfiguration.class })
-@EnableConfigurationProperties({ JHipsterProperties.class, LiquibaseProperties.class })
+@EnableConfigurationProperties({ JHipsterProperties.class, LiquibaseProperties.class, DownloaderProperties.class })
 @EnableScheduling
 public class DownloaderApp {
 
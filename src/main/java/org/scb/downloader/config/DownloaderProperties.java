@@ -0,0 +1,709 @@
+package org.scb.downloader.config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Properties specific to the downloader application.
+ *
+ * <p>
+ * Properties are configured in the application.yml file under the
+ * <code>downloader</code> prefix.
+ * </p>
+ *
+ * @author S.Chassande
+ */
+@ConfigurationProperties(prefix = "downloader", ignoreUnknownFields = false)
+public class DownloaderProperties {
+
+	private final Transfert transfert = new Transfert();
+
+	private final ConnectionPool connectionPool = new ConnectionPool();
+
+	private final Sftp sftp = new Sftp();
+
+	private final Ftp ftp = new Ftp();
+
+	private final Http http = new Http();
+
+	private final Bandwidth bandwidth = new Bandwidth();
+
+	private final ListingCache listingCache = new ListingCache();
+
+	private final Local local = new Local();
+
+	private final Checksum checksum = new Checksum();
+
+	public Transfert getTransfert() {
+		return transfert;
+	}
+
+	public ConnectionPool getConnectionPool() {
+		return connectionPool;
+	}
+
+	public Sftp getSftp() {
+		return sftp;
+	}
+
+	public Ftp getFtp() {
+		return ftp;
+	}
+
+	public Http getHttp() {
+		return http;
+	}
+
+	public Bandwidth getBandwidth() {
+		return bandwidth;
+	}
+
+	public ListingCache getListingCache() {
+		return listingCache;
+	}
+
+	public Local getLocal() {
+		return local;
+	}
+
+	public Checksum getChecksum() {
+		return checksum;
+	}
+
+	public static class Transfert {
+
+		/** The local directory used to store temporary copies. */
+		private String tempDirectory;
+
+		/** The number of attempts before setting a transfert in error. */
+		private int nbMaxAttemp = 3;
+
+		/** The maximal number of transferts running at the same time. */
+		private int maxConcurrentTransferts = 4;
+
+		/**
+		 * The maximal number of transferts running at the same time on the same
+		 * remote account.
+		 */
+		private int maxConcurrentTransfertsPerAccount = 2;
+
+		/**
+		 * True to stream the data between two remote servers, false to use a
+		 * local temporary copy.
+		 */
+		private boolean relay = true;
+
+		/** The size of the in-memory buffer used to relay the data. */
+		private int relayBufferSize = 1024 * 1024;
+
+		/**
+		 * The delay in milliseconds between two writes of the transferts
+		 * progress in the database.
+		 */
+		private long progressFlushInterval = 5000;
+
+		/**
+		 * The delay in milliseconds between two pushes of the transferts
+		 * progress to the web clients.
+		 */
+		private long progressPushInterval = 500;
+
+		/**
+		 * The number of threads shared by the files and the segments
+		 * transfered in parallel. When they are all busy, the transferts
+		 * continue in their own thread.
+		 */
+		private int workerThreads = 16;
+
+		/**
+		 * The delay in seconds before the retry of a failed transfert. It is
+		 * doubled at each new error of the transfert.
+		 */
+		private long retryDelay = 60;
+
+		/** The maximal delay in seconds before the retry of a transfert. */
+		private long maxRetryDelay = 3600;
+
+		public String getTempDirectory() {
+			return tempDirectory;
+		}
+
+		public void setTempDirectory(String tempDirectory) {
+			this.tempDirectory = tempDirectory;
+		}
+
+		public int getNbMaxAttemp() {
+			return nbMaxAttemp;
+		}
+
+		public void setNbMaxAttemp(int nbMaxAttemp) {
+			this.nbMaxAttemp = nbMaxAttemp;
+		}
+
+		public int getMaxConcurrentTransferts() {
+			return maxConcurrentTransferts;
+		}
+
+		public void setMaxConcurrentTransferts(int maxConcurrentTransferts) {
+			this.maxConcurrentTransferts = maxConcurrentTransferts;
+		}
+
+		public int getMaxConcurrentTransfertsPerAccount() {
+			return maxConcurrentTransfertsPerAccount;
+		}
+
+		public void setMaxConcurrentTransfertsPerAccount(int maxConcurrentTransfertsPerAccount) {
+			this.maxConcurrentTransfertsPerAccount = maxConcurrentTransfertsPerAccount;
+		}
+
+		public boolean isRelay() {
+			return relay;
+		}
+
+		public void setRelay(boolean relay) {
+			this.relay = relay;
+		}
+
+		public int getRelayBufferSize() {
+			return relayBufferSize;
+		}
+
+		public void setRelayBufferSize(int relayBufferSize) {
+			this.relayBufferSize = relayBufferSize;
+		}
+
+		public long getProgressFlushInterval() {
+			return progressFlushInterval;
+		}
+
+		public void setProgressFlushInterval(long progressFlushInterval) {
+			this.progressFlushInterval = progressFlushInterval;
+		}
+
+		public long getProgressPushInterval() {
+			return progressPushInterval;
+		}
+
+		public void setProgressPushInterval(long progressPushInterval) {
+			this.progressPushInterval = progressPushInterval;
+		}
+
+		public int getWorkerThreads() {
+			return workerThreads;
+		}
+
+		public void setWorkerThreads(int workerThreads) {
+			this.workerThreads = workerThreads;
+		}
+
+		public long getRetryDelay() {
+			return retryDelay;
+		}
+
+		public void setRetryDelay(long retryDelay) {
+			this.retryDelay = retryDelay;
+		}
+
+		public long getMaxRetryDelay() {
+			return maxRetryDelay;
+		}
+
+		public void setMaxRetryDelay(long maxRetryDelay) {
+			this.maxRetryDelay = maxRetryDelay;
+		}
+	}
+
+	public static class ConnectionPool {
+
+		/** The maximal number of sessions opened on the same account. */
+		private int maxPerAccount = 4;
+
+		/** The delay in seconds before closing an unused session. */
+		private int idleTimeout = 10 * 60;
+
+		/** The maximal delay in seconds to wait for an available session. */
+		private int borrowTimeout = 5 * 60;
+
+		public int getMaxPerAccount() {
+			return maxPerAccount;
+		}
+
+		public void setMaxPerAccount(int maxPerAccount) {
+			this.maxPerAccount = maxPerAccount;
+		}
+
+		public int getIdleTimeout() {
+			return idleTimeout;
+		}
+
+		public void setIdleTimeout(int idleTimeout) {
+			this.idleTimeout = idleTimeout;
+		}
+
+		public int getBorrowTimeout() {
+			return borrowTimeout;
+		}
+
+		public void setBorrowTimeout(int borrowTimeout) {
+			this.borrowTimeout = borrowTimeout;
+		}
+	}
+
+	public static class Sftp {
+
+		/**
+		 * The number of SFTP channels used to download the files of a
+		 * directory in parallel. 1 to download the files one by one.
+		 */
+		private int parallelChannels = 4;
+
+		/**
+		 * The minimal size in bytes of a file downloaded by segments over
+		 * several SFTP channels.
+		 */
+		private long segmentThreshold = 256 * 1024 * 1024;
+
+		/**
+		 * The number of segments of a large file. 1 to download the large
+		 * files over a single channel.
+		 */
+		private int segments = 4;
+
+		/**
+		 * The number of SFTP requests sent without waiting for their
+		 * responses, used by the accounts without their own value. 0 to
+		 * compute it from the round trip time measured at the connection.
+		 */
+		private int bulkRequests = 0;
+
+		/**
+		 * The maximal number of outstanding SFTP requests of the automatic
+		 * tuning. JSch limits the window of an SFTP channel to 2 MB, so more
+		 * than 64 requests of 32 KB are useless.
+		 */
+		private int maxBulkRequests = 64;
+
+		/**
+		 * The rate in bytes per second of the links, used by the automatic
+		 * tuning to compute the bytes in flight: rate * round trip time.
+		 */
+		private long linkRate = 12500000;
+
+		/**
+		 * The size in bytes of the local buffers of the SFTP transferts, used
+		 * by the accounts without their own value.
+		 */
+		private int bufferSize = 256 * 1024;
+
+		/**
+		 * The maximal number of SFTP channels opened on an SSH session by the
+		 * parallel downloads. It must stay below the limit of the servers
+		 * (MaxSessions is 10 by default with OpenSSH), which also counts the
+		 * channels of the scp and checksum commands.
+		 */
+		private int maxChannels = 8;
+
+		public int getParallelChannels() {
+			return parallelChannels;
+		}
+
+		public void setParallelChannels(int parallelChannels) {
+			this.parallelChannels = parallelChannels;
+		}
+
+		public long getSegmentThreshold() {
+			return segmentThreshold;
+		}
+
+		public void setSegmentThreshold(long segmentThreshold) {
+			this.segmentThreshold = segmentThreshold;
+		}
+
+		public int getSegments() {
+			return segments;
+		}
+
+		public void setSegments(int segments) {
+			this.segments = segments;
+		}
+
+		public int getBulkRequests() {
+			return bulkRequests;
+		}
+
+		public void setBulkRequests(int bulkRequests) {
+			this.bulkRequests = bulkRequests;
+		}
+
+		public int getMaxBulkRequests() {
+			return maxBulkRequests;
+		}
+
+		public void setMaxBulkRequests(int maxBulkRequests) {
+			this.maxBulkRequests = maxBulkRequests;
+		}
+
+		public long getLinkRate() {
+			return linkRate;
+		}
+
+		public void setLinkRate(long linkRate) {
+			this.linkRate = linkRate;
+		}
+
+		public int getBufferSize() {
+			return bufferSize;
+		}
+
+		public void setBufferSize(int bufferSize) {
+			this.bufferSize = bufferSize;
+		}
+
+		public int getMaxChannels() {
+			return maxChannels;
+		}
+
+		public void setMaxChannels(int maxChannels) {
+			this.maxChannels = maxChannels;
+		}
+	}
+
+	public static class Ftp {
+
+		public static final int DEFAULT_BUFFER_SIZE = 256 * 1024;
+
+		/**
+		 * The number of FTP connections used to transfer the files of a
+		 * directory in parallel. The additional connections are borrowed from
+		 * the connection pool, so they are limited by its maximal number of
+		 * sessions per account. 1 to transfer the files one by one.
+		 */
+		private int parallelConnections = 4;
+
+		/**
+		 * The size in bytes of the chunks copied from or to the data
+		 * connections, and of the buffers of the local files.
+		 */
+		private int bufferSize = DEFAULT_BUFFER_SIZE;
+
+		public int getParallelConnections() {
+			return parallelConnections;
+		}
+
+		public void setParallelConnections(int parallelConnections) {
+			this.parallelConnections = parallelConnections;
+		}
+
+		public int getBufferSize() {
+			return bufferSize;
+		}
+
+		public void setBufferSize(int bufferSize) {
+			this.bufferSize = bufferSize;
+		}
+	}
+
+	public static class Http {
+
+		/**
+		 * The minimal size in bytes of a file downloaded by segments over
+		 * several connections with range requests.
+		 */
+		private long segmentThreshold = 64 * 1024 * 1024;
+
+		/**
+		 * The number of segments of a large file. 1 to download the large
+		 * files over a single connection. The JVM keeps at most
+		 * http.maxConnections (5 by default) idle connections per server.
+		 */
+		private int segments = 4;
+
+		/** The size in bytes of the local buffers of the downloads. */
+		private int bufferSize = 256 * 1024;
+
+		/** The timeout in milliseconds of the connection to a server. */
+		private int connectTimeout = 30000;
+
+		/** The timeout in milliseconds of a read on a connection. */
+		private int readTimeout = 60000;
+
+		public long getSegmentThreshold() {
+			return segmentThreshold;
+		}
+
+		public void setSegmentThreshold(long segmentThreshold) {
+			this.segmentThreshold = segmentThreshold;
+		}
+
+		public int getSegments() {
+			return segments;
+		}
+
+		public void setSegments(int segments) {
+			this.segments = segments;
+		}
+
+		public int getBufferSize() {
+			return bufferSize;
+		}
+
+		public void setBufferSize(int bufferSize) {
+			this.bufferSize = bufferSize;
+		}
+
+		public int getConnectTimeout() {
+			return connectTimeout;
+		}
+
+		public void setConnectTimeout(int connectTimeout) {
+			this.connectTimeout = connectTimeout;
+		}
+
+		public int getReadTimeout() {
+			return readTimeout;
+		}
+
+		public void setReadTimeout(int readTimeout) {
+			this.readTimeout = readTimeout;
+		}
+	}
+
+	/**
+	 * The bandwidth caps in bytes per second. 0 means no limit.
+	 */
+	public static class Bandwidth {
+
+		/** The cap of all the transferts. */
+		private long globalRate = 0;
+
+		/** The cap of the transferts using the same remote account. */
+		private long accountRate = 0;
+
+		/** The cap of each transfert. */
+		private long transfertRate = 0;
+
+		/**
+		 * The caps replacing the default ones during a period of the day. The
+		 * first profile containing the current time is used.
+		 */
+		private List<Profile> profiles = new ArrayList<>();
+
+		public long getGlobalRate() {
+			return globalRate;
+		}
+
+		public void setGlobalRate(long globalRate) {
+			this.globalRate = globalRate;
+		}
+
+		public long getAccountRate() {
+			return accountRate;
+		}
+
+		public void setAccountRate(long accountRate) {
+			this.accountRate = accountRate;
+		}
+
+		public long getTransfertRate() {
+			return transfertRate;
+		}
+
+		public void setTransfertRate(long transfertRate) {
+			this.transfertRate = transfertRate;
+		}
+
+		public List<Profile> getProfiles() {
+			return profiles;
+		}
+
+		public void setProfiles(List<Profile> profiles) {
+			this.profiles = profiles;
+		}
+	}
+
+	/**
+	 * The bandwidth caps of a period of the day.
+	 */
+	public static class Profile {
+
+		/** The beginning of the period (HH:mm). */
+		private String begin;
+
+		/** The end of the period (HH:mm), excluded. */
+		private String end;
+
+		private long globalRate = 0;
+
+		private long accountRate = 0;
+
+		private long transfertRate = 0;
+
+		public String getBegin() {
+			return begin;
+		}
+
+		public void setBegin(String begin) {
+			this.begin = begin;
+		}
+
+		public String getEnd() {
+			return end;
+		}
+
+		public void setEnd(String end) {
+			this.end = end;
+		}
+
+		public long getGlobalRate() {
+			return globalRate;
+		}
+
+		public void setGlobalRate(long globalRate) {
+			this.globalRate = globalRate;
+		}
+
+		public long getAccountRate() {
+			return accountRate;
+		}
+
+		public void setAccountRate(long accountRate) {
+			this.accountRate = accountRate;
+		}
+
+		public long getTransfertRate() {
+			return transfertRate;
+		}
+
+		public void setTransfertRate(long transfertRate) {
+			this.transfertRate = transfertRate;
+		}
+	}
+
+	/**
+	 * The cache of the remote directory listings used by the file browser.
+	 */
+	public static class ListingCache {
+
+		/**
+		 * The delay in seconds after which a listing is refreshed. 0 to
+		 * disable the cache.
+		 */
+		private int ttl = 60;
+
+		/**
+		 * The age in seconds after which a listing is no more served while it
+		 * is refreshed: the request waits for a new listing.
+		 */
+		private int maxStaleness = 600;
+
+		/** The maximal number of listings kept in memory. */
+		private int maxEntries = 2000;
+
+		public int getTtl() {
+			return ttl;
+		}
+
+		public void setTtl(int ttl) {
+			this.ttl = ttl;
+		}
+
+		public int getMaxStaleness() {
+			return maxStaleness;
+		}
+
+		public void setMaxStaleness(int maxStaleness) {
+			this.maxStaleness = maxStaleness;
+		}
+
+		public int getMaxEntries() {
+			return maxEntries;
+		}
+
+		public void setMaxEntries(int maxEntries) {
+			this.maxEntries = maxEntries;
+		}
+	}
+
+	/**
+	 * The copies on the local file system.
+	 */
+	public static class Local {
+
+		/**
+		 * The number of files of a directory copied in parallel. 1 to copy the
+		 * files one by one.
+		 */
+		private int parallelCopies = 4;
+
+		/**
+		 * True to create a hard link instead of a copy when the source and the
+		 * target are on the same file system. The copy then shares its content
+		 * with the source: a change of one is seen in the other.
+		 */
+		private boolean hardLink = false;
+
+		public int getParallelCopies() {
+			return parallelCopies;
+		}
+
+		public void setParallelCopies(int parallelCopies) {
+			this.parallelCopies = parallelCopies;
+		}
+
+		public boolean isHardLink() {
+			return hardLink;
+		}
+
+		public void setHardLink(boolean hardLink) {
+			this.hardLink = hardLink;
+		}
+	}
+
+	/**
+	 * The checksums computed on the transfered files.
+	 */
+	public static class Checksum {
+
+		/**
+		 * The algorithm: CRC32, MD5, SHA-1, SHA-256... or NONE to disable the
+		 * checksums.
+		 */
+		private String algorithm = "SHA-256";
+
+		/**
+		 * True to compare the checksums with the ones computed by the remote
+		 * servers, when they can. Off by default: the server reads each file
+		 * again and SSH runs one command per file.
+		 */
+		private boolean verify = false;
+
+		/** The number of transferts of a file before giving up on a mismatch. */
+		private int maxAttempts = 2;
+
+		public String getAlgorithm() {
+			return algorithm;
+		}
+
+		public void setAlgorithm(String algorithm) {
+			this.algorithm = algorithm;
+		}
+
+		public boolean isVerify() {
+			return verify;
+		}
+
+		public void setVerify(boolean verify) {
+			this.verify = verify;
+		}
+
+		public int getMaxAttempts() {
+			return maxAttempts;
+		}
+
+		public void setMaxAttempts(int maxAttempts) {
+			this.maxAttempts = maxAttempts;
+		}
+	}
+}
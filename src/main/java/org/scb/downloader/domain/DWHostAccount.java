@@ -14,6 +14,7 @@ import javax.persistence.Table;
 import javax.validation.constraints.NotNull;
 
 import org.scb.downloader.domain.enumeration.DWProtocol;
+import org.scb.downloader.domain.enumeration.DWSshTransferMode;
 
 /**
  * A DWHostAccount.
@@ -52,6 +53,46 @@ public class DWHostAccount implements Serializable {
 	@Column(name = "DEFAULT_PATH")
 	private String defaultPath = ".";
 
+	/**
+	 * The zlib level (1 to 9) of the SSH compression, 0 to disable the
+	 * compression.
+	 */
+	@Column(name = "COMPRESSION_LEVEL")
+	private Integer compressionLevel = 0;
+
+	/**
+	 * True to compress only the files which are not already compressed.
+	 */
+	@Column(name = "ADAPTIVE_COMPRESSION")
+	private Boolean adaptiveCompression = false;
+
+	/** How the files of an SSH account are transfered. */
+	@Enumerated(EnumType.STRING)
+	@Column(name = "SSH_TRANSFER_MODE")
+	private DWSshTransferMode sshTransferMode = DWSshTransferMode.SFTP;
+
+	/**
+	 * The number of SFTP requests sent without waiting for their responses, 0
+	 * to use the configuration or to compute it from the round trip time.
+	 */
+	@Column(name = "SFTP_BULK_REQUESTS")
+	private Integer sftpBulkRequests = 0;
+
+	/**
+	 * The size in bytes of the local buffers of the SFTP transferts, 0 to use
+	 * the configuration.
+	 */
+	@Column(name = "SFTP_BUFFER_SIZE")
+	private Integer sftpBufferSize = 0;
+
+	/**
+	 * True if the TLS connection of an FTPS account starts with the
+	 * connection (implicit FTPS, port 990), false if it starts with the AUTH
+	 * TLS command (explicit FTPS).
+	 */
+	@Column(name = "FTPS_IMPLICIT")
+	private Boolean ftpsImplicit = false;
+
 	public Long getId() {
 		return id;
 	}
@@ -116,6 +157,54 @@ public class DWHostAccount implements Serializable {
 		this.defaultPath = defaultPath;
 	}
 
+	public Integer getCompressionLevel() {
+		return compressionLevel;
+	}
+
+	public void setCompressionLevel(Integer compressionLevel) {
+		this.compressionLevel = compressionLevel;
+	}
+
+	public Boolean getAdaptiveCompression() {
+		return adaptiveCompression;
+	}
+
+	public void setAdaptiveCompression(Boolean adaptiveCompression) {
+		this.adaptiveCompression = adaptiveCompression;
+	}
+
+	public DWSshTransferMode getSshTransferMode() {
+		return sshTransferMode;
+	}
+
+	public void setSshTransferMode(DWSshTransferMode sshTransferMode) {
+		this.sshTransferMode = sshTransferMode;
+	}
+
+	public Integer getSftpBulkRequests() {
+		return sftpBulkRequests;
+	}
+
+	public void setSftpBulkRequests(Integer sftpBulkRequests) {
+		this.sftpBulkRequests = sftpBulkRequests;
+	}
+
+	public Integer getSftpBufferSize() {
+		return sftpBufferSize;
+	}
+
+	public void setSftpBufferSize(Integer sftpBufferSize) {
+		this.sftpBufferSize = sftpBufferSize;
+	}
+
+	public Boolean getFtpsImplicit() {
+		return ftpsImplicit;
+	}
+
+	public void setFtpsImplicit(Boolean ftpsImplicit) {
+		this.ftpsImplicit = ftpsImplicit;
+	}
+
 	@Override
 	public boolean equals(Object o) {
 		if (this == o) {
@@ -23,6 +23,7 @@ import javax.persistence.Temporal;
 import javax.persistence.TemporalType;
 import javax.validation.constraints.NotNull;
 
+import org.scb.downloader.domain.enumeration.DWSyncMode;
 import org.scb.downloader.domain.enumeration.DWTransfertScheduling;
 import org.scb.downloader.domain.enumeration.TransfertStatus;
 
@@ -75,6 +76,11 @@ public class DWTransfert implements Serializable {
 	@NotNull
 	private DWTransfertScheduling scheduling;
 
+	/** How a directory is transfered when its target already exists */
+	@Enumerated(EnumType.STRING)
+	@Column(name = "SYNC_MODE")
+	private DWSyncMode syncMode = DWSyncMode.COPY;
+
 	@Column(name = "DAY_BEGIN")
 	private Long dayBegin;
 
@@ -111,6 +117,35 @@ public class DWTransfert implements Serializable {
 	@Column(name = "DOWNLOADED_FILES")
 	private String downloadedFiles;
 
+	/** The file being transfered, used to resume an interrupted transfert */
+	@Column(name = "RESUME_FILE")
+	private String resumeFile;
+
+	/** The number of bytes of the resume file already transfered */
+	@Column(name = "RESUME_OFFSET")
+	private Long resumeOffset = 0l;
+
+	/**
+	 * The version (ETag or Last-Modified) of the remote resume file when its
+	 * transfert started, null if unknown
+	 */
+	@Column(name = "RESUME_VALIDATOR")
+	private String resumeValidator;
+
+	/**
+	 * The checksum of the transfered data as "ALGORITHM:value". For a
+	 * directory, the checksums of its files are combined in the order of
+	 * their paths. Null when the checksum of a file is unknown, e.g. a file
+	 * transfered by a previous attempt.
+	 */
+	@Column(name = "CHECKSUM")
+	private String checksum;
+
+	/** The date before which a failed transfert is not attempted again */
+	@Column(name = "NEXT_ATTEMPT")
+	@Temporal(TemporalType.TIMESTAMP)
+	private Date nextAttempt;
+
 	public Long getId() {
 		return id;
 	}
@@ -151,6 +186,14 @@ public class DWTransfert implements Serializable {
 		this.scheduling = scheduling;
 	}
 
+	public DWSyncMode getSyncMode() {
+		return syncMode;
+	}
+
+	public void setSyncMode(DWSyncMode syncMode) {
+		this.syncMode = syncMode;
+	}
+
 	public TransfertStatus getStatus() {
 		return status;
 	}
@@ -231,6 +274,46 @@ public class DWTransfert implements Serializable {
 		this.downloadedFiles = downloadedFiles;
 	}
 
+	public String getResumeFile() {
+		return resumeFile;
+	}
+
+	public void setResumeFile(String resumeFile) {
+		this.resumeFile = resumeFile;
+	}
+
+	public Long getResumeOffset() {
+		return resumeOffset;
+	}
+
+	public void setResumeOffset(Long resumeOffset) {
+		this.resumeOffset = resumeOffset;
+	}
+
+	public String getResumeValidator() {
+		return resumeValidator;
+	}
+
+	public void setResumeValidator(String resumeValidator) {
+		this.resumeValidator = resumeValidator;
+	}
+
+	public String getChecksum() {
+		return checksum;
+	}
+
+	public void setChecksum(String checksum) {
+		this.checksum = checksum;
+	}
+
+	public Date getNextAttempt() {
+		return nextAttempt;
+	}
+
+	public void setNextAttempt(Date nextAttempt) {
+		this.nextAttempt = nextAttempt;
+	}
+
 	@Override
 	public boolean equals(Object o) {
 		if (this == o) {
@@ -254,7 +337,8 @@ public class DWTransfert implements Serializable {
 	@Override
 	public String toString() {
 		return "DWTransfert{" + "id=" + id + ", status='" + status + "'" + ", rank='" + rank + "'"//
-				+ ", scheduling='" + scheduling + "'" + ", dayBegin='" + dayBegin + "'" + ", dayEnd='" + dayEnd + "'" //
+				+ ", scheduling='" + scheduling + "'" + ", syncMode='" + syncMode + "'" //
+				+ ", dayBegin='" + dayBegin + "'" + ", dayEnd='" + dayEnd + "'" //
 				+ ", start='" + start + "'" + ", end='" + end + "'" //
 				+ ", source='" + source + ", target='" + target //
 				+ ", errorMessages='" + errorMessages + "'" + ", nbError='" + nbError + "'" + '}';
@@ -1,8 +1,9 @@
 package org.scb.downloader.domain.enumeration;
 
 /**
- * The DWProtocol enumeration.
+ * The DWProtocol enumeration. FTPS is FTP over TLS. The HTTP and HTTPS
+ * accounts are sources only.
  */
 public enum DWProtocol {
-    SSH,LOCAL_FILE_SYSTEM,FTP
+    SSH,LOCAL_FILE_SYSTEM,FTP,FTPS,HTTP,HTTPS
 }
@@ -0,0 +1,14 @@
+package org.scb.downloader.domain.enumeration;
+
+/**
+ * How the files of an SSH account are transfered.
+ */
+public enum DWSshTransferMode {
+	/** The files are transfered over SFTP channels. */
+	SFTP,
+	/**
+	 * The files are streamed by the scp command over an exec channel. The
+	 * browsing and the resumes still use SFTP.
+	 */
+	SCP;
+}
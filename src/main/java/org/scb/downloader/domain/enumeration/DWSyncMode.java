@@ -0,0 +1,13 @@
+package org.scb.downloader.domain.enumeration;
+
+/**
+ * How a directory is transfered when its target already exists.
+ */
+public enum DWSyncMode {
+	/** All the files are transfered. */
+	COPY,
+	/** Only the new or changed files are transfered. */
+	SYNC,
+	/** Like SYNC, and the target files missing in the source are deleted. */
+	MIRROR;
+}
@@ -1,12 +1,12 @@
 package org.scb.downloader.repository;
 
+import java.util.Collection;
+import java.util.Date;
 import java.util.List;
 
 import org.scb.downloader.domain.DWTransfert;
 import org.scb.downloader.domain.enumeration.DWTransfertScheduling;
 import org.scb.downloader.domain.enumeration.TransfertStatus;
-import org.springframework.data.domain.PageRequest;
-import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
@@ -16,43 +16,48 @@ import org.springframework.transaction.annotation.Transactional;
 /**
  * Spring Data JPA repository for the DWTransfert entity.
  */
-public interface DWTransfertRepository extends JpaRepository<DWTransfert, Long> {
+public interface DWTransfertRepository extends JpaRepository<DWTransfert, Long>, DWTransfertRepositoryCustom {
 
-	@Query("SELECT t FROM DWTransfert t WHERE t.status = :status AND t.scheduling = :scheduling ORDER BY t.rank ASC")
-	List<DWTransfert> findNext(//
-			@Param("status") TransfertStatus status, //
-			@Param("scheduling") DWTransfertScheduling scheduling, //
-			Pageable pageable);
-
-	default DWTransfert findNext(//
+	/**
+	 * Updates only the progress of a running transfert.
+	 * 
+	 * @return the number of updated rows (0 if the transfert is not running
+	 *         anymore).
+	 */
+	@Query("UPDATE DWTransfert t SET t.fileSize = :fileSize, t.downloaded = :downloaded,"
+			+ " t.resumeFile = :resumeFile, t.resumeOffset = :resumeOffset, t.resumeValidator = :resumeValidator"
+			+ " WHERE t.id = :id AND t.status = :status")
+	@Modifying
+	@Transactional
+	int updateProgress(//
+			@Param("id") Long id, //
 			@Param("status") TransfertStatus status, //
-			@Param("scheduling") DWTransfertScheduling scheduling) {
-		List<DWTransfert> ts = findNext(status, scheduling, new PageRequest(0, 1));
-		if (ts.isEmpty()) {
-			return null;
-		} else {
-			return ts.get(0);
-		}
-	}
+			@Param("fileSize") Long fileSize, //
+			@Param("downloaded") Long downloaded, //
+			@Param("resumeFile") String resumeFile, //
+			@Param("resumeOffset") Long resumeOffset, //
+			@Param("resumeValidator") String resumeValidator);
 
-	@Query("SELECT t FROM DWTransfert t WHERE t.status = :status and t.scheduling = :scheduling and t.dayBegin <= :dayInstant and t.dayEnd >= :dayInstant ORDER BY t.rank ASC")
-	List<DWTransfert> findNext(//
-			@Param("status") TransfertStatus status, //
+	/**
+	 * @return the first beginning of day window after the given instant of the
+	 *         day, among the transferts having the given statuses and
+	 *         scheduling, or null if there is none.
+	 */
+	@Query("SELECT min(t.dayBegin) FROM DWTransfert t WHERE t.status IN :statuses AND t.scheduling = :scheduling"
+			+ " AND t.dayBegin > :dayInstant")
+	Long findNextDayBegin(//
+			@Param("statuses") Collection<TransfertStatus> statuses, //
 			@Param("scheduling") DWTransfertScheduling scheduling, //
-			@Param("dayInstant") Long dayInstant, //
-			Pageable pageable);
+			@Param("dayInstant") Long dayInstant);
 
-	default DWTransfert findNext(//
-			@Param("status") TransfertStatus status, //
-			@Param("scheduling") DWTransfertScheduling scheduling, //
-			@Param("dayInstant") Long dayInstant) {
-		List<DWTransfert> ts = findNext(status, scheduling, dayInstant, new PageRequest(0, 1));
-		if (ts.isEmpty()) {
-			return null;
-		} else {
-			return ts.get(0);
-		}
-	}
+	/**
+	 * @return the first date of next attempt after the given date, among the
+	 *         transferts having the given statuses, or null if there is none.
+	 */
+	@Query("SELECT min(t.nextAttempt) FROM DWTransfert t WHERE t.status IN :statuses AND t.nextAttempt > :date")
+	Date findNextAttempt(//
+			@Param("statuses") Collection<TransfertStatus> statuses, //
+			@Param("date") Date date);
 
 	@Query("SELECT t FROM DWTransfert t WHERE t.status = :status ORDER BY t.rank ASC")
 	List<DWTransfert> findAllByStatus(@Param("status") TransfertStatus status);
@@ -0,0 +1,64 @@
+package org.scb.downloader.repository;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+
+import org.scb.downloader.domain.DWTransfert;
+import org.scb.downloader.domain.enumeration.DWTransfertScheduling;
+import org.scb.downloader.domain.enumeration.TransfertStatus;
+import org.scb.downloader.service.bo.DWTransfertSummary;
+
+/**
+ * Queries of the DWTransfert repository which are not generated by Spring
+ * Data.
+ */
+public interface DWTransfertRepositoryCustom {
+
+	/**
+	 * Finds a page of transfert summaries ordered by rank and identifier. The
+	 * pages are given by the last transfert of the previous page (keyset
+	 * pagination), so a page costs the same whatever its position.
+	 *
+	 * @param status
+	 *            is the expected status, null for any status.
+	 * @param scheduling
+	 *            is the expected scheduling, null for any scheduling.
+	 * @param accountId
+	 *            is the identifier of the source or target account, null for
+	 *            any account.
+	 * @param afterRank
+	 *            is the rank of the last transfert of the previous page, null
+	 *            for the first page.
+	 * @param afterId
+	 *            is the identifier of the last transfert of the previous page,
+	 *            null for the first page.
+	 * @param size
+	 *            is the maximal number of transferts of the page.
+	 */
+	List<DWTransfertSummary> findSummaries(TransfertStatus status, DWTransfertScheduling scheduling, Long accountId,
+			Long afterRank, Long afterId, int size);
+
+	/**
+	 * Claims the next transfert to perform: the transfert is selected and
+	 * changed to the DOING status in the same transaction. The rows locked by
+	 * a concurrent claim are skipped when the database supports it. The
+	 * interrupted transferts (DOING) come first, then the immediate ones, then
+	 * the ones whose day window contains the given instant, each by rank. A
+	 * failed transfert is not claimed before the date of its next attempt.
+	 *
+	 * @param excludedIds
+	 *            is the identifiers of the transferts which must not be
+	 *            claimed (not empty).
+	 * @param excludedAccounts
+	 *            is the identifiers of the accounts which cannot be used by a
+	 *            new transfert (not empty).
+	 * @param dayInstant
+	 *            is the current instant of the day in seconds.
+	 * @param start
+	 *            is the current date, the start date of a created transfert.
+	 * @return the claimed transfert, null if there is no transfert to perform.
+	 */
+	DWTransfert claimNext(Collection<Long> excludedIds, Collection<Long> excludedAccounts, Long dayInstant,
+			Date start);
+}
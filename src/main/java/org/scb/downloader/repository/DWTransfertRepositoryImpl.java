@@ -0,0 +1,171 @@
+package org.scb.downloader.repository;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+
+import javax.persistence.EntityManager;
+import javax.persistence.LockModeType;
+import javax.persistence.PersistenceContext;
+import javax.persistence.TemporalType;
+import javax.persistence.TypedQuery;
+import javax.sql.DataSource;
+
+import org.scb.downloader.domain.DWTransfert;
+import org.scb.downloader.domain.enumeration.DWTransfertScheduling;
+import org.scb.downloader.domain.enumeration.TransfertStatus;
+import org.scb.downloader.service.bo.DWTransfertSummary;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Implementation of the custom queries of the DWTransfert repository. The
+ * queries are built so that the database can use the indexes of the
+ * dw_transfert table.
+ */
+public class DWTransfertRepositoryImpl implements DWTransfertRepositoryCustom {
+
+	private final Logger log = LoggerFactory.getLogger(DWTransfertRepositoryImpl.class);
+
+	/**
+	 * The condition and the order of the transferts to perform. The order
+	 * relies on the names of the enumerations: DOING &gt; CREATED and
+	 * IMMEDIATLY &gt; EVERY_DAY_WINDOW, so that the claim index (STATUS,
+	 * SCHEDULING, RANK DESC) is read backward. The failed transferts wait for
+	 * their next attempt date.
+	 */
+	private static final String CLAIM_WHERE = " WHERE t.STATUS IN ('DOING', 'CREATED')"
+			+ " AND (t.SCHEDULING = 'IMMEDIATLY' OR (t.DAY_BEGIN <= :dayInstant AND t.DAY_END >= :dayInstant))"
+			+ " AND (t.NEXT_ATTEMPT IS NULL OR t.NEXT_ATTEMPT <= :now)"
+			+ " AND t.ID NOT IN (:excludedIds) AND t.SOURCE_ACCOUNT NOT IN (:excludedAccounts)"
+			+ " AND t.TARGET_ACCOUNT NOT IN (:excludedAccounts)"
+			+ " ORDER BY t.STATUS DESC, t.SCHEDULING DESC, t.RANK ASC";
+
+	private static final String CLAIM_JPQL = "SELECT t FROM DWTransfert t WHERE t.status IN :statuses"
+			+ " AND (t.scheduling = :immediatly OR (t.dayBegin <= :dayInstant AND t.dayEnd >= :dayInstant))"
+			+ " AND (t.nextAttempt IS NULL OR t.nextAttempt <= :now)"
+			+ " AND t.id NOT IN :excludedIds AND t.source.account.id NOT IN :excludedAccounts"
+			+ " AND t.target.account.id NOT IN :excludedAccounts"
+			+ " ORDER BY t.status DESC, t.scheduling DESC, t.rank ASC";
+
+	private static final String SELECT_SUMMARY = "SELECT new " + DWTransfertSummary.class.getName()
+			+ "(t.id, t.status, t.rank, t.scheduling, t.source.path, sa.id, sa.host, t.target.path, ta.id, ta.host,"
+			+ " t.dayBegin, t.dayEnd, t.start, t.end, t.nbError, t.fileSize, t.downloaded)"
+			+ " FROM DWTransfert t LEFT JOIN t.source.account sa LEFT JOIN t.target.account ta";
+
+	@PersistenceContext
+	private EntityManager em;
+
+	@Autowired
+	private DataSource dataSource;
+
+	/** True if the database supports 'FOR UPDATE SKIP LOCKED'. */
+	private volatile Boolean skipLocked = null;
+
+	@Override
+	public List<DWTransfertSummary> findSummaries(TransfertStatus status, DWTransfertScheduling scheduling,
+			Long accountId, Long afterRank, Long afterId, int size) {
+		StringBuilder jpql = new StringBuilder(SELECT_SUMMARY);
+		String sep = " WHERE ";
+		if (status != null) {
+			jpql.append(sep).append("t.status = :status");
+			sep = " AND ";
+		}
+		if (scheduling != null) {
+			jpql.append(sep).append("t.scheduling = :scheduling");
+			sep = " AND ";
+		}
+		if (accountId != null) {
+			jpql.append(sep).append("(sa.id = :accountId OR ta.id = :accountId)");
+			sep = " AND ";
+		}
+		if (afterRank != null) {
+			if (afterId == null) {
+				jpql.append(sep).append("t.rank > :afterRank");
+			} else {
+				jpql.append(sep).append("(t.rank > :afterRank OR (t.rank = :afterRank AND t.id > :afterId))");
+			}
+		}
+		jpql.append(" ORDER BY t.rank ASC, t.id ASC");
+
+		TypedQuery<DWTransfertSummary> query = em.createQuery(jpql.toString(), DWTransfertSummary.class);
+		if (status != null) {
+			query.setParameter("status", status);
+		}
+		if (scheduling != null) {
+			query.setParameter("scheduling", scheduling);
+		}
+		if (accountId != null) {
+			query.setParameter("accountId", accountId);
+		}
+		if (afterRank != null) {
+			query.setParameter("afterRank", afterRank.longValue());
+			if (afterId != null) {
+				query.setParameter("afterId", afterId);
+			}
+		}
+		return query.setMaxResults(size).getResultList();
+	}
+
+	@Override
+	@Transactional
+	public DWTransfert claimNext(Collection<Long> excludedIds, Collection<Long> excludedAccounts, Long dayInstant,
+			Date start) {
+		Long id;
+		if (isSkipLockedSupported()) {
+			List<?> ids = em.createNativeQuery("SELECT t.ID FROM dw_transfert t" + CLAIM_WHERE //
+					+ " LIMIT 1 FOR UPDATE SKIP LOCKED") //
+					.setParameter("dayInstant", dayInstant) //
+					.setParameter("now", start, TemporalType.TIMESTAMP) //
+					.setParameter("excludedIds", excludedIds) //
+					.setParameter("excludedAccounts", excludedAccounts) //
+					.getResultList();
+			id = ids.isEmpty() ? null : ((Number) ids.get(0)).longValue();
+		} else {
+			List<DWTransfert> ts = em.createQuery(CLAIM_JPQL, DWTransfert.class) //
+					.setParameter("statuses", Arrays.asList(TransfertStatus.DOING, TransfertStatus.CREATED)) //
+					.setParameter("immediatly", DWTransfertScheduling.IMMEDIATLY) //
+					.setParameter("dayInstant", dayInstant) //
+					.setParameter("now", start, TemporalType.TIMESTAMP) //
+					.setParameter("excludedIds", excludedIds) //
+					.setParameter("excludedAccounts", excludedAccounts) //
+					.setLockMode(LockModeType.PESSIMISTIC_WRITE) //
+					.setMaxResults(1) //
+					.getResultList();
+			id = ts.isEmpty() ? null : ts.get(0).getId();
+		}
+		if (id == null) {
+			return null;
+		}
+		DWTransfert transfert = em.find(DWTransfert.class, id);
+		if (transfert.getStatus() == TransfertStatus.CREATED) {
+			transfert.setStatus(TransfertStatus.DOING);
+			transfert.setStart(start);
+		}
+		return transfert;
+	}
+
+	/**
+	 * @return true if the database is PostgreSQL 9.5 or later.
+	 */
+	private boolean isSkipLockedSupported() {
+		if (skipLocked == null) {
+			try (Connection connection = dataSource.getConnection()) {
+				DatabaseMetaData metaData = connection.getMetaData();
+				int version = metaData.getDatabaseMajorVersion() * 100 + metaData.getDatabaseMinorVersion();
+				skipLocked = "PostgreSQL".equals(metaData.getDatabaseProductName()) && version >= 905;
+			} catch (SQLException e) {
+				log.warn("Cannot read the database version: " + e.getMessage());
+				skipLocked = false;
+			}
+			log.info("Transfert claim with 'SKIP LOCKED': {}", skipLocked);
+		}
+		return skipLocked;
+	}
+}
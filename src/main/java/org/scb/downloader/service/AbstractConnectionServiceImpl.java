@@ -3,10 +3,25 @@ package org.scb.downloader.service;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
+import org.apache.commons.io.FileUtils;
+import org.scb.downloader.config.DownloaderProperties;
 import org.scb.downloader.domain.DWFileInfo;
+import org.scb.downloader.domain.enumeration.DWSyncMode;
 import org.slf4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
 
 /**
  * Helper class used to implement the ConnectionService interface. It provides
@@ -18,6 +33,7 @@ import org.slf4j.Logger;
  * <li>change the current directory on server</li>
  * <li>upload a local file on the remote server</li>
  * <li>download a file from remote server</li>
+ * <li>open a stream to read or write a remote file</li>
  * </ul>
  * 
  * @author S.Chassande
@@ -27,6 +43,15 @@ import org.slf4j.Logger;
  */
 public abstract class AbstractConnectionServiceImpl implements ConnectionService {
 
+	/** The suffix of the files being downloaded in segments. */
+	protected static final String PART_SUFFIX = ".part";
+
+	@Autowired
+	private DownloaderProperties downloaderProperties;
+
+	@Autowired
+	private TransferWorkers transferWorkers;
+
 	/**
 	 * @return the logger of the sub classes.
 	 */
@@ -58,6 +83,26 @@ public abstract class AbstractConnectionServiceImpl implements ConnectionService
 	 */
 	protected abstract boolean changeRemoteDirectory(String directory, ConnectionSession session) throws Exception;
 
+	/**
+	 * Changes the current remote directory, where the files are stored.
+	 * 
+	 * @throws IOException
+	 *             if the server refuses the change.
+	 */
+	protected void enterRemoteDirectory(String directory, ConnectionSession session) throws Exception {
+		if (!changeRemoteDirectory(directory, session)) {
+			throw new IOException(
+					"Cannot change to the remote directory '" + directory + "': " + getReplyString(session));
+		}
+	}
+
+	/**
+	 * @return the last reply of the server, for the error messages.
+	 */
+	protected String getReplyString(ConnectionSession session) {
+		return "refused by the server";
+	}
+
 	/**
 	 * Upload a local file into a remote directory.
 	 * 
@@ -89,9 +134,62 @@ public abstract class AbstractConnectionServiceImpl implements ConnectionService
 	protected abstract void downloadFile(String remoteSourceFile, File localTargetDirectory, ConnectionSession session,
 			ProgressHandler handler) throws Exception;
 
+	/**
+	 * Opens a stream to read a remote file.
+	 * 
+	 * @param remoteSourceFile
+	 *            is the path of the remote file to read.
+	 * @param session
+	 *            is the session establish with the remote server.
+	 * @return the stream which must be closed by the caller.
+	 * @throws Exception
+	 *             if a problem occurs.
+	 */
+	protected abstract InputStream openRemoteInputStream(String remoteSourceFile, ConnectionSession session)
+			throws Exception;
+
+	/**
+	 * Opens a stream to write a remote file. An existing file is overwritten.
+	 * 
+	 * @param remoteTargetFile
+	 *            is the path of the remote file to write.
+	 * @param session
+	 *            is the session establish with the remote server.
+	 * @return the stream which must be closed by the caller.
+	 * @throws Exception
+	 *             if a problem occurs.
+	 */
+	protected abstract OutputStream openRemoteOutputStream(String remoteTargetFile, ConnectionSession session)
+			throws Exception;
+
+	/**
+	 * Deletes a remote file.
+	 * 
+	 * @param remoteFile
+	 *            is the path of the remote file to delete.
+	 * @param session
+	 *            is the session establish with the remote server.
+	 * @throws Exception
+	 *             if a problem occurs.
+	 */
+	protected abstract void deleteRemoteFile(String remoteFile, ConnectionSession session) throws Exception;
+
+	/**
+	 * Deletes an empty remote directory.
+	 * 
+	 * @param remoteDirectory
+	 *            is the path of the remote directory to delete.
+	 * @param session
+	 *            is the session establish with the remote server.
+	 * @throws Exception
+	 *             if a problem occurs.
+	 */
+	protected abstract void deleteRemoteDirectory(String remoteDirectory, ConnectionSession session)
+			throws Exception;
+
 	@Override
-	public void upload(ConnectionSession session, String srcPath, DWFileInfo target, ProgressHandler handler)
-			throws Exception {
+	public void upload(ConnectionSession session, String srcPath, DWFileInfo target, DWSyncMode syncMode,
+			ProgressHandler handler) throws Exception {
 		log().info("Transfering '{}' to '{}' on server ...", srcPath, target.getPath());
 		session.used();
 		try {
@@ -104,16 +202,16 @@ public abstract class AbstractConnectionServiceImpl implements ConnectionService
 			// create the remote directory
 			createRemoteDirectory(target.getPath(), session);
 			// go inside remote directory
-			changeRemoteDirectory(target.getPath(), session);
+			enterRemoteDirectory(target.getPath(), session);
 
 			if (source.isDirectory()) {
 				// compute the remote destination with the name of the directory
 				// to send
 				String remoteName = addPathElement(target.getPath(), source.getName());
 				// ask the upload of the content of the directory
-				uploadDirectory(source, remoteName, session, handler);
+				uploadDirectory(source, remoteName, session, syncMode == null ? DWSyncMode.COPY : syncMode, handler);
 			} else {
-				uploadFile(source, target.getPath(), session, handler);
+				uploadCheckedFile(source, target.getPath(), session, handler);
 			}
 		} finally {
 			session.unused();
@@ -129,41 +227,57 @@ public abstract class AbstractConnectionServiceImpl implements ConnectionService
 	 *            is the path of the remote directory.
 	 * @param session
 	 *            is the session establish with the remote server.
+	 * @param syncMode
+	 *            tells how the existing remote files are handled.
 	 * @throws Exception
 	 *             if a problem occurs.
 	 */
 	protected void uploadDirectory(File sourceDirectory, String remoteTargetDirectory, ConnectionSession session,
-			ProgressHandler handler) throws Exception {
+			DWSyncMode syncMode, ProgressHandler handler) throws Exception {
 		log().debug("Upload the local directory '{}' content to the remote directory '{}'...",
 				sourceDirectory.getAbsolutePath(), remoteTargetDirectory);
 		// List the directory content to upload
-		File[] files = sourceDirectory.listFiles();
-		if (files == null || files.length == 0) {
+		File[] files = listLocalDirectory(sourceDirectory);
+		if (files.length == 0 && syncMode != DWSyncMode.MIRROR) {
 			return;
 		}
+		// the existing target files
+		Map<String, FileEntry> targets = syncMode == DWSyncMode.COPY ? new HashMap<>()
+				: listRemoteEntries(session, remoteTargetDirectory);
 		// create the remote directory
 		createRemoteDirectory(remoteTargetDirectory, session);
 		// change the remote directory
-		changeRemoteDirectory(remoteTargetDirectory, session);
+		enterRemoteDirectory(remoteTargetDirectory, session);
 		// Iterate over local directory content.
 		for (File file : files) {
+			FileEntry target = targets.remove(file.getName());
 			if (".".equals(file.getName()) || "..".equals(file.getName())) {
 				log().debug("Ingoring '{}'.", file.getName());
 
 			} else if (file.isFile()) {
-				uploadFile(file, remoteTargetDirectory, session, handler);
+				if (target != null && !target.isDir()
+						&& isUpToDate(file.length(), file.lastModified(), target.getSize(), target.geLastModified())) {
+					skipUpToDateFile(handler, file.getAbsolutePath(), file.length());
+				} else {
+					uploadCheckedFile(file, remoteTargetDirectory, session, handler);
+				}
 
 			} else if (file.isDirectory()) {
 				// build the new sub directory with the item name
 				String remoteName = addPathElement(remoteTargetDirectory, file.getName());
-				uploadDirectory(file, remoteName, session, handler);
+				uploadDirectory(file, remoteName, session, syncMode, handler);
+			}
+		}
+		if (syncMode == DWSyncMode.MIRROR) {
+			for (FileEntry target : targets.values()) {
+				deleteRemote(session, addPathElement(remoteTargetDirectory, target.getFilename()), target);
 			}
 		}
 	}
 
 	@Override
-	public void download(ConnectionSession session, DWFileInfo source, String targetPath, ProgressHandler handler)
-			throws Exception {
+	public void download(ConnectionSession session, DWFileInfo source, String targetPath, DWSyncMode syncMode,
+			ProgressHandler handler) throws Exception {
 		log().info("Transfering '{}' from remote server to the local directory '{}' ...", source.getPath(), targetPath);
 		session.used();
 		try {
@@ -172,13 +286,13 @@ public abstract class AbstractConnectionServiceImpl implements ConnectionService
 			targetDirectory.mkdirs();
 
 			// Find if the source remote path is a file or a directory
-			List<FileEntry> files = listDir(session, source.getPath(), false);
-			if (files.isEmpty()) {
+			FileEntry entry = stat(session, source.getPath());
+			if (entry == null) {
 				throw new IOException("Cannot download an unexisting remote path '" + source.getPath() + "'.");
 			}
-			if (files.size() == 1 && files.get(0).getFilename().equals(getLastPathElement(source.getPath()))) {
+			if (!entry.isDir()) {
 				// Remote source path is a file
-				downloadFile(source.getPath(), targetDirectory, session, handler);
+				downloadCheckedFile(source.getPath(), targetDirectory, session, handler);
 			} else {
 				// Remote source path is a directory => create locally the
 				// directory which has been to transfer
@@ -186,7 +300,8 @@ public abstract class AbstractConnectionServiceImpl implements ConnectionService
 						.getAbsoluteFile().getCanonicalFile();
 
 				// download the directory content inside.
-				downloadDirectory(source.getPath(), targetSubDirectory, session, handler);
+				downloadDirectory(source.getPath(), targetSubDirectory, session,
+						syncMode == null ? DWSyncMode.COPY : syncMode, handler);
 			}
 		} finally {
 			session.unused();
@@ -202,30 +317,725 @@ public abstract class AbstractConnectionServiceImpl implements ConnectionService
 	 *            is the local directory
 	 * @param session
 	 *            is the session establish with the remote server.
+	 * @param syncMode
+	 *            tells how the existing local files are handled.
 	 * @throws Exception
 	 *             if a problem occurs.
 	 */
 	protected void downloadDirectory(String sourceRemoteDirectory, File targetLocalDirectory, ConnectionSession session,
-			ProgressHandler handler) throws Exception {
+			DWSyncMode syncMode, ProgressHandler handler) throws Exception {
 		log().debug("Download the remote directory '{}' content into the local directory '{}'...",
 				sourceRemoteDirectory, targetLocalDirectory.getAbsolutePath());
-		List<FileEntry> files = listDir(session, sourceRemoteDirectory, false);
-		if (files == null || files.isEmpty()) {
+		List<FileEntry> files = listSourceDirectory(session, sourceRemoteDirectory);
+		if (files.isEmpty() && syncMode != DWSyncMode.MIRROR) {
 			return;
 		}
 		targetLocalDirectory.mkdirs();
+		// the existing target files
+		Map<String, File> targets = syncMode == DWSyncMode.COPY ? new HashMap<>()
+				: listLocalEntries(targetLocalDirectory);
 		for (FileEntry file : files) {
 			String sourceRemotePath = addPathElement(sourceRemoteDirectory, file.getFilename());
+			File target = targets.remove(file.getFilename());
 			if (".".equals(file.getFilename()) || "..".equals(file.getFilename())) {
 				log().debug("Ingoring '{}'.", file.getFilename());
 
 			} else if (file.isDir()) {
 				File targetSubDirectory = new File(targetLocalDirectory, file.getFilename());
-				downloadDirectory(sourceRemotePath, targetSubDirectory, session, handler);
+				downloadDirectory(sourceRemotePath, targetSubDirectory, session, syncMode, handler);
+			} else if (target != null && target.isFile()
+					&& isUpToDate(file.getSize(), file.geLastModified(), target.length(), target.lastModified())) {
+				skipUpToDateFile(handler, sourceRemotePath, file.getSize());
 			} else {
-				downloadFile(sourceRemotePath, targetLocalDirectory, session, handler);
+				downloadCheckedFile(sourceRemotePath, targetLocalDirectory, session, handler);
 			}
 		}
+		if (syncMode == DWSyncMode.MIRROR) {
+			deleteLocal(targets.values());
+		}
+	}
+
+	/**
+	 * Download a remote directory content into a local directory with several
+	 * workers. The remote tree is listed first, then the files are downloaded
+	 * concurrently, each worker using its own session. The progress of the
+	 * workers is aggregated: the handler sees the directory as a single file.
+	 * 
+	 * @param sourceRemoteDirectory
+	 *            is the path of the remote directory.
+	 * @param targetLocalDirectory
+	 *            is the local directory
+	 * @param session
+	 *            is the session used to list the remote directory.
+	 * @param workerSessions
+	 *            are the sessions used to download the files, one per worker.
+	 * @param syncMode
+	 *            tells how the existing local files are handled.
+	 * @throws Exception
+	 *             if a problem occurs.
+	 */
+	protected void downloadDirectoryInParallel(String sourceRemoteDirectory, File targetLocalDirectory,
+			ConnectionSession session, List<ConnectionSession> workerSessions, DWSyncMode syncMode,
+			ProgressHandler handler) throws Exception {
+		log().debug("Download in parallel the remote directory '{}' content into the local directory '{}'...",
+				sourceRemoteDirectory, targetLocalDirectory.getAbsolutePath());
+		Queue<RemoteFile> files = new ConcurrentLinkedQueue<>();
+		long size = listRemoteTree(sourceRemoteDirectory, targetLocalDirectory, session, files, syncMode);
+		log().debug("{} files ({} bytes) to download with {} workers.", files.size(), size, workerSessions.size());
+
+		ParallelProgressHandler progress = new ParallelProgressHandler(handler);
+		progress.start(sourceRemoteDirectory, size);
+		List<Callable<Void>> workers = new ArrayList<>();
+		for (ConnectionSession workerSession : workerSessions) {
+			ProgressHandler workerHandler = progress.newWorkerHandler();
+			workers.add(() -> {
+				RemoteFile file;
+				while (!progress.isCancelled() && (file = files.poll()) != null) {
+					downloadCheckedFile(file.path, file.localDirectory, workerSession, workerHandler);
+				}
+				return null;
+			});
+		}
+		runInParallel(workers, progress, "The download of '" + sourceRemoteDirectory + "'");
+		progress.end();
+	}
+
+	/**
+	 * Uploads a local directory content into a remote directory with several
+	 * workers. The local tree is listed and the remote directories are created
+	 * first, then the files are uploaded concurrently, each worker using its
+	 * own session. The progress of the workers is aggregated: the handler sees
+	 * the directory as a single file.
+	 * 
+	 * @param sourceDirectory
+	 *            is the local directory.
+	 * @param remoteTargetDirectory
+	 *            is the path of the remote directory.
+	 * @param session
+	 *            is the session used to create the remote directories.
+	 * @param workerSessions
+	 *            are the sessions used to upload the files, one per worker.
+	 * @param syncMode
+	 *            tells how the existing remote files are handled.
+	 * @throws Exception
+	 *             if a problem occurs.
+	 */
+	protected void uploadDirectoryInParallel(File sourceDirectory, String remoteTargetDirectory,
+			ConnectionSession session, List<ConnectionSession> workerSessions, DWSyncMode syncMode,
+			ProgressHandler handler) throws Exception {
+		log().debug("Upload in parallel the local directory '{}' content to the remote directory '{}'...",
+				sourceDirectory.getAbsolutePath(), remoteTargetDirectory);
+		Queue<LocalFile> files = new ConcurrentLinkedQueue<>();
+		long size = listLocalTree(sourceDirectory, remoteTargetDirectory, session, files, syncMode);
+		log().debug("{} files ({} bytes) to upload with {} workers.", files.size(), size, workerSessions.size());
+
+		ParallelProgressHandler progress = new ParallelProgressHandler(handler);
+		progress.start(sourceDirectory.getAbsolutePath(), size);
+		List<Callable<Void>> workers = new ArrayList<>();
+		for (ConnectionSession workerSession : workerSessions) {
+			ProgressHandler workerHandler = progress.newWorkerHandler();
+			workers.add(() -> {
+				LocalFile file;
+				while (!progress.isCancelled() && (file = files.poll()) != null) {
+					uploadCheckedFile(file.file, file.remoteDirectory, workerSession, workerHandler);
+				}
+				return null;
+			});
+		}
+		runInParallel(workers, progress, "The upload of '" + sourceDirectory.getAbsolutePath() + "'");
+		progress.end();
+	}
+
+	/**
+	 * Runs workers concurrently on the shared {@link TransferWorkers} and
+	 * waits for their end. When a worker fails, the other workers are
+	 * cancelled through the progress handler.
+	 * 
+	 * @param workers
+	 *            are the workers to run.
+	 * @param progress
+	 *            is the progress handler shared by the workers.
+	 * @param description
+	 *            describes the work for the error messages.
+	 * @throws Exception
+	 *             the first error of the workers, or an IOException if the
+	 *             work has been cancelled.
+	 */
+	protected void runInParallel(List<Callable<Void>> workers, ParallelProgressHandler progress, String description)
+			throws Exception {
+		getTransferWorkers().runInParallel(workers, progress, description);
+	}
+
+	/**
+	 * Lists recursively the files of a remote directory and creates the local
+	 * directories. In SYNC and MIRROR modes, the files whose local copy is up
+	 * to date are not listed and in MIRROR mode the local files missing in the
+	 * remote directory are deleted.
+	 * 
+	 * @param files
+	 *            receives the files to download.
+	 * @return the total size of the files.
+	 */
+	private long listRemoteTree(String sourceRemoteDirectory, File targetLocalDirectory, ConnectionSession session,
+			Queue<RemoteFile> files, DWSyncMode syncMode) throws Exception {
+		List<FileEntry> entries = listSourceDirectory(session, sourceRemoteDirectory);
+		if (entries.isEmpty() && syncMode != DWSyncMode.MIRROR) {
+			return 0;
+		}
+		targetLocalDirectory.mkdirs();
+		Map<String, File> targets = syncMode == DWSyncMode.COPY ? new HashMap<>()
+				: listLocalEntries(targetLocalDirectory);
+		long size = 0;
+		for (FileEntry entry : entries) {
+			String sourceRemotePath = addPathElement(sourceRemoteDirectory, entry.getFilename());
+			File target = targets.remove(entry.getFilename());
+			if (".".equals(entry.getFilename()) || "..".equals(entry.getFilename())) {
+				log().debug("Ingoring '{}'.", entry.getFilename());
+
+			} else if (entry.isDir()) {
+				File targetSubDirectory = new File(targetLocalDirectory, entry.getFilename());
+				size += listRemoteTree(sourceRemotePath, targetSubDirectory, session, files, syncMode);
+			} else if (target != null && target.isFile()
+					&& isUpToDate(entry.getSize(), entry.geLastModified(), target.length(), target.lastModified())) {
+				log().debug("The file '{}' is up to date.", sourceRemotePath);
+			} else {
+				files.add(new RemoteFile(sourceRemotePath, targetLocalDirectory));
+				size += entry.getSize();
+			}
+		}
+		if (syncMode == DWSyncMode.MIRROR) {
+			deleteLocal(targets.values());
+		}
+		return size;
+	}
+
+	/**
+	 * Lists recursively the files of a local directory and creates the remote
+	 * directories. In SYNC and MIRROR modes, the files whose remote copy is up
+	 * to date are not listed and in MIRROR mode the remote files missing in
+	 * the local directory are deleted.
+	 * 
+	 * @param files
+	 *            receives the files to upload.
+	 * @return the total size of the files.
+	 */
+	private long listLocalTree(File sourceDirectory, String remoteTargetDirectory, ConnectionSession session,
+			Queue<LocalFile> files, DWSyncMode syncMode) throws Exception {
+		File[] entries = listLocalDirectory(sourceDirectory);
+		if (entries.length == 0 && syncMode != DWSyncMode.MIRROR) {
+			return 0;
+		}
+		Map<String, FileEntry> targets = syncMode == DWSyncMode.COPY ? new HashMap<>()
+				: listRemoteEntries(session, remoteTargetDirectory);
+		createRemoteDirectory(remoteTargetDirectory, session);
+		long size = 0;
+		for (File file : entries) {
+			FileEntry target = targets.remove(file.getName());
+			if (file.isDirectory()) {
+				size += listLocalTree(file, addPathElement(remoteTargetDirectory, file.getName()), session, files,
+						syncMode);
+			} else if (!file.isFile()) {
+				log().debug("Ingoring '{}'.", file.getAbsolutePath());
+			} else if (target != null && !target.isDir()
+					&& isUpToDate(file.length(), file.lastModified(), target.getSize(), target.geLastModified())) {
+				log().debug("The file '{}' is up to date.", file.getAbsolutePath());
+			} else {
+				files.add(new LocalFile(file, remoteTargetDirectory));
+				size += file.length();
+			}
+		}
+		if (syncMode == DWSyncMode.MIRROR) {
+			for (FileEntry target : targets.values()) {
+				deleteRemote(session, addPathElement(remoteTargetDirectory, target.getFilename()), target);
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * Relays a remote file or directory from this server into a directory of
+	 * another remote server. The data is streamed from the source server to
+	 * the target server without local copy.
+	 * 
+	 * @param session
+	 *            is the session establish with the source server.
+	 * @param source
+	 *            is the remote file or directory to relay.
+	 * @param targetCS
+	 *            is the connection service of the target server.
+	 * @param targetSession
+	 *            is the session establish with the target server.
+	 * @param target
+	 *            is the directory on the target server.
+	 * @param syncMode
+	 *            tells how the existing target files are handled.
+	 * @param relay
+	 *            is the relay streaming the data between both servers.
+	 * @throws Exception
+	 *             if a problem occurs.
+	 */
+	public void relay(ConnectionSession session, DWFileInfo source, AbstractConnectionServiceImpl targetCS,
+			ConnectionSession targetSession, DWFileInfo target, DWSyncMode syncMode, StreamRelay relay,
+			ProgressHandler handler) throws Exception {
+		log().info("Relaying '{}' to '{}' on the target server ...", source.getPath(), target.getPath());
+		session.used();
+		targetSession.used();
+		try {
+			// create the target directory
+			targetCS.createRemoteDirectory(target.getPath(), targetSession);
+			String targetPath = targetCS.addPathElement(target.getPath(), getLastPathElement(source.getPath()));
+
+			FileEntry file = stat(session, source.getPath());
+			if (file == null) {
+				throw new IOException("Cannot relay an unexisting remote path '" + source.getPath() + "'.");
+			}
+			if (!file.isDir()) {
+				relayFile(source.getPath(), file.getSize(), session, targetCS, targetPath, targetSession, relay,
+						handler);
+			} else {
+				relayDirectory(source.getPath(), session, targetCS, targetPath, targetSession,
+						syncMode == null ? DWSyncMode.COPY : syncMode, relay, handler);
+			}
+		} finally {
+			targetSession.unused();
+			session.unused();
+		}
+	}
+
+	/**
+	 * Relays a remote directory content into a directory of another remote
+	 * server.
+	 */
+	protected void relayDirectory(String sourceRemoteDirectory, ConnectionSession session,
+			AbstractConnectionServiceImpl targetCS, String targetRemoteDirectory, ConnectionSession targetSession,
+			DWSyncMode syncMode, StreamRelay relay, ProgressHandler handler) throws Exception {
+		log().debug("Relay the remote directory '{}' content into the remote directory '{}'...",
+				sourceRemoteDirectory, targetRemoteDirectory);
+		List<FileEntry> files = listSourceDirectory(session, sourceRemoteDirectory);
+		// the existing target files
+		Map<String, FileEntry> targets = syncMode == DWSyncMode.COPY ? new HashMap<>()
+				: targetCS.listRemoteEntries(targetSession, targetRemoteDirectory);
+		targetCS.createRemoteDirectory(targetRemoteDirectory, targetSession);
+		for (FileEntry file : files) {
+			String sourceRemotePath = addPathElement(sourceRemoteDirectory, file.getFilename());
+			String targetRemotePath = targetCS.addPathElement(targetRemoteDirectory, file.getFilename());
+			FileEntry target = targets.remove(file.getFilename());
+			if (".".equals(file.getFilename()) || "..".equals(file.getFilename())) {
+				log().debug("Ingoring '{}'.", file.getFilename());
+
+			} else if (file.isDir()) {
+				relayDirectory(sourceRemotePath, session, targetCS, targetRemotePath, targetSession, syncMode, relay,
+						handler);
+			} else if (target != null && !target.isDir()
+					&& isUpToDate(file.getSize(), file.geLastModified(), target.getSize(), target.geLastModified())) {
+				skipUpToDateFile(handler, sourceRemotePath, file.getSize());
+			} else {
+				relayFile(sourceRemotePath, file.getSize(), session, targetCS, targetRemotePath, targetSession,
+						relay, handler);
+			}
+		}
+		if (syncMode == DWSyncMode.MIRROR) {
+			for (FileEntry target : targets.values()) {
+				targetCS.deleteRemote(targetSession, targetCS.addPathElement(targetRemoteDirectory,
+						target.getFilename()), target);
+			}
+		}
+	}
+
+	/**
+	 * Relays a remote file into a file of another remote server.
+	 */
+	protected void relayFile(String remoteSourceFile, long size, ConnectionSession session,
+			AbstractConnectionServiceImpl targetCS, String remoteTargetFile, ConnectionSession targetSession,
+			StreamRelay relay, ProgressHandler handler) throws Exception {
+		log().debug("Relay the remote file '{}' to the remote file '{}'", remoteSourceFile, remoteTargetFile);
+		retryOnChecksumMismatch(() -> {
+			if (handler != null) {
+				handler.start(remoteSourceFile, size);
+			}
+			StreamChecksum checksum = newChecksum();
+			try (InputStream in = wrap(checksum, openRemoteInputStream(remoteSourceFile, session));
+					OutputStream out = targetCS.openRemoteOutputStream(remoteTargetFile, targetSession)) {
+				relay.relay(in, out, handler);
+			}
+			// the source or the target server may compute the checksum
+			String remoteChecksum = getRemoteChecksum(session, remoteSourceFile, checksum);
+			if (remoteChecksum == null) {
+				remoteChecksum = targetCS.getRemoteChecksum(targetSession, remoteTargetFile, checksum);
+			}
+			checkFile(checksum, remoteSourceFile, remoteChecksum, handler);
+			if (handler != null) {
+				handler.end();
+			}
+		}, () -> targetCS.deleteRemoteFile(remoteTargetFile, targetSession));
+	}
+
+	/**
+	 * Downloads a remote file and downloads it again if its checksum is bad.
+	 */
+	protected void downloadCheckedFile(String remoteSourceFile, File localTargetDirectory, ConnectionSession session,
+			ProgressHandler handler) throws Exception {
+		retryOnChecksumMismatch(() -> downloadFile(remoteSourceFile, localTargetDirectory, session, handler),
+				() -> new File(localTargetDirectory, getLastPathElement(remoteSourceFile)).delete());
+	}
+
+	/**
+	 * Uploads a local file and uploads it again if its checksum is bad.
+	 */
+	protected void uploadCheckedFile(File localFile, String remoteTargetDirectory, ConnectionSession session,
+			ProgressHandler handler) throws Exception {
+		retryOnChecksumMismatch(() -> uploadFile(localFile, remoteTargetDirectory, session, handler),
+				() -> deleteRemoteFile(addPathElement(remoteTargetDirectory, localFile.getName()), session));
+	}
+
+	/**
+	 * Transfers a file until its checksum is good or the maximal number of
+	 * attempts is reached. The bad copy is deleted after each attempt, so it is
+	 * not resumed.
+	 * 
+	 * @param transfer
+	 *            transfers the file.
+	 * @param delete
+	 *            deletes the bad copy.
+	 */
+	private void retryOnChecksumMismatch(FileOperation transfer, FileOperation delete) throws Exception {
+		for (int attempt = 1;; attempt++) {
+			try {
+				transfer.run();
+				return;
+			} catch (ChecksumMismatchException e) {
+				try {
+					delete.run();
+				} catch (Exception de) {
+					log().warn("Cannot delete the bad copy: {}", de.getMessage());
+				}
+				if (attempt >= getChecksumMaxAttempts()) {
+					throw e;
+				}
+				log().warn("{} The file is transfered again.", e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * @return a new checksum for a file, null if the checksums are disabled.
+	 */
+	protected StreamChecksum newChecksum() {
+		return downloaderProperties == null ? null
+				: StreamChecksum.create(downloaderProperties.getChecksum().getAlgorithm());
+	}
+
+	/**
+	 * @return a stream adding the read bytes to the checksum, the stream
+	 *         itself if the checksum is null.
+	 */
+	protected static InputStream wrap(StreamChecksum checksum, InputStream in) {
+		return checksum == null ? in : checksum.wrap(in);
+	}
+
+	/**
+	 * @return a stream adding the written bytes to the checksum, the stream
+	 *         itself if the checksum is null.
+	 */
+	protected static OutputStream wrap(StreamChecksum checksum, OutputStream out) {
+		return checksum == null ? out : checksum.wrap(out);
+	}
+
+	/**
+	 * Gives the checksum of a remote file computed by the server.
+	 * 
+	 * @param session
+	 *            is the session establish with the remote server.
+	 * @param path
+	 *            is the path of the remote file.
+	 * @param algorithm
+	 *            is the algorithm of the checksum.
+	 * @return the checksum as "ALGORITHM:value", null if the server cannot
+	 *         compute it.
+	 * @throws Exception
+	 *             if a problem occurs.
+	 */
+	protected String computeRemoteChecksum(ConnectionSession session, String path, String algorithm)
+			throws Exception {
+		return null;
+	}
+
+	/**
+	 * @return the checksum of a remote file computed by the server, null if
+	 *         the checksums are not verified or the server cannot compute
+	 *         them.
+	 */
+	protected String getRemoteChecksum(ConnectionSession session, String path, StreamChecksum checksum) {
+		if (checksum == null || !downloaderProperties.getChecksum().isVerify()) {
+			return null;
+		}
+		try {
+			return computeRemoteChecksum(session, path, checksum.getAlgorithm());
+		} catch (Exception e) {
+			log().debug("Cannot compute the checksum of the remote file '{}': {}", path, e.getMessage());
+			return null;
+		}
+	}
+
+	/**
+	 * Compares the checksum of a transfered file with the checksum computed by
+	 * the remote server and gives it to the handler.
+	 * 
+	 * @param checksum
+	 *            is the checksum of the transfered bytes, null if the
+	 *            checksums are disabled.
+	 * @param remoteChecksum
+	 *            is the checksum computed by the remote server, null if it is
+	 *            not available.
+	 * @throws ChecksumMismatchException
+	 *             if the checksums differ.
+	 */
+	protected void checkFile(StreamChecksum checksum, String file, String remoteChecksum, ProgressHandler handler)
+			throws ChecksumMismatchException {
+		if (checksum == null) {
+			return;
+		}
+		String value = checksum.toString();
+		if (remoteChecksum != null && !remoteChecksum.equalsIgnoreCase(value)) {
+			throw new ChecksumMismatchException(file, value, remoteChecksum);
+		}
+		log().debug("Checksum of '{}': {} ({}).", file, value,
+				remoteChecksum == null ? "not verified" : "verified");
+		if (handler != null) {
+			handler.checksum(file, value);
+		}
+	}
+
+	private int getChecksumMaxAttempts() {
+		return downloaderProperties == null ? 1 : downloaderProperties.getChecksum().getMaxAttempts();
+	}
+
+	public DownloaderProperties getDownloaderProperties() {
+		return downloaderProperties;
+	}
+
+	public void setDownloaderProperties(DownloaderProperties downloaderProperties) {
+		this.downloaderProperties = downloaderProperties;
+	}
+
+	public TransferWorkers getTransferWorkers() {
+		return transferWorkers == null ? TransferWorkers.getDefault() : transferWorkers;
+	}
+
+	public void setTransferWorkers(TransferWorkers transferWorkers) {
+		this.transferWorkers = transferWorkers;
+	}
+
+	/**
+	 * Gives the size of a remote file.
+	 * 
+	 * @param session
+	 *            is the session establish with the remote server.
+	 * @param path
+	 *            is the remote path.
+	 * @return the size of the file, -1 if the file does not exist.
+	 */
+	protected long getRemoteFileSize(ConnectionSession session, String path) throws IOException {
+		FileEntry file = statRemoteFile(session, path);
+		return file == null ? -1 : file.getSize();
+	}
+
+	/**
+	 * Gives the attributes of a remote file.
+	 * 
+	 * @param session
+	 *            is the session establish with the remote server.
+	 * @param path
+	 *            is the remote path.
+	 * @return the attributes of the file, null if the file does not exist.
+	 */
+	protected FileEntry statRemoteFile(ConnectionSession session, String path) {
+		try {
+			FileEntry file = stat(session, path);
+			if (file != null && !file.isDir()) {
+				return file;
+			}
+		} catch (Exception e) {
+			log().debug("Cannot get the attributes of the remote file '{}': {}", path, e.getMessage());
+		}
+		return null;
+	}
+
+	/**
+	 * Asks the handler where to resume the transfert of a file partially
+	 * transfered by a previous attempt.
+	 * 
+	 * @param transfered
+	 *            is the size of the partial copy of the file on the target, -1
+	 *            if there is no copy.
+	 * @param transferedLastModified
+	 *            is the last modification date of the partial copy, 0 if
+	 *            unknown.
+	 * @return the offset where to resume, between 0 and the file size.
+	 */
+	protected long getResumeOffset(ProgressHandler handler, String file, long size, long transfered,
+			long transferedLastModified) {
+		if (handler == null || transfered <= 0 || transfered > size) {
+			return 0;
+		}
+		long offset = handler.getResumeOffset(file, size, transfered, transferedLastModified);
+		if (offset > 0) {
+			log().info("Resume the transfert of '{}' at {}/{} bytes.", file, offset, size);
+		}
+		return Math.max(0, Math.min(offset, transfered));
+	}
+
+	/**
+	 * Notifies the handler of a file already transfered by a previous attempt.
+	 */
+	protected void skipFile(ProgressHandler handler, String file, long size) {
+		log().debug("The file '{}' has already been transfered.", file);
+		if (handler != null) {
+			handler.skip(file, size);
+		}
+	}
+
+	/**
+	 * Notifies the handler of a file not transfered because its target is up
+	 * to date.
+	 */
+	protected void skipUpToDateFile(ProgressHandler handler, String file, long size) {
+		log().debug("The file '{}' is up to date.", file);
+		if (handler != null) {
+			handler.skip(file, size);
+		}
+	}
+
+	/**
+	 * Finds if the target of a file is up to date: it has the same size and it
+	 * has been written after the last change of the source. The modification
+	 * dates are not copied, so a target is always newer than its source.
+	 */
+	protected static boolean isUpToDate(long size, long lastModified, long targetSize, long targetLastModified) {
+		return size == targetSize && targetLastModified >= lastModified;
+	}
+
+	/**
+	 * @return the file where the segments of a local file are written before
+	 *         it is complete.
+	 */
+	protected static File getPartFile(File file) {
+		return new File(file.getParentFile(), file.getName() + PART_SUFFIX);
+	}
+
+	/**
+	 * Replaces a local file by its complete part file.
+	 */
+	protected static void completePartFile(File partFile, File file) throws IOException {
+		Files.move(partFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	/**
+	 * Lists a remote directory.
+	 * 
+	 * @return the entries of the directory by name, empty if the directory
+	 *         does not exist.
+	 * @throws Exception
+	 *             if an existing directory cannot be listed.
+	 */
+	protected Map<String, FileEntry> listRemoteEntries(ConnectionSession session, String directory)
+			throws Exception {
+		Map<String, FileEntry> entries = new HashMap<>();
+		List<FileEntry> files;
+		try {
+			files = listDir(session, directory, false);
+		} catch (Exception e) {
+			if (stat(session, directory) == null) {
+				return entries;
+			}
+			throw e;
+		}
+		for (FileEntry entry : files == null ? new ArrayList<FileEntry>() : files) {
+			if (!".".equals(entry.getFilename()) && !"..".equals(entry.getFilename())) {
+				entries.put(entry.getFilename(), entry);
+			}
+		}
+		return entries;
+	}
+
+	/**
+	 * Lists a remote source directory. An empty listing is checked: the
+	 * MIRROR mode deletes all the target files of an empty source directory,
+	 * so a directory which cannot be listed must not look empty.
+	 * 
+	 * @return the entries of the directory.
+	 * @throws IOException
+	 *             if the directory cannot be listed.
+	 */
+	protected List<FileEntry> listSourceDirectory(ConnectionSession session, String directory) throws Exception {
+		List<FileEntry> files = listDir(session, directory, false);
+		if (files == null || files.isEmpty()) {
+			FileEntry entry = stat(session, directory);
+			if (entry == null || !entry.isDir()) {
+				throw new IOException("Cannot list the remote directory '" + directory + "'.");
+			}
+			return new ArrayList<>();
+		}
+		return files;
+	}
+
+	/**
+	 * Lists a local source directory.
+	 * 
+	 * @return the files of the directory.
+	 * @throws IOException
+	 *             if the directory cannot be listed.
+	 */
+	protected static File[] listLocalDirectory(File directory) throws IOException {
+		File[] files = directory.listFiles();
+		if (files == null) {
+			throw new IOException("Cannot list the local directory '" + directory.getAbsolutePath() + "'.");
+		}
+		return files;
+	}
+
+	/**
+	 * Lists a local directory.
+	 * 
+	 * @return the files of the directory by name, empty if the directory does
+	 *         not exist.
+	 * @throws IOException
+	 *             if an existing directory cannot be listed.
+	 */
+	protected static Map<String, File> listLocalEntries(File directory) throws IOException {
+		Map<String, File> entries = new HashMap<>();
+		if (directory.exists()) {
+			for (File file : listLocalDirectory(directory)) {
+				entries.put(file.getName(), file);
+			}
+		}
+		return entries;
+	}
+
+	/**
+	 * Deletes a remote file or directory with its content.
+	 */
+	protected void deleteRemote(ConnectionSession session, String path, FileEntry entry) throws Exception {
+		if (entry.isDir()) {
+			for (FileEntry child : listRemoteEntries(session, path).values()) {
+				deleteRemote(session, addPathElement(path, child.getFilename()), child);
+			}
+			log().info("Delete the remote directory '{}' missing in the source.", path);
+			deleteRemoteDirectory(path, session);
+		} else {
+			log().info("Delete the remote file '{}' missing in the source.", path);
+			deleteRemoteFile(path, session);
+		}
+	}
+
+	/**
+	 * Deletes local files or directories with their content.
+	 */
+	protected void deleteLocal(Collection<File> files) throws IOException {
+		for (File file : files) {
+			log().info("Delete the local file '{}' missing in the source.", file.getAbsolutePath());
+			FileUtils.forceDelete(file);
+		}
 	}
 
 	/**
@@ -256,4 +1066,37 @@ public abstract class AbstractConnectionServiceImpl implements ConnectionService
 	protected String addPathElement(String begin, String newOne) {
 		return begin + (begin.endsWith("/") ? "" : "/") + newOne;
 	}
+
+	/**
+	 * An operation on a file.
+	 */
+	private interface FileOperation {
+		void run() throws Exception;
+	}
+
+	/**
+	 * A remote file to download into a local directory.
+	 */
+	private static class RemoteFile {
+		final String path;
+		final File localDirectory;
+
+		RemoteFile(String path, File localDirectory) {
+			this.path = path;
+			this.localDirectory = localDirectory;
+		}
+	}
+
+	/**
+	 * A local file to upload into a remote directory.
+	 */
+	private static class LocalFile {
+		final File file;
+		final String remoteDirectory;
+
+		LocalFile(File file, String remoteDirectory) {
+			this.file = file;
+			this.remoteDirectory = remoteDirectory;
+		}
+	}
 }
@@ -0,0 +1,294 @@
+package org.scb.downloader.service;
+
+import java.io.InterruptedIOException;
+import java.time.LocalTime;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+
+import org.scb.downloader.config.DownloaderProperties;
+import org.scb.downloader.config.DownloaderProperties.Bandwidth;
+import org.scb.downloader.config.DownloaderProperties.Profile;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+/**
+ * Limits the bandwidth used by the transferts. The transfered bytes are taken
+ * from three token buckets: the bucket of the transfert, the buckets of its
+ * remote accounts and the global bucket.
+ *
+ * The default caps come from the configuration, with the time of day profiles.
+ * They can be replaced at runtime for the whole application, for an account or
+ * for a transfert.
+ *
+ * @author S.Chassande
+ */
+@Service
+public class BandwidthLimiter {
+
+	/** Logger */
+	protected static final Logger log = LoggerFactory.getLogger(BandwidthLimiter.class);
+
+	@Autowired
+	private DownloaderProperties downloaderProperties;
+
+	private final TokenBucket globalBucket = new TokenBucket(0);
+
+	/** The buckets of the remote accounts by account identifier. */
+	private final ConcurrentMap<Long, TokenBucket> accountBuckets = new ConcurrentHashMap<>();
+
+	/** The buckets of the running transferts by transfert identifier. */
+	private final ConcurrentMap<Long, TokenBucket> transfertBuckets = new ConcurrentHashMap<>();
+
+	/** The global cap set at runtime, null to use the configuration. */
+	private volatile Long globalRate;
+
+	/** The caps of the accounts set at runtime by account identifier. */
+	private final ConcurrentMap<Long, Long> accountRates = new ConcurrentHashMap<>();
+
+	/** The caps of the transferts set at runtime by transfert identifier. */
+	private final ConcurrentMap<Long, Long> transfertRates = new ConcurrentHashMap<>();
+
+	/** The caps of the configuration for the current time of day. */
+	private volatile Caps defaultCaps = new Caps(0, 0, 0);
+
+	@PostConstruct
+	public void init() {
+		applyProfiles();
+	}
+
+	/**
+	 * Waits until bytes transfered by a transfert fit in the bandwidth caps.
+	 *
+	 * @param transfertId
+	 *            is the identifier of the transfert.
+	 * @param accountIds
+	 *            is the identifiers of the remote accounts used by the
+	 *            transfert.
+	 * @param bytes
+	 *            is the number of transfered bytes.
+	 * @throws InterruptedIOException
+	 *             if the thread is interrupted while waiting.
+	 */
+	public void acquire(Long transfertId, Collection<Long> accountIds, long bytes) throws InterruptedIOException {
+		long delay = 0;
+		if (transfertId != null) {
+			delay = Math.max(delay, transfertBuckets
+					.computeIfAbsent(transfertId, id -> new TokenBucket(getTransfertRate(id))).reserve(bytes));
+		}
+		for (Long accountId : accountIds) {
+			delay = Math.max(delay, accountBuckets
+					.computeIfAbsent(accountId, id -> new TokenBucket(getAccountRate(id))).reserve(bytes));
+		}
+		delay = Math.max(delay, globalBucket.reserve(bytes));
+		if (delay > 0) {
+			try {
+				TimeUnit.NANOSECONDS.sleep(delay);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Transfert interrupted while waiting for bandwidth.");
+			}
+		}
+	}
+
+	/**
+	 * Forgets the bucket of a transfert at the end of an attempt. Its cap set
+	 * at runtime is kept for the next attempts.
+	 */
+	public void release(Long transfertId) {
+		if (transfertId != null) {
+			transfertBuckets.remove(transfertId);
+		}
+	}
+
+	/**
+	 * Forgets the bucket and the cap of a transfert which will not run
+	 * anymore: finished, in error or deleted.
+	 */
+	public void forget(Long transfertId) {
+		if (transfertId != null) {
+			transfertBuckets.remove(transfertId);
+			transfertRates.remove(transfertId);
+		}
+	}
+
+	/**
+	 * Computes the default caps for the current time of day.
+	 */
+	@Scheduled(fixedDelay = 60 * 1000)
+	public void applyProfiles() {
+		Caps caps = getCaps(downloaderProperties.getBandwidth(), LocalTime.now());
+		if (!caps.equals(defaultCaps)) {
+			log.info("Bandwidth caps: global={}, account={}, transfert={} bytes/s", caps.globalRate,
+					caps.accountRate, caps.transfertRate);
+			defaultCaps = caps;
+			updateRates();
+		}
+	}
+
+	/**
+	 * @return the caps of the first profile containing the time, or the
+	 *         default caps of the configuration.
+	 */
+	static Caps getCaps(Bandwidth bandwidth, LocalTime time) {
+		for (Profile profile : bandwidth.getProfiles()) {
+			LocalTime begin = LocalTime.parse(profile.getBegin());
+			LocalTime end = LocalTime.parse(profile.getEnd());
+			boolean inside = begin.isBefore(end) ? !time.isBefore(begin) && time.isBefore(end)
+					// the profile goes over midnight
+					: !time.isBefore(begin) || time.isBefore(end);
+			if (inside) {
+				return new Caps(profile.getGlobalRate(), profile.getAccountRate(), profile.getTransfertRate());
+			}
+		}
+		return new Caps(bandwidth.getGlobalRate(), bandwidth.getAccountRate(), bandwidth.getTransfertRate());
+	}
+
+	private void updateRates() {
+		globalBucket.setRate(getGlobalRate());
+		accountBuckets.forEach((id, bucket) -> bucket.setRate(getAccountRate(id)));
+		transfertBuckets.forEach((id, bucket) -> bucket.setRate(getTransfertRate(id)));
+	}
+
+	/**
+	 * @return the current global cap in bytes per second, 0 for no limit.
+	 */
+	public long getGlobalRate() {
+		Long rate = globalRate;
+		return rate == null ? defaultCaps.globalRate : rate;
+	}
+
+	/**
+	 * @return the cap of the accounts without specific cap.
+	 */
+	public long getDefaultAccountRate() {
+		return defaultCaps.accountRate;
+	}
+
+	/**
+	 * @return the cap of the transferts without specific cap.
+	 */
+	public long getDefaultTransfertRate() {
+		return defaultCaps.transfertRate;
+	}
+
+	/**
+	 * @return the current cap of an account in bytes per second, 0 for no
+	 *         limit.
+	 */
+	public long getAccountRate(Long accountId) {
+		return accountRates.getOrDefault(accountId, defaultCaps.accountRate);
+	}
+
+	/**
+	 * @return the current cap of a transfert in bytes per second, 0 for no
+	 *         limit.
+	 */
+	public long getTransfertRate(Long transfertId) {
+		return transfertRates.getOrDefault(transfertId, defaultCaps.transfertRate);
+	}
+
+	/**
+	 * Changes the global cap.
+	 *
+	 * @param rate
+	 *            is the cap in bytes per second (0 for no limit), or null to
+	 *            use the configuration.
+	 */
+	public void setGlobalRate(Long rate) {
+		globalRate = rate;
+		updateRates();
+	}
+
+	/**
+	 * Changes the cap of an account.
+	 *
+	 * @param rate
+	 *            is the cap in bytes per second (0 for no limit), or null to
+	 *            use the configuration.
+	 */
+	public void setAccountRate(Long accountId, Long rate) {
+		if (rate == null) {
+			accountRates.remove(accountId);
+		} else {
+			accountRates.put(accountId, rate);
+		}
+		updateRates();
+	}
+
+	/**
+	 * Changes the cap of a transfert, until the transfert is finished or
+	 * deleted.
+	 *
+	 * @param rate
+	 *            is the cap in bytes per second (0 for no limit), or null to
+	 *            use the configuration.
+	 */
+	public void setTransfertRate(Long transfertId, Long rate) {
+		if (rate == null) {
+			transfertRates.remove(transfertId);
+		} else {
+			transfertRates.put(transfertId, rate);
+		}
+		updateRates();
+	}
+
+	/**
+	 * @return the caps set at runtime on the accounts.
+	 */
+	public Map<Long, Long> getAccountRates() {
+		return new HashMap<>(accountRates);
+	}
+
+	/**
+	 * @return the caps set at runtime on the transferts.
+	 */
+	public Map<Long, Long> getTransfertRates() {
+		return new HashMap<>(transfertRates);
+	}
+
+	public DownloaderProperties getDownloaderProperties() {
+		return downloaderProperties;
+	}
+
+	public void setDownloaderProperties(DownloaderProperties downloaderProperties) {
+		this.downloaderProperties = downloaderProperties;
+	}
+
+	/**
+	 * The caps in bytes per second for a time of day.
+	 */
+	static class Caps {
+		final long globalRate;
+		final long accountRate;
+		final long transfertRate;
+
+		Caps(long globalRate, long accountRate, long transfertRate) {
+			this.globalRate = globalRate;
+			this.accountRate = accountRate;
+			this.transfertRate = transfertRate;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Caps)) {
+				return false;
+			}
+			Caps c = (Caps) o;
+			return globalRate == c.globalRate && accountRate == c.accountRate && transfertRate == c.transfertRate;
+		}
+
+		@Override
+		public int hashCode() {
+			return (int) (globalRate * 31 * 31 + accountRate * 31 + transfertRate);
+		}
+	}
+}
@@ -0,0 +1,18 @@
+package org.scb.downloader.service;
+
+import java.io.IOException;
+
+/**
+ * The checksum of a transfered file differs from the checksum computed by the
+ * remote server.
+ *
+ * @author S.Chassande
+ */
+public class ChecksumMismatchException extends IOException {
+
+	private static final long serialVersionUID = 1L;
+
+	public ChecksumMismatchException(String file, String checksum, String remoteChecksum) {
+		super("Bad checksum of the file '" + file + "': " + checksum + " instead of " + remoteChecksum + ".");
+	}
+}
@@ -0,0 +1,98 @@
+package org.scb.downloader.service;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.zip.Deflater;
+
+/**
+ * Guesses whether the content of a file is worth compressing on the wire. The
+ * archives, the images and the videos are already compressed: compressing
+ * them again only costs CPU time.
+ *
+ * The guess comes from the file extension, then from a sample of the first
+ * bytes of the file compressed with the fastest zlib level.
+ *
+ * @author S.Chassande
+ */
+public final class Compressibility {
+
+	/** The size of the sample read at the beginning of a file. */
+	public static final int SAMPLE_SIZE = 64 * 1024;
+
+	/**
+	 * The ratio between the compressed size and the size of a sample above
+	 * which the sample is considered as incompressible.
+	 */
+	static final double MAX_RATIO = 0.9;
+
+	/** The extensions of the already compressed formats. */
+	private static final Set<String> COMPRESSED_EXTENSIONS = new HashSet<>(Arrays.asList("zip", "gz", "tgz", "bz2",
+			"tbz2", "xz", "txz", "lz", "lzma", "lz4", "zst", "7z", "rar", "jar", "war", "ear", "apk", "cab", "rpm",
+			"deb", "jpg", "jpeg", "png", "gif", "webp", "heic", "mp3", "aac", "ogg", "flac", "mp4", "m4v", "mkv",
+			"avi", "mov", "webm", "pdf", "docx", "xlsx", "pptx", "odt", "ods", "odp", "parquet", "orc", "avro"));
+
+	private Compressibility() {
+	}
+
+	/**
+	 * @return false if the extension of the file is the one of a compressed
+	 *         format.
+	 */
+	public static boolean isCompressible(String fileName) {
+		int idx = fileName.lastIndexOf('.');
+		return idx < 0 || !COMPRESSED_EXTENSIONS.contains(fileName.substring(idx + 1).toLowerCase(Locale.ROOT));
+	}
+
+	/**
+	 * @return false if a sample of bytes is not reduced by the compression.
+	 */
+	public static boolean isCompressible(byte[] sample, int length) {
+		if (length <= 0) {
+			return true;
+		}
+		Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+		try {
+			deflater.setInput(sample, 0, length);
+			deflater.finish();
+			byte[] buffer = new byte[8 * 1024];
+			long compressed = 0;
+			while (!deflater.finished()) {
+				compressed += deflater.deflate(buffer);
+			}
+			return compressed < length * MAX_RATIO;
+		} finally {
+			deflater.end();
+		}
+	}
+
+	/**
+	 * Reads the sample of a stream and checks it.
+	 */
+	public static boolean isCompressible(InputStream in) throws IOException {
+		byte[] sample = new byte[SAMPLE_SIZE];
+		int length = 0;
+		int read;
+		while (length < sample.length && (read = in.read(sample, length, sample.length - length)) > 0) {
+			length += read;
+		}
+		return isCompressible(sample, length);
+	}
+
+	/**
+	 * Checks the extension then the first bytes of a local file.
+	 */
+	public static boolean isCompressible(File file) throws IOException {
+		if (!isCompressible(file.getName())) {
+			return false;
+		}
+		try (InputStream in = new FileInputStream(file)) {
+			return isCompressible(in);
+		}
+	}
+}
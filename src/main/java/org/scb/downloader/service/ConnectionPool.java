@@ -0,0 +1,276 @@
+package org.scb.downloader.service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.PreDestroy;
+
+import org.scb.downloader.config.DownloaderProperties;
+import org.scb.downloader.domain.DWHostAccount;
+import org.scb.downloader.service.ConnectionService.ConnectionSession;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+/**
+ * Pool of connection sessions shared by the transferts and the file browser.
+ * The sessions are kept by account identifier in order to avoid a new
+ * connection (and its handshake) for each operation. A borrowed session is
+ * marked as used until it is released.
+ *
+ * @author S.Chassande
+ */
+@Service
+public class ConnectionPool {
+
+	/** Logger */
+	protected static final Logger log = LoggerFactory.getLogger(ConnectionPool.class);
+
+	@Autowired
+	private DownloaderProperties downloaderProperties;
+
+	/** The sessions of each account. Guarded by this. */
+	private final Map<Long, AccountSessions> account2sessions = new HashMap<>();
+
+	/** The borrowed sessions. Guarded by this. */
+	private final Map<ConnectionSession, AccountSessions> borrowed = new IdentityHashMap<>();
+
+	/**
+	 * Borrows a session on an account. An idle session is reused if it is
+	 * still valid, otherwise a new session is established. If the maximal
+	 * number of sessions of the account is reached, it waits for the release
+	 * of a session.
+	 *
+	 * @param cs
+	 *            is the connection service of the account protocol.
+	 * @param account
+	 *            is the account to connect.
+	 * @return a session which must be released with
+	 *         {@link #release(ConnectionSession, boolean)}.
+	 * @throws Exception
+	 *             if no session can be established.
+	 */
+	public ConnectionSession borrow(ConnectionService cs, DWHostAccount account) throws Exception {
+		return borrow(cs, account, true);
+	}
+
+	/**
+	 * Borrows a session on an account without waiting: an idle session is
+	 * reused or a new session is established if the maximal number of
+	 * sessions of the account is not reached.
+	 *
+	 * @param cs
+	 *            is the connection service of the account protocol.
+	 * @param account
+	 *            is the account to connect.
+	 * @return a session which must be released with
+	 *         {@link #release(ConnectionSession, boolean)}, null if no
+	 *         session is available.
+	 * @throws Exception
+	 *             if no session can be established.
+	 */
+	public ConnectionSession tryBorrow(ConnectionService cs, DWHostAccount account) throws Exception {
+		return borrow(cs, account, false);
+	}
+
+	private ConnectionSession borrow(ConnectionService cs, DWHostAccount account, boolean wait) throws Exception {
+		if (account.getId() == null) {
+			// an account which is not persisted cannot be shared
+			ConnectionSession session = cs.connect(account);
+			session.used();
+			return session;
+		}
+		long timeout = System.currentTimeMillis()
+				+ downloaderProperties.getConnectionPool().getBorrowTimeout() * 1000l;
+		AccountSessions as;
+		while (true) {
+			PooledSession candidate = null;
+			synchronized (this) {
+				as = account2sessions.computeIfAbsent(account.getId(), id -> new AccountSessions());
+				if (!as.idle.isEmpty()) {
+					candidate = as.idle.removeFirst();
+				} else if (as.size < getMaxPerAccount()) {
+					// reserve the place of the new session
+					as.size++;
+					break;
+				} else if (!wait) {
+					return null;
+				} else {
+					long delay = timeout - System.currentTimeMillis();
+					if (delay <= 0) {
+						throw new Exception("No session available on the account '" + account.getId() + "' after "
+								+ downloaderProperties.getConnectionPool().getBorrowTimeout() + "s.");
+					}
+					log.debug("Waiting for an available session on the account '{}'...", account.getId());
+					wait(delay);
+					continue;
+				}
+			}
+			// validate the idle session outside of the lock as it may be long
+			if (candidate.session.isValid()) {
+				log.debug("Reuse a session of the account '{}'.", account.getId());
+				return markBorrowed(candidate.session, as);
+			}
+			log.debug("Drop an invalid session of the account '{}'.", account.getId());
+			synchronized (this) {
+				as.size--;
+			}
+			candidate.session.closeOrMarkAsToClose();
+		}
+		// establish a new session outside of the lock
+		try {
+			log.debug("Establish a new session on the account '{}'.", account.getId());
+			return markBorrowed(cs.connect(account), as);
+		} catch (Exception e) {
+			synchronized (this) {
+				as.size--;
+				notifyAll();
+			}
+			throw e;
+		}
+	}
+
+	private ConnectionSession markBorrowed(ConnectionSession session, AccountSessions as) {
+		session.used();
+		synchronized (this) {
+			borrowed.put(session, as);
+		}
+		return session;
+	}
+
+	/**
+	 * Gives back a borrowed session.
+	 *
+	 * @param session
+	 *            is the borrowed session.
+	 * @param reusable
+	 *            false when the session could be in a bad state (after an
+	 *            error for instance) and must be closed.
+	 */
+	public void release(ConnectionSession session, boolean reusable) {
+		if (session == null) {
+			return;
+		}
+		AccountSessions as;
+		synchronized (this) {
+			as = borrowed.remove(session);
+			if (as != null && reusable && !session.markAsToClose) {
+				as.idle.addFirst(new PooledSession(session));
+			} else if (as != null) {
+				as.size--;
+			}
+			notifyAll();
+		}
+		session.unused();
+		if (as == null || !reusable) {
+			session.closeOrMarkAsToClose();
+		}
+	}
+
+	/**
+	 * Closes the sessions of an account. The borrowed sessions are closed when
+	 * they are released.
+	 *
+	 * @param accountId
+	 *            is the account identifier.
+	 */
+	public void close(Long accountId) {
+		List<PooledSession> toClose = new ArrayList<>();
+		synchronized (this) {
+			AccountSessions as = account2sessions.remove(accountId);
+			if (as == null) {
+				return;
+			}
+			toClose.addAll(as.idle);
+			for (Map.Entry<ConnectionSession, AccountSessions> me : borrowed.entrySet()) {
+				if (me.getValue() == as) {
+					me.getKey().closeOrMarkAsToClose();
+				}
+			}
+		}
+		for (PooledSession ps : toClose) {
+			ps.session.closeOrMarkAsToClose();
+		}
+	}
+
+	/**
+	 * Closes the sessions unused since the idle timeout.
+	 */
+	@Scheduled(fixedDelay = 60 * 1000)
+	public void evictIdleSessions() {
+		long limit = System.currentTimeMillis() - downloaderProperties.getConnectionPool().getIdleTimeout() * 1000l;
+		List<PooledSession> toClose = new ArrayList<>();
+		synchronized (this) {
+			for (AccountSessions as : account2sessions.values()) {
+				for (Iterator<PooledSession> it = as.idle.iterator(); it.hasNext();) {
+					PooledSession ps = it.next();
+					if (ps.lastUsed < limit) {
+						it.remove();
+						as.size--;
+						toClose.add(ps);
+					}
+				}
+			}
+			account2sessions.values().removeIf(as -> as.size == 0);
+			notifyAll();
+		}
+		for (PooledSession ps : toClose) {
+			ps.session.closeOrMarkAsToClose();
+		}
+		if (!toClose.isEmpty()) {
+			log.info("{} idle session(s) closed.", toClose.size());
+		}
+	}
+
+	@PreDestroy
+	public void destroy() {
+		List<Long> accountIds;
+		synchronized (this) {
+			accountIds = new ArrayList<>(account2sessions.keySet());
+		}
+		for (Long accountId : accountIds) {
+			close(accountId);
+		}
+	}
+
+	private int getMaxPerAccount() {
+		return Math.max(1, downloaderProperties.getConnectionPool().getMaxPerAccount());
+	}
+
+	public DownloaderProperties getDownloaderProperties() {
+		return downloaderProperties;
+	}
+
+	public void setDownloaderProperties(DownloaderProperties downloaderProperties) {
+		this.downloaderProperties = downloaderProperties;
+	}
+
+	/**
+	 * The sessions of an account.
+	 */
+	static class AccountSessions {
+		/** The idle sessions, the most recently used first. */
+		final LinkedList<PooledSession> idle = new LinkedList<>();
+		/** The number of idle and borrowed sessions. */
+		int size = 0;
+	}
+
+	/**
+	 * An idle session.
+	 */
+	static class PooledSession {
+		final ConnectionSession session;
+		final long lastUsed = System.currentTimeMillis();
+
+		PooledSession(ConnectionSession session) {
+			this.session = session;
+		}
+	}
+}
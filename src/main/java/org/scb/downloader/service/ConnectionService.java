@@ -3,9 +3,12 @@ package org.scb.downloader.service;
 import java.io.Closeable;
 import java.io.IOException;
 import java.util.List;
+import java.util.Set;
 
 import org.scb.downloader.domain.DWFileInfo;
 import org.scb.downloader.domain.DWHostAccount;
+import org.scb.downloader.domain.enumeration.DWProtocol;
+import org.scb.downloader.domain.enumeration.DWSyncMode;
 
 import com.jcraft.jsch.JSchException;
 import com.jcraft.jsch.SftpException;
@@ -25,6 +28,19 @@ import com.jcraft.jsch.SftpException;
  */
 public interface ConnectionService {
 
+	/**
+	 * @return the protocols of the accounts managed by the service. The
+	 *         services are found by the {@link ConnectionServiceRegistry}.
+	 */
+	Set<DWProtocol> getProtocols();
+
+	/**
+	 * @return what the service can do.
+	 */
+	default ProtocolCapabilities getCapabilities() {
+		return ProtocolCapabilities.NONE;
+	}
+
 	/**
 	 * Connects to a remote server.
 	 * 
@@ -50,6 +66,20 @@ public interface ConnectionService {
 	 */
 	List<FileEntry> listDir(ConnectionSession session, String path, boolean directoryOnly) throws Exception;
 
+	/**
+	 * Gives the attributes of a single path, without listing its parent or
+	 * its content.
+	 * 
+	 * @param session
+	 *            is the session established with the server.
+	 * @param path
+	 *            is the path of a file or a directory.
+	 * @return the entry of the path, null if the path does not exist.
+	 * @throws Exception
+	 *             if the server cannot be queried.
+	 */
+	FileEntry stat(ConnectionSession session, String path) throws Exception;
+
 	/**
 	 * Transfert a file from a local file to a remote path
 	 * 
@@ -57,8 +87,12 @@ public interface ConnectionService {
 	 *            is the local file
 	 * @param target
 	 *            is the remote account/path
+	 * @param syncMode
+	 *            tells how the existing target files of a directory are
+	 *            handled, null for {@link DWSyncMode#COPY}.
 	 */
-	void upload(ConnectionSession session, String srcPath, DWFileInfo target, ProgressHandler handler) throws Exception;
+	void upload(ConnectionSession session, String srcPath, DWFileInfo target, DWSyncMode syncMode,
+			ProgressHandler handler) throws Exception;
 
 	/**
 	 * Transfert a file from a remote account to a local file system path
@@ -67,9 +101,30 @@ public interface ConnectionService {
 	 *            is the remote account
 	 * @param targetPath
 	 *            is the local file system path
+	 * @param syncMode
+	 *            tells how the existing target files of a directory are
+	 *            handled, null for {@link DWSyncMode#COPY}.
 	 */
-	void download(ConnectionSession session, DWFileInfo source, String targetPath, ProgressHandler handler)
-			throws Exception;
+	void download(ConnectionSession session, DWFileInfo source, String targetPath, DWSyncMode syncMode,
+			ProgressHandler handler) throws Exception;
+
+	/**
+	 * Copies a file or a directory into a directory of the same account,
+	 * without sending the data over the network. Only available when the
+	 * capabilities of the service have the server-side copy.
+	 * 
+	 * @param source
+	 *            is the path to copy.
+	 * @param target
+	 *            is the directory receiving the copy.
+	 * @throws IOException
+	 *             if the server cannot copy the files: the data are then
+	 *             moved through this server.
+	 */
+	default void copy(ConnectionSession session, DWFileInfo source, DWFileInfo target, ProgressHandler handler)
+			throws Exception {
+		throw new IOException("No server-side copy with " + getClass().getSimpleName());
+	}
 
 	/**
 	 * Defines a file on the data provider.
@@ -101,24 +156,32 @@ public interface ConnectionService {
 		long geLastModified() throws IOException;
 	}
 
+	/**
+	 * A session established with a server. A session is closed only when it is
+	 * no more used: each call to {@link #used()} must be followed by a call to
+	 * {@link #unused()}.
+	 */
 	public abstract class ConnectionSession implements Closeable {
 
-		boolean used = false;
+		/** The number of users of the session. */
+		int used = 0;
 		boolean markAsToClose = false;
 
-		public boolean isUsed() {
-			return used;
+		public synchronized boolean isUsed() {
+			return used > 0;
 		}
 
 		public synchronized void used() {
-			used = true;
+			used++;
 		}
 
 		public void unused() {
 			boolean mustClose = false;
 			synchronized (this) {
-				used = false;
-				mustClose = markAsToClose;
+				if (used > 0) {
+					used--;
+				}
+				mustClose = markAsToClose && used == 0;
 			}
 			if (mustClose) {
 				forceClose();
@@ -127,7 +190,7 @@ public interface ConnectionService {
 
 		public void closeOrMarkAsToClose() {
 			synchronized (this) {
-				if (used) {
+				if (used > 0) {
 					markAsToClose = true;
 					return;
 				}
@@ -135,6 +198,16 @@ public interface ConnectionService {
 			forceClose();
 		}
 
+		/**
+		 * Checks the session is still connected to the server. It may
+		 * perform a round trip with the server.
+		 * 
+		 * @return true if the session can be used.
+		 */
+		public boolean isValid() {
+			return true;
+		}
+
 		@Override
 		public void close() {
 			closeOrMarkAsToClose();
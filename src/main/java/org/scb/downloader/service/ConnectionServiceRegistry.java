@@ -0,0 +1,145 @@
+package org.scb.downloader.service;
+
+import java.io.IOException;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+import org.scb.downloader.domain.DWHostAccount;
+import org.scb.downloader.domain.enumeration.DWProtocol;
+import org.scb.downloader.domain.enumeration.DWSyncMode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+/**
+ * Gives the {@link ConnectionService} of each protocol. The services are the
+ * beans of the application context, a new protocol only needs a new
+ * service. The registry chooses how to transfert the files between two
+ * accounts from the capabilities of their services.
+ *
+ * @author S.Chassande
+ */
+@Service
+public class ConnectionServiceRegistry {
+
+	private final Logger log = LoggerFactory.getLogger(ConnectionServiceRegistry.class);
+
+	private final Map<DWProtocol, ConnectionService> services = new EnumMap<>(DWProtocol.class);
+
+	/**
+	 * Registers the services of the application context.
+	 */
+	@Autowired
+	public void setConnectionServices(List<ConnectionService> connectionServices) {
+		for (ConnectionService cs : connectionServices) {
+			register(cs);
+		}
+	}
+
+	/**
+	 * Registers a service for its protocols, in place of the previous service
+	 * of a protocol.
+	 */
+	public synchronized void register(ConnectionService cs) {
+		for (DWProtocol protocol : cs.getProtocols()) {
+			log.debug("Protocol {} managed by {} with {}", protocol, cs.getClass().getSimpleName(),
+					cs.getCapabilities());
+			services.put(protocol, cs);
+		}
+	}
+
+	/**
+	 * @return the service of a protocol.
+	 * @throws Exception
+	 *             if no service manages the protocol.
+	 */
+	public synchronized ConnectionService getConnectionService(DWProtocol protocol) throws Exception {
+		ConnectionService cs = protocol == null ? null : services.get(protocol);
+		if (cs == null) {
+			throw new Exception("Protocol is not managed: " + protocol);
+		}
+		return cs;
+	}
+
+	/**
+	 * @return the capabilities of the service of a protocol, the minimal ones
+	 *         if no service manages it.
+	 */
+	public synchronized ProtocolCapabilities getCapabilities(DWProtocol protocol) {
+		ConnectionService cs = protocol == null ? null : services.get(protocol);
+		return cs == null ? ProtocolCapabilities.NONE : cs.getCapabilities();
+	}
+
+	/**
+	 * @return true if the files of an account are on the local file system.
+	 */
+	public boolean isLocal(DWHostAccount account) {
+		return getCapabilities(account.getProtocol()).isLocal();
+	}
+
+	/**
+	 * @return true if an account can be the target of a transfert.
+	 */
+	public boolean isWritable(DWHostAccount account) {
+		return !getCapabilities(account.getProtocol()).isSourceOnly();
+	}
+
+	/**
+	 * Chooses the fastest way to transfert the files between two accounts:
+	 * <ul>
+	 * <li>a local account is read or written directly by the service of the
+	 * other account,</li>
+	 * <li>the server copies the files when both paths are on the same account
+	 * and the service has the server-side copy,</li>
+	 * <li>the data are streamed from a server to the other when the relay is
+	 * enabled,</li>
+	 * <li>else the files are downloaded into a local copy, then uploaded.</li>
+	 * </ul>
+	 *
+	 * @param syncMode
+	 *            is the synchronization mode of the transfert. The server-side
+	 *            copy only copies the files.
+	 * @param relay
+	 *            true if the relay is enabled by the configuration.
+	 * @throws IOException
+	 *             if the target account cannot be written.
+	 */
+	public TransfertStrategy chooseStrategy(DWHostAccount source, DWHostAccount target, DWSyncMode syncMode,
+			boolean relay) throws Exception {
+		ConnectionService sourceCS = getConnectionService(source.getProtocol());
+		ConnectionService targetCS = getConnectionService(target.getProtocol());
+		if (targetCS.getCapabilities().isSourceOnly()) {
+			throw new IOException("The " + target.getProtocol() + " accounts can only be the source of a transfert.");
+		}
+		if (sourceCS.getCapabilities().isLocal()) {
+			return TransfertStrategy.UPLOAD;
+		}
+		if (targetCS.getCapabilities().isLocal()) {
+			return TransfertStrategy.DOWNLOAD;
+		}
+		if (sourceCS == targetCS && sourceCS.getCapabilities().isServerSideCopy() && isSameAccount(source, target)
+				&& (syncMode == null || syncMode == DWSyncMode.COPY)) {
+			return TransfertStrategy.SERVER_SIDE_COPY;
+		}
+		return getFallbackStrategy(sourceCS, targetCS, relay);
+	}
+
+	/**
+	 * @return the strategy moving the data through this server: the relay or
+	 *         the local copy.
+	 */
+	public TransfertStrategy getFallbackStrategy(ConnectionService sourceCS, ConnectionService targetCS,
+			boolean relay) {
+		if (relay && sourceCS instanceof AbstractConnectionServiceImpl
+				&& targetCS instanceof AbstractConnectionServiceImpl) {
+			return TransfertStrategy.RELAY;
+		}
+		return TransfertStrategy.LOCAL_COPY;
+	}
+
+	private static boolean isSameAccount(DWHostAccount source, DWHostAccount target) {
+		return source.getId() != null && source.getId().equals(target.getId());
+	}
+}
@@ -1,9 +1,16 @@
 package org.scb.downloader.service;
 
 import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 
+import javax.annotation.PostConstruct;
+
+import org.scb.downloader.config.DownloaderProperties;
 import org.scb.downloader.domain.DWFileInfo;
 import org.scb.downloader.domain.DWHostAccount;
 import org.scb.downloader.domain.DWTransfert;
@@ -40,6 +47,13 @@ public class DWTransfertService {
 	private DWTransfertRepository transfertRepository;
 	@Autowired
 	private DWHostAccountRepository hostAccountRepository;
+	@Autowired
+	private DownloaderProperties downloaderProperties;
+
+	@PostConstruct
+	public void init() {
+		nbMaxAttemp = downloaderProperties.getTransfert().getNbMaxAttemp();
+	}
 
 	/**
 	 * A transfert has been started. It registers the start time if not done and
@@ -49,10 +63,13 @@ public class DWTransfertService {
 	 *            is the started transfert.
 	 */
 	public void transfertStarted(DWTransfert transfert) {
-		if (transfert.getStatus() != TransfertStatus.DOING) {
-			log.debug("Change to DOING status of transfert: {}", transfert.getId());
-			transfert.setStatus(TransfertStatus.DOING);
-			transfert.setStart(new Date());
+		if (transfert.getStatus() != TransfertStatus.DOING || transfert.getNextAttempt() != null) {
+			if (transfert.getStatus() != TransfertStatus.DOING) {
+				log.debug("Change to DOING status of transfert: {}", transfert.getId());
+				transfert.setStatus(TransfertStatus.DOING);
+				transfert.setStart(new Date());
+			}
+			transfert.setNextAttempt(null);
 			transfertRepository.save(transfert);
 		}
 	}
@@ -69,6 +86,10 @@ public class DWTransfertService {
 		log.debug("Change to DONE status of transfert: {}", transfert.getId());
 		transfert.setStatus(TransfertStatus.DONE);
 		transfert.setEnd(new Date());
+		transfert.setResumeFile(null);
+		transfert.setResumeOffset(0l);
+		transfert.setResumeValidator(null);
+		transfert.setNextAttempt(null);
 		transfertRepository.save(transfert);
 	}
 
@@ -76,7 +97,8 @@ public class DWTransfertService {
 	 * An error occurs during a transfert . It registers the error message
 	 * (append in new line) and increment the number of error. If the number of
 	 * error reach the threshold of the number of attempt then the status of the
-	 * transfert is changed to ERROR.
+	 * transfert is changed to ERROR. Otherwise the next attempt is delayed,
+	 * twice longer at each error.
 	 * 
 	 * @param transfert
 	 *            is the transfert having a new error.
@@ -105,48 +127,91 @@ public class DWTransfertService {
 		if (transfert.getNbError() >= nbMaxAttemp) {
 			log.debug("Change to ERROR status of transfert: {}", transfert.getId());
 			transfert.setStatus(TransfertStatus.ERROR);
+			transfert.setNextAttempt(null);
+		} else {
+			long delay = getRetryDelay(nbError);
+			log.debug("Next attempt of transfert {} in {} seconds", transfert.getId(), delay);
+			transfert.setNextAttempt(new Date(System.currentTimeMillis() + delay * 1000));
 		}
 		transfertRepository.save(transfert);
 	}
 
 	/**
-	 * Find the next transfert to perform depending on the transfert status and
-	 * its scheduling.
-	 * 
-	 * @param status
-	 *            the
-	 * @return
+	 * @return the delay in seconds before the next attempt of a transfert
+	 *         having the given number of errors.
 	 */
-	public DWTransfert findNextToPerform() {
-		DWTransfert transfert = findNextToPerform(TransfertStatus.DOING);
-		if (transfert == null) {
-			transfert = findNextToPerform(TransfertStatus.CREATED);
+	long getRetryDelay(int nbError) {
+		DownloaderProperties.Transfert properties = downloaderProperties.getTransfert();
+		long delay = Math.max(0, properties.getRetryDelay());
+		for (int i = 1; i < nbError && delay < properties.getMaxRetryDelay(); i++) {
+			delay *= 2;
 		}
-		return transfert;
+		return Math.min(delay, properties.getMaxRetryDelay());
 	}
 
 	public DWTransfert getTransfert(Long transfertId) {
-		return transfertRepository.getOne(transfertId);
+		return transfertRepository.findOne(transfertId);
 	}
 
-	private DWTransfert findNextToPerform(TransfertStatus status) {
-		log.debug("Searching next transfert with status '{}' to perform...", status);
-		// first search an immediat transfert to perform
-		DWTransfert transfert = transfertRepository.findNext(status, DWTransfertScheduling.IMMEDIATLY);
-		if (transfert == null) {
-			log.debug("No immediat transfert with status to perform. Searching windowed transfert to perform...",
-					status);
-			transfert = transfertRepository.findNext(status, DWTransfertScheduling.EVERY_DAY_WINDOW,
-					DWTransfert.getInstantOfDay(ZonedDateTime.now()));
-		}
+	/**
+	 * Claims the next transfert to perform depending on the transfert status
+	 * and its scheduling: the transfert is changed to the DOING status if it
+	 * is not already. The already running transferts and the transferts using
+	 * a busy account are ignored.
+	 * 
+	 * @param runningIds
+	 *            is the identifiers of the transferts already running.
+	 * @param busyAccountIds
+	 *            is the identifiers of the accounts which cannot be used by a
+	 *            new transfert.
+	 * @return the claimed transfert, or null if there is no transfert to
+	 *         perform now.
+	 */
+	public DWTransfert claimNext(Collection<Long> runningIds, Collection<Long> busyAccountIds) {
+		// an empty 'NOT IN' clause is not supported by all databases
+		Collection<Long> excludedIds = runningIds.isEmpty() ? Collections.singleton(-1l) : runningIds;
+		Collection<Long> excludedAccounts = busyAccountIds.isEmpty() ? Collections.singleton(-1l) : busyAccountIds;
+		DWTransfert transfert = transfertRepository.claimNext(excludedIds, excludedAccounts,
+				DWTransfert.getInstantOfDay(ZonedDateTime.now()), new Date());
 		if (transfert == null) {
-			log.debug("No transfert to perform found with status {}.", status);
+			log.debug("No transfert to perform found.");
 		} else {
-			log.debug("Transfert to perform found with status {}: {}", status, transfert.getId());
+			log.debug("Transfert {} claimed.", transfert.getId());
 		}
 		return transfert;
 	}
 
+	/**
+	 * Find the next opening of a day window of a transfert to perform.
+	 * 
+	 * @return the date of the next window beginning, or null if no transfert
+	 *         waits for its window.
+	 */
+	public Date findNextWindowOpening() {
+		List<TransfertStatus> statuses = Arrays.asList(TransfertStatus.DOING, TransfertStatus.CREATED);
+		ZonedDateTime now = ZonedDateTime.now();
+		ZonedDateTime day = now.truncatedTo(ChronoUnit.DAYS);
+		Long dayBegin = transfertRepository.findNextDayBegin(statuses, DWTransfertScheduling.EVERY_DAY_WINDOW,
+				DWTransfert.getInstantOfDay(now));
+		if (dayBegin == null) {
+			// no more window today => the first window of tomorrow
+			dayBegin = transfertRepository.findNextDayBegin(statuses, DWTransfertScheduling.EVERY_DAY_WINDOW, -1l);
+			day = day.plusDays(1);
+		}
+		return dayBegin == null ? null : Date.from(day.plusSeconds(dayBegin).toInstant());
+	}
+
+	/**
+	 * Find the next attempt of a failed transfert.
+	 * 
+	 * @return the date of the next attempt, or null if no failed transfert
+	 *         waits for it.
+	 */
+	public Date findNextAttempt() {
+		return transfertRepository.findNextAttempt(
+				Arrays.asList(TransfertStatus.DOING, TransfertStatus.CREATED), new Date());
+	}
+
 	public void create(List<DWTransfert> transferts) {
 		for (DWTransfert transfert : transferts) {
 			getAccount(transfert.getSource());
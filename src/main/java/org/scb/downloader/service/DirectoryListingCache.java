@@ -0,0 +1,363 @@
+package org.scb.downloader.service;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.scb.downloader.config.DownloaderProperties;
+import org.scb.downloader.domain.DWHostAccount;
+import org.scb.downloader.service.ConnectionService.ConnectionSession;
+import org.scb.downloader.service.ConnectionService.FileEntry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+
+/**
+ * Cache of the remote directory listings by account. A listing younger than
+ * the TTL is served from the cache. An older listing is still served, but it
+ * is refreshed in the background for the next requests, until it reaches the
+ * maximal staleness: then the request waits for a new listing. The cache keeps
+ * the most recently used listings only.
+ *
+ * The listings of a remote path are invalidated when a transfert writes into
+ * it. A listing read before an invalidation is never put back in the cache.
+ * The local file system is never cached.
+ *
+ * @author S.Chassande
+ */
+@Service
+public class DirectoryListingCache {
+
+	/** Logger */
+	protected static final Logger log = LoggerFactory.getLogger(DirectoryListingCache.class);
+
+	@Autowired
+	private DownloaderProperties downloaderProperties;
+
+	@Autowired
+	private ConnectionPool connectionPool;
+
+	/** The listings by account and path, in access order. Guarded by this. */
+	private Map<Key, Listing> listings;
+
+	/**
+	 * Incremented by each invalidation, so a listing read before is not
+	 * cached. Guarded by this.
+	 */
+	private long generation = 0;
+
+	/** The threads refreshing the expired listings. */
+	private ThreadPoolTaskExecutor refresher;
+
+	@PostConstruct
+	public void init() {
+		final int maxEntries = downloaderProperties.getListingCache().getMaxEntries();
+		listings = new LinkedHashMap<Key, Listing>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Key, Listing> eldest) {
+				return size() > maxEntries;
+			}
+		};
+		refresher = new ThreadPoolTaskExecutor();
+		refresher.setCorePoolSize(2);
+		refresher.setMaxPoolSize(2);
+		refresher.setThreadNamePrefix("downloader-listing-");
+		refresher.initialize();
+	}
+
+	@PreDestroy
+	public void destroy() {
+		refresher.shutdown();
+	}
+
+	/**
+	 * Lists a remote directory.
+	 *
+	 * @param cs
+	 *            is the connection service of the account protocol.
+	 * @param account
+	 *            is the remote account.
+	 * @param path
+	 *            is the directory path.
+	 * @param directoryOnly
+	 *            true if the result must contain only directories.
+	 * @return the entries of the directory.
+	 * @throws Exception
+	 *             if the directory cannot be listed.
+	 */
+	public List<FileEntry> listDir(ConnectionService cs, DWHostAccount account, String path, boolean directoryOnly)
+			throws Exception {
+		if (!isCacheable(cs, account)) {
+			return list(cs, account, path, directoryOnly);
+		}
+		Key key = new Key(account.getId(), normalize(path));
+		Listing listing;
+		synchronized (this) {
+			listing = listings.get(key);
+		}
+		if (listing == null || listing.isExpired(getMaxStaleness())) {
+			listing = load(cs, account, key);
+		} else if (listing.isExpired(getTtl()) && listing.startRefresh()) {
+			log.debug("Refresh the listing of '{}' on the account {}.", path, account.getId());
+			final Listing stale = listing;
+			refresher.execute(() -> {
+				try {
+					load(cs, account, key);
+				} catch (Exception e) {
+					log.debug("Cannot refresh the listing of '{}': {}", key.path, e.getMessage());
+					invalidate(key, stale);
+				} finally {
+					// a refresh not cached is requested again
+					stale.endRefresh();
+				}
+			});
+		}
+		if (!directoryOnly) {
+			return listing.entries;
+		}
+		List<FileEntry> directories = new ArrayList<>();
+		for (FileEntry entry : listing.entries) {
+			if (entry.isDir()) {
+				directories.add(entry);
+			}
+		}
+		return directories;
+	}
+
+	/**
+	 * Forgets the listings of a path, of its sub directories and of its parent
+	 * directory.
+	 *
+	 * @param accountId
+	 *            is the identifier of the account.
+	 * @param path
+	 *            is the changed path.
+	 */
+	public synchronized void invalidate(Long accountId, String path) {
+		if (accountId == null || path == null) {
+			return;
+		}
+		String normalized = normalize(path);
+		String prefix = normalized.endsWith("/") ? normalized : normalized + "/";
+		int index = normalized.lastIndexOf('/');
+		String parent = index <= 0 ? "/" : normalized.substring(0, index);
+		generation++;
+		for (Iterator<Key> it = listings.keySet().iterator(); it.hasNext();) {
+			Key key = it.next();
+			if (accountId.equals(key.accountId)
+					&& (key.path.equals(normalized) || key.path.startsWith(prefix) || key.path.equals(parent))) {
+				it.remove();
+			}
+		}
+	}
+
+	/**
+	 * Forgets the listings of an account.
+	 */
+	public synchronized void invalidate(Long accountId) {
+		generation++;
+		listings.keySet().removeIf(key -> key.accountId.equals(accountId));
+	}
+
+	/**
+	 * Forgets a listing if it has not been replaced.
+	 */
+	private synchronized void invalidate(Key key, Listing listing) {
+		listings.remove(key, listing);
+	}
+
+	private boolean isCacheable(ConnectionService cs, DWHostAccount account) {
+		return getTtl() > 0 && account.getId() != null && !cs.getCapabilities().isLocal();
+	}
+
+	/**
+	 * Lists a directory on the server and caches the listing, unless the cache
+	 * has been invalidated during the listing.
+	 */
+	private Listing load(ConnectionService cs, DWHostAccount account, Key key) throws Exception {
+		long start;
+		synchronized (this) {
+			start = generation;
+		}
+		Listing listing = new Listing(snapshot(list(cs, account, key.path, false)));
+		synchronized (this) {
+			if (generation == start) {
+				listings.put(key, listing);
+			} else {
+				log.debug("The listing of '{}' has been invalidated while it was read.", key.path);
+			}
+		}
+		return listing;
+	}
+
+	private List<FileEntry> list(ConnectionService cs, DWHostAccount account, String path, boolean directoryOnly)
+			throws Exception {
+		ConnectionSession session = connectionPool.borrow(cs, account);
+		boolean success = false;
+		try {
+			List<FileEntry> entries = cs.listDir(session, path, directoryOnly);
+			success = true;
+			return entries;
+		} finally {
+			connectionPool.release(session, success);
+		}
+	}
+
+	/**
+	 * Copies the entries in order to release the objects of the protocol
+	 * library.
+	 */
+	private static List<FileEntry> snapshot(List<FileEntry> entries) throws IOException {
+		List<FileEntry> copies = new ArrayList<>(entries.size());
+		for (FileEntry entry : entries) {
+			copies.add(new CachedFileEntry(entry.getFilename(), entry.isDir(), entry.getSize(),
+					entry.geLastModified()));
+		}
+		return Collections.unmodifiableList(copies);
+	}
+
+	/**
+	 * @return the path without trailing separator.
+	 */
+	static String normalize(String path) {
+		String p = path == null || path.isEmpty() ? "/" : path;
+		while (p.length() > 1 && p.endsWith("/")) {
+			p = p.substring(0, p.length() - 1);
+		}
+		return p;
+	}
+
+	private long getTtl() {
+		return downloaderProperties.getListingCache().getTtl() * 1000l;
+	}
+
+	private long getMaxStaleness() {
+		return Math.max(getTtl(), downloaderProperties.getListingCache().getMaxStaleness() * 1000l);
+	}
+
+	public DownloaderProperties getDownloaderProperties() {
+		return downloaderProperties;
+	}
+
+	public void setDownloaderProperties(DownloaderProperties downloaderProperties) {
+		this.downloaderProperties = downloaderProperties;
+	}
+
+	public ConnectionPool getConnectionPool() {
+		return connectionPool;
+	}
+
+	public void setConnectionPool(ConnectionPool connectionPool) {
+		this.connectionPool = connectionPool;
+	}
+
+	/**
+	 * Identifies a listing.
+	 */
+	static class Key {
+		final Long accountId;
+		final String path;
+
+		Key(Long accountId, String path) {
+			this.accountId = accountId;
+			this.path = path;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Key)) {
+				return false;
+			}
+			Key k = (Key) o;
+			return accountId.equals(k.accountId) && path.equals(k.path);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(accountId, path);
+		}
+	}
+
+	/**
+	 * A cached listing.
+	 */
+	static class Listing {
+		final List<FileEntry> entries;
+		final long time = System.currentTimeMillis();
+		/** True once a refresh has been requested. Guarded by this. */
+		private boolean refreshing = false;
+
+		Listing(List<FileEntry> entries) {
+			this.entries = entries;
+		}
+
+		boolean isExpired(long ttl) {
+			return System.currentTimeMillis() - time > ttl;
+		}
+
+		/**
+		 * @return true if the caller must refresh the listing, false if a
+		 *         refresh is already requested.
+		 */
+		synchronized boolean startRefresh() {
+			if (refreshing) {
+				return false;
+			}
+			refreshing = true;
+			return true;
+		}
+
+		synchronized void endRefresh() {
+			refreshing = false;
+		}
+	}
+
+	/**
+	 * A file entry copied in memory.
+	 */
+	static class CachedFileEntry implements FileEntry {
+		private final String filename;
+		private final boolean dir;
+		private final long size;
+		private final long lastModified;
+
+		CachedFileEntry(String filename, boolean dir, long size, long lastModified) {
+			this.filename = filename;
+			this.dir = dir;
+			this.size = size;
+			this.lastModified = lastModified;
+		}
+
+		@Override
+		public String getFilename() {
+			return filename;
+		}
+
+		@Override
+		public boolean isDir() {
+			return dir;
+		}
+
+		@Override
+		public long getSize() {
+			return size;
+		}
+
+		@Override
+		public long geLastModified() {
+			return lastModified;
+		}
+	}
+}
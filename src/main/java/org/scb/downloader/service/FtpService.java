@@ -1,15 +1,27 @@
 package org.scb.downloader.service;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.PrintWriter;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
+import java.io.RandomAccessFile;
 import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.net.ssl.SSLContext;
 
 import org.apache.commons.net.PrintCommandListener;
 import org.apache.commons.net.ftp.FTP;
@@ -17,11 +29,17 @@ import org.apache.commons.net.ftp.FTPClient;
 import org.apache.commons.net.ftp.FTPClientConfig;
 import org.apache.commons.net.ftp.FTPFile;
 import org.apache.commons.net.ftp.FTPReply;
+import org.apache.commons.net.ftp.FTPSClient;
+import org.scb.downloader.config.DownloaderProperties;
+import org.scb.downloader.domain.DWFileInfo;
 import org.scb.downloader.domain.DWHostAccount;
+import org.scb.downloader.domain.enumeration.DWProtocol;
+import org.scb.downloader.domain.enumeration.DWSyncMode;
 import org.scb.downloader.service.ConnectionService.ConnectionSession;
 import org.scb.downloader.service.ConnectionService.FileEntry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 @Service("ftpService")
@@ -29,11 +47,33 @@ public class FtpService extends AbstractConnectionServiceImpl {
 
 	protected static final Logger log = LoggerFactory.getLogger(FtpService.class);
 
+	/** The non standard commands computing the checksums by algorithm. */
+	private static final Map<String, String> HASH_COMMANDS = new HashMap<>();
+	static {
+		HASH_COMMANDS.put("CRC32", "XCRC");
+		HASH_COMMANDS.put("MD5", "XMD5");
+		HASH_COMMANDS.put("SHA-1", "XSHA1");
+		HASH_COMMANDS.put("SHA-256", "XSHA256");
+		HASH_COMMANDS.put("SHA-512", "XSHA512");
+	}
+
+	/** Gives the additional connections of the parallel transferts. */
+	@Autowired
+	private ConnectionPool connectionPool;
+
+	/** Gives the TLS sockets of the FTPS connections. */
+	private SSLContext sslContext;
+
+	@Override
+	public Set<DWProtocol> getProtocols() {
+		return EnumSet.of(DWProtocol.FTP, DWProtocol.FTPS);
+	}
+
 	@Override
 	public ConnectionSession connect(DWHostAccount account) throws Exception {
 		log.debug("Connecting on FTP server '{}:{}'...", account.getHost(), account.getPort());
 
-		FTPClient ftpClient = new FTPClient();
+		FTPClient ftpClient = createClient(account);
 		ftpClient.addProtocolCommandListener(new PrintCommandListener(new PrintWriter(System.out)));
 		ftpClient.setControlKeepAliveTimeout(300);
 		FTPClientConfig config = new FTPClientConfig();
@@ -58,9 +98,52 @@ public class FtpService extends AbstractConnectionServiceImpl {
 			throw new IOException(
 					"Fail to Log on FTP server '" + account.getHost() + "' as '" + account.getUserName() + "'.");
 		}
+		if (ftpClient instanceof FTPSClient) {
+			// protect the data connections too
+			((FTPSClient) ftpClient).execPBSZ(0);
+			((FTPSClient) ftpClient).execPROT("P");
+		}
 		ftpClient.setFileType(FTP.BINARY_FILE_TYPE);
 		ftpClient.enterLocalPassiveMode();
-		return new FtpConnectionSession(ftpClient);
+		// the size of the chunks copied between the data connection and the
+		// local files
+		ftpClient.setBufferSize(getBufferSize());
+		FtpConnectionSession session = new FtpConnectionSession(ftpClient);
+		session.account = account;
+		return session;
+	}
+
+	/**
+	 * Creates the client of an FTP or FTPS account. The FTPS clients share
+	 * the TLS session cache of the service, so the connections of an account
+	 * opened after the first one resume its TLS session instead of making a
+	 * full handshake, as the data connections of each client do.
+	 */
+	private FTPClient createClient(DWHostAccount account) throws Exception {
+		if (account.getProtocol() != DWProtocol.FTPS) {
+			return new FTPClient();
+		}
+		boolean implicit = Boolean.TRUE.equals(account.getFtpsImplicit());
+		log.debug("Using {} FTPS.", implicit ? "implicit" : "explicit");
+		return new ResumingFtpsClient(implicit, getSslContext());
+	}
+
+	/**
+	 * Sets the TLS context of the FTPS connections, the default key and trust
+	 * stores of the JVM otherwise.
+	 */
+	synchronized void setSslContext(SSLContext sslContext) {
+		this.sslContext = sslContext;
+	}
+
+	private synchronized SSLContext getSslContext() throws Exception {
+		if (sslContext == null) {
+			SSLContext context = SSLContext.getInstance("TLS");
+			// the default key and trust stores of the JVM
+			context.init(null, null, null);
+			sslContext = context;
+		}
+		return sslContext;
 	}
 
 	@Override
@@ -76,30 +159,187 @@ public class FtpService extends AbstractConnectionServiceImpl {
 		return result;
 	}
 
+	/**
+	 * Gives the attributes of a path with the MLST command. If the server does
+	 * not support it, the parent directory is listed.
+	 */
 	@Override
-	protected void downloadFile(String remoteSourceFile, File localTargetDirectory, ConnectionSession session,
+	public FileEntry stat(ConnectionSession session, String path) throws Exception {
+		FTPClient ftp = ((FtpConnectionSession) session).getFtp();
+		String p = path;
+		while (p.length() > 1 && p.endsWith("/")) {
+			p = p.substring(0, p.length() - 1);
+		}
+		if (p.isEmpty() || "/".equals(p)) {
+			// the root directory
+			FTPFile root = new FTPFile();
+			root.setName("/");
+			root.setType(FTPFile.DIRECTORY_TYPE);
+			return new FtpFileEntry(root);
+		}
+		String name = getLastPathElement(p);
+		if (ftp.hasFeature("MLST")) {
+			FTPFile ftpFile = ftp.mlistFile(p);
+			if (ftpFile == null) {
+				return null;
+			}
+			// the MLST entry is named with the full path
+			ftpFile.setName(name);
+			return new FtpFileEntry(ftpFile);
+		}
+		int idx = p.lastIndexOf('/');
+		String parent = idx < 0 ? "." : idx == 0 ? "/" : p.substring(0, idx);
+		for (FTPFile ftpFile : ftp.listFiles(parent)) {
+			if (name.equals(ftpFile.getName())) {
+				return new FtpFileEntry(ftpFile);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Forgets the remote directories known by the session, as they may have
+	 * been changed since its last use.
+	 */
+	@Override
+	public void upload(ConnectionSession session, String srcPath, DWFileInfo target, DWSyncMode syncMode,
 			ProgressHandler handler) throws Exception {
-		InputStream in = null;
+		((FtpConnectionSession) session).knownDirectories.clear();
+		super.upload(session, srcPath, target, syncMode, handler);
+	}
+
+	/**
+	 * Downloads the directory content over several FTP connections when
+	 * additional connections are available in the pool.
+	 */
+	@Override
+	protected void downloadDirectory(String sourceRemoteDirectory, File targetLocalDirectory,
+			ConnectionSession session, DWSyncMode syncMode, ProgressHandler handler) throws Exception {
+		List<ConnectionSession> workerSessions = borrowWorkerSessions((FtpConnectionSession) session);
+		if (workerSessions.size() <= 1) {
+			super.downloadDirectory(sourceRemoteDirectory, targetLocalDirectory, session, syncMode, handler);
+			return;
+		}
+		boolean success = false;
 		try {
-			in = ((FtpConnectionSession) session).getFtp().retrieveFileStream(remoteSourceFile);
-			if (in == null) {
-				throw new IOException("Remote file does not exist: " + remoteSourceFile);
+			downloadDirectoryInParallel(sourceRemoteDirectory, targetLocalDirectory, session, workerSessions,
+					syncMode, handler);
+			success = true;
+		} finally {
+			releaseWorkerSessions(session, workerSessions, success);
+		}
+	}
+
+	/**
+	 * Uploads the directory content over several FTP connections when
+	 * additional connections are available in the pool. The remote directories
+	 * are all created first by the session.
+	 */
+	@Override
+	protected void uploadDirectory(File sourceDirectory, String remoteTargetDirectory, ConnectionSession session,
+			DWSyncMode syncMode, ProgressHandler handler) throws Exception {
+		// the workers go into the directories of their files: a relative path
+		// would depend on their current directory
+		List<ConnectionSession> workerSessions = remoteTargetDirectory.startsWith("/")
+				? borrowWorkerSessions((FtpConnectionSession) session) : new ArrayList<>();
+		if (workerSessions.size() <= 1) {
+			super.uploadDirectory(sourceDirectory, remoteTargetDirectory, session, syncMode, handler);
+			return;
+		}
+		boolean success = false;
+		try {
+			uploadDirectoryInParallel(sourceDirectory, remoteTargetDirectory, session, workerSessions, syncMode,
+					handler);
+			success = true;
+		} finally {
+			releaseWorkerSessions(session, workerSessions, success);
+		}
+	}
+
+	/**
+	 * Borrows the additional connections of a parallel transfert from the
+	 * pool, without waiting for the connections used by other transferts.
+	 * 
+	 * @return the session followed by the additional connections.
+	 */
+	private List<ConnectionSession> borrowWorkerSessions(FtpConnectionSession session) {
+		List<ConnectionSession> workerSessions = new ArrayList<>();
+		workerSessions.add(session);
+		if (connectionPool == null || session.account == null) {
+			return workerSessions;
+		}
+		try {
+			for (int i = 1; i < getParallelConnections(); i++) {
+				ConnectionSession workerSession = connectionPool.tryBorrow(this, session.account);
+				if (workerSession == null) {
+					break;
+				}
+				workerSessions.add(workerSession);
+			}
+		} catch (Exception e) {
+			log.warn("Cannot open more than {} FTP connections: {}", workerSessions.size(), e.getMessage());
+		}
+		return workerSessions;
+	}
+
+	private void releaseWorkerSessions(ConnectionSession session, List<ConnectionSession> workerSessions,
+			boolean reusable) {
+		for (ConnectionSession workerSession : workerSessions) {
+			if (workerSession != session) {
+				connectionPool.release(workerSession, reusable);
 			}
+		}
+	}
 
-			// build full file name
-			Path targetFile = Paths.get(localTargetDirectory.getAbsolutePath(), getLastPathElement(remoteSourceFile));
+	private int getParallelConnections() {
+		return getDownloaderProperties() == null ? 1 : getDownloaderProperties().getFtp().getParallelConnections();
+	}
 
-			long length = Files.copy(in, targetFile);
-			if (length == 0) {
-				throw new IOException("Transfert interrupted.");
-			} else {
-				log.debug("File '{}' transfered from FTP server with success.", remoteSourceFile);
+	private int getBufferSize() {
+		return getDownloaderProperties() == null ? DownloaderProperties.Ftp.DEFAULT_BUFFER_SIZE
+				: getDownloaderProperties().getFtp().getBufferSize();
+	}
+
+	@Override
+	protected void downloadFile(String remoteSourceFile, File localTargetDirectory, ConnectionSession session,
+			ProgressHandler handler) throws Exception {
+		FTPClient ftp = ((FtpConnectionSession) session).getFtp();
+		long size = getRemoteFileSize(session, remoteSourceFile);
+		if (size < 0) {
+			throw new IOException("Remote file does not exist: " + remoteSourceFile);
+		}
+		// build full file name
+		File targetFile = new File(localTargetDirectory, getLastPathElement(remoteSourceFile));
+		long offset = getResumeOffset(handler, remoteSourceFile, size, targetFile.exists() ? targetFile.length() : -1,
+				targetFile.lastModified());
+		if (offset > 0 && offset == size) {
+			skipFile(handler, remoteSourceFile, size);
+			return;
+		}
+		// drop the bytes after the offset then get the missing bytes (REST)
+		try (RandomAccessFile raf = new RandomAccessFile(targetFile, "rw")) {
+			raf.setLength(offset);
+		}
+		StreamChecksum checksum = newChecksum();
+		if (checksum != null && offset > 0) {
+			checksum.update(targetFile, offset);
+		}
+		TransferCounter counter = new TransferCounter(handler, remoteSourceFile, offset);
+		counter.start(size);
+		try (OutputStream out = counter.wrap(wrap(checksum,
+				new BufferedOutputStream(new FileOutputStream(targetFile, true), getBufferSize())))) {
+			ftp.setRestartOffset(offset);
+			if (!ftp.retrieveFile(remoteSourceFile, out)) {
+				throw new IOException("Download of the remote file '" + remoteSourceFile + "' failed: "
+						+ ftp.getReplyString());
 			}
 		} finally {
-			if (in != null) {
-				in.close();
-			}
+			ftp.setRestartOffset(0);
 		}
+		counter.end();
+		log.debug("File '{}' transfered from FTP server with success ({} bytes, {} bytes/s).", remoteSourceFile,
+				counter.getTransfered(), counter.getRate());
+		checkFile(checksum, remoteSourceFile, getRemoteChecksum(session, remoteSourceFile, checksum), handler);
 	}
 
 	@Override
@@ -107,11 +347,47 @@ public class FtpService extends AbstractConnectionServiceImpl {
 			ProgressHandler handler) throws Exception {
 		log.debug("Send local file '{}' into remote directory '{}'", localFile.getAbsolutePath(),
 				remoteTargetDirectory);
-		InputStream in = null;
+		FTPClient ftp = ((FtpConnectionSession) session).getFtp();
+		FileEntry remoteFile = statRemoteFile(session, addPathElement(remoteTargetDirectory, localFile.getName()));
+		long remoteSize = remoteFile == null ? -1 : remoteFile.getSize();
+		long offset = getResumeOffset(handler, localFile.getAbsolutePath(), localFile.length(), remoteSize,
+				remoteFile == null ? 0 : remoteFile.geLastModified());
+		if (offset != remoteSize) {
+			// the remote file can only be completed from its end
+			offset = 0;
+		}
+		if (offset > 0 && offset == localFile.length()) {
+			skipFile(handler, localFile.getAbsolutePath(), localFile.length());
+			return;
+		}
+		StreamChecksum checksum = newChecksum();
+		if (checksum != null && offset > 0) {
+			checksum.update(localFile, offset);
+		}
+		if (remoteTargetDirectory.startsWith("/")) {
+			// the file is stored in the current directory
+			enterRemoteDirectory(remoteTargetDirectory, session);
+		}
+		TransferCounter counter = new TransferCounter(handler, localFile.getAbsolutePath(), offset);
+		FileInputStream in = null;
 		try {
 			in = new FileInputStream(localFile);
-			if (((FtpConnectionSession) session).getFtp().storeFile(localFile.getName(), in)) {
-				log.debug("File '{}' transfered to FTP server with success.", localFile.getAbsolutePath());
+			if (offset > 0) {
+				in.getChannel().position(offset);
+			}
+			InputStream source = counter.wrap(wrap(checksum, new BufferedInputStream(in, getBufferSize())));
+			counter.start(localFile.length());
+			boolean stored;
+			if (offset > 0) {
+				// append the missing bytes to the partial remote file (APPE)
+				stored = ftp.appendFile(localFile.getName(), source);
+			} else {
+				stored = ftp.storeFile(localFile.getName(), source);
+			}
+			if (stored) {
+				counter.end();
+				log.debug("File '{}' transfered to FTP server with success ({} bytes, {} bytes/s).",
+						localFile.getAbsolutePath(), counter.getTransfered(), counter.getRate());
 			} else {
 				throw new IOException("Upload of local file '" + localFile.getAbsolutePath()
 						+ "' into the remote directory '" + remoteTargetDirectory + "' failed.");
@@ -126,22 +402,161 @@ public class FtpService extends AbstractConnectionServiceImpl {
 				}
 			}
 		}
+		String remoteName = addPathElement(remoteTargetDirectory, localFile.getName());
+		checkFile(checksum, localFile.getAbsolutePath(), getRemoteChecksum(session, remoteName, checksum), handler);
+	}
+
+	/**
+	 * Computes the checksum of a remote file with the HASH command, or with
+	 * the XCRC, XMD5, XSHA1, XSHA256 or XSHA512 commands of some servers. A
+	 * command refused by the server is not tried again on the session.
+	 */
+	@Override
+	protected String computeRemoteChecksum(ConnectionSession session, String path, String algorithm)
+			throws Exception {
+		FtpConnectionSession ftpSession = (FtpConnectionSession) session;
+		FTPClient ftp = ftpSession.getFtp();
+		if (ftp.hasFeature("HASH") && !ftpSession.refusedCommands.contains("HASH " + algorithm)) {
+			if (FTPReply.isPositiveCompletion(ftp.sendCommand("OPTS", "HASH " + algorithm))
+					&& FTPReply.isPositiveCompletion(ftp.sendCommand("HASH", path))) {
+				// 213 <algorithm> <start>-<end> <checksum> <path>
+				String[] reply = ftp.getReplyString().trim().split("\\s+");
+				if (reply.length >= 4 && reply[3].matches("[0-9a-fA-F]+")) {
+					return algorithm + ":" + reply[3].toLowerCase(Locale.ROOT);
+				}
+			}
+			ftpSession.refusedCommands.add("HASH " + algorithm);
+		}
+		String command = HASH_COMMANDS.get(algorithm);
+		if (command == null || ftpSession.refusedCommands.contains(command)) {
+			return null;
+		}
+		if (FTPReply.isPositiveCompletion(ftp.sendCommand(command, path))) {
+			// 250 <checksum>
+			String[] reply = ftp.getReplyString().trim().split("\\s+");
+			if (reply.length >= 2 && reply[1].matches("[0-9a-fA-F]+")) {
+				return algorithm + ":" + reply[1].toLowerCase(Locale.ROOT);
+			}
+		}
+		log.debug("The command {} is refused: {}", command, ftp.getReplyString());
+		ftpSession.refusedCommands.add(command);
+		return null;
+	}
+
+	@Override
+	protected InputStream openRemoteInputStream(String remoteSourceFile, ConnectionSession session)
+			throws Exception {
+		log.debug("Open the FTP remote file '{}' for reading.", remoteSourceFile);
+		final FTPClient ftp = ((FtpConnectionSession) session).getFtp();
+		InputStream in = ftp.retrieveFileStream(remoteSourceFile);
+		if (in == null) {
+			throw new IOException("Remote file does not exist: " + remoteSourceFile);
+		}
+		return new FilterInputStream(in) {
+			@Override
+			public void close() throws IOException {
+				super.close();
+				// the data connection is closed => finish the RETR command
+				if (!ftp.completePendingCommand()) {
+					throw new IOException("Read of the remote file '" + remoteSourceFile + "' failed: "
+							+ ftp.getReplyString());
+				}
+			}
+		};
+	}
+
+	@Override
+	protected OutputStream openRemoteOutputStream(String remoteTargetFile, ConnectionSession session)
+			throws Exception {
+		log.debug("Open the FTP remote file '{}' for writing.", remoteTargetFile);
+		final FTPClient ftp = ((FtpConnectionSession) session).getFtp();
+		OutputStream out = ftp.storeFileStream(remoteTargetFile);
+		if (out == null) {
+			throw new IOException("Cannot write the remote file '" + remoteTargetFile + "': " + ftp.getReplyString());
+		}
+		return new FilterOutputStream(out) {
+			@Override
+			public void write(byte[] b, int off, int len) throws IOException {
+				out.write(b, off, len);
+			}
 
+			@Override
+			public void close() throws IOException {
+				super.close();
+				// the data connection is closed => finish the STOR command
+				if (!ftp.completePendingCommand()) {
+					throw new IOException("Write of the remote file '" + remoteTargetFile + "' failed: "
+							+ ftp.getReplyString());
+				}
+			}
+		};
 	}
 
+	/**
+	 * Changes the current directory of the connection, unless it is already
+	 * the current one.
+	 */
 	@Override
 	protected boolean changeRemoteDirectory(String directory, ConnectionSession session) throws Exception {
-		return ((FtpConnectionSession) session).getFtp().changeWorkingDirectory(directory);
+		FtpConnectionSession ftpSession = (FtpConnectionSession) session;
+		if (directory.equals(ftpSession.workingDirectory)) {
+			return true;
+		}
+		boolean changed = ftpSession.getFtp().changeWorkingDirectory(directory);
+		// a relative path depends on the previous directory
+		ftpSession.workingDirectory = changed && directory.startsWith("/") ? directory : null;
+		return changed;
+	}
+
+	@Override
+	protected String getReplyString(ConnectionSession session) {
+		return ((FtpConnectionSession) session).getFtp().getReplyString();
+	}
+
+	@Override
+	protected void deleteRemoteFile(String remoteFile, ConnectionSession session) throws Exception {
+		FTPClient ftp = ((FtpConnectionSession) session).getFtp();
+		if (!ftp.deleteFile(remoteFile)) {
+			throw new IOException("Cannot delete the remote file '" + remoteFile + "': " + ftp.getReplyString());
+		}
+	}
+
+	@Override
+	protected void deleteRemoteDirectory(String remoteDirectory, ConnectionSession session) throws Exception {
+		FtpConnectionSession ftpSession = (FtpConnectionSession) session;
+		ftpSession.forgetDirectory(remoteDirectory);
+		FTPClient ftp = ftpSession.getFtp();
+		if (!ftp.removeDirectory(remoteDirectory)) {
+			throw new IOException(
+					"Cannot delete the remote directory '" + remoteDirectory + "': " + ftp.getReplyString());
+		}
 	}
 
+	/**
+	 * Creates a remote directory, unless the session has already created or
+	 * found it.
+	 */
 	@Override
 	protected void createRemoteDirectory(String directory, ConnectionSession session) throws Exception {
+		FtpConnectionSession ftpSession = (FtpConnectionSession) session;
+		if (ftpSession.knownDirectories.contains(directory)) {
+			return;
+		}
 		log.debug("Creating remote FTP directory '{}' ", directory);
 		try {
-			((FtpConnectionSession) session).getFtp().makeDirectory(directory);
+			ftpSession.getFtp().makeDirectory(directory);
 		} catch (Exception e) {
 			log.debug("Directory '{}' already exists.", directory);
 		}
+		ftpSession.knownDirectories.add(directory);
+	}
+
+	public ConnectionPool getConnectionPool() {
+		return connectionPool;
+	}
+
+	public void setConnectionPool(ConnectionPool connectionPool) {
+		this.connectionPool = connectionPool;
 	}
 
 	@Override
@@ -154,14 +569,35 @@ class FtpConnectionSession extends ConnectionSession {
 
 	private FTPClient ftpClient;
 
+	/** The checksum commands refused by the server. */
+	final Set<String> refusedCommands = ConcurrentHashMap.newKeySet();
+
+	/** The account of the connection. */
+	DWHostAccount account;
+
+	/** The current directory, null if it is unknown. */
+	volatile String workingDirectory;
+
+	/** The remote directories created or found by the session. */
+	final Set<String> knownDirectories = ConcurrentHashMap.newKeySet();
+
 	public FtpConnectionSession(FTPClient ftp) {
 		this.ftpClient = ftp;
 	}
 
+	@Override
+	public boolean isValid() {
+		try {
+			return ftpClient.isConnected() && ftpClient.sendNoOp();
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
 	@Override
 	protected void forceClose() {
 		synchronized (this) {
-			if (used) {
+			if (isUsed()) {
 				markAsToClose = true;
 				return;
 			}
@@ -183,6 +619,18 @@ class FtpConnectionSession extends ConnectionSession {
 	public FTPClient getFtp() {
 		return ftpClient;
 	}
+
+	/**
+	 * Forgets a deleted directory and its sub directories.
+	 */
+	void forgetDirectory(String directory) {
+		String prefix = directory.endsWith("/") ? directory : directory + "/";
+		knownDirectories.removeIf(d -> d.equals(directory) || d.startsWith(prefix));
+		String current = workingDirectory;
+		if (current != null && (current.equals(directory) || current.startsWith(prefix))) {
+			workingDirectory = null;
+		}
+	}
 }
 
 class FtpFileEntry implements FileEntry {
@@ -209,7 +657,7 @@ class FtpFileEntry implements FileEntry {
 
 	@Override
 	public long geLastModified() throws IOException {
-		return ftpFile.getTimestamp().getTimeInMillis();
+		return ftpFile.getTimestamp() == null ? 0 : ftpFile.getTimestamp().getTimeInMillis();
 	}
 
 }
\ No newline at end of file
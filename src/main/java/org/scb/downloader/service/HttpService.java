@@ -0,0 +1,538 @@
+package org.scb.downloader.service;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+
+import org.scb.downloader.config.DownloaderProperties;
+import org.scb.downloader.domain.DWFileInfo;
+import org.scb.downloader.domain.DWHostAccount;
+import org.scb.downloader.domain.enumeration.DWProtocol;
+import org.scb.downloader.domain.enumeration.DWSyncMode;
+import org.scb.downloader.service.ConnectionService.ConnectionSession;
+import org.scb.downloader.service.ConnectionService.FileEntry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+/**
+ * Downloads the files of HTTP and HTTPS servers. The HTTP accounts are
+ * sources only: the servers cannot list their directories nor receive
+ * files.
+ *
+ * The large files are downloaded by segments with range requests over
+ * several connections, and an interrupted download is resumed with a range
+ * request conditioned by the ETag or the modification date of the file
+ * (If-Range). The connections are kept alive and reused by the JVM.
+ *
+ * @author S.Chassande
+ */
+@Service("httpService")
+public class HttpService extends AbstractConnectionServiceImpl {
+
+	protected static final Logger log = LoggerFactory.getLogger(HttpService.class);
+
+	private static final String SOURCE_ONLY = "The HTTP accounts can only be the source of a transfert.";
+
+	@Override
+	public Set<DWProtocol> getProtocols() {
+		return EnumSet.of(DWProtocol.HTTP, DWProtocol.HTTPS);
+	}
+
+	@Override
+	public ProtocolCapabilities getCapabilities() {
+		return ProtocolCapabilities.NONE.withSourceOnly();
+	}
+
+	/**
+	 * The HTTP requests do not need a connection first: the session only
+	 * keeps the address of the server and the credentials.
+	 */
+	@Override
+	public ConnectionSession connect(DWHostAccount account) throws Exception {
+		log.debug("Using the HTTP server '{}:{}'...", account.getHost(), account.getPort());
+		String scheme = account.getProtocol() == DWProtocol.HTTPS ? "https" : "http";
+		int port = account.getPort() == null || account.getPort().trim().isEmpty() ? -1
+				: Integer.parseInt(account.getPort().trim());
+		String authorization = null;
+		if (account.getUserName() != null && !account.getUserName().isEmpty()) {
+			String credentials = account.getUserName() + ":"
+					+ (account.getPassword() == null ? "" : account.getPassword());
+			authorization = "Basic " + Base64.getEncoder().encodeToString(credentials.getBytes(StandardCharsets.UTF_8));
+		}
+		return new HttpConnectionSession(scheme, account.getHost(), port, authorization);
+	}
+
+	@Override
+	public List<FileEntry> listDir(ConnectionSession session, String path, boolean directoryOnly) throws Exception {
+		throw new IOException("The HTTP servers cannot list the directories.");
+	}
+
+	/**
+	 * Gives the attributes of a remote file with a HEAD request.
+	 */
+	@Override
+	public FileEntry stat(ConnectionSession session, String path) throws Exception {
+		HttpURLConnection connection = open((HttpConnectionSession) session, path, "HEAD");
+		try {
+			int code = connection.getResponseCode();
+			if (code == HttpURLConnection.HTTP_NOT_FOUND || code == HttpURLConnection.HTTP_GONE) {
+				return null;
+			}
+			if (code >= HttpURLConnection.HTTP_BAD_REQUEST) {
+				throw new IOException("Cannot get the attributes of the remote file '" + path + "': " + code + " "
+						+ connection.getResponseMessage());
+			}
+			return new HttpFileEntry(getLastPathElement(path), connection.getContentLengthLong(),
+					connection.getLastModified(), connection.getHeaderField("ETag"),
+					connection.getHeaderField("Last-Modified"),
+					"bytes".equalsIgnoreCase(connection.getHeaderField("Accept-Ranges")));
+		} finally {
+			release(connection);
+		}
+	}
+
+	@Override
+	public void upload(ConnectionSession session, String srcPath, DWFileInfo target, DWSyncMode syncMode,
+			ProgressHandler handler) throws Exception {
+		throw new IOException("Cannot upload '" + srcPath + "' into '" + target.getPath() + "'. " + SOURCE_ONLY);
+	}
+
+	@Override
+	protected void downloadFile(String remoteSourceFile, File localTargetDirectory, ConnectionSession session,
+			ProgressHandler handler) throws Exception {
+		HttpConnectionSession httpSession = (HttpConnectionSession) session;
+		HttpFileEntry entry = (HttpFileEntry) stat(session, remoteSourceFile);
+		if (entry == null) {
+			throw new IOException("Remote file does not exist: " + remoteSourceFile);
+		}
+		long size = entry.getSize();
+		File targetFile = new File(localTargetDirectory, getLastPathElement(remoteSourceFile));
+		long offset = 0;
+		if (size > 0 && entry.acceptRanges) {
+			offset = getResumeOffset(handler, remoteSourceFile, size, targetFile.exists() ? targetFile.length() : -1,
+					targetFile.lastModified());
+		}
+		if (offset > 0 && offset == size) {
+			skipFile(handler, remoteSourceFile, size);
+			return;
+		}
+		DownloaderProperties.Http properties = getHttpProperties();
+		StreamChecksum checksum = newChecksum();
+		if (offset == 0 && entry.acceptRanges && size > 0 && size >= properties.getSegmentThreshold()
+				&& properties.getSegments() > 1) {
+			downloadFileInSegments(remoteSourceFile, entry, targetFile, httpSession, handler);
+			if (checksum != null) {
+				// the segments are not received in order: read the assembled
+				// file
+				checksum.update(targetFile, size);
+			}
+		} else {
+			downloadWholeFile(remoteSourceFile, entry, targetFile, offset, checksum, httpSession, handler);
+		}
+		checkFile(checksum, remoteSourceFile, getRemoteChecksum(session, remoteSourceFile, checksum), handler);
+	}
+
+	/**
+	 * Downloads a remote file, or its end from an offset. The range request
+	 * carries the version of the file recorded by the previous attempt: the
+	 * server sends the whole file instead of its end when it has changed
+	 * since.
+	 */
+	private void downloadWholeFile(String remoteSourceFile, HttpFileEntry entry, File targetFile, long offset,
+			StreamChecksum checksum, HttpConnectionSession session, ProgressHandler handler) throws Exception {
+		String validator = entry.getValidator();
+		if (offset > 0) {
+			String resumeValidator = handler == null ? null : handler.getResumeValidator(remoteSourceFile);
+			if (resumeValidator != null) {
+				validator = resumeValidator;
+			} else if (validator != null) {
+				// the current version may not be the version of the partial copy
+				log.info("The version of the partial copy of '{}' is unknown: download it again.",
+						remoteSourceFile);
+				offset = 0;
+			}
+		}
+		HttpURLConnection connection = open(session, remoteSourceFile, "GET");
+		if (offset > 0) {
+			connection.setRequestProperty("Range", "bytes=" + offset + "-");
+			if (validator != null) {
+				connection.setRequestProperty("If-Range", validator);
+			}
+		}
+		int code = connection.getResponseCode();
+		if (code == HttpURLConnection.HTTP_PARTIAL && offset > 0) {
+			// drop the bytes after the offset then get the missing bytes
+			try (RandomAccessFile raf = new RandomAccessFile(targetFile, "rw")) {
+				raf.setLength(offset);
+			}
+			if (checksum != null) {
+				checksum.update(targetFile, offset);
+			}
+		} else if (code == HttpURLConnection.HTTP_OK) {
+			if (offset > 0) {
+				log.info("The remote file '{}' has been modified since the previous attempt: download it again.",
+						remoteSourceFile);
+			}
+			offset = 0;
+			String sent = HttpFileEntry.getValidator(connection.getHeaderField("ETag"),
+					connection.getHeaderField("Last-Modified"));
+			if (sent != null) {
+				validator = sent;
+			}
+		} else {
+			release(connection);
+			throw new IOException("Download of the remote file '" + remoteSourceFile + "' failed: " + code + " "
+					+ connection.getResponseMessage());
+		}
+		long length = connection.getContentLengthLong();
+		long size = length < 0 ? -1 : offset + length;
+		TransferCounter counter = new TransferCounter(handler, remoteSourceFile, offset);
+		counter.start(size < 0 ? entry.getSize() : size);
+		if (handler != null) {
+			// recorded with the resume offset for the next attempt
+			handler.validator(remoteSourceFile, validator);
+		}
+		int bufferSize = getHttpProperties().getBufferSize();
+		try (InputStream in = connection.getInputStream();
+				OutputStream out = counter.wrap(wrap(checksum,
+						new BufferedOutputStream(new FileOutputStream(targetFile, offset > 0), bufferSize)))) {
+			byte[] buffer = new byte[bufferSize];
+			int read;
+			while ((read = in.read(buffer)) >= 0) {
+				out.write(buffer, 0, read);
+			}
+		}
+		counter.end();
+		if (size >= 0 && targetFile.length() != size) {
+			throw new IOException("Bad size of the downloaded file '" + targetFile.getAbsolutePath() + "': "
+					+ targetFile.length() + " instead of " + size + ".");
+		}
+		log.debug("File '{}' transfered from HTTP server with success ({} bytes, {} bytes/s).", remoteSourceFile,
+				counter.getTransfered(), counter.getRate());
+	}
+
+	/**
+	 * Downloads a large file by segments. Each segment is a byte range of the
+	 * remote file fetched on its own connection and written at its position
+	 * in a preallocated part file, which replaces the local file once complete.
+	 */
+	private void downloadFileInSegments(String remoteSourceFile, HttpFileEntry entry, File targetFile,
+			HttpConnectionSession session, ProgressHandler handler) throws Exception {
+		long size = entry.getSize();
+		int segments = getHttpProperties().getSegments();
+		long segmentSize = (size + segments - 1) / segments;
+		log.debug("Download the HTTP remote file '{}' in {} segments of {} bytes.", remoteSourceFile, segments,
+				segmentSize);
+		File partFile = getPartFile(targetFile);
+		boolean success = false;
+		try (RandomAccessFile raf = new RandomAccessFile(partFile, "rw")) {
+			raf.setLength(size);
+			FileChannel out = raf.getChannel();
+			ParallelProgressHandler progress = new ParallelProgressHandler(handler);
+			progress.start(remoteSourceFile, size);
+			List<Callable<Void>> workers = new ArrayList<>();
+			for (long offset = 0; offset < size; offset += segmentSize) {
+				long start = offset;
+				long length = Math.min(segmentSize, size - offset);
+				ProgressHandler workerHandler = progress.newWorkerHandler();
+				workers.add(() -> {
+					downloadSegment(remoteSourceFile, entry.getValidator(), start, length, out, session,
+							workerHandler);
+					return null;
+				});
+			}
+			runInParallel(workers, progress, "The download of '" + remoteSourceFile + "'");
+			raf.close();
+			completePartFile(partFile, targetFile);
+			progress.end();
+			success = true;
+		} finally {
+			if (!success) {
+				// the segments cannot be resumed
+				partFile.delete();
+			}
+		}
+	}
+
+	/**
+	 * Downloads a byte range of a remote file into the same range of a local
+	 * file. The range is conditioned by the validator of the file, so a file
+	 * modified during the download is detected.
+	 */
+	private void downloadSegment(String remoteSourceFile, String validator, long offset, long length,
+			FileChannel out, HttpConnectionSession session, ProgressHandler handler) throws Exception {
+		handler.start(remoteSourceFile, length);
+		HttpURLConnection connection = open(session, remoteSourceFile, "GET");
+		connection.setRequestProperty("Range", "bytes=" + offset + "-" + (offset + length - 1));
+		if (validator != null) {
+			connection.setRequestProperty("If-Range", validator);
+		}
+		int code = connection.getResponseCode();
+		if (code != HttpURLConnection.HTTP_PARTIAL) {
+			release(connection);
+			if (code == HttpURLConnection.HTTP_OK) {
+				throw new IOException("The server sent the whole remote file '" + remoteSourceFile
+						+ "' instead of a range: it has been modified during the download.");
+			}
+			throw new IOException("Download of a range of the remote file '" + remoteSourceFile + "' failed: "
+					+ code + " " + connection.getResponseMessage());
+		}
+		byte[] buffer = new byte[getHttpProperties().getBufferSize()];
+		long done = 0;
+		try (InputStream in = connection.getInputStream()) {
+			while (done < length) {
+				int read = in.read(buffer, 0, (int) Math.min(buffer.length, length - done));
+				if (read < 0) {
+					throw new IOException("Unexpected end of the remote file '" + remoteSourceFile + "' at "
+							+ (offset + done) + ".");
+				}
+				ByteBuffer bb = ByteBuffer.wrap(buffer, 0, read);
+				long position = offset + done;
+				while (bb.hasRemaining()) {
+					position += out.write(bb, position);
+				}
+				done += read;
+				if (!handler.count(done)) {
+					// cancelled
+					return;
+				}
+			}
+		}
+		handler.end();
+	}
+
+	@Override
+	protected InputStream openRemoteInputStream(String remoteSourceFile, ConnectionSession session)
+			throws Exception {
+		log.debug("Open the HTTP remote file '{}' for reading.", remoteSourceFile);
+		HttpURLConnection connection = open((HttpConnectionSession) session, remoteSourceFile, "GET");
+		int code = connection.getResponseCode();
+		if (code != HttpURLConnection.HTTP_OK) {
+			release(connection);
+			throw new IOException("Read of the remote file '" + remoteSourceFile + "' failed: " + code + " "
+					+ connection.getResponseMessage());
+		}
+		return connection.getInputStream();
+	}
+
+	/**
+	 * Prepares a request on a remote path. The content is asked without
+	 * encoding, so the sizes and the ranges are the ones of the file.
+	 */
+	private HttpURLConnection open(HttpConnectionSession session, String path, String method) throws IOException {
+		HttpURLConnection connection = (HttpURLConnection) session.getUrl(path).openConnection();
+		connection.setRequestMethod(method);
+		connection.setConnectTimeout(getHttpProperties().getConnectTimeout());
+		connection.setReadTimeout(getHttpProperties().getReadTimeout());
+		connection.setUseCaches(false);
+		connection.setRequestProperty("Accept-Encoding", "identity");
+		if (session.authorization != null) {
+			connection.setRequestProperty("Authorization", session.authorization);
+		}
+		return connection;
+	}
+
+	/**
+	 * Reads the end of a response, so the JVM can reuse its connection for
+	 * the next requests to the server.
+	 */
+	private static void release(HttpURLConnection connection) {
+		try {
+			InputStream in = connection.getResponseCode() >= HttpURLConnection.HTTP_BAD_REQUEST
+					? connection.getErrorStream() : connection.getInputStream();
+			if (in != null) {
+				try {
+					byte[] buffer = new byte[8 * 1024];
+					while (in.read(buffer) >= 0) {
+						// skip the content
+					}
+				} finally {
+					in.close();
+				}
+			}
+		} catch (IOException e) {
+			log.debug("Cannot read the end of the HTTP response: {}", e.getMessage());
+		}
+	}
+
+	/**
+	 * Removes the query of an URL path, so the local file is named as the
+	 * remote file.
+	 */
+	@Override
+	protected String getLastPathElement(String path) {
+		int idx = path.indexOf('?');
+		return super.getLastPathElement(idx < 0 ? path : path.substring(0, idx));
+	}
+
+	private DownloaderProperties.Http getHttpProperties() {
+		return getDownloaderProperties() == null ? new DownloaderProperties.Http()
+				: getDownloaderProperties().getHttp();
+	}
+
+	@Override
+	protected OutputStream openRemoteOutputStream(String remoteTargetFile, ConnectionSession session)
+			throws Exception {
+		throw new IOException(SOURCE_ONLY);
+	}
+
+	@Override
+	protected void uploadFile(File localFile, String remoteTargetDirectory, ConnectionSession session,
+			ProgressHandler handler) throws Exception {
+		throw new IOException(SOURCE_ONLY);
+	}
+
+	@Override
+	protected void createRemoteDirectory(String directory, ConnectionSession session) throws Exception {
+		throw new IOException(SOURCE_ONLY);
+	}
+
+	@Override
+	protected boolean changeRemoteDirectory(String directory, ConnectionSession session) throws Exception {
+		return true;
+	}
+
+	@Override
+	protected void deleteRemoteFile(String remoteFile, ConnectionSession session) throws Exception {
+		throw new IOException(SOURCE_ONLY);
+	}
+
+	@Override
+	protected void deleteRemoteDirectory(String remoteDirectory, ConnectionSession session) throws Exception {
+		throw new IOException(SOURCE_ONLY);
+	}
+
+	@Override
+	protected Logger log() {
+		return log;
+	}
+}
+
+/**
+ * The address and the credentials of an HTTP server. The connections
+ * themselves are kept by the JVM.
+ */
+class HttpConnectionSession extends ConnectionSession {
+
+	private final String scheme;
+
+	private final String host;
+
+	/** The port of the server, -1 for the default port of the scheme. */
+	private final int port;
+
+	/** The value of the Authorization header, null without credentials. */
+	final String authorization;
+
+	HttpConnectionSession(String scheme, String host, int port, String authorization) {
+		this.scheme = scheme;
+		this.host = host;
+		this.port = port;
+		this.authorization = authorization;
+	}
+
+	/**
+	 * @return the URL of a path of the server. The path may end with a query.
+	 */
+	URL getUrl(String path) throws IOException {
+		String p = path.startsWith("/") ? path : "/" + path;
+		int idx = p.indexOf('?');
+		try {
+			return new URI(scheme, null, host, port, idx < 0 ? p : p.substring(0, idx),
+					idx < 0 ? null : p.substring(idx + 1), null).toURL();
+		} catch (URISyntaxException e) {
+			throw new IOException("Bad HTTP path '" + path + "': " + e.getMessage(), e);
+		}
+	}
+
+	@Override
+	protected void forceClose() {
+		// the idle connections are closed by the JVM
+	}
+}
+
+/**
+ * Defines a remote file from the headers of an HTTP response.
+ */
+class HttpFileEntry implements FileEntry {
+
+	private final String name;
+
+	private final long size;
+
+	private final long lastModified;
+
+	private final String etag;
+
+	private final String lastModifiedHeader;
+
+	/** True if the server accepts the range requests on the file. */
+	final boolean acceptRanges;
+
+	HttpFileEntry(String name, long size, long lastModified, String etag, String lastModifiedHeader,
+			boolean acceptRanges) {
+		this.name = name;
+		this.size = size;
+		this.lastModified = lastModified;
+		this.etag = etag;
+		this.lastModifiedHeader = lastModifiedHeader;
+		this.acceptRanges = acceptRanges;
+	}
+
+	/**
+	 * @return the value of the If-Range header of the range requests: the
+	 *         ETag of the file, or its modification date when the ETag is
+	 *         weak or missing, null if the server gives none.
+	 */
+	String getValidator() {
+		return getValidator(etag, lastModifiedHeader);
+	}
+
+	/**
+	 * @return the ETag if it is strong, else the Last-Modified header.
+	 */
+	static String getValidator(String etag, String lastModifiedHeader) {
+		if (etag != null && !etag.startsWith("W/")) {
+			return etag;
+		}
+		return lastModifiedHeader;
+	}
+
+	@Override
+	public String getFilename() throws IOException {
+		return name;
+	}
+
+	@Override
+	public boolean isDir() throws IOException {
+		return false;
+	}
+
+	@Override
+	public long getSize() throws IOException {
+		return size;
+	}
+
+	@Override
+	public long geLastModified() throws IOException {
+		return lastModified;
+	}
+}
@@ -1,22 +1,38 @@
 package org.scb.downloader.service;
 
 import java.io.File;
+import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.nio.channels.FileChannel;
 import java.nio.file.DirectoryStream;
 import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 import org.apache.commons.io.FileUtils;
+import org.scb.downloader.config.DownloaderProperties;
 import org.scb.downloader.domain.DWFileInfo;
 import org.scb.downloader.domain.DWHostAccount;
+import org.scb.downloader.domain.enumeration.DWProtocol;
+import org.scb.downloader.domain.enumeration.DWSyncMode;
 import org.scb.downloader.service.ConnectionService.ConnectionSession;
 import org.scb.downloader.service.ConnectionService.FileEntry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 @Service("localFileSystemService")
@@ -24,6 +40,25 @@ public class LocalFileSystemService implements ConnectionService {
 
 	protected static final Logger log = LoggerFactory.getLogger(LocalFileSystemService.class);
 
+	/** The maximal number of bytes copied by a call to transferTo. */
+	private static final long CHUNK_SIZE = 8 * 1024 * 1024;
+
+	@Autowired
+	private DownloaderProperties downloaderProperties;
+
+	@Autowired
+	private TransferWorkers transferWorkers;
+
+	@Override
+	public Set<DWProtocol> getProtocols() {
+		return EnumSet.of(DWProtocol.LOCAL_FILE_SYSTEM);
+	}
+
+	@Override
+	public ProtocolCapabilities getCapabilities() {
+		return ProtocolCapabilities.NONE.withLocal();
+	}
+
 	@Override
 	public LocalFileSystemConnectionSession connect(DWHostAccount account) throws Exception {
 		return new LocalFileSystemConnectionSession();
@@ -47,34 +82,217 @@ public class LocalFileSystemService implements ConnectionService {
 		return result;
 	}
 
-	private void transfert(String src, String target) throws IOException {
+	@Override
+	public FileEntry stat(ConnectionSession session, String pathStr) throws Exception {
+		Path path = FileSystems.getDefault().getPath(pathStr);
+		try {
+			return new LocalFileSystemFileEntry(path, Files.readAttributes(path, BasicFileAttributes.class));
+		} catch (NoSuchFileException e) {
+			return null;
+		}
+	}
+
+	private void transfert(String src, String target, DWSyncMode syncMode, ProgressHandler handler)
+			throws Exception {
 		File srcF = new File(src);
 		File targetF = new File(target);
 		if (srcF.isDirectory()) {
 			if (targetF.isDirectory()) {
-				FileUtils.copyDirectory(srcF, targetF);
+				copyDirectory(srcF, targetF, syncMode == null ? DWSyncMode.COPY : syncMode, handler);
 			} else {
 				throw new IOException("Cannot copy the directory '" + src + "' into the file '" + target + "'.");
 			}
 
+		} else if (!srcF.exists()) {
+			throw new FileNotFoundException(src);
+
 		} else if (targetF.isDirectory()) {
-			FileUtils.copyFileToDirectory(srcF, targetF, true);
+			copyFile(srcF, new File(targetF, srcF.getName()), handler, true);
 
 		} else {
-			FileUtils.copyFile(srcF, targetF, true);
+			copyFile(srcF, targetF, handler, true);
+		}
+	}
+
+	/**
+	 * Copies the content of a directory into another directory. The files are
+	 * copied by several workers when the parallel mode is enabled.
+	 */
+	private void copyDirectory(File sourceDirectory, File targetDirectory, DWSyncMode syncMode,
+			ProgressHandler handler) throws Exception {
+		Queue<File[]> files = new ConcurrentLinkedQueue<>();
+		long size = listTree(sourceDirectory, targetDirectory, files, syncMode);
+		int nbWorkers = Math.min(getParallelCopies(), files.size());
+		log.debug("{} files ({} bytes) to copy from '{}' with {} workers.", files.size(), size,
+				sourceDirectory.getAbsolutePath(), nbWorkers);
+		if (nbWorkers <= 1) {
+			for (File[] file : files) {
+				copyFile(file[0], file[1], handler, true);
+			}
+			return;
+		}
+		ParallelProgressHandler progress = new ParallelProgressHandler(handler);
+		progress.start(sourceDirectory.getAbsolutePath(), size);
+		List<Callable<Void>> workers = new ArrayList<>();
+		for (int i = 0; i < nbWorkers; i++) {
+			ProgressHandler workerHandler = progress.newWorkerHandler();
+			workers.add(() -> {
+				File[] file;
+				while (!progress.isCancelled() && (file = files.poll()) != null) {
+					copyFile(file[0], file[1], workerHandler, false);
+				}
+				return null;
+			});
+		}
+		(transferWorkers == null ? TransferWorkers.getDefault() : transferWorkers).runInParallel(workers, progress,
+				"The copy of '" + sourceDirectory.getAbsolutePath() + "'");
+		progress.end();
+	}
+
+	/**
+	 * Lists recursively the files of a directory and creates the target
+	 * directories. In SYNC and MIRROR modes, the files whose copy is up to
+	 * date are not listed and in MIRROR mode the target files missing in the
+	 * source directory are deleted.
+	 * 
+	 * @param files
+	 *            receives the source and target of each file to copy.
+	 * @return the total size of the files.
+	 */
+	private long listTree(File sourceDirectory, File targetDirectory, Queue<File[]> files, DWSyncMode syncMode)
+			throws IOException {
+		File[] children = AbstractConnectionServiceImpl.listLocalDirectory(sourceDirectory);
+		Map<String, File> targets = syncMode == DWSyncMode.COPY ? new HashMap<>()
+				: AbstractConnectionServiceImpl.listLocalEntries(targetDirectory);
+		targetDirectory.mkdirs();
+		long size = 0;
+		for (File child : children) {
+			File target = new File(targetDirectory, child.getName());
+			File existing = targets.remove(child.getName());
+			if (child.isDirectory()) {
+				size += listTree(child, target, files, syncMode);
+			} else if (existing != null && existing.isFile() && AbstractConnectionServiceImpl
+					.isUpToDate(child.length(), child.lastModified(), existing.length(), existing.lastModified())) {
+				log.debug("The file '{}' is up to date.", child.getAbsolutePath());
+			} else {
+				files.add(new File[] { child, target });
+				size += child.length();
+			}
+		}
+		if (syncMode == DWSyncMode.MIRROR) {
+			for (File target : targets.values()) {
+				log.info("Delete the local file '{}' missing in the source.", target.getAbsolutePath());
+				FileUtils.forceDelete(target);
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * Copies a file with {@link FileChannel#transferTo(long, long,
+	 * java.nio.channels.WritableByteChannel)}: the kernel moves the data
+	 * without copying it in the JVM when it can. A hard link is created
+	 * instead when it is enabled and possible.
+	 * 
+	 * @param failOnCancel
+	 *            true to throw an exception when the handler cancels the copy.
+	 * @return false if the copy has been cancelled.
+	 */
+	private boolean copyFile(File source, File target, ProgressHandler handler, boolean failOnCancel)
+			throws IOException {
+		if (source.getCanonicalFile().equals(target.getCanonicalFile())) {
+			throw new IOException("The source and the target of the copy are the same file: '"
+					+ source.getAbsolutePath() + "'.");
+		}
+		long size = source.length();
+		target.getParentFile().mkdirs();
+		if (isHardLink() && link(source, target)) {
+			if (handler != null) {
+				handler.skip(source.getAbsolutePath(), size);
+			}
+			return true;
+		}
+		if (handler != null) {
+			handler.start(source.getAbsolutePath(), size);
+		}
+		long position = 0;
+		try (FileChannel in = FileChannel.open(source.toPath(), StandardOpenOption.READ);
+				FileChannel out = FileChannel.open(target.toPath(), StandardOpenOption.CREATE,
+						StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			while (position < size) {
+				long transfered = in.transferTo(position, Math.min(CHUNK_SIZE, size - position), out);
+				if (transfered <= 0) {
+					break;
+				}
+				position += transfered;
+				if (handler != null && !handler.count(position)) {
+					if (failOnCancel) {
+						throw new IOException("The copy of '" + source.getAbsolutePath() + "' has been cancelled.");
+					}
+					return false;
+				}
+			}
 		}
+		if (position != size) {
+			throw new IOException("The file '" + source.getAbsolutePath() + "' has been modified during the copy.");
+		}
+		target.setLastModified(source.lastModified());
+		if (handler != null) {
+			handler.end();
+		}
+		return true;
+	}
+
+	/**
+	 * Creates a hard link to a file.
+	 * 
+	 * @return true if the link has been created, false if the source and the
+	 *         target are not on the same file system or the link is refused.
+	 */
+	private boolean link(File source, File target) {
+		try {
+			Path sourcePath = source.toPath();
+			Path targetPath = target.toPath();
+			if (!Files.getFileStore(sourcePath).equals(Files.getFileStore(targetPath.getParent()))) {
+				return false;
+			}
+			Files.deleteIfExists(targetPath);
+			Files.createLink(targetPath, sourcePath);
+			log.debug("Hard link '{}' created on '{}'.", targetPath, sourcePath);
+			return true;
+		} catch (IOException | UnsupportedOperationException e) {
+			log.debug("Cannot link '{}' to '{}': {}", target.getAbsolutePath(), source.getAbsolutePath(),
+					e.getMessage());
+			return false;
+		}
+	}
+
+	private int getParallelCopies() {
+		return downloaderProperties == null ? 1 : downloaderProperties.getLocal().getParallelCopies();
+	}
+
+	private boolean isHardLink() {
+		return downloaderProperties != null && downloaderProperties.getLocal().isHardLink();
 	}
 
 	@Override
-	public void upload(ConnectionSession session, String srcPath, DWFileInfo target, ProgressHandler handler)
-			throws Exception {
-		transfert(srcPath, target.getPath());
+	public void upload(ConnectionSession session, String srcPath, DWFileInfo target, DWSyncMode syncMode,
+			ProgressHandler handler) throws Exception {
+		transfert(srcPath, target.getPath(), syncMode, handler);
 	}
 
 	@Override
-	public void download(ConnectionSession session, DWFileInfo source, String targetPath, ProgressHandler handler)
-			throws Exception {
-		transfert(source.getPath(), targetPath);
+	public void download(ConnectionSession session, DWFileInfo source, String targetPath, DWSyncMode syncMode,
+			ProgressHandler handler) throws Exception {
+		transfert(source.getPath(), targetPath, syncMode, handler);
+	}
+
+	public DownloaderProperties getDownloaderProperties() {
+		return downloaderProperties;
+	}
+
+	public void setDownloaderProperties(DownloaderProperties downloaderProperties) {
+		this.downloaderProperties = downloaderProperties;
 	}
 }
 
@@ -88,10 +306,18 @@ class LocalFileSystemFileEntry implements FileEntry {
 
 	private Path path;
 
+	/** The attributes read at once, null to read them on demand. */
+	private BasicFileAttributes attributes;
+
 	public LocalFileSystemFileEntry(Path path) {
 		this.path = path;
 	}
 
+	public LocalFileSystemFileEntry(Path path, BasicFileAttributes attributes) {
+		this.path = path;
+		this.attributes = attributes;
+	}
+
 	@Override
 	public String getFilename() throws IOException {
 		return path.toFile().getName();
@@ -99,16 +325,25 @@ class LocalFileSystemFileEntry implements FileEntry {
 
 	@Override
 	public boolean isDir() throws IOException {
+		if (attributes != null) {
+			return attributes.isDirectory();
+		}
 		return Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS);
 	}
 
 	@Override
 	public long getSize() throws IOException {
+		if (attributes != null) {
+			return attributes.size();
+		}
 		return Files.size(path);
 	}
 
 	@Override
 	public long geLastModified() throws IOException {
+		if (attributes != null) {
+			return attributes.lastModifiedTime().toMillis();
+		}
 		return Files.getLastModifiedTime(path, LinkOption.NOFOLLOW_LINKS).toMillis();
 	}
 }
@@ -0,0 +1,127 @@
+package org.scb.downloader.service;
+
+/**
+ * Aggregates the progress of several files transfered at the same time into a
+ * single progress handler. The whole set of files is seen by the delegate
+ * handler as one file: {@link ProgressHandler#start(String, long)} is called
+ * once with the total size, then {@link ProgressHandler#count(long)} with the
+ * total number of bytes transfered on all workers. This number is not an
+ * offset where to resume the transfert.
+ *
+ * Each worker must use its own handler given by {@link #newWorkerHandler()}.
+ *
+ * @author S.Chassande
+ */
+class ParallelProgressHandler {
+
+	private final ProgressHandler delegate;
+
+	/** The number of bytes transfered by all workers. Guarded by this. */
+	private long total = 0;
+
+	/** True when the transfert must be stopped. */
+	private volatile boolean cancelled = false;
+
+	ParallelProgressHandler(ProgressHandler delegate) {
+		this.delegate = delegate;
+	}
+
+	/**
+	 * Starts the aggregated transfert.
+	 *
+	 * @param name
+	 *            is the name of the transfered set of files.
+	 * @param size
+	 *            is the total size of the files.
+	 */
+	void start(String name, long size) {
+		if (delegate != null) {
+			delegate.start(name, size);
+			delegate.notResumable();
+		}
+	}
+
+	/**
+	 * Ends the aggregated transfert.
+	 */
+	void end() {
+		if (delegate != null) {
+			delegate.end();
+		}
+	}
+
+	/**
+	 * Stops the workers at their next progress notification.
+	 */
+	void cancel() {
+		cancelled = true;
+	}
+
+	boolean isCancelled() {
+		return cancelled;
+	}
+
+	/**
+	 * @return a new handler for a worker. A worker handler is not thread safe.
+	 */
+	ProgressHandler newWorkerHandler() {
+		return new ProgressHandler() {
+			/** The number of bytes of the current file of the worker. */
+			private long current = 0;
+
+			@Override
+			public void start(String file, long max) {
+				current = 0;
+			}
+
+			@Override
+			public boolean count(long count) {
+				long delta = count - current;
+				current = count;
+				return add(delta);
+			}
+
+			@Override
+			public void end() {
+			}
+
+			@Override
+			public long getResumeOffset(String file, long size, long transfered, long transferedLastModified) {
+				return ParallelProgressHandler.this.getResumeOffset(file, size, transfered, transferedLastModified);
+			}
+
+			@Override
+			public String getResumeValidator(String file) {
+				return ParallelProgressHandler.this.getResumeValidator(file);
+			}
+
+			@Override
+			public void checksum(String file, String checksum) {
+				ParallelProgressHandler.this.checksum(file, checksum);
+			}
+		};
+	}
+
+	private synchronized String getResumeValidator(String file) {
+		return delegate == null ? null : delegate.getResumeValidator(file);
+	}
+
+	private synchronized void checksum(String file, String checksum) {
+		if (delegate != null) {
+			delegate.checksum(file, checksum);
+		}
+	}
+
+	private synchronized long getResumeOffset(String file, long size, long transfered,
+			long transferedLastModified) {
+		return delegate == null ? 0 : delegate.getResumeOffset(file, size, transfered, transferedLastModified);
+	}
+
+	private synchronized boolean add(long delta) {
+		total += delta;
+		if (!cancelled && delegate != null && !delegate.count(total)) {
+			cancelled = true;
+		}
+		return !cancelled;
+	}
+}
@@ -1,9 +1,116 @@
 package org.scb.downloader.service;
 
+/**
+ * Receives the progress of the file transferts.
+ *
+ * @author S.Chassande
+ */
 public interface ProgressHandler {
+
+	/**
+	 * A file transfert begins.
+	 *
+	 * @param file
+	 *            is the name of the transfered file.
+	 * @param max
+	 *            is the size of the file.
+	 */
 	void start(String file, long max);
 
+	/**
+	 * Data of the current file has been transfered.
+	 *
+	 * @param count
+	 *            is the number of bytes of the current file transfered since
+	 *            the start.
+	 * @return true if the transfert can go on, false to cancel it.
+	 */
 	boolean count(long count);
 
+	/**
+	 * The current file transfert ends.
+	 */
 	void end();
-}
\ No newline at end of file
+
+	/**
+	 * The bytes of the current file are not transfered in order (segments or
+	 * files transfered in parallel): the count is not an offset where the
+	 * transfert can be resumed.
+	 */
+	default void notResumable() {
+	}
+
+	/**
+	 * Gives the offset where to resume the transfert of a file partially
+	 * transfered by a previous attempt. The bytes before the offset are not
+	 * transfered again.
+	 *
+	 * @param file
+	 *            is the name of the file to transfer.
+	 * @param size
+	 *            is the size of the file.
+	 * @param transfered
+	 *            is the size of the partial copy of the file on the target.
+	 * @param transferedLastModified
+	 *            is the last modification date of the partial copy, 0 if
+	 *            unknown.
+	 * @return the offset where to resume, 0 to transfer the whole file.
+	 */
+	default long getResumeOffset(String file, long size, long transfered, long transferedLastModified) {
+		return 0;
+	}
+
+	/**
+	 * Gives the version of the remote file when the transfert of its partial
+	 * copy started. A transfert is resumed only if the remote file still has
+	 * this version.
+	 *
+	 * @param file
+	 *            is the name of the file to transfer.
+	 * @return the ETag or the Last-Modified date given by {@link #validator},
+	 *         null if unknown.
+	 */
+	default String getResumeValidator(String file) {
+		return null;
+	}
+
+	/**
+	 * The version of the current file is known. It is kept with the resume
+	 * offset to check that a resumed transfert appends the same file.
+	 *
+	 * @param file
+	 *            is the name of the file.
+	 * @param validator
+	 *            is the ETag or the Last-Modified date of the remote file.
+	 */
+	default void validator(String file, String validator) {
+	}
+
+	/**
+	 * A file is not transfered because its target is already up to date, or
+	 * it has been copied by the server itself. It is counted as a transfered
+	 * file, but its bytes are not throttled.
+	 *
+	 * @param file
+	 *            is the name of the file.
+	 * @param size
+	 *            is the size of the file.
+	 */
+	default void skip(String file, long size) {
+		start(file, size);
+		count(size);
+		end();
+	}
+
+	/**
+	 * The checksum of a transfered file has been computed and verified when
+	 * the remote server can compute it.
+	 *
+	 * @param file
+	 *            is the name of the file.
+	 * @param checksum
+	 *            is the checksum as "ALGORITHM:value".
+	 */
+	default void checksum(String file, String checksum) {
+	}
+}
@@ -0,0 +1,68 @@
+package org.scb.downloader.service;
+
+/**
+ * Describes what a {@link ConnectionService} can do, so that the transferts
+ * choose the fastest way to move the files between two accounts. The
+ * instances are immutable: the with methods give a modified copy.
+ *
+ * @author S.Chassande
+ */
+public final class ProtocolCapabilities {
+
+	/** A protocol reading and writing remote files. */
+	public static final ProtocolCapabilities NONE = new ProtocolCapabilities(false, false, false);
+
+	private final boolean local;
+
+	private final boolean serverSideCopy;
+
+	private final boolean sourceOnly;
+
+	private ProtocolCapabilities(boolean local, boolean serverSideCopy, boolean sourceOnly) {
+		this.local = local;
+		this.serverSideCopy = serverSideCopy;
+		this.sourceOnly = sourceOnly;
+	}
+
+	/**
+	 * @return true if the files are on the local file system, so that they
+	 *         are uploaded or downloaded directly by the other account.
+	 */
+	public boolean isLocal() {
+		return local;
+	}
+
+	/**
+	 * @return true if the server copies the files between two paths of an
+	 *         account without sending them over the network.
+	 */
+	public boolean isServerSideCopy() {
+		return serverSideCopy;
+	}
+
+	/**
+	 * @return true if the files can only be read: the accounts cannot be the
+	 *         target of a transfert.
+	 */
+	public boolean isSourceOnly() {
+		return sourceOnly;
+	}
+
+	public ProtocolCapabilities withLocal() {
+		return new ProtocolCapabilities(true, serverSideCopy, sourceOnly);
+	}
+
+	public ProtocolCapabilities withServerSideCopy() {
+		return new ProtocolCapabilities(local, true, sourceOnly);
+	}
+
+	public ProtocolCapabilities withSourceOnly() {
+		return new ProtocolCapabilities(local, serverSideCopy, true);
+	}
+
+	@Override
+	public String toString() {
+		return "ProtocolCapabilities{local=" + local + ", serverSideCopy=" + serverSideCopy + ", sourceOnly="
+				+ sourceOnly + "}";
+	}
+}
@@ -0,0 +1,121 @@
+package org.scb.downloader.service;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.net.Socket;
+import java.util.Locale;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.SSLSocket;
+
+import org.apache.commons.net.ftp.FTPSClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An FTPS client resuming the TLS session of the control connection on the
+ * data connections. Many servers require it (vsftpd require_ssl_reuse,
+ * ProFTPD TLSOptions NoSessionReuseRequired off...), and an abbreviated
+ * handshake per file is much faster than a full one.
+ *
+ * The JSSE looks for the session to resume by the host and the port of the
+ * connection, and the data connections use another port than the control
+ * connection: the control session is registered in the client session cache
+ * under the address of each data connection before its handshake. The cache
+ * is not public, so it is reached by reflection. From Java 9, the JVM must be
+ * started with {@value #JVM_OPTIONS}: the war manifest and the maven build
+ * (tests and spring-boot:run) add them. On a JVM refusing the reflection, an
+ * error is logged once and the data connections make a full handshake, which
+ * the servers requiring the session reuse refuse.
+ *
+ * @author S.Chassande
+ */
+class ResumingFtpsClient extends FTPSClient {
+
+	private static final Logger log = LoggerFactory.getLogger(ResumingFtpsClient.class);
+
+	/** The JVM options opening the session cache of the JSSE. */
+	static final String JVM_OPTIONS = "--add-opens java.base/sun.security.ssl=ALL-UNNAMED"
+			+ " --add-opens java.base/sun.security.util=ALL-UNNAMED";
+
+	/** The field of the session context holding the cache by host and port. */
+	private static Field cacheField;
+
+	/** The method adding a session to the cache. */
+	private static Method putMethod;
+
+	/** True once the cache has been looked for. */
+	private static boolean cacheChecked = false;
+
+	/**
+	 * @param implicit
+	 *            true for implicit FTPS, false for explicit FTPS.
+	 * @param context
+	 *            gives the TLS sockets. The sessions of its cache are shared
+	 *            by the clients using it.
+	 */
+	ResumingFtpsClient(boolean implicit, SSLContext context) {
+		super(implicit, context);
+		checkSessionCache(context.getClientSessionContext());
+	}
+
+	/**
+	 * @return true if the data connections resume the TLS session of the
+	 *         control connection.
+	 */
+	static synchronized boolean isSessionReuseEnabled() {
+		return putMethod != null;
+	}
+
+	/**
+	 * Looks for the session cache of the JSSE once, so a JVM refusing the
+	 * reflection is reported when the first FTPS client is created.
+	 */
+	private static synchronized void checkSessionCache(SSLSessionContext context) {
+		if (cacheChecked) {
+			return;
+		}
+		cacheChecked = true;
+		try {
+			Field field = context.getClass().getDeclaredField("sessionHostPortCache");
+			field.setAccessible(true);
+			Method put = field.get(context).getClass().getDeclaredMethod("put", Object.class, Object.class);
+			put.setAccessible(true);
+			cacheField = field;
+			putMethod = put;
+		} catch (Exception | LinkageError e) {
+			log.error("The FTPS data connections cannot reuse the TLS session of the control connection, the servers"
+					+ " requiring it will refuse them. Start the JVM with {} ({}).", JVM_OPTIONS, e.toString());
+		}
+	}
+
+	@Override
+	protected void _prepareDataSocket_(Socket socket) throws IOException {
+		if (!isSessionReuseEnabled() || !(socket instanceof SSLSocket) || !(_socket_ instanceof SSLSocket)) {
+			return;
+		}
+		SSLSession session = ((SSLSocket) _socket_).getSession();
+		if (!session.isValid()) {
+			return;
+		}
+		try {
+			Object cache = cacheField.get(session.getSessionContext());
+			putMethod.invoke(cache, getCacheKey(socket.getInetAddress().getHostName(), socket.getPort()), session);
+			putMethod.invoke(cache, getCacheKey(socket.getInetAddress().getHostAddress(), socket.getPort()),
+					session);
+		} catch (Exception e) {
+			log.warn("The TLS session of the FTPS control connection cannot be reused by the data connection: {}",
+					e.toString());
+		}
+	}
+
+	/**
+	 * @return the key of a session in the cache of the JSSE.
+	 */
+	private static String getCacheKey(String host, int port) {
+		return (host + ":" + port).toLowerCase(Locale.ENGLISH);
+	}
+}
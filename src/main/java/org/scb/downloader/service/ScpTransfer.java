@@ -0,0 +1,384 @@
+package org.scb.downloader.service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.jcraft.jsch.ChannelExec;
+import com.jcraft.jsch.Session;
+
+/**
+ * Transfers files with the scp command over an exec channel of an SSH session.
+ * The content of the files is streamed in a single pipe, without the requests
+ * and acknowledgements of SFTP, so the latency of the link does not slow the
+ * transfert down.
+ *
+ * The scp protocol cannot resume a file: the resumes still use SFTP. Like
+ * with SFTP, the modification dates are not copied.
+ *
+ * @author S.Chassande
+ */
+class ScpTransfer {
+
+	/** Logger */
+	protected static final Logger log = LoggerFactory.getLogger(ScpTransfer.class);
+
+	/** The time to wait for the end of the remote command in milliseconds. */
+	private static final long EXIT_TIMEOUT = 10000;
+
+	/**
+	 * Receives the files transfered by a recursive transfert.
+	 */
+	interface FileListener {
+		/**
+		 * @param remotePath
+		 *            is the path of the remote file.
+		 * @param localFile
+		 *            is the local file.
+		 * @param checksum
+		 *            is the checksum of the transfered bytes, null if the
+		 *            checksums are disabled.
+		 */
+		void transfered(String remotePath, File localFile, StreamChecksum checksum) throws Exception;
+	}
+
+	/**
+	 * Thrown when the server cannot run the scp command.
+	 */
+	static class ScpUnavailableException extends IOException {
+		private static final long serialVersionUID = 1L;
+
+		ScpUnavailableException(String message) {
+			super(message);
+		}
+	}
+
+	private final Session session;
+
+	/** The size of the buffers used to copy the files. */
+	private final int bufferSize;
+
+	ScpTransfer(Session session, int bufferSize) {
+		this.session = session;
+		this.bufferSize = bufferSize;
+	}
+
+	/**
+	 * Downloads a remote file or the content of a remote directory.
+	 *
+	 * @param remotePath
+	 *            is the path of the remote file or directory.
+	 * @param localTarget
+	 *            is the local file, or the local directory receiving the
+	 *            content of the remote directory.
+	 * @param recursive
+	 *            true if the remote path is a directory.
+	 * @param checksums
+	 *            gives the checksum of each file.
+	 * @param listener
+	 *            is told about each received file, may be null.
+	 * @return false if the transfert has been cancelled by the handler.
+	 */
+	boolean download(String remotePath, File localTarget, boolean recursive, ProgressHandler handler,
+			Supplier<StreamChecksum> checksums, FileListener listener) throws Exception {
+		ChannelExec channel = open("scp " + (recursive ? "-r " : "") + "-f " + SshService.shellQuote(remotePath));
+		try {
+			OutputStream out = channel.getOutputStream();
+			InputStream in = channel.getInputStream();
+			channel.connect();
+			sendAck(out);
+
+			// the local directories and the remote directories being received
+			Deque<File> localDirs = new ArrayDeque<>();
+			Deque<String> remoteDirs = new ArrayDeque<>();
+			boolean first = true;
+			while (true) {
+				int type = in.read();
+				if (type < 0) {
+					if (first) {
+						throw new ScpUnavailableException("The server cannot run scp for '" + remotePath + "'.");
+					}
+					break;
+				}
+				first = false;
+				String line = readLine(in);
+				switch (type) {
+				case 1:
+				case 2:
+					throw new IOException("scp error on '" + remotePath + "': " + line);
+				case 'T':
+					// the times are not requested
+					sendAck(out);
+					break;
+				case 'D':
+					// D<mode> 0 <name>
+					String dirName = getName(line);
+					File dir = localDirs.isEmpty() ? localTarget : new File(localDirs.peek(), dirName);
+					String remoteDir = remoteDirs.isEmpty() ? remotePath
+							: remoteDirs.peek() + "/" + dirName;
+					dir.mkdirs();
+					if (!dir.isDirectory()) {
+						throw new IOException("Cannot create the local directory '" + dir.getAbsolutePath() + "'.");
+					}
+					localDirs.push(dir);
+					remoteDirs.push(remoteDir);
+					sendAck(out);
+					break;
+				case 'E':
+					if (localDirs.isEmpty()) {
+						throw new IOException("Unexpected end of directory in scp of '" + remotePath + "'.");
+					}
+					localDirs.pop();
+					remoteDirs.pop();
+					sendAck(out);
+					break;
+				case 'C':
+					// C<mode> <size> <name>
+					String[] fields = line.split(" ", 3);
+					long size = Long.parseLong(fields[1]);
+					String name = getName(line);
+					File file = localDirs.isEmpty() ? localTarget : new File(localDirs.peek(), name);
+					String remoteFile = remoteDirs.isEmpty() ? remotePath : remoteDirs.peek() + "/" + name;
+					sendAck(out);
+					StreamChecksum checksum = checksums.get();
+					if (!receiveFile(in, file, remoteFile, size, handler, checksum)) {
+						return false;
+					}
+					checkAck(in, remotePath);
+					sendAck(out);
+					if (listener != null) {
+						listener.transfered(remoteFile, file, checksum);
+					}
+					break;
+				default:
+					throw new IOException("Unexpected scp message '" + (char) type + line + "'.");
+				}
+			}
+			waitExit(channel, remotePath);
+			return true;
+		} finally {
+			channel.disconnect();
+		}
+	}
+
+	/**
+	 * Uploads a local file or the content of a local directory into a remote
+	 * directory. The remote directory must exist.
+	 *
+	 * @param localSource
+	 *            is the local file or directory.
+	 * @param remoteDirectory
+	 *            is the remote directory receiving the file or the content
+	 *            of the local directory.
+	 * @param checksums
+	 *            gives the checksum of each file.
+	 * @param listener
+	 *            is told about each sent file, may be null.
+	 * @return false if the transfert has been cancelled by the handler.
+	 */
+	boolean upload(File localSource, String remoteDirectory, ProgressHandler handler,
+			Supplier<StreamChecksum> checksums, FileListener listener) throws Exception {
+		boolean recursive = localSource.isDirectory();
+		ChannelExec channel = open(
+				"scp " + (recursive ? "-r " : "") + "-d -t " + SshService.shellQuote(remoteDirectory));
+		try {
+			OutputStream out = channel.getOutputStream();
+			InputStream in = channel.getInputStream();
+			channel.connect();
+			int ack = in.read();
+			if (ack < 0) {
+				throw new ScpUnavailableException("The server cannot run scp for '" + remoteDirectory + "'.");
+			}
+			checkAck(ack, in, remoteDirectory);
+			boolean completed = recursive
+					? sendDirectoryContent(localSource, remoteDirectory, in, out, handler, checksums, listener)
+					: sendFile(localSource, remoteDirectory, in, out, handler, checksums, listener);
+			if (!completed) {
+				return false;
+			}
+			out.close();
+			waitExit(channel, remoteDirectory);
+			return true;
+		} finally {
+			channel.disconnect();
+		}
+	}
+
+	private boolean sendDirectoryContent(File directory, String remoteDirectory, InputStream in, OutputStream out,
+			ProgressHandler handler, Supplier<StreamChecksum> checksums, FileListener listener) throws Exception {
+		File[] files = directory.listFiles();
+		for (File file : files == null ? new File[0] : files) {
+			if (file.isFile()) {
+				if (!sendFile(file, remoteDirectory, in, out, handler, checksums, listener)) {
+					return false;
+				}
+			} else if (file.isDirectory()) {
+				sendCommand("D0755 0 " + file.getName(), in, out, remoteDirectory);
+				if (!sendDirectoryContent(file, remoteDirectory + "/" + file.getName(), in, out, handler, checksums,
+						listener)) {
+					return false;
+				}
+				sendCommand("E", in, out, remoteDirectory);
+			}
+		}
+		return true;
+	}
+
+	private boolean sendFile(File file, String remoteDirectory, InputStream in, OutputStream out,
+			ProgressHandler handler, Supplier<StreamChecksum> checksums, FileListener listener) throws Exception {
+		String remoteFile = remoteDirectory + "/" + file.getName();
+		long size = file.length();
+		sendCommand("C0644 " + size + " " + file.getName(), in, out, remoteFile);
+
+		StreamChecksum checksum = checksums.get();
+		if (handler != null) {
+			handler.start(file.getAbsolutePath(), size);
+		}
+		byte[] buffer = new byte[bufferSize];
+		long done = 0;
+		try (InputStream fis = AbstractConnectionServiceImpl.wrap(checksum, new FileInputStream(file))) {
+			while (done < size) {
+				int read = fis.read(buffer, 0, (int) Math.min(buffer.length, size - done));
+				if (read < 0) {
+					throw new IOException("The local file '" + file.getAbsolutePath() + "' has been truncated.");
+				}
+				out.write(buffer, 0, read);
+				done += read;
+				if (handler != null && !handler.count(done)) {
+					return false;
+				}
+			}
+		}
+		// end of the file content
+		sendAck(out);
+		checkAck(in, remoteFile);
+		if (handler != null) {
+			handler.end();
+		}
+		if (listener != null) {
+			listener.transfered(remoteFile, file, checksum);
+		}
+		return true;
+	}
+
+	private boolean receiveFile(InputStream in, File file, String remoteFile, long size, ProgressHandler handler,
+			StreamChecksum checksum) throws IOException {
+		if (handler != null) {
+			handler.start(remoteFile, size);
+		}
+		byte[] buffer = new byte[bufferSize];
+		long done = 0;
+		try (OutputStream fos = AbstractConnectionServiceImpl.wrap(checksum, new FileOutputStream(file))) {
+			while (done < size) {
+				int read = in.read(buffer, 0, (int) Math.min(buffer.length, size - done));
+				if (read < 0) {
+					throw new IOException("Unexpected end of the remote file '" + remoteFile + "' at " + done + ".");
+				}
+				fos.write(buffer, 0, read);
+				done += read;
+				if (handler != null && !handler.count(done)) {
+					return false;
+				}
+			}
+		}
+		if (handler != null) {
+			handler.end();
+		}
+		return true;
+	}
+
+	private ChannelExec open(String command) throws Exception {
+		log.debug("Run '{}'.", command);
+		ChannelExec channel = (ChannelExec) session.openChannel("exec");
+		channel.setCommand(command);
+		return channel;
+	}
+
+	/**
+	 * Waits for the end of the remote command and checks its exit status.
+	 */
+	private static void waitExit(ChannelExec channel, String path) throws IOException {
+		long end = System.currentTimeMillis() + EXIT_TIMEOUT;
+		while (!channel.isClosed() && System.currentTimeMillis() < end) {
+			try {
+				Thread.sleep(10);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException("Interrupted while waiting for the end of scp.", e);
+			}
+		}
+		int status = channel.getExitStatus();
+		if (status > 0) {
+			throw new IOException("scp on '" + path + "' ended with the status " + status + ".");
+		}
+	}
+
+	/**
+	 * @return the name of a C or D message, checked in order to not write
+	 *         outside of the target directory.
+	 */
+	private static String getName(String line) throws IOException {
+		String[] fields = line.split(" ", 3);
+		if (fields.length < 3) {
+			throw new IOException("Bad scp message '" + line + "'.");
+		}
+		String name = fields[2];
+		if (name.isEmpty() || name.contains("/") || ".".equals(name) || "..".equals(name)) {
+			throw new IOException("Bad file name in the scp message '" + line + "'.");
+		}
+		return name;
+	}
+
+	private static void sendCommand(String command, InputStream in, OutputStream out, String path)
+			throws IOException {
+		out.write((command + "\n").getBytes(StandardCharsets.UTF_8));
+		out.flush();
+		checkAck(in, path);
+	}
+
+	private static void sendAck(OutputStream out) throws IOException {
+		out.write(0);
+		out.flush();
+	}
+
+	private static void checkAck(InputStream in, String path) throws IOException {
+		checkAck(in.read(), in, path);
+	}
+
+	/**
+	 * Checks an acknowledgement: 0 for a success, 1 or 2 followed by a message
+	 * for an error.
+	 */
+	private static void checkAck(int ack, InputStream in, String path) throws IOException {
+		if (ack == 0) {
+			return;
+		}
+		if (ack < 0) {
+			throw new IOException("Unexpected end of scp on '" + path + "'.");
+		}
+		throw new IOException("scp error on '" + path + "': " + (ack == 1 || ack == 2 ? readLine(in) : ack));
+	}
+
+	private static String readLine(InputStream in) throws IOException {
+		ByteArrayOutputStream line = new ByteArrayOutputStream();
+		int c;
+		while ((c = in.read()) != '\n') {
+			if (c < 0) {
+				throw new IOException("Unexpected end of scp message.");
+			}
+			line.write(c);
+		}
+		return new String(line.toByteArray(), StandardCharsets.UTF_8);
+	}
+}
@@ -1,25 +1,52 @@
 package org.scb.downloader.service;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.EnumSet;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import org.scb.downloader.config.DownloaderProperties;
+import org.scb.downloader.domain.DWFileInfo;
 import org.scb.downloader.domain.DWHostAccount;
+import org.scb.downloader.domain.enumeration.DWProtocol;
+import org.scb.downloader.domain.enumeration.DWSshTransferMode;
+import org.scb.downloader.domain.enumeration.DWSyncMode;
 import org.scb.downloader.service.ConnectionService.ConnectionSession;
 import org.scb.downloader.service.ConnectionService.FileEntry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 
+import com.jcraft.jsch.ChannelExec;
 import com.jcraft.jsch.ChannelSftp;
 import com.jcraft.jsch.ChannelSftp.LsEntry;
 import com.jcraft.jsch.JSch;
 import com.jcraft.jsch.JSchException;
 import com.jcraft.jsch.Session;
+import com.jcraft.jsch.SftpATTRS;
 import com.jcraft.jsch.SftpException;
 import com.jcraft.jsch.SftpProgressMonitor;
 import com.jcraft.jsch.UserInfo;
@@ -33,6 +60,43 @@ import com.jcraft.jsch.UserInfo;
 public class SshService extends AbstractConnectionServiceImpl {
 	protected static final Logger log = LoggerFactory.getLogger(SshService.class);
 
+	/** The commands computing the checksums by algorithm. */
+	private static final Map<String, String> HASH_COMMANDS = new HashMap<>();
+	static {
+		HASH_COMMANDS.put("MD5", "md5sum");
+		HASH_COMMANDS.put("SHA-1", "sha1sum");
+		HASH_COMMANDS.put("SHA-256", "sha256sum");
+		HASH_COMMANDS.put("SHA-512", "sha512sum");
+	}
+
+	/** The compression algorithms proposed when the compression is enabled. */
+	private static final String COMPRESSION = "zlib@openssh.com,zlib,none";
+
+	private static final String NO_COMPRESSION = "none";
+
+	/**
+	 * The minimal size of a remote file whose first bytes are sampled to
+	 * decide if it is compressed. The smaller files are decided by their
+	 * extension only.
+	 */
+	private static final long SAMPLED_FILE_SIZE = 1024 * 1024;
+
+	/** The size of the data of the SFTP read and write requests of JSch. */
+	private static final int REQUEST_SIZE = 32 * 1024;
+
+	/** The number of outstanding SFTP requests by default in JSch. */
+	private static final int DEFAULT_BULK_REQUESTS = 16;
+
+	@Override
+	public Set<DWProtocol> getProtocols() {
+		return EnumSet.of(DWProtocol.SSH);
+	}
+
+	@Override
+	public ProtocolCapabilities getCapabilities() {
+		return ProtocolCapabilities.NONE.withServerSideCopy();
+	}
+
 	/**
 	 * Open session to an ssh account.
 	 * 
@@ -55,11 +119,132 @@ public class SshService extends AbstractConnectionServiceImpl {
 		configuration.put("kex",
 				"diffie-hellman-group1-sha1,diffie-hellman-group14-sha1,diffie-hellman-group-exchange-sha1,diffie-hellman-group-exchange-sha256");
 		configuration.put("StrictHostKeyChecking", "no");
+		int compressionLevel = getCompressionLevel(account);
+		if (compressionLevel > 0) {
+			configuration.put("compression.s2c", COMPRESSION);
+			configuration.put("compression.c2s", COMPRESSION);
+			configuration.put("compression_level", String.valueOf(compressionLevel));
+		}
 		session.setConfig(configuration);
 		session.connect();
 		ChannelSftp channel = (ChannelSftp) session.openChannel("sftp");
 		channel.connect();
-		return new SftpConnectionSession(session, channel);
+		SftpConnectionSession sftpSession = new SftpConnectionSession(session, channel);
+		sftpSession.compressed = compressionLevel > 0;
+		sftpSession.adaptiveCompression = compressionLevel > 0
+				&& Boolean.TRUE.equals(account.getAdaptiveCompression());
+		sftpSession.scp = account.getSshTransferMode() == DWSshTransferMode.SCP;
+		sftpSession.bufferSize = getBufferSize(account);
+		sftpSession.bulkRequests = getBulkRequests(account, channel);
+		channel.setBulkRequests(sftpSession.bulkRequests);
+		return sftpSession;
+	}
+
+	/**
+	 * @return the size of the local buffers of an account.
+	 */
+	private int getBufferSize(DWHostAccount account) {
+		Integer size = account.getSftpBufferSize();
+		return size != null && size > 0 ? size : getSftpProperties().getBufferSize();
+	}
+
+	/**
+	 * Gives the number of SFTP requests sent without waiting for their
+	 * responses. Without value on the account or in the configuration, it is
+	 * computed in order to keep the link full: the bytes in flight must cover
+	 * the link rate multiplied by the round trip time.
+	 */
+	private int getBulkRequests(DWHostAccount account, ChannelSftp channel) {
+		Integer bulkRequests = account.getSftpBulkRequests();
+		if (bulkRequests != null && bulkRequests > 0) {
+			return bulkRequests;
+		}
+		DownloaderProperties.Sftp sftp = getSftpProperties();
+		if (sftp.getBulkRequests() > 0) {
+			return sftp.getBulkRequests();
+		}
+		try {
+			long roundTrip = measureRoundTrip(channel);
+			long inFlight = sftp.getLinkRate() * roundTrip / 1000000000L;
+			int computed = (int) Math.max(DEFAULT_BULK_REQUESTS,
+					Math.min(sftp.getMaxBulkRequests(), (inFlight + REQUEST_SIZE - 1) / REQUEST_SIZE));
+			log.debug("SFTP round trip to {}: {} ms, {} outstanding requests.", account.getHost(),
+					roundTrip / 1000000, computed);
+			return computed;
+		} catch (SftpException e) {
+			log.debug("Cannot measure the SFTP round trip to {}: {}", account.getHost(), e.getMessage());
+			return DEFAULT_BULK_REQUESTS;
+		}
+	}
+
+	/**
+	 * @return the smallest time of a few SFTP requests in nanoseconds.
+	 */
+	private static long measureRoundTrip(ChannelSftp channel) throws SftpException {
+		long best = Long.MAX_VALUE;
+		for (int i = 0; i < 3; i++) {
+			long begin = System.nanoTime();
+			channel.stat(".");
+			best = Math.min(best, System.nanoTime() - begin);
+		}
+		return best;
+	}
+
+	private DownloaderProperties.Sftp getSftpProperties() {
+		return getDownloaderProperties() == null ? new DownloaderProperties.Sftp()
+				: getDownloaderProperties().getSftp();
+	}
+
+	/**
+	 * @return the zlib level of the account, 0 if the compression is disabled.
+	 */
+	private static int getCompressionLevel(DWHostAccount account) {
+		Integer level = account.getCompressionLevel();
+		return level == null ? 0 : Math.max(0, Math.min(9, level));
+	}
+
+	/**
+	 * Enables or disables the compression of an SSH session before the
+	 * transfert of a file, when the adaptive compression is enabled on the
+	 * account. The compression is negotiated for the whole SSH session, so it
+	 * is changed by a new key exchange. The session is left unchanged while
+	 * other SFTP channels use it.
+	 */
+	private void adaptCompression(SftpConnectionSession session, boolean compressible) {
+		if (!session.adaptiveCompression || session.compressed == compressible || session instanceof SftpChannelSession
+				|| session.extraChannels.get() > 0) {
+			return;
+		}
+		log.debug("{} the SSH compression.", compressible ? "Enable" : "Disable");
+		String compression = compressible ? COMPRESSION : NO_COMPRESSION;
+		session.session.setConfig("compression.s2c", compression);
+		session.session.setConfig("compression.c2s", compression);
+		try {
+			session.session.rekey();
+			session.compressed = compressible;
+		} catch (Exception e) {
+			log.warn("Cannot change the SSH compression: {}", e.getMessage());
+			session.adaptiveCompression = false;
+		}
+	}
+
+	/**
+	 * @return false if the remote file is already compressed, according to its
+	 *         extension and to its first bytes.
+	 */
+	private boolean isRemoteFileCompressible(SftpConnectionSession session, String remoteFile, long size) {
+		if (!Compressibility.isCompressible(getLastPathElement(remoteFile))) {
+			return false;
+		}
+		if (size < SAMPLED_FILE_SIZE) {
+			return true;
+		}
+		try (InputStream in = session.sftpChannel.get(remoteFile, null, 0L)) {
+			return Compressibility.isCompressible(in);
+		} catch (Exception e) {
+			log.debug("Cannot sample the remote file '{}': {}", remoteFile, e.getMessage());
+			return true;
+		}
 	}
 
 	/**
@@ -81,6 +266,19 @@ public class SshService extends AbstractConnectionServiceImpl {
 		return toFileList(((SftpConnectionSession) session).sftpChannel.ls(path), directoryOnly);
 	}
 
+	@Override
+	public FileEntry stat(ConnectionSession session, String path) throws SftpException {
+		try {
+			return new SftpAttrsFileEntry(getLastPathElement(path),
+					((SftpConnectionSession) session).sftpChannel.stat(path));
+		} catch (SftpException e) {
+			if (e.id == ChannelSftp.SSH_FX_NO_SUCH_FILE) {
+				return null;
+			}
+			throw e;
+		}
+	}
+
 	@Override
 	protected void downloadFile(String remoteSourceFile, File localTargetDirectory, ConnectionSession session,
 			ProgressHandler handler) throws Exception {
@@ -89,23 +287,566 @@ public class SshService extends AbstractConnectionServiceImpl {
 				localTargetFile.getAbsolutePath());
 		localTargetDirectory.mkdirs();
 		ChannelSftp sftpChannel = ((SftpConnectionSession) session).sftpChannel;
-		sftpChannel.lstat(remoteSourceFile).getSize();
-		sftpChannel.get(remoteSourceFile, localTargetFile.getAbsolutePath(), new MyProgressMonitor(handler));
+		SftpATTRS attrs = sftpChannel.stat(remoteSourceFile);
+		long offset = getResumeOffset(handler, remoteSourceFile, attrs.getSize(),
+				localTargetFile.exists() ? localTargetFile.length() : -1, localTargetFile.lastModified());
+		if (offset > 0 && offset == attrs.getSize()) {
+			skipFile(handler, remoteSourceFile, attrs.getSize());
+			return;
+		}
+		SftpConnectionSession sftpSession = (SftpConnectionSession) session;
+		if (sftpSession.adaptiveCompression) {
+			adaptCompression(sftpSession, isRemoteFileCompressible(sftpSession, remoteSourceFile, attrs.getSize()));
+		}
+		StreamChecksum checksum = newChecksum();
+		if (offset == 0 && sftpSession.scp && downloadFileWithScp(remoteSourceFile, localTargetFile, sftpSession,
+				checksum, handler)) {
+			// the file has been streamed by scp
+		} else if (offset > 0) {
+			// drop the bytes after the offset then get the missing bytes
+			try (RandomAccessFile raf = new RandomAccessFile(localTargetFile, "rw")) {
+				raf.setLength(offset);
+			}
+			if (checksum != null) {
+				checksum.update(localTargetFile, offset);
+			}
+			try (OutputStream out = wrap(checksum,
+					new BufferedOutputStream(new FileOutputStream(localTargetFile, true), sftpSession.bufferSize))) {
+				sftpChannel.get(remoteSourceFile, out, new MyProgressMonitor(handler), ChannelSftp.RESUME, offset);
+			}
+		} else if (getDownloaderProperties() != null
+				&& attrs.getSize() >= getDownloaderProperties().getSftp().getSegmentThreshold()
+				&& getDownloaderProperties().getSftp().getSegments() > 1) {
+			downloadFileInSegments(remoteSourceFile, attrs, localTargetFile, (SftpConnectionSession) session,
+					handler);
+			if (checksum != null) {
+				// the segments are not received in order: read the assembled
+				// file
+				checksum.update(localTargetFile, attrs.getSize());
+			}
+		} else {
+			try (OutputStream out = wrap(checksum,
+					new BufferedOutputStream(new FileOutputStream(localTargetFile), sftpSession.bufferSize))) {
+				sftpChannel.get(remoteSourceFile, out, new MyProgressMonitor(handler));
+			}
+		}
+		checkFile(checksum, remoteSourceFile, getRemoteChecksum(session, remoteSourceFile, checksum), handler);
 	};
 
+	/**
+	 * Downloads a remote file with scp.
+	 * 
+	 * @return false if the server cannot run scp: the file must be downloaded
+	 *         with SFTP.
+	 */
+	private boolean downloadFileWithScp(String remoteSourceFile, File localTargetFile, SftpConnectionSession session,
+			StreamChecksum checksum, ProgressHandler handler) throws Exception {
+		try {
+			new ScpTransfer(session.session, session.bufferSize).download(remoteSourceFile, localTargetFile, false, handler,
+					() -> checksum, null);
+			return true;
+		} catch (ScpTransfer.ScpUnavailableException e) {
+			disableScp(session, e);
+			return false;
+		}
+	}
+
+	/**
+	 * Uploads a local file with scp.
+	 * 
+	 * @return false if the server cannot run scp: the file must be uploaded
+	 *         with SFTP.
+	 */
+	private boolean uploadFileWithScp(File localFile, String remoteTargetDirectory, SftpConnectionSession session,
+			StreamChecksum checksum, ProgressHandler handler) throws Exception {
+		try {
+			new ScpTransfer(session.session, session.bufferSize).upload(localFile, remoteTargetDirectory, handler, () -> checksum, null);
+			return true;
+		} catch (ScpTransfer.ScpUnavailableException e) {
+			disableScp(session, e);
+			return false;
+		}
+	}
+
+	private void disableScp(SftpConnectionSession session, Exception e) {
+		log.warn("{} The files are transfered with SFTP.", e.getMessage());
+		session.scp = false;
+	}
+
+	/**
+	 * @return true if the content of a directory can be transfered by a single
+	 *         recursive scp command. The sync modes need the target listings,
+	 *         so they transfer the files one by one.
+	 */
+	private boolean isRecursiveScp(ConnectionSession session, DWSyncMode syncMode) {
+		return ((SftpConnectionSession) session).scp && syncMode == DWSyncMode.COPY;
+	}
+
+	/**
+	 * Downloads the content of a remote directory with a recursive scp. The
+	 * files whose checksum is bad are downloaded again one by one.
+	 * 
+	 * @return false if the server cannot run scp.
+	 */
+	private boolean downloadDirectoryWithScp(String sourceRemoteDirectory, File targetLocalDirectory,
+			SftpConnectionSession session, ProgressHandler handler) throws Exception {
+		log.debug("Download the remote directory '{}' with scp into '{}'.", sourceRemoteDirectory,
+				targetLocalDirectory.getAbsolutePath());
+		List<String> badFiles = new ArrayList<>();
+		try {
+			new ScpTransfer(session.session, session.bufferSize).download(sourceRemoteDirectory, targetLocalDirectory, true, handler,
+					this::newChecksum, (remoteFile, localFile, checksum) -> {
+						try {
+							checkFile(checksum, remoteFile, getRemoteChecksum(session, remoteFile, checksum),
+									handler);
+						} catch (ChecksumMismatchException e) {
+							log.warn(e.getMessage());
+							localFile.delete();
+							badFiles.add(remoteFile);
+						}
+					});
+		} catch (ScpTransfer.ScpUnavailableException e) {
+			disableScp(session, e);
+			return false;
+		}
+		for (String remoteFile : badFiles) {
+			String relativePath = remoteFile.substring(sourceRemoteDirectory.length() + 1);
+			File localDirectory = new File(targetLocalDirectory, relativePath).getParentFile();
+			downloadCheckedFile(remoteFile, localDirectory, session, handler);
+		}
+		return true;
+	}
+
+	/**
+	 * Uploads the content of a local directory with a recursive scp. The files
+	 * whose checksum is bad are uploaded again one by one.
+	 * 
+	 * @return false if the server cannot run scp.
+	 */
+	private boolean uploadDirectoryWithScp(File sourceDirectory, String remoteTargetDirectory,
+			SftpConnectionSession session, ProgressHandler handler) throws Exception {
+		log.debug("Upload the local directory '{}' with scp into '{}'.", sourceDirectory.getAbsolutePath(),
+				remoteTargetDirectory);
+		createRemoteDirectory(remoteTargetDirectory, session);
+		List<File> badFiles = new ArrayList<>();
+		try {
+			new ScpTransfer(session.session, session.bufferSize).upload(sourceDirectory, remoteTargetDirectory, handler,
+					this::newChecksum, (remoteFile, localFile, checksum) -> {
+						try {
+							checkFile(checksum, localFile.getAbsolutePath(),
+									getRemoteChecksum(session, remoteFile, checksum), handler);
+						} catch (ChecksumMismatchException e) {
+							log.warn(e.getMessage());
+							badFiles.add(localFile);
+						}
+					});
+		} catch (ScpTransfer.ScpUnavailableException e) {
+			disableScp(session, e);
+			return false;
+		}
+		for (File localFile : badFiles) {
+			String relativePath = sourceDirectory.toPath().relativize(localFile.getParentFile().toPath()).toString()
+					.replace(File.separatorChar, '/');
+			String remoteDirectory = relativePath.isEmpty() ? remoteTargetDirectory
+					: addPathElement(remoteTargetDirectory, relativePath);
+			deleteRemoteFile(addPathElement(remoteDirectory, localFile.getName()), session);
+			uploadCheckedFile(localFile, remoteDirectory, session, handler);
+		}
+		return true;
+	}
+
+	/**
+	 * Downloads a large file by segments. Each segment is a byte range of the
+	 * remote file fetched on its own SFTP channel and written at its position
+	 * in the preallocated local file.
+	 */
+	private void downloadFileInSegments(String remoteSourceFile, SftpATTRS attrs, File localTargetFile,
+			SftpConnectionSession session, ProgressHandler handler) throws Exception {
+		long size = attrs.getSize();
+		// the target is replaced once complete: an interrupted download never
+		// leaves a file of the expected size with holes
+		File partFile = getPartFile(localTargetFile);
+		List<SftpConnectionSession> channels = new ArrayList<>();
+		channels.add(session);
+		boolean success = false;
+		try (RandomAccessFile raf = new RandomAccessFile(partFile, "rw")) {
+			channels.addAll(openChannels(session, getDownloaderProperties().getSftp().getSegments() - 1));
+			raf.setLength(size);
+			FileChannel out = raf.getChannel();
+			long segmentSize = (size + channels.size() - 1) / channels.size();
+			log.debug("Download the SFTP remote file '{}' in {} segments of {} bytes.", remoteSourceFile,
+					channels.size(), segmentSize);
+
+			ParallelProgressHandler progress = new ParallelProgressHandler(handler);
+			progress.start(remoteSourceFile, size);
+			List<Callable<Void>> workers = new ArrayList<>();
+			for (int i = 0; i < channels.size(); i++) {
+				ChannelSftp channel = channels.get(i).sftpChannel;
+				int bufferSize = session.bufferSize;
+				long offset = i * segmentSize;
+				long length = Math.min(segmentSize, size - offset);
+				ProgressHandler workerHandler = progress.newWorkerHandler();
+				workers.add(() -> {
+					downloadSegment(remoteSourceFile, offset, length, channel, out, bufferSize, workerHandler);
+					return null;
+				});
+			}
+			runInParallel(workers, progress, "The download of '" + remoteSourceFile + "'");
+
+			// check the assembled file
+			SftpATTRS newAttrs = session.sftpChannel.stat(remoteSourceFile);
+			if (newAttrs.getSize() != size || newAttrs.getMTime() != attrs.getMTime()) {
+				throw new IOException(
+						"The remote file '" + remoteSourceFile + "' has been modified during the download.");
+			}
+			if (out.size() != size) {
+				throw new IOException("Bad size of the downloaded file '" + localTargetFile.getAbsolutePath() + "': "
+						+ out.size() + " instead of " + size + ".");
+			}
+			raf.close();
+			completePartFile(partFile, localTargetFile);
+			progress.end();
+			success = true;
+		} finally {
+			for (SftpConnectionSession channel : channels) {
+				if (channel != session) {
+					channel.closeOrMarkAsToClose();
+				}
+			}
+			if (!success) {
+				// the segments cannot be resumed
+				partFile.delete();
+			}
+		}
+	}
+
+	/**
+	 * Downloads a byte range of a remote file into the same range of a local
+	 * file.
+	 */
+	private void downloadSegment(String remoteSourceFile, long offset, long length, ChannelSftp channel,
+			FileChannel out, int bufferSize, ProgressHandler handler) throws Exception {
+		handler.start(remoteSourceFile, length);
+		byte[] buffer = new byte[bufferSize];
+		long done = 0;
+		try (InputStream in = channel.get(remoteSourceFile, null, offset)) {
+			while (done < length) {
+				int read = in.read(buffer, 0, (int) Math.min(buffer.length, length - done));
+				if (read < 0) {
+					throw new IOException("Unexpected end of the remote file '" + remoteSourceFile + "' at "
+							+ (offset + done) + ".");
+				}
+				ByteBuffer bb = ByteBuffer.wrap(buffer, 0, read);
+				long position = offset + done;
+				while (bb.hasRemaining()) {
+					position += out.write(bb, position);
+				}
+				done += read;
+				if (!handler.count(done)) {
+					// cancelled
+					return;
+				}
+			}
+		}
+		handler.end();
+	}
+
+	/**
+	 * Downloads the directory content over several SFTP channels opened on the
+	 * same SSH session when the parallel mode is enabled.
+	 */
+	@Override
+	protected void downloadDirectory(String sourceRemoteDirectory, File targetLocalDirectory,
+			ConnectionSession session, DWSyncMode syncMode, ProgressHandler handler) throws Exception {
+		if (isRecursiveScp(session, syncMode) && downloadDirectoryWithScp(sourceRemoteDirectory,
+				targetLocalDirectory, (SftpConnectionSession) session, handler)) {
+			return;
+		}
+		int nbChannels = getParallelChannels();
+		if (nbChannels <= 1) {
+			super.downloadDirectory(sourceRemoteDirectory, targetLocalDirectory, session, syncMode, handler);
+			return;
+		}
+		List<ConnectionSession> workerSessions = new ArrayList<>();
+		workerSessions.add(session);
+		try {
+			workerSessions.addAll(openChannels((SftpConnectionSession) session, nbChannels - 1));
+			downloadDirectoryInParallel(sourceRemoteDirectory, targetLocalDirectory, session, workerSessions,
+					syncMode, handler);
+		} finally {
+			for (ConnectionSession workerSession : workerSessions) {
+				if (workerSession != session) {
+					workerSession.closeOrMarkAsToClose();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Opens additional SFTP channels on the SSH session of a connection
+	 * session. The channels of the nested parallel downloads (the segments of
+	 * the files of a directory) are counted on the same SSH session: less
+	 * channels are returned when the session has reached the maximal number
+	 * of channels, or if the server refuses to open more.
+	 * 
+	 * @return the opened channels which must be closed by the caller.
+	 */
+	private List<SftpConnectionSession> openChannels(SftpConnectionSession session, int nbChannels)
+			throws JSchException {
+		SftpConnectionSession sshSession = session.getSshSession();
+		int reserved = sshSession.reserveChannels(nbChannels, getSftpProperties().getMaxChannels());
+		if (reserved < nbChannels) {
+			log.debug("{} SFTP channels opened instead of {}: the SSH session has {} channels.", reserved,
+					nbChannels, sshSession.extraChannels.get() + 1);
+		}
+		List<SftpConnectionSession> channels = new ArrayList<>();
+		try {
+			for (int i = 0; i < reserved; i++) {
+				ChannelSftp channel = (ChannelSftp) sshSession.session.openChannel("sftp");
+				try {
+					channel.connect();
+				} catch (JSchException e) {
+					// the server may limit the number of channels per session
+					log.warn("The server refuses more SFTP channels on the SSH session: {}", e.getMessage());
+					channel.disconnect();
+					break;
+				}
+				channel.setBulkRequests(session.bulkRequests);
+				channels.add(new SftpChannelSession(sshSession, channel));
+			}
+		} finally {
+			// release the channels not opened
+			sshSession.extraChannels.addAndGet(channels.size() - reserved);
+		}
+		return channels;
+	}
+
+	private int getParallelChannels() {
+		return getDownloaderProperties() == null ? 1 : getDownloaderProperties().getSftp().getParallelChannels();
+	}
+
+	/**
+	 * Uploads the content of a local directory with a recursive scp when the
+	 * SCP mode is enabled.
+	 */
+	@Override
+	protected void uploadDirectory(File sourceDirectory, String remoteTargetDirectory, ConnectionSession session,
+			DWSyncMode syncMode, ProgressHandler handler) throws Exception {
+		if (isRecursiveScp(session, syncMode) && uploadDirectoryWithScp(sourceDirectory, remoteTargetDirectory,
+				(SftpConnectionSession) session, handler)) {
+			return;
+		}
+		super.uploadDirectory(sourceDirectory, remoteTargetDirectory, session, syncMode, handler);
+	}
+
 	@Override
 	protected void uploadFile(File localFile, String remoteTargetDirectory, ConnectionSession session,
 			ProgressHandler handler) throws Exception {
 		log.debug("Upload the local file '{}' into the SFTP remote directory '{}'.", localFile.getAbsolutePath(),
 				remoteTargetDirectory);
 		String remoteName = addPathElement(remoteTargetDirectory, localFile.getName());
+		FileEntry remoteFile = statRemoteFile(session, remoteName);
+		long remoteSize = remoteFile == null ? -1 : remoteFile.getSize();
+		long offset = getResumeOffset(handler, localFile.getAbsolutePath(), localFile.length(), remoteSize,
+				remoteFile == null ? 0 : remoteFile.geLastModified());
+		if (offset != remoteSize) {
+			// the remote file can only be completed from its end
+			offset = 0;
+		}
+		if (offset > 0 && offset == localFile.length()) {
+			skipFile(handler, localFile.getAbsolutePath(), localFile.length());
+			return;
+		}
+		SftpConnectionSession sftpSession = (SftpConnectionSession) session;
+		if (sftpSession.adaptiveCompression) {
+			adaptCompression(sftpSession, Compressibility.isCompressible(localFile));
+		}
+		StreamChecksum checksum = newChecksum();
+		if (checksum != null && offset > 0) {
+			checksum.update(localFile, offset);
+		}
+		if (offset == 0 && sftpSession.scp
+				&& uploadFileWithScp(localFile, remoteTargetDirectory, sftpSession, checksum, handler)) {
+			checkFile(checksum, localFile.getAbsolutePath(), getRemoteChecksum(session, remoteName, checksum),
+					handler);
+			return;
+		}
 		FileInputStream fis = new FileInputStream(localFile);
 		try {
-			((SftpConnectionSession) session).sftpChannel.put(fis, remoteName, new MyProgressMonitor(handler),
-					ChannelSftp.OVERWRITE);
+			// append the missing bytes to the partial remote file
+			fis.getChannel().position(offset);
+			// JSch starts a stream upload with the name "-" and an unknown
+			// size: the file is started here with its real name and size
+			if (handler != null) {
+				handler.start(localFile.getAbsolutePath(), localFile.length());
+			}
+			((SftpConnectionSession) session).sftpChannel.put(
+					wrap(checksum, new BufferedInputStream(fis, sftpSession.bufferSize)), remoteName,
+					new MyProgressMonitor(handler, offset, true),
+					offset > 0 ? ChannelSftp.APPEND : ChannelSftp.OVERWRITE);
 		} finally {
 			fis.close();
 		}
+		checkFile(checksum, localFile.getAbsolutePath(), getRemoteChecksum(session, remoteName, checksum), handler);
+	}
+
+	/**
+	 * Computes the checksum of a remote file with the md5sum, sha1sum,
+	 * sha256sum... command over an exec channel. The commands are not tried
+	 * again on a session where they are missing or where the exec channels are
+	 * refused, for example on a server accepting SFTP only.
+	 */
+	@Override
+	protected String computeRemoteChecksum(ConnectionSession session, String path, String algorithm)
+			throws Exception {
+		SftpConnectionSession sftpSession = (SftpConnectionSession) session;
+		String command = HASH_COMMANDS.get(algorithm);
+		if (command == null || sftpSession.noHashCommand || sftpSession.noExecChannel) {
+			return null;
+		}
+		ChannelExec channel;
+		BufferedReader reader;
+		try {
+			channel = (ChannelExec) sftpSession.session.openChannel("exec");
+			channel.setCommand(command + " " + shellQuote(path));
+			reader = new BufferedReader(new InputStreamReader(channel.getInputStream(), "UTF-8"));
+			channel.connect();
+		} catch (JSchException e) {
+			log.debug("The exec channels are refused, no remote checksum: {}", e.getMessage());
+			sftpSession.noExecChannel = true;
+			return null;
+		}
+		try {
+			// the output is "<checksum>  <path>"
+			String line = reader.readLine();
+			while (reader.readLine() != null) {
+				// wait for the end of the command
+			}
+			int status = waitForExitStatus(channel);
+			String value = line == null ? "" : line.trim().split("\\s+")[0];
+			if (status == 126 || status == 127) {
+				log.debug("The command '{}' is not available.", command);
+				sftpSession.noHashCommand = true;
+				return null;
+			}
+			if (status != 0 || !value.matches("[0-9a-fA-F]+")) {
+				log.debug("The command '{}' failed on '{}' ({}): {}", command, path, status, line);
+				return null;
+			}
+			return algorithm + ":" + value.toLowerCase(Locale.ROOT);
+		} finally {
+			channel.disconnect();
+		}
+	}
+
+	/**
+	 * @return the exit status of a command whose output has been read.
+	 */
+	private static int waitForExitStatus(ChannelExec channel) throws InterruptedIOException {
+		while (!channel.isClosed()) {
+			try {
+				Thread.sleep(10);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("The remote command has been cancelled.");
+			}
+		}
+		return channel.getExitStatus();
+	}
+
+	/**
+	 * Copies a file or a directory on the server with cp over an exec
+	 * channel, so the data do not go through the network. The server is
+	 * assumed to run a POSIX shell with mkdir and cp: it is not probed
+	 * beforehand. A server refusing the exec channels, e.g. accepting SFTP
+	 * only, or failing the command makes the copy fail with an IOException,
+	 * and the transfert falls back on moving the data. A session where the
+	 * exec channels have been refused does not try them again.
+	 */
+	@Override
+	public void copy(ConnectionSession session, DWFileInfo source, DWFileInfo target, ProgressHandler handler)
+			throws Exception {
+		log.info("Copying '{}' to '{}' on the server ...", source.getPath(), target.getPath());
+		SftpConnectionSession sftpSession = (SftpConnectionSession) session;
+		if (sftpSession.noExecChannel) {
+			throw new IOException("The server refuses the commands, no server-side copy.");
+		}
+		session.used();
+		try {
+			FileEntry entry = stat(session, source.getPath());
+			if (entry == null) {
+				throw new FileNotFoundException(source.getPath());
+			}
+			long size = entry.isDir() ? 0 : entry.getSize();
+			ChannelExec channel;
+			BufferedReader errors;
+			try {
+				channel = (ChannelExec) sftpSession.session.openChannel("exec");
+				channel.setCommand("mkdir -p -- " + shellQuote(target.getPath()) + " && cp -R -- "
+						+ shellQuote(source.getPath()) + " " + shellQuote(target.getPath() + "/"));
+				errors = new BufferedReader(new InputStreamReader(channel.getErrStream(), "UTF-8"));
+				channel.connect();
+			} catch (JSchException e) {
+				sftpSession.noExecChannel = true;
+				throw new IOException("The server refuses the copy command: " + e.getMessage(), e);
+			}
+			try {
+				StringBuilder message = new StringBuilder();
+				String line;
+				while ((line = errors.readLine()) != null) {
+					message.append(line).append(' ');
+				}
+				int status;
+				try {
+					status = waitForExitStatus(channel);
+				} catch (InterruptedIOException e) {
+					throw new InterruptedIOException("The copy of '" + source.getPath() + "' has been cancelled.");
+				}
+				if (status != 0) {
+					throw new IOException("The copy of '" + source.getPath() + "' into '" + target.getPath()
+							+ "' failed with the status " + status + ": " + message.toString().trim());
+				}
+			} finally {
+				channel.disconnect();
+			}
+			if (handler != null) {
+				// the data have not gone through this server: not throttled
+				handler.skip(source.getPath(), size);
+			}
+		} finally {
+			session.unused();
+		}
+	}
+
+	/**
+	 * @return the path quoted for the shell of the server.
+	 */
+	static String shellQuote(String path) {
+		return "'" + path.replace("'", "'\\''") + "'";
+	}
+
+	@Override
+	protected InputStream openRemoteInputStream(String remoteSourceFile, ConnectionSession session)
+			throws Exception {
+		log.debug("Open the SFTP remote file '{}' for reading.", remoteSourceFile);
+		return ((SftpConnectionSession) session).sftpChannel.get(remoteSourceFile);
+	}
+
+	@Override
+	protected OutputStream openRemoteOutputStream(String remoteTargetFile, ConnectionSession session)
+			throws Exception {
+		log.debug("Open the SFTP remote file '{}' for writing.", remoteTargetFile);
+		return ((SftpConnectionSession) session).sftpChannel.put(remoteTargetFile, ChannelSftp.OVERWRITE);
+	}
+
+	@Override
+	protected void deleteRemoteFile(String remoteFile, ConnectionSession session) throws Exception {
+		((SftpConnectionSession) session).sftpChannel.rm(remoteFile);
+	}
+
+	@Override
+	protected void deleteRemoteDirectory(String remoteDirectory, ConnectionSession session) throws Exception {
+		((SftpConnectionSession) session).sftpChannel.rmdir(remoteDirectory);
 	}
 
 	@Override
@@ -115,10 +856,9 @@ public class SshService extends AbstractConnectionServiceImpl {
 
 	@Override
 	protected void createRemoteDirectory(String directory, ConnectionSession session) throws Exception {
-		try {
-			((SftpConnectionSession) session).sftpChannel.stat(directory);
+		if (stat(session, directory) != null) {
 			log.debug("Directory '{}' already exists.", directory);
-		} catch (Exception e) {
+		} else {
 			log.debug("Creating unexisting directory '{}' ", directory);
 			((SftpConnectionSession) session).sftpChannel.mkdir(directory);
 		}
@@ -151,12 +891,59 @@ public class SshService extends AbstractConnectionServiceImpl {
 class SftpConnectionSession extends ConnectionSession {
 	protected Session session;
 	protected ChannelSftp sftpChannel;
+	/** True when the server cannot compute the checksums. */
+	protected volatile boolean noHashCommand = false;
+	/** True when the server refuses the exec channels. */
+	protected volatile boolean noExecChannel = false;
+	/** The size of the local buffers. */
+	protected int bufferSize = 32 * 1024;
+	/** The number of SFTP requests sent without waiting for their responses. */
+	protected int bulkRequests = 16;
+	/** True to transfer the files with scp instead of SFTP. */
+	protected volatile boolean scp = false;
+	/** True when the SSH session is compressed. */
+	protected volatile boolean compressed = false;
+	/** True to compress only the compressible files. */
+	protected volatile boolean adaptiveCompression = false;
+	/** The number of additional SFTP channels opened on the SSH session. */
+	protected final AtomicInteger extraChannels = new AtomicInteger();
 
 	public SftpConnectionSession(Session session, ChannelSftp sftpChannel) {
 		this.session = session;
 		this.sftpChannel = sftpChannel;
 	}
 
+	/**
+	 * @return the connection session owning the SSH session, which counts
+	 *         the additional channels.
+	 */
+	SftpConnectionSession getSshSession() {
+		return this;
+	}
+
+	/**
+	 * Reserves additional channels on the SSH session.
+	 * 
+	 * @param maxChannels
+	 *            is the maximal number of channels of the SSH session,
+	 *            including the channel of this session.
+	 * @return the number of reserved channels, between 0 and nbChannels.
+	 */
+	int reserveChannels(int nbChannels, int maxChannels) {
+		while (true) {
+			int current = extraChannels.get();
+			int reserved = Math.max(0, Math.min(nbChannels, maxChannels - 1 - current));
+			if (reserved == 0 || extraChannels.compareAndSet(current, current + reserved)) {
+				return reserved;
+			}
+		}
+	}
+
+	@Override
+	public boolean isValid() {
+		return session != null && session.isConnected() && sftpChannel != null && sftpChannel.isConnected();
+	}
+
 	@Override
 	protected void forceClose() {
 		try {
@@ -176,23 +963,80 @@ class SftpConnectionSession extends ConnectionSession {
 	}
 }
 
+/**
+ * An additional SFTP channel opened on the SSH session of another connection
+ * session. Closing it does not close the SSH session.
+ */
+class SftpChannelSession extends SftpConnectionSession {
+	private final SftpConnectionSession parent;
+	private final AtomicBoolean closed = new AtomicBoolean();
+
+	/**
+	 * @param parent
+	 *            is the session owning the SSH session, on which the channel
+	 *            has been reserved.
+	 */
+	public SftpChannelSession(SftpConnectionSession parent, ChannelSftp sftpChannel) {
+		super(parent.session, sftpChannel);
+		this.parent = parent;
+		this.scp = parent.scp;
+		this.bufferSize = parent.bufferSize;
+		this.bulkRequests = parent.bulkRequests;
+	}
+
+	@Override
+	SftpConnectionSession getSshSession() {
+		return parent;
+	}
+
+	@Override
+	protected void forceClose() {
+		try {
+			sftpChannel.disconnect();
+		} catch (Throwable t) {
+			SshService.log.warn("Error when closing SFTP channel: " + t.getMessage(), t);
+		} finally {
+			if (closed.compareAndSet(false, true)) {
+				parent.extraChannels.decrementAndGet();
+			}
+		}
+	}
+}
+
 class MyProgressMonitor implements SftpProgressMonitor {
 	private ProgressHandler handler;
+	/** The number of bytes already transfered before the start. */
+	private long offset;
+	/**
+	 * True if the file has already been started on the handler: the name and
+	 * the size given by JSch are ignored.
+	 */
+	private boolean started;
+	/** JSch gives the number of bytes of each chunk. */
+	private long total = 0;
 
 	public MyProgressMonitor(ProgressHandler handler) {
+		this(handler, 0, false);
+	}
+
+	public MyProgressMonitor(ProgressHandler handler, long offset, boolean started) {
 		this.handler = handler;
+		this.offset = offset;
+		this.started = started;
 	}
 
 	@Override
 	public void init(int op, String src, String dest, long max) {
-		if (handler != null) {
+		total = offset;
+		if (handler != null && !started) {
 			handler.start(src, max);
 		}
 	}
 
 	@Override
 	public boolean count(long count) {
-		return handler != null && handler.count(count);
+		total += count;
+		return handler == null || handler.count(total);
 	}
 
 	@Override
@@ -237,6 +1081,42 @@ class SftpFileEntry implements FileEntry {
 	}
 }
 
+/**
+ * Defines a file descriptor from the Sftp attributes of a single path.
+ * 
+ * @author S.Chassande
+ */
+class SftpAttrsFileEntry implements FileEntry {
+
+	private String filename;
+	private SftpATTRS attrs;
+
+	public SftpAttrsFileEntry(String filename, SftpATTRS attrs) {
+		this.filename = filename;
+		this.attrs = attrs;
+	}
+
+	@Override
+	public String getFilename() throws IOException {
+		return filename;
+	}
+
+	@Override
+	public boolean isDir() throws IOException {
+		return attrs.isDir();
+	}
+
+	@Override
+	public long getSize() throws IOException {
+		return attrs.getSize();
+	}
+
+	@Override
+	public long geLastModified() throws IOException {
+		return attrs.getMTime() * 1000l;
+	}
+}
+
 /**
  * Holds user secret information.
  * 
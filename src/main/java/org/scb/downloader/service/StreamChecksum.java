@@ -0,0 +1,216 @@
+package org.scb.downloader.service;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+/**
+ * A checksum computed on the bytes of a file while they are transfered, so
+ * that the file is not read again. The algorithm is CRC32 or a
+ * {@link MessageDigest} algorithm (MD5, SHA-1, SHA-256...).
+ *
+ * A checksum is written as "ALGORITHM:hexadecimal value".
+ *
+ * @author S.Chassande
+ */
+public class StreamChecksum {
+
+	/** The name of the configuration disabling the checksums. */
+	public static final String NONE = "NONE";
+
+	public static final String CRC32 = "CRC32";
+
+	private final String algorithm;
+
+	private final MessageDigest digest;
+
+	private final CRC32 crc;
+
+	private StreamChecksum(String algorithm, MessageDigest digest, CRC32 crc) {
+		this.algorithm = algorithm;
+		this.digest = digest;
+		this.crc = crc;
+	}
+
+	/**
+	 * Creates a checksum.
+	 *
+	 * @param algorithm
+	 *            is the name of the algorithm.
+	 * @return the new checksum, null if the algorithm is null or NONE.
+	 * @throws IllegalArgumentException
+	 *             if the algorithm is unknown.
+	 */
+	public static StreamChecksum create(String algorithm) {
+		if (algorithm == null || algorithm.trim().isEmpty() || NONE.equalsIgnoreCase(algorithm.trim())) {
+			return null;
+		}
+		String name = algorithm.trim().toUpperCase(Locale.ROOT);
+		if (CRC32.equals(name)) {
+			return new StreamChecksum(name, null, new CRC32());
+		}
+		try {
+			return new StreamChecksum(name, MessageDigest.getInstance(name), null);
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalArgumentException("Unknown checksum algorithm: " + algorithm, e);
+		}
+	}
+
+	public String getAlgorithm() {
+		return algorithm;
+	}
+
+	public void update(byte[] b, int off, int len) {
+		if (digest != null) {
+			digest.update(b, off, len);
+		} else {
+			crc.update(b, off, len);
+		}
+	}
+
+	/**
+	 * Adds the beginning of a local file, already transfered by a previous
+	 * attempt.
+	 *
+	 * @param length
+	 *            is the number of bytes to read.
+	 */
+	public void update(File file, long length) throws IOException {
+		byte[] buffer = new byte[64 * 1024];
+		long done = 0;
+		try (InputStream in = new FileInputStream(file)) {
+			while (done < length) {
+				int read = in.read(buffer, 0, (int) Math.min(buffer.length, length - done));
+				if (read < 0) {
+					throw new IOException("Unexpected end of the file '" + file.getAbsolutePath() + "'.");
+				}
+				update(buffer, 0, read);
+				done += read;
+			}
+		}
+	}
+
+	/**
+	 * @return the value in hexadecimal. The checksum must not be used after.
+	 */
+	public String getHex() {
+		if (digest != null) {
+			return toHex(digest.digest());
+		}
+		return String.format("%08x", crc.getValue());
+	}
+
+	/**
+	 * @return the checksum as "ALGORITHM:value". The checksum must not be used
+	 *         after.
+	 */
+	@Override
+	public String toString() {
+		return algorithm + ":" + getHex();
+	}
+
+	/**
+	 * @return a stream adding the read bytes to the checksum.
+	 */
+	public InputStream wrap(InputStream in) {
+		return new FilterInputStream(in) {
+			@Override
+			public int read() throws IOException {
+				int b = super.read();
+				if (b >= 0) {
+					update(new byte[] { (byte) b }, 0, 1);
+				}
+				return b;
+			}
+
+			@Override
+			public int read(byte[] b, int off, int len) throws IOException {
+				int read = super.read(b, off, len);
+				if (read > 0) {
+					update(b, off, read);
+				}
+				return read;
+			}
+
+			@Override
+			public long skip(long n) throws IOException {
+				throw new IOException("A checksummed stream cannot skip bytes.");
+			}
+		};
+	}
+
+	/**
+	 * @return a stream adding the written bytes to the checksum.
+	 */
+	public OutputStream wrap(OutputStream out) {
+		return new FilterOutputStream(out) {
+			@Override
+			public void write(int b) throws IOException {
+				out.write(b);
+				update(new byte[] { (byte) b }, 0, 1);
+			}
+
+			@Override
+			public void write(byte[] b, int off, int len) throws IOException {
+				out.write(b, off, len);
+				update(b, off, len);
+			}
+		};
+	}
+
+	/**
+	 * Combines the checksums of several files into the checksum of the set:
+	 * the paths and the checksums, sorted by path, are hashed with the
+	 * algorithm of the files. So the result does not depend on the transfer
+	 * order, and the checksum of a single file is the checksum of the set.
+	 *
+	 * @param checksums
+	 *            are the checksums of the files by path. A null checksum is
+	 *            an unknown one.
+	 * @return the checksum of the files, null if a checksum is unknown or if
+	 *         the algorithms differ.
+	 */
+	public static String combine(Map<String, String> checksums) {
+		SortedMap<String, String> sorted = new TreeMap<>(checksums);
+		if (sorted.isEmpty() || sorted.containsValue(null)) {
+			return null;
+		}
+		if (sorted.size() == 1) {
+			return sorted.get(sorted.firstKey());
+		}
+		String first = sorted.get(sorted.firstKey());
+		String algorithm = first.substring(0, Math.max(0, first.indexOf(':')));
+		StreamChecksum total = create(algorithm);
+		if (total == null) {
+			return null;
+		}
+		for (Map.Entry<String, String> entry : sorted.entrySet()) {
+			if (!entry.getValue().startsWith(algorithm + ":")) {
+				return null;
+			}
+			byte[] line = (entry.getKey() + '\0' + entry.getValue() + '\n').getBytes(StandardCharsets.UTF_8);
+			total.update(line, 0, line.length);
+		}
+		return total.toString();
+	}
+
+	private static String toHex(byte[] bytes) {
+		StringBuilder sb = new StringBuilder(bytes.length * 2);
+		for (byte b : bytes) {
+			sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,195 @@
+package org.scb.downloader.service;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Relays the content of an input stream into an output stream through a
+ * bounded in-memory ring buffer. The input stream is read by a dedicated thread
+ * while the calling thread writes into the output stream, so the download and
+ * the upload legs run at the same time.
+ *
+ * @author S.Chassande
+ */
+public class StreamRelay implements Closeable {
+
+	private final byte[] buffer;
+
+	/** The thread reading the input streams. */
+	private final ExecutorService reader;
+
+	/** The index of the first byte to write in the output stream. */
+	private int head;
+	/** The number of bytes read and not yet written. */
+	private int size;
+	/** True when the end of the input stream has been reached. */
+	private boolean eof;
+	/** True when the writer gives up. */
+	private boolean aborted;
+	/** The error raised when reading the input stream. */
+	private IOException readError;
+
+	/**
+	 * @param name
+	 *            is the name of the reading thread.
+	 * @param bufferSize
+	 *            is the size of the ring buffer.
+	 */
+	public StreamRelay(String name, int bufferSize) {
+		this.buffer = new byte[bufferSize];
+		this.reader = Executors.newSingleThreadExecutor(r -> {
+			Thread t = new Thread(r, name);
+			t.setDaemon(true);
+			return t;
+		});
+	}
+
+	/**
+	 * Relays the whole content of an input stream into an output stream. The
+	 * streams are not closed. The relay cannot be used again after a failure.
+	 *
+	 * @param in
+	 *            is the source stream.
+	 * @param out
+	 *            is the target stream.
+	 * @param handler
+	 *            is notified of the number of written bytes, can be null.
+	 * @return the number of relayed bytes.
+	 * @throws IOException
+	 *             if a problem occurs on one of the streams.
+	 */
+	public long relay(InputStream in, OutputStream out, ProgressHandler handler) throws IOException {
+		synchronized (this) {
+			head = 0;
+			size = 0;
+			eof = false;
+			aborted = false;
+			readError = null;
+		}
+		Future<?> filling = reader.submit(() -> fill(in));
+		long total = 0;
+		try {
+			int n;
+			while ((n = drain(out)) >= 0) {
+				total += n;
+				if (handler != null && !handler.count(total)) {
+					throw new IOException("Transfert cancelled.");
+				}
+			}
+			out.flush();
+		} catch (IOException | RuntimeException e) {
+			// do not wait for a reader blocked on the source stream
+			abort();
+			filling.cancel(true);
+			throw e;
+		}
+		try {
+			filling.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Relay interrupted.");
+		} catch (ExecutionException e) {
+			throw new IOException("Error when reading the source: " + e.getMessage(), e);
+		}
+		return total;
+	}
+
+	/**
+	 * Reads the input stream into the free part of the ring buffer until the
+	 * end of the stream.
+	 */
+	private void fill(InputStream in) {
+		try {
+			while (true) {
+				int tail;
+				int free;
+				synchronized (this) {
+					while (size == buffer.length && !aborted) {
+						wait();
+					}
+					if (aborted) {
+						return;
+					}
+					tail = (head + size) % buffer.length;
+					free = Math.min(buffer.length - size, buffer.length - tail);
+				}
+				// the free region is not accessed by the writer
+				int n = in.read(buffer, tail, free);
+				synchronized (this) {
+					if (n < 0) {
+						eof = true;
+						notifyAll();
+						return;
+					}
+					size += n;
+					notifyAll();
+				}
+			}
+		} catch (IOException e) {
+			synchronized (this) {
+				readError = e;
+				notifyAll();
+			}
+		} catch (InterruptedException e) {
+			synchronized (this) {
+				readError = new InterruptedIOException("Relay interrupted.");
+				notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * Writes the next contiguous available part of the ring buffer into the
+	 * output stream.
+	 *
+	 * @return the number of written bytes, -1 at the end of the input stream.
+	 */
+	private int drain(OutputStream out) throws IOException {
+		int from;
+		int n;
+		synchronized (this) {
+			try {
+				while (size == 0 && !eof && readError == null) {
+					wait();
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Relay interrupted.");
+			}
+			if (readError != null) {
+				throw new IOException("Error when reading the source: " + readError.getMessage(), readError);
+			}
+			if (size == 0) {
+				return -1;
+			}
+			from = head;
+			n = Math.min(size, buffer.length - head);
+		}
+		// the available region is not accessed by the reader
+		out.write(buffer, from, n);
+		synchronized (this) {
+			head = (head + n) % buffer.length;
+			size -= n;
+			notifyAll();
+		}
+		return n;
+	}
+
+	private synchronized void abort() {
+		aborted = true;
+		notifyAll();
+	}
+
+	@Override
+	public void close() {
+		abort();
+		reader.shutdownNow();
+	}
+}
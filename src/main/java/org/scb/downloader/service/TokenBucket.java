@@ -0,0 +1,90 @@
+package org.scb.downloader.service;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A token bucket limiting a flow of bytes to a rate. The bucket holds at most
+ * one second of tokens. A consumer takes the tokens of the bytes it has
+ * transfered and may get in debt: it must then wait until the debt is paid
+ * back at the rate of the bucket. So the consumers are served in order and
+ * without polling.
+ *
+ * @author S.Chassande
+ */
+public class TokenBucket {
+
+	/** The rate in bytes per second, 0 or less means no limit. */
+	private long rate;
+
+	/** The available tokens, negative when the bucket is in debt. */
+	private double tokens;
+
+	/** The last time the tokens have been computed, in nanoseconds. */
+	private long lastRefill;
+
+	public TokenBucket(long rate) {
+		this.rate = rate;
+		this.tokens = Math.max(0, rate);
+		this.lastRefill = nanoTime();
+	}
+
+	/**
+	 * Takes tokens from the bucket.
+	 *
+	 * @param bytes
+	 *            is the number of transfered bytes.
+	 * @return the delay in nanoseconds the caller must wait for, 0 if the
+	 *         tokens were available.
+	 */
+	public synchronized long reserve(long bytes) {
+		if (rate <= 0) {
+			return 0;
+		}
+		refill();
+		tokens -= bytes;
+		return tokens >= 0 ? 0 : (long) (-tokens * 1000000000d / rate);
+	}
+
+	/**
+	 * Takes tokens from the bucket and waits until they are available.
+	 *
+	 * @param bytes
+	 *            is the number of transfered bytes.
+	 */
+	public void acquire(long bytes) throws InterruptedException {
+		long delay = reserve(bytes);
+		if (delay > 0) {
+			TimeUnit.NANOSECONDS.sleep(delay);
+		}
+	}
+
+	public synchronized long getRate() {
+		return rate;
+	}
+
+	/**
+	 * Changes the rate. The debt of the bucket is kept.
+	 */
+	public synchronized void setRate(long rate) {
+		if (rate != this.rate) {
+			refill();
+			this.rate = rate;
+			tokens = Math.min(tokens, Math.max(0, rate));
+		}
+	}
+
+	private void refill() {
+		long now = nanoTime();
+		if (rate > 0) {
+			tokens = Math.min(rate, tokens + (now - lastRefill) * rate / 1000000000d);
+		}
+		lastRefill = now;
+	}
+
+	/**
+	 * @return the current time in nanoseconds.
+	 */
+	protected long nanoTime() {
+		return System.nanoTime();
+	}
+}
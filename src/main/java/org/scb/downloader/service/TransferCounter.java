@@ -0,0 +1,144 @@
+package org.scb.downloader.service;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+
+/**
+ * Counts the bytes of a file while they go through a stream, and gives them
+ * to a {@link ProgressHandler}, for the protocols without progress callback.
+ * The rate of the transfert is measured between the start and the end.
+ *
+ * @author S.Chassande
+ */
+public class TransferCounter {
+
+	private final ProgressHandler handler;
+
+	private final String file;
+
+	/** The number of bytes already transfered before the start. */
+	private final long offset;
+
+	private long transfered = 0;
+
+	private long startTime;
+
+	private long duration = -1;
+
+	/**
+	 * @param handler
+	 *            receives the progress, can be null.
+	 * @param file
+	 *            is the name of the transfered file.
+	 * @param offset
+	 *            is the number of bytes already transfered by a previous
+	 *            attempt.
+	 */
+	public TransferCounter(ProgressHandler handler, String file, long offset) {
+		this.handler = handler;
+		this.file = file;
+		this.offset = offset;
+	}
+
+	/**
+	 * Starts the counting.
+	 *
+	 * @param size
+	 *            is the size of the whole file.
+	 */
+	public void start(long size) {
+		startTime = System.nanoTime();
+		if (handler != null) {
+			handler.start(file, size);
+		}
+	}
+
+	/**
+	 * Adds transfered bytes.
+	 *
+	 * @throws InterruptedIOException
+	 *             if the handler cancels the transfert.
+	 */
+	public void count(int length) throws InterruptedIOException {
+		transfered += length;
+		if (handler != null && !handler.count(offset + transfered)) {
+			throw new InterruptedIOException("The transfert of '" + file + "' has been cancelled.");
+		}
+	}
+
+	/**
+	 * Ends the counting.
+	 */
+	public void end() {
+		duration = System.nanoTime() - startTime;
+		if (handler != null) {
+			handler.end();
+		}
+	}
+
+	/**
+	 * @return the number of bytes transfered since the start.
+	 */
+	public long getTransfered() {
+		return transfered;
+	}
+
+	/**
+	 * @return the number of bytes per second between the start and the end,
+	 *         -1 if the counting is not ended.
+	 */
+	public long getRate() {
+		if (duration < 0) {
+			return -1;
+		}
+		return duration == 0 ? transfered : transfered * 1000000000L / duration;
+	}
+
+	/**
+	 * @return a stream counting the read bytes.
+	 */
+	public InputStream wrap(InputStream in) {
+		return new FilterInputStream(in) {
+			@Override
+			public int read() throws IOException {
+				int b = super.read();
+				if (b >= 0) {
+					count(1);
+				}
+				return b;
+			}
+
+			@Override
+			public int read(byte[] b, int off, int len) throws IOException {
+				int read = super.read(b, off, len);
+				if (read > 0) {
+					count(read);
+				}
+				return read;
+			}
+		};
+	}
+
+	/**
+	 * @return a stream counting the written bytes.
+	 */
+	public OutputStream wrap(OutputStream out) {
+		return new FilterOutputStream(out) {
+			@Override
+			public void write(int b) throws IOException {
+				out.write(b);
+				count(1);
+			}
+
+			@Override
+			public void write(byte[] b, int off, int len) throws IOException {
+				out.write(b, off, len);
+				count(len);
+			}
+		};
+	}
+}
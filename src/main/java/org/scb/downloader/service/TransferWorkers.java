@@ -0,0 +1,129 @@
+package org.scb.downloader.service;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.scb.downloader.config.DownloaderProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+/**
+ * The threads shared by the files and the segments transfered in parallel.
+ * The pool is bounded and has no queue: when all its threads are busy, a
+ * worker runs in the thread submitting it. So the nested parallel transferts
+ * (the segments of a file of a directory) never wait for a thread held by
+ * their parent.
+ *
+ * @author S.Chassande
+ */
+@Service
+public class TransferWorkers {
+
+	/** Logger */
+	protected static final Logger log = LoggerFactory.getLogger(TransferWorkers.class);
+
+	/** The workers of the services created without the application context. */
+	private static TransferWorkers defaultWorkers;
+
+	@Autowired
+	private DownloaderProperties downloaderProperties;
+
+	private ThreadPoolExecutor executor;
+
+	/**
+	 * @return the workers used when the services are not created by the
+	 *         application context.
+	 */
+	static synchronized TransferWorkers getDefault() {
+		if (defaultWorkers == null) {
+			defaultWorkers = new TransferWorkers();
+			defaultWorkers.downloaderProperties = new DownloaderProperties();
+			defaultWorkers.init();
+		}
+		return defaultWorkers;
+	}
+
+	@PostConstruct
+	public void init() {
+		int threads = Math.max(1, downloaderProperties.getTransfert().getWorkerThreads());
+		AtomicInteger threadIndex = new AtomicInteger();
+		executor = new ThreadPoolExecutor(0, threads, 60, TimeUnit.SECONDS, new SynchronousQueue<>(), r -> {
+			Thread t = new Thread(r, "downloader-worker-" + threadIndex.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		}, new ThreadPoolExecutor.CallerRunsPolicy());
+		log.debug("{} threads for the parallel transferts.", threads);
+	}
+
+	@PreDestroy
+	public void destroy() {
+		executor.shutdownNow();
+	}
+
+	/**
+	 * Runs workers concurrently and waits for their end. When a worker fails,
+	 * the other workers are cancelled through the progress handler.
+	 *
+	 * @param workers
+	 *            are the workers to run.
+	 * @param progress
+	 *            is the progress handler shared by the workers.
+	 * @param description
+	 *            describes the work for the error messages.
+	 * @throws Exception
+	 *             the first error of the workers, or an IOException if the
+	 *             work has been cancelled.
+	 */
+	void runInParallel(List<Callable<Void>> workers, ParallelProgressHandler progress, String description)
+			throws Exception {
+		List<Future<Void>> futures = new ArrayList<>();
+		for (Callable<Void> worker : workers) {
+			futures.add(executor.submit(() -> {
+				try {
+					return worker.call();
+				} catch (Exception e) {
+					// stop the other workers
+					progress.cancel();
+					throw e;
+				}
+			}));
+		}
+		Exception error = null;
+		for (Future<Void> future : futures) {
+			try {
+				future.get();
+			} catch (ExecutionException e) {
+				if (error == null) {
+					error = e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+				}
+			}
+		}
+		if (error != null) {
+			throw error;
+		}
+		if (progress.isCancelled()) {
+			throw new IOException(description + " has been cancelled.");
+		}
+	}
+
+	public DownloaderProperties getDownloaderProperties() {
+		return downloaderProperties;
+	}
+
+	public void setDownloaderProperties(DownloaderProperties downloaderProperties) {
+		this.downloaderProperties = downloaderProperties;
+	}
+}
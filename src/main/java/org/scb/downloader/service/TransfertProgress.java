@@ -0,0 +1,132 @@
+package org.scb.downloader.service;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.scb.downloader.domain.DWTransfert;
+
+/**
+ * The progress of a running transfert. It is updated by the transfert threads
+ * without lock and written periodically in the database by the
+ * {@link TransfertProgressRegistry}.
+ *
+ * @author S.Chassande
+ */
+public class TransfertProgress {
+
+	private final Long transfertId;
+
+	private volatile long fileSize;
+
+	private volatile long downloaded;
+
+	private volatile String resumeFile;
+
+	private volatile long resumeOffset;
+
+	private volatile String resumeValidator;
+
+	private final AtomicReference<String> downloadedFiles;
+
+	/** True when the progress has changed since the last flush. */
+	private final AtomicBoolean dirty = new AtomicBoolean(false);
+
+	public TransfertProgress(DWTransfert transfert) {
+		this.transfertId = transfert.getId();
+		this.fileSize = transfert.getFileSize() == null ? 0 : transfert.getFileSize();
+		this.downloaded = transfert.getDownloaded() == null ? 0 : transfert.getDownloaded();
+		this.resumeFile = transfert.getResumeFile();
+		this.resumeOffset = transfert.getResumeOffset() == null ? 0 : transfert.getResumeOffset();
+		this.resumeValidator = transfert.getResumeValidator();
+		this.downloadedFiles = new AtomicReference<>(transfert.getDownloadedFiles());
+	}
+
+	/**
+	 * A new file is transfered.
+	 *
+	 * @param file
+	 *            is the name of the file.
+	 * @param fileSize
+	 *            is the size of all files started by the transfert.
+	 */
+	public void fileStarted(String file, long fileSize) {
+		this.fileSize = fileSize;
+		this.resumeFile = file;
+		this.resumeOffset = 0;
+		this.resumeValidator = null;
+		downloadedFiles.updateAndGet(files -> files == null ? file : files + ", " + file);
+		dirty.set(true);
+	}
+
+	/**
+	 * Data of the current file has been transfered.
+	 *
+	 * @param downloaded
+	 *            is the number of bytes transfered by the transfert.
+	 * @param resumeOffset
+	 *            is the number of bytes of the current file transfered.
+	 */
+	public void progress(long downloaded, long resumeOffset) {
+		this.downloaded = downloaded;
+		this.resumeOffset = resumeOffset;
+		dirty.set(true);
+	}
+
+	/**
+	 * The version of the current file is known.
+	 *
+	 * @param resumeValidator
+	 *            is the ETag or the Last-Modified date of the remote file.
+	 */
+	public void validator(String resumeValidator) {
+		this.resumeValidator = resumeValidator;
+		dirty.set(true);
+	}
+
+	/**
+	 * Copies the progress into the transfert entity.
+	 */
+	public void applyTo(DWTransfert transfert) {
+		transfert.setFileSize(fileSize);
+		transfert.setDownloaded(downloaded);
+		transfert.setResumeFile(resumeFile);
+		transfert.setResumeOffset(resumeOffset);
+		transfert.setResumeValidator(resumeValidator);
+		transfert.setDownloadedFiles(downloadedFiles.get());
+	}
+
+	/**
+	 * @return true if the progress has changed since the last call.
+	 */
+	boolean clearDirty() {
+		return dirty.getAndSet(false);
+	}
+
+	public Long getTransfertId() {
+		return transfertId;
+	}
+
+	public long getFileSize() {
+		return fileSize;
+	}
+
+	public long getDownloaded() {
+		return downloaded;
+	}
+
+	public String getResumeFile() {
+		return resumeFile;
+	}
+
+	public long getResumeOffset() {
+		return resumeOffset;
+	}
+
+	public String getResumeValidator() {
+		return resumeValidator;
+	}
+
+	public String getDownloadedFiles() {
+		return downloadedFiles.get();
+	}
+}
@@ -0,0 +1,152 @@
+package org.scb.downloader.service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.scb.downloader.domain.DWTransfert;
+import org.scb.downloader.domain.enumeration.TransfertStatus;
+import org.scb.downloader.service.bo.TransfertProgressDelta;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+/**
+ * Pushes the progress of the transferts to the web clients with server-sent
+ * events. The progress is read from the {@link TransfertProgressRegistry}
+ * and the changes are coalesced: at each interval, a single event gives the
+ * transferts having progressed or changed of status since the previous event.
+ *
+ * @author S.Chassande
+ */
+@Service
+public class TransfertProgressPublisher {
+
+	/** Logger */
+	protected static final Logger log = LoggerFactory.getLogger(TransfertProgressPublisher.class);
+
+	/** The delay after which a client must subscribe again (30 min). */
+	private static final long SUBSCRIPTION_TIMEOUT = 30 * 60 * 1000l;
+
+	@Autowired
+	private TransfertProgressRegistry progressRegistry;
+
+	/** The subscribed clients. */
+	private final List<SseEmitter> emitters = new CopyOnWriteArrayList<>();
+
+	/** The status changes not pushed yet by transfert identifier. */
+	private final ConcurrentMap<Long, TransfertProgressDelta> statusChanges = new ConcurrentHashMap<>();
+
+	/** The last pushed progress by transfert identifier. Guarded by this. */
+	private final Map<Long, PushedProgress> pushed = new HashMap<>();
+
+	/**
+	 * Subscribes a new client.
+	 *
+	 * @return the emitter of the events sent to the client.
+	 */
+	public SseEmitter subscribe() {
+		SseEmitter emitter = new SseEmitter(SUBSCRIPTION_TIMEOUT);
+		emitter.onCompletion(() -> emitters.remove(emitter));
+		emitter.onTimeout(() -> emitters.remove(emitter));
+		emitters.add(emitter);
+		log.debug("New progress subscriber ({} subscribers).", emitters.size());
+		return emitter;
+	}
+
+	/**
+	 * The status of a transfert has changed. It is pushed with the next
+	 * event.
+	 */
+	public void statusChanged(DWTransfert transfert) {
+		if (transfert.getId() == null) {
+			return;
+		}
+		statusChanges.put(transfert.getId(),
+				new TransfertProgressDelta(transfert.getId(), transfert.getStatus(),
+						transfert.getFileSize() == null ? 0 : transfert.getFileSize(),
+						transfert.getDownloaded() == null ? 0 : transfert.getDownloaded(), 0));
+	}
+
+	/**
+	 * Sends the progress changes to the subscribers.
+	 */
+	@Scheduled(fixedDelayString = "${downloader.transfert.progressPushInterval:500}")
+	public synchronized void push() {
+		if (emitters.isEmpty()) {
+			statusChanges.clear();
+			pushed.clear();
+			return;
+		}
+		long now = System.currentTimeMillis();
+		Map<Long, TransfertProgressDelta> deltas = new HashMap<>();
+		Set<Long> running = new HashSet<>();
+		for (TransfertProgress progress : progressRegistry.getProgresses()) {
+			Long id = progress.getTransfertId();
+			running.add(id);
+			PushedProgress last = pushed.get(id);
+			if (last == null || last.downloaded != progress.getDownloaded() || last.fileSize != progress.getFileSize()) {
+				long rate = last == null ? 0
+						: (progress.getDownloaded() - last.downloaded) * 1000l / Math.max(1, now - last.time);
+				deltas.put(id, new TransfertProgressDelta(id, TransfertStatus.DOING, progress.getFileSize(),
+						progress.getDownloaded(), Math.max(0, rate)));
+				pushed.put(id, new PushedProgress(progress.getFileSize(), progress.getDownloaded(), now));
+			}
+		}
+		pushed.keySet().retainAll(running);
+		for (Long id : new ArrayList<>(statusChanges.keySet())) {
+			TransfertProgressDelta change = statusChanges.remove(id);
+			TransfertProgressDelta delta = deltas.get(id);
+			if (delta == null) {
+				deltas.put(id, change);
+			} else {
+				delta.setStatus(change.getStatus());
+			}
+		}
+		if (deltas.isEmpty()) {
+			return;
+		}
+		List<TransfertProgressDelta> event = new ArrayList<>(deltas.values());
+		for (SseEmitter emitter : emitters) {
+			try {
+				emitter.send(SseEmitter.event().name("progress").data(event, MediaType.APPLICATION_JSON));
+			} catch (Exception e) {
+				log.debug("Progress subscriber removed: {}", e.getMessage());
+				emitters.remove(emitter);
+			}
+		}
+	}
+
+	public TransfertProgressRegistry getProgressRegistry() {
+		return progressRegistry;
+	}
+
+	public void setProgressRegistry(TransfertProgressRegistry progressRegistry) {
+		this.progressRegistry = progressRegistry;
+	}
+
+	/**
+	 * The progress of a transfert sent to the subscribers.
+	 */
+	static class PushedProgress {
+		final long fileSize;
+		final long downloaded;
+		final long time;
+
+		PushedProgress(long fileSize, long downloaded, long time) {
+			this.fileSize = fileSize;
+			this.downloaded = downloaded;
+			this.time = time;
+		}
+	}
+}
@@ -0,0 +1,106 @@
+package org.scb.downloader.service;
+
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.scb.downloader.domain.DWTransfert;
+import org.scb.downloader.domain.enumeration.TransfertStatus;
+import org.scb.downloader.repository.DWTransfertRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Registry of the progress of the running transferts. The transfert threads
+ * update the progress in memory and the changes are written in the database
+ * periodically, in a single transaction, with an update of the progress
+ * columns only.
+ *
+ * @author S.Chassande
+ */
+@Service
+public class TransfertProgressRegistry {
+
+	/** Logger */
+	protected static final Logger log = LoggerFactory.getLogger(TransfertProgressRegistry.class);
+
+	@Autowired
+	private DWTransfertRepository transfertRepository;
+
+	/** The progress of the running transferts by transfert identifier. */
+	private final ConcurrentMap<Long, TransfertProgress> progresses = new ConcurrentHashMap<>();
+
+	/**
+	 * Registers a transfert which is starting.
+	 *
+	 * @return the progress of the transfert. The progress of a transfert
+	 *         which is not persisted is not registered.
+	 */
+	public TransfertProgress register(DWTransfert transfert) {
+		if (transfert.getId() == null) {
+			return new TransfertProgress(transfert);
+		}
+		return progresses.computeIfAbsent(transfert.getId(), id -> new TransfertProgress(transfert));
+	}
+
+	/**
+	 * Unregisters a transfert which is finished. Its progress is copied into
+	 * the entity in order to be saved with it.
+	 */
+	public void unregister(DWTransfert transfert) {
+		if (transfert.getId() == null) {
+			return;
+		}
+		TransfertProgress progress = progresses.remove(transfert.getId());
+		if (progress != null) {
+			progress.applyTo(transfert);
+		}
+	}
+
+	/**
+	 * @return the progress of a running transfert, null if the transfert is
+	 *         not running.
+	 */
+	public TransfertProgress get(Long transfertId) {
+		return progresses.get(transfertId);
+	}
+
+	/**
+	 * @return the progress of the running transferts.
+	 */
+	public Collection<TransfertProgress> getProgresses() {
+		return progresses.values();
+	}
+
+	/**
+	 * Writes the changed progresses in the database.
+	 */
+	@Scheduled(fixedDelayString = "${downloader.transfert.progressFlushInterval:5000}")
+	@Transactional
+	public void flush() {
+		int nb = 0;
+		for (TransfertProgress progress : progresses.values()) {
+			if (progress.clearDirty()) {
+				transfertRepository.updateProgress(progress.getTransfertId(), TransfertStatus.DOING,
+						progress.getFileSize(), progress.getDownloaded(), progress.getResumeFile(),
+						progress.getResumeOffset(), progress.getResumeValidator());
+				nb++;
+			}
+		}
+		if (nb > 0) {
+			log.debug("Progress of {} transfert(s) saved.", nb);
+		}
+	}
+
+	public DWTransfertRepository getTransfertRepository() {
+		return transfertRepository;
+	}
+
+	public void setTransfertRepository(DWTransfertRepository transfertRepository) {
+		this.transfertRepository = transfertRepository;
+	}
+}
@@ -1,22 +1,43 @@
 package org.scb.downloader.service;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.PrintWriter;
 import java.io.StringWriter;
-import java.time.ZonedDateTime;
-
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.apache.commons.io.FileUtils;
 import org.joda.time.DateTime;
 import org.joda.time.Days;
 import org.joda.time.Hours;
 import org.joda.time.Minutes;
 import org.joda.time.Seconds;
+import org.scb.downloader.config.DownloaderProperties;
+import org.scb.downloader.domain.DWFileInfo;
 import org.scb.downloader.domain.DWTransfert;
-import org.scb.downloader.domain.enumeration.DWProtocol;
+import org.scb.downloader.domain.enumeration.DWSyncMode;
+import org.scb.downloader.domain.enumeration.TransfertStatus;
 import org.scb.downloader.service.ConnectionService.ConnectionSession;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
 import org.springframework.stereotype.Service;
 
 import com.google.common.io.Files;
@@ -30,128 +51,416 @@ public class TransfertSchedulerService {
 	@Autowired
 	DWTransfertService transfertService;
 	@Autowired
-	private ConnectionService localFileSystemService;
+	private ConnectionServiceRegistry connectionServiceRegistry;
+
+	@Autowired
+	private DownloaderProperties downloaderProperties;
+	@Autowired
+	private ConnectionPool connectionPool;
+	@Autowired
+	private TransfertProgressRegistry progressRegistry;
 	@Autowired
-	private ConnectionService sshService;
+	private TransfertProgressPublisher progressPublisher;
 	@Autowired
-	private ConnectionService ftpService;
+	private BandwidthLimiter bandwidthLimiter;
+	@Autowired
+	private DirectoryListingCache listingCache;
+
+	/** The sub directory of the temporary directory holding the local copies. */
+	private static final String LOCAL_COPIES = "local-copies";
 
 	private String tempDirectory = null;
 
-	private static Object synchro = new Object();
-	private boolean transfering = false;
+	/** The pool of threads performing the transferts. */
+	private ThreadPoolTaskExecutor workers;
+
+	/**
+	 * The thread dispatching the transferts on the workers. It is woken up
+	 * when the transferts change, at the opening of the day windows and at the
+	 * next attempt of the failed transferts.
+	 */
+	private ThreadPoolTaskScheduler dispatcher;
+	/** True when a dispatch is already requested and not started. */
+	private final AtomicBoolean dispatchRequested = new AtomicBoolean(false);
+	/**
+	 * The timer of the next day window opening or next attempt. Guarded by
+	 * synchro.
+	 */
+	private ScheduledFuture<?> windowTimer;
+
+	/** Protects the running transferts and the account usages. */
+	private final Object synchro = new Object();
+	/** The running transferts by identifier. */
+	private final Map<Long, DWTransfert> runningTransferts = new HashMap<>();
+	/** The number of running transferts by remote account identifier. */
+	private final Map<Long, Integer> accountUsages = new HashMap<>();
+	/** The transferts launched by the users, waiting for a free worker. */
+	private final Set<Long> launchedTransferts = new LinkedHashSet<>();
+
+	@PostConstruct
+	public void init() {
+		if (downloaderProperties.getTransfert().getTempDirectory() != null) {
+			tempDirectory = downloaderProperties.getTransfert().getTempDirectory();
+		}
+		workers = new ThreadPoolTaskExecutor();
+		workers.setCorePoolSize(getMaxConcurrentTransferts());
+		workers.setMaxPoolSize(getMaxConcurrentTransferts());
+		workers.setThreadNamePrefix("downloader-transfert-");
+		workers.initialize();
+		dispatcher = new ThreadPoolTaskScheduler();
+		dispatcher.setPoolSize(1);
+		dispatcher.setThreadNamePrefix("downloader-dispatcher-");
+		dispatcher.initialize();
+		// first dispatch once the application is started
+		dispatcher.schedule(this::wakeUp, new Date(System.currentTimeMillis() + 20 * 1000));
+	}
+
+	@PreDestroy
+	public void destroy() {
+		dispatcher.shutdown();
+		workers.shutdown();
+	}
+
+	/**
+	 * Requests a dispatch of the transferts. It must be called when a
+	 * transfert is created, updated or can be performed again. The dispatch is
+	 * done asynchronously and the requests received before it starts are
+	 * merged.
+	 */
+	public void wakeUp() {
+		if (dispatchRequested.compareAndSet(false, true)) {
+			dispatcher.execute(() -> {
+				dispatchRequested.set(false);
+				try {
+					runPersistentTransferts();
+				} catch (Exception e) {
+					log.warn("Error when dispatching the transferts: " + e.getMessage(), e);
+				}
+			});
+		}
+	}
 
 	/**
-	 * Lookup up transferts to perform and execute them one by one until no more
-	 * transfert can be launch now. This method is scheduled every 5 minutes
-	 * after the end of the last completion.
+	 * Lookup up transferts to perform and dispatch them on the workers until
+	 * no more transfert can be launch now. The dispatch is done again each
+	 * time a transfert ends, when the transferts change (see {@link #wakeUp()}),
+	 * at the next opening of a day window and at the next attempt of a failed
+	 * transfert. The transferts launched by the users come first.
 	 */
-	@Scheduled(fixedDelay = 5 * 60 * 1000, initialDelay = 20 * 1000)
 	public void runPersistentTransferts() {
-		beginRun();
-		try {
-			log.debug("Lookup transferts to perform");
-			DWTransfert transfert = null;
-			do {
-				transfert = transfertService.findNextToPerform();
-				if (transfert != null) {
-					runPersistentTransfert(transfert);
+		log.debug("Lookup transferts to perform");
+		synchronized (synchro) {
+			int free = getMaxConcurrentTransferts() - runningTransferts.size();
+			for (Iterator<Long> it = launchedTransferts.iterator(); free > 0 && it.hasNext();) {
+				Long transfertId = it.next();
+				if (runningTransferts.containsKey(transfertId)) {
+					it.remove();
+					continue;
 				}
-			} while (transfert != null);
+				DWTransfert transfert = transfertService.getTransfert(transfertId);
+				if (transfert == null) {
+					log.warn("Transfert '{}' does not exist.", transfertId);
+					it.remove();
+				} else if (Collections.disjoint(getBusyAccounts(), getRemoteAccounts(transfert))) {
+					it.remove();
+					register(transfert);
+					free--;
+					workers.execute(() -> runDispatchedTransfert(transfert));
+				}
+			}
+			while (free > 0) {
+				DWTransfert transfert = transfertService.claimNext(new HashSet<>(runningTransferts.keySet()),
+						getBusyAccounts());
+				if (transfert == null) {
+					break;
+				}
+				register(transfert);
+				free--;
+				workers.execute(() -> runDispatchedTransfert(transfert));
+			}
+			scheduleWindowTimer();
+		}
+	}
+
+	/**
+	 * Wakes up the dispatcher at the next opening of a day window or at the
+	 * next attempt of a failed transfert.
+	 */
+	private void scheduleWindowTimer() {
+		Date opening = transfertService.findNextWindowOpening();
+		Date nextAttempt = transfertService.findNextAttempt();
+		if (windowTimer != null) {
+			windowTimer.cancel(false);
+		}
+		Date next = opening == null || (nextAttempt != null && nextAttempt.before(opening)) ? nextAttempt : opening;
+		windowTimer = next == null ? null : dispatcher.schedule(this::wakeUp, next);
+		log.debug("Next day window opening: {}, next attempt: {}", opening, nextAttempt);
+	}
+
+	private void runDispatchedTransfert(DWTransfert transfert) {
+		try {
+			runPersistentTransfert(transfert);
 		} finally {
-			endRun();
+			unregister(transfert);
 		}
+		// a worker is now available => launch the next transfert
+		wakeUp();
+	}
+
+	/**
+	 * Launches a transfert on a worker, whatever its scheduling and its next
+	 * attempt date. The transfert waits for a free worker and for its accounts
+	 * like the other transferts, but it comes first.
+	 *
+	 * @param transfertId
+	 *            is the identifier of the transfert to launch.
+	 */
+	public void launchPersistentTransfert(Long transfertId) {
+		synchronized (synchro) {
+			launchedTransferts.add(transfertId);
+		}
+		wakeUp();
 	}
 
 	public DWTransfert runPersistentTransfert(Long transfertId) throws Exception {
-		beginRun();
-		try {
-			DWTransfert transfert = transfertService.getTransfert(transfertId);
-			if (transfert == null) {
-				throw new Exception("Transfert '" + transfertId + "' does not exist.");
+		DWTransfert transfert = transfertService.getTransfert(transfertId);
+		if (transfert == null) {
+			throw new Exception("Transfert '" + transfertId + "' does not exist.");
+		}
+		synchronized (synchro) {
+			if (runningTransferts.containsKey(transfertId)) {
+				throw new Exception("Transfert '" + transfertId + "' is already running.");
 			}
+			register(transfert);
+		}
+		try {
 			runPersistentTransfert(transfert);
 			return transfert;
 		} finally {
-			endRun();
+			unregister(transfert);
 		}
 	}
 
 	private void runPersistentTransfert(DWTransfert transfert) {
 		transfertService.transfertStarted(transfert);
+		progressRegistry.register(transfert);
+		progressPublisher.statusChanged(transfert);
 		try {
 			// perform the transfert
 			performTransfert(transfert);
 
+			progressRegistry.unregister(transfert);
 			transfertService.transfertFinished(transfert);
 		} catch (Exception e) {
 			log.warn("Error during transfert '" + transfert.getId() + "': " + e.getMessage(), e);
+			progressRegistry.unregister(transfert);
 			transfertService.transfertOnError(transfert, e.getMessage());
 		}
+		if (transfert.getStatus() == TransfertStatus.DONE || transfert.getStatus() == TransfertStatus.ERROR) {
+			// no more attempt will resume the local copy nor use the cap
+			deleteLocalCopy(transfert);
+			bandwidthLimiter.forget(transfert.getId());
+		} else {
+			bandwidthLimiter.release(transfert.getId());
+		}
+		invalidateTargetListings(transfert);
+		progressPublisher.statusChanged(transfert);
 	}
 
-	private void beginRun() {
+	/**
+	 * Forgets the cached listings of the target, written by the transfert
+	 * even if it has failed.
+	 */
+	private void invalidateTargetListings(DWTransfert transfert) {
+		if (transfert.getTarget() != null && transfert.getTarget().getAccount() != null) {
+			listingCache.invalidate(transfert.getTarget().getAccount().getId(), transfert.getTarget().getPath());
+		}
+	}
+
+	private void register(DWTransfert transfert) {
 		synchronized (synchro) {
-			if (transfering) {
-				log.warn("Ttransferts is already running.");
-			} else {
-				transfering = true;
+			runningTransferts.put(transfert.getId(), transfert);
+			for (Long accountId : getRemoteAccounts(transfert)) {
+				accountUsages.merge(accountId, 1, Integer::sum);
 			}
 		}
 	}
 
-	private void endRun() {
+	private void unregister(DWTransfert transfert) {
 		synchronized (synchro) {
-			transfering = false;
+			runningTransferts.remove(transfert.getId());
+			for (Long accountId : getRemoteAccounts(transfert)) {
+				accountUsages.computeIfPresent(accountId, (id, usage) -> usage > 1 ? usage - 1 : null);
+			}
 		}
 	}
 
+	/**
+	 * @return the identifiers of the remote accounts having reached the
+	 *         maximal number of running transferts.
+	 */
+	private Set<Long> getBusyAccounts() {
+		Set<Long> busyAccounts = new HashSet<>();
+		for (Map.Entry<Long, Integer> me : accountUsages.entrySet()) {
+			if (me.getValue() >= getMaxConcurrentTransfertsPerAccount()) {
+				busyAccounts.add(me.getKey());
+			}
+		}
+		return busyAccounts;
+	}
+
+	/**
+	 * @return the identifiers of the remote accounts used by a transfert. The
+	 *         local file system accounts are not limited.
+	 */
+	private Set<Long> getRemoteAccounts(DWTransfert transfert) {
+		Set<Long> accountIds = new HashSet<>();
+		for (DWFileInfo fi : new DWFileInfo[] { transfert.getSource(), transfert.getTarget() }) {
+			if (fi != null && fi.getAccount() != null && fi.getAccount().getId() != null
+					&& !connectionServiceRegistry.isLocal(fi.getAccount())) {
+				accountIds.add(fi.getAccount().getId());
+			}
+		}
+		return accountIds;
+	}
+
+	private int getMaxConcurrentTransferts() {
+		return Math.max(1, downloaderProperties.getTransfert().getMaxConcurrentTransferts());
+	}
+
+	private int getMaxConcurrentTransfertsPerAccount() {
+		return Math.max(1, downloaderProperties.getTransfert().getMaxConcurrentTransfertsPerAccount());
+	}
+
+	/**
+	 * @param checksums
+	 *            receives the checksums of the transfered files by path, null
+	 *            if they are not recorded.
+	 */
+	private TransfertProgressHandler newProgressHandler(DWTransfert transfert, Map<String, String> checksums) {
+		return new TransfertProgressHandler(transfert, progressRegistry.register(transfert), bandwidthLimiter,
+				getRemoteAccounts(transfert), checksums);
+	}
+
+	/**
+	 * Updates the in-memory progress of a transfert. The progress is written
+	 * in the database by the {@link TransfertProgressRegistry}. The transfert
+	 * is slowed down to respect the caps of the {@link BandwidthLimiter}.
+	 */
 	static class TransfertProgressHandler implements ProgressHandler {
 		DWTransfert transfert;
 		long cumulSize = 0;
 		long size = 0;
 		long previousDownloaded = 0;
-		int percent = 0;
-		DWTransfertService transfertService;
-
-		public TransfertProgressHandler(DWTransfert transfert, DWTransfertService transfertService) {
+		TransfertProgress progress;
+		/** True if a previous attempt of the transfert has been interrupted. */
+		final boolean resume;
+		BandwidthLimiter bandwidthLimiter;
+		Set<Long> accountIds;
+		/** The last count of the current file. */
+		long lastCount = 0;
+		/** The resume offset of the next file, not transfered again. */
+		long nextOffset = 0;
+		/** The checksums of the files by path, null if not recorded. */
+		final Map<String, String> checksums;
+		/** False when the count of the current file is not a resume offset. */
+		boolean resumable = true;
+
+		public TransfertProgressHandler(DWTransfert transfert, TransfertProgress progress,
+				BandwidthLimiter bandwidthLimiter, Set<Long> accountIds, Map<String, String> checksums) {
 			this.transfert = transfert;
-			this.transfertService = transfertService;
+			this.progress = progress;
+			this.resume = transfert.getNbError() > 0 || transfert.getResumeFile() != null;
+			this.bandwidthLimiter = bandwidthLimiter;
+			this.accountIds = accountIds;
+			this.checksums = checksums;
+		}
+
+		@Override
+		public long getResumeOffset(String file, long size, long transfered, long transferedLastModified) {
+			nextOffset = computeResumeOffset(file, size, transfered, transferedLastModified);
+			return nextOffset;
+		}
+
+		private long computeResumeOffset(String file, long size, long transfered, long transferedLastModified) {
+			if (!resume) {
+				return 0;
+			}
+			if (file.equals(transfert.getResumeFile())) {
+				// the persisted offset is the last one known as transfered
+				return Math.min(transfered, transfert.getResumeOffset());
+			}
+			// a file completed by a previous attempt has been written since the
+			// first attempt: a copy of the same size may be an older file
+			Date firstAttempt = transfert.getStart();
+			return transfered == size && firstAttempt != null && transferedLastModified >= firstAttempt.getTime()
+					? size : 0;
+		}
+
+		@Override
+		public String getResumeValidator(String file) {
+			return resume && file.equals(transfert.getResumeFile()) ? transfert.getResumeValidator() : null;
+		}
+
+		@Override
+		public void validator(String file, String validator) {
+			progress.validator(validator);
 		}
 
 		@Override
 		public void start(String file, long max) {
 			this.cumulSize += max;
 			this.size = max;
-			transfert.setFileSize(cumulSize);
-			String files = transfert.getDownloadedFiles();
-			if (files == null) {
-				files = file;
-			} else {
-				files += ", " + file;
-			}
-			transfert.setDownloadedFiles(files);
-			if (transfert.getId() != null) {
-				transfertService.update(transfert);
-			}
+			this.lastCount = nextOffset;
+			this.nextOffset = 0;
+			this.resumable = true;
+			progress.fileStarted(file, cumulSize);
 		}
 
 		@Override
 		public boolean count(long count) {
-			int newPercent = (int) ((count * 100l) / size);
-			if (percent < newPercent) {
-				transfert.setDownloaded(previousDownloaded + count);
-				if (transfert.getId() != null) {
-					transfertService.update(transfert);
+			// a file which cannot be resumed is transfered again from its start
+			progress.progress(previousDownloaded + count, resumable ? count : 0);
+			long bytes = count - lastCount;
+			lastCount = count;
+			if (bytes > 0 && bandwidthLimiter != null) {
+				try {
+					bandwidthLimiter.acquire(transfert.getId(), accountIds, bytes);
+				} catch (InterruptedIOException e) {
+					return false;
 				}
 			}
-			return false;
+			return true;
 		}
 
 		@Override
 		public void end() {
 			this.previousDownloaded += size;
 		}
+
+		@Override
+		public void notResumable() {
+			this.resumable = false;
+		}
+
+		@Override
+		public void skip(String file, long size) {
+			// the skipped bytes are not throttled
+			nextOffset = size;
+			if (checksums != null && resume) {
+				// the file may have been transfered by a previous attempt
+				checksums.putIfAbsent(file, null);
+			}
+			ProgressHandler.super.skip(file, size);
+		}
+
+		@Override
+		public void checksum(String file, String checksum) {
+			if (checksums != null) {
+				checksums.put(file, checksum);
+			}
+		}
+
 	}
 
 	/**
@@ -162,44 +471,64 @@ public class TransfertSchedulerService {
 	 */
 	public <S extends ConnectionSession> void performTransfert(DWTransfert transfert) throws Exception {
 		checkTransfert(transfert);
-		final DWProtocol srcProtocol = transfert.getSource().getAccount().getProtocol();
-		final DWProtocol targetProtocol = transfert.getTarget().getAccount().getProtocol();
-
-		log.info("Perform transfert: {} between {} and {}", transfert.getId(), //
-				transfert.getSource(), transfert.getTarget());
+		final ConnectionService sourceCS = connectionServiceRegistry
+				.getConnectionService(transfert.getSource().getAccount().getProtocol());
+		final ConnectionService targetCS = connectionServiceRegistry
+				.getConnectionService(transfert.getTarget().getAccount().getProtocol());
+		final boolean relay = downloaderProperties.getTransfert().isRelay();
+		TransfertStrategy strategy = connectionServiceRegistry.chooseStrategy(transfert.getSource().getAccount(),
+				transfert.getTarget().getAccount(), transfert.getSyncMode(), relay);
+
+		log.info("Perform transfert: {} between {} and {} ({})", transfert.getId(), //
+				transfert.getSource(), transfert.getTarget(), strategy);
 		DateTime begin = new DateTime();
+		// the checksums of the files, combined at the end
+		Map<String, String> checksums = Collections.synchronizedMap(new HashMap<>());
 
-		if (srcProtocol == DWProtocol.LOCAL_FILE_SYSTEM) {
+		if (strategy == TransfertStrategy.SERVER_SIDE_COPY) {
+			// chosen with the capabilities of the service: the copy may still
+			// be refused by the server
+			try {
+				transfertOnServer(transfert, sourceCS, checksums);
+			} catch (InterruptedIOException e) {
+				throw e;
+			} catch (IOException e) {
+				strategy = connectionServiceRegistry.getFallbackStrategy(sourceCS, targetCS, relay);
+				log.warn("Server-side copy of the transfert {} failed, {} used instead: {}", transfert.getId(),
+						strategy, e.getMessage());
+			}
+		}
+		if (strategy == TransfertStrategy.UPLOAD) {
 			// Source file is on local file system
-			ConnectionService targetCS = getConnectionService(targetProtocol);
-			ConnectionSession session = targetCS.connect(transfert.getTarget().getAccount());
+			ConnectionSession session = connectionPool.borrow(targetCS, transfert.getTarget().getAccount());
+			boolean success = false;
 			try {
 				targetCS.upload(session, transfert.getSource().getPath(), transfert.getTarget(),
-						new TransfertProgressHandler(transfert, transfertService));
+						transfert.getSyncMode(), newProgressHandler(transfert, checksums));
+				success = true;
 			} finally {
-				if (session != null) {
-					session.close();
-				}
+				connectionPool.release(session, success);
 			}
-		} else if (targetProtocol == DWProtocol.LOCAL_FILE_SYSTEM) {
+		} else if (strategy == TransfertStrategy.DOWNLOAD) {
 			// target is the local file system
-			ConnectionService sourceCS = getConnectionService(srcProtocol);
-			ConnectionSession session = sourceCS.connect(transfert.getSource().getAccount());
+			ConnectionSession session = connectionPool.borrow(sourceCS, transfert.getSource().getAccount());
+			boolean success = false;
 			try {
 				sourceCS.download(session, transfert.getSource(), transfert.getTarget().getPath(),
-						new TransfertProgressHandler(transfert, transfertService));
+						transfert.getSyncMode(), newProgressHandler(transfert, checksums));
+				success = true;
 			} finally {
-				if (session != null) {
-					session.close();
-				}
+				connectionPool.release(session, success);
 			}
-		} else {
-			// source and target are on remote systems.
+		} else if (strategy == TransfertStrategy.RELAY) {
+			// => Stream the data from the source to the target
+			transfertViaRelay(transfert, (AbstractConnectionServiceImpl) sourceCS,
+					(AbstractConnectionServiceImpl) targetCS, checksums);
+		} else if (strategy == TransfertStrategy.LOCAL_COPY) {
 			// => Use a local temporary copy.
-			ConnectionService sourceCS = getConnectionService(srcProtocol);
-			ConnectionService targetCS = getConnectionService(targetProtocol);
-			transfertViaLocal(transfert, sourceCS, targetCS);
+			transfertViaLocal(transfert, sourceCS, targetCS, checksums);
 		}
+		transfert.setChecksum(StreamChecksum.combine(checksums));
 		DateTime end = new DateTime();
 		log.info("Transfert perfomed with success: {} between {} and {} in {} days, {} hours, {} minutes, {} seconds.",
 				transfert.getId(), //
@@ -231,24 +560,60 @@ public class TransfertSchedulerService {
 		}
 	}
 
-	private void transfertViaLocal(DWTransfert transfert, ConnectionService srcCS, ConnectionService targetCS)
+	/**
+	 * Copies the files on the server of the source and target account.
+	 */
+	private void transfertOnServer(DWTransfert transfert, ConnectionService cs, Map<String, String> checksums)
 			throws Exception {
+		ConnectionSession session = connectionPool.borrow(cs, transfert.getSource().getAccount());
+		try {
+			cs.copy(session, transfert.getSource(), transfert.getTarget(), newProgressHandler(transfert, checksums));
+		} finally {
+			// a failed command does not break the session
+			connectionPool.release(session, true);
+		}
+	}
+
+	private void transfertViaRelay(DWTransfert transfert, AbstractConnectionServiceImpl srcCS,
+			AbstractConnectionServiceImpl targetCS, Map<String, String> checksums) throws Exception {
+		log.debug("Relay transfert: {} between {} and {}", transfert.getId(), //
+				transfert.getSource().getPath(), transfert.getTarget().getPath());
+		ConnectionSession srcSession = connectionPool.borrow(srcCS, transfert.getSource().getAccount());
+		boolean success = false;
+		try {
+			ConnectionSession targetSession = connectionPool.borrow(targetCS, transfert.getTarget().getAccount());
+			try (StreamRelay relay = new StreamRelay("downloader-relay-" + transfert.getId(),
+					downloaderProperties.getTransfert().getRelayBufferSize())) {
+				srcCS.relay(srcSession, transfert.getSource(), targetCS, targetSession, transfert.getTarget(),
+						transfert.getSyncMode(), relay, newProgressHandler(transfert, checksums));
+				success = true;
+			} finally {
+				connectionPool.release(targetSession, success);
+			}
+		} finally {
+			connectionPool.release(srcSession, success);
+		}
+	}
+
+	private void transfertViaLocal(DWTransfert transfert, ConnectionService srcCS, ConnectionService targetCS,
+			Map<String, String> checksums) throws Exception {
 		DateTime begin = new DateTime();
 
 		// Define a local tmp file
-		final String localTmpFile = generateTmpFileName(transfert.getId().toString());
+		final String localTmpFile = getLocalCopyDirectory(transfert).getAbsolutePath();
 
 		// transfert from the source remote file to local tmp file
 		log.debug("Perform 1st transfert part: {} between {} and {}", transfert.getId(), //
 				transfert.getSource().getPath(), localTmpFile);
-		ConnectionSession srcSession = srcCS.connect(transfert.getTarget().getAccount());
+		ConnectionSession srcSession = connectionPool.borrow(srcCS, transfert.getSource().getAccount());
+		boolean success = false;
 		try {
-			srcCS.download(srcSession, transfert.getSource(), localTmpFile,
-					new TransfertProgressHandler(transfert, transfertService));
+			// the local copy directory is new: nothing to synchronize
+			srcCS.download(srcSession, transfert.getSource(), localTmpFile, DWSyncMode.COPY,
+					newProgressHandler(transfert, checksums));
+			success = true;
 		} finally {
-			if (srcSession != null) {
-				srcSession.close();
-			}
+			connectionPool.release(srcSession, success);
 		}
 		DateTime end = new DateTime();
 		log.info(
@@ -263,34 +628,45 @@ public class TransfertSchedulerService {
 		// transfert from the local tmp file to the target remote account
 		log.debug("Perform 2nd transfert part: {} between {} and {}", transfert.getId(), //
 				localTmpFile, transfert.getSource().getPath());
-		ConnectionSession targetSession = targetCS.connect(transfert.getTarget().getAccount());
+		ConnectionSession targetSession = connectionPool.borrow(targetCS, transfert.getTarget().getAccount());
+		success = false;
 		try {
-			targetCS.upload(targetSession, localTmpFile, transfert.getTarget(),
-					new TransfertProgressHandler(transfert, transfertService));
+			// the checksums have been stored by the 1st part
+			targetCS.upload(targetSession, localTmpFile, transfert.getTarget(), transfert.getSyncMode(),
+					newProgressHandler(transfert, null));
+			success = true;
 		} finally {
-			if (targetSession != null) {
-				targetSession.close();
-			}
+			connectionPool.release(targetSession, success);
 		}
+		deleteLocalCopy(transfert);
 	}
 
-	private String generateTmpFileName(String prefix) {
+	/**
+	 * @return the directory of the local copy of a transfert. The name is the
+	 *         same for each attempt in order to resume it, and differs for
+	 *         another transfert reusing the identifier.
+	 */
+	private File getLocalCopyDirectory(DWTransfert transfert) {
 		if (tempDirectory == null) {
 			tempDirectory = Files.createTempDir().getAbsolutePath();
 		}
-		return new File(this.tempDirectory, prefix + '_' + ZonedDateTime.now().toEpochSecond()).getAbsolutePath();
+		DWFileInfo source = transfert.getSource();
+		String sourceKey = source.getAccount().getId() + ":" + source.getPath();
+		return new File(new File(tempDirectory, LOCAL_COPIES), transfert.getId() + "-"
+				+ UUID.nameUUIDFromBytes(sourceKey.getBytes(StandardCharsets.UTF_8)));
 	}
 
-	private ConnectionService getConnectionService(DWProtocol protocol) throws Exception {
-		switch (protocol) {
-		case LOCAL_FILE_SYSTEM:
-			return localFileSystemService;
-		case SSH:
-			return sshService;
-		case FTP:
-			return ftpService;
-		default:
-			throw new Exception("Protocol is not managed: " + protocol);
+	/**
+	 * Deletes the local copy of a transfert, if any.
+	 */
+	private void deleteLocalCopy(DWTransfert transfert) {
+		if (tempDirectory == null || transfert.getSource() == null || transfert.getSource().getAccount() == null) {
+			return;
+		}
+		File directory = getLocalCopyDirectory(transfert);
+		if (directory.exists()) {
+			log.debug("Delete the local copy of the transfert {}: {}", transfert.getId(), directory);
+			FileUtils.deleteQuietly(directory);
 		}
 	}
 
@@ -310,35 +686,51 @@ public class TransfertSchedulerService {
 		this.transfertService = transfertService;
 	}
 
-	public ConnectionService getLocalFileSystemService() {
-		return localFileSystemService;
+	public ConnectionServiceRegistry getConnectionServiceRegistry() {
+		return connectionServiceRegistry;
 	}
 
-	public void setLocalFileSystemService(ConnectionService localFileSystemService) {
-		this.localFileSystemService = localFileSystemService;
+	public void setConnectionServiceRegistry(ConnectionServiceRegistry connectionServiceRegistry) {
+		this.connectionServiceRegistry = connectionServiceRegistry;
 	}
 
-	public ConnectionService getSshService() {
-		return sshService;
+	public String getTempDirectory() {
+		return tempDirectory;
 	}
 
-	public void setSshService(ConnectionService sshService) {
-		this.sshService = sshService;
+	public void setTempDirectory(String tempDirectory) {
+		this.tempDirectory = tempDirectory;
 	}
 
-	public ConnectionService getFtpService() {
-		return ftpService;
+	public DownloaderProperties getDownloaderProperties() {
+		return downloaderProperties;
 	}
 
-	public void setFtpService(FtpService ftpService) {
-		this.ftpService = ftpService;
+	public void setDownloaderProperties(DownloaderProperties downloaderProperties) {
+		this.downloaderProperties = downloaderProperties;
 	}
 
-	public String getTempDirectory() {
-		return tempDirectory;
+	public TransfertProgressRegistry getProgressRegistry() {
+		return progressRegistry;
 	}
 
-	public void setTempDirectory(String tempDirectory) {
-		this.tempDirectory = tempDirectory;
+	public void setProgressRegistry(TransfertProgressRegistry progressRegistry) {
+		this.progressRegistry = progressRegistry;
+	}
+
+	public TransfertProgressPublisher getProgressPublisher() {
+		return progressPublisher;
+	}
+
+	public void setProgressPublisher(TransfertProgressPublisher progressPublisher) {
+		this.progressPublisher = progressPublisher;
+	}
+
+	public BandwidthLimiter getBandwidthLimiter() {
+		return bandwidthLimiter;
+	}
+
+	public void setBandwidthLimiter(BandwidthLimiter bandwidthLimiter) {
+		this.bandwidthLimiter = bandwidthLimiter;
 	}
 }
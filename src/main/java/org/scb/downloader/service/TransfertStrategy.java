@@ -0,0 +1,20 @@
+package org.scb.downloader.service;
+
+/**
+ * The ways to move the files of a transfert from its source account to its
+ * target account, chosen by the {@link ConnectionServiceRegistry}.
+ *
+ * @author S.Chassande
+ */
+public enum TransfertStrategy {
+	/** The local source is uploaded by the target service. */
+	UPLOAD,
+	/** The source service downloads into the local target. */
+	DOWNLOAD,
+	/** The server copies the files between two paths of the same account. */
+	SERVER_SIDE_COPY,
+	/** The data are streamed from the source server to the target server. */
+	RELAY,
+	/** The files are downloaded into a local temporary copy then uploaded. */
+	LOCAL_COPY
+}
@@ -0,0 +1,195 @@
+package org.scb.downloader.service.bo;
+
+import java.util.Date;
+
+import org.scb.downloader.domain.enumeration.DWTransfertScheduling;
+import org.scb.downloader.domain.enumeration.TransfertStatus;
+
+/**
+ * A light view of a transfert used to list the transferts. It contains
+ * neither the error messages nor the downloaded files, and only the host of
+ * the accounts.
+ *
+ * @author S.Chassande
+ */
+public class DWTransfertSummary {
+	private Long id;
+	private TransfertStatus status;
+	private long rank;
+	private DWTransfertScheduling scheduling;
+	private String sourcePath;
+	private Long sourceAccountId;
+	private String sourceHost;
+	private String targetPath;
+	private Long targetAccountId;
+	private String targetHost;
+	private Long dayBegin;
+	private Long dayEnd;
+	private Date start;
+	private Date end;
+	private int nbError;
+	private Long fileSize;
+	private Long downloaded;
+
+	public DWTransfertSummary() {
+	}
+
+	public DWTransfertSummary(Long id, TransfertStatus status, long rank, DWTransfertScheduling scheduling,
+			String sourcePath, Long sourceAccountId, String sourceHost, String targetPath, Long targetAccountId,
+			String targetHost, Long dayBegin, Long dayEnd, Date start, Date end, int nbError, Long fileSize,
+			Long downloaded) {
+		this.id = id;
+		this.status = status;
+		this.rank = rank;
+		this.scheduling = scheduling;
+		this.sourcePath = sourcePath;
+		this.sourceAccountId = sourceAccountId;
+		this.sourceHost = sourceHost;
+		this.targetPath = targetPath;
+		this.targetAccountId = targetAccountId;
+		this.targetHost = targetHost;
+		this.dayBegin = dayBegin;
+		this.dayEnd = dayEnd;
+		this.start = start;
+		this.end = end;
+		this.nbError = nbError;
+		this.fileSize = fileSize;
+		this.downloaded = downloaded;
+	}
+
+	public Long getId() {
+		return id;
+	}
+
+	public void setId(Long id) {
+		this.id = id;
+	}
+
+	public TransfertStatus getStatus() {
+		return status;
+	}
+
+	public void setStatus(TransfertStatus status) {
+		this.status = status;
+	}
+
+	public long getRank() {
+		return rank;
+	}
+
+	public void setRank(long rank) {
+		this.rank = rank;
+	}
+
+	public DWTransfertScheduling getScheduling() {
+		return scheduling;
+	}
+
+	public void setScheduling(DWTransfertScheduling scheduling) {
+		this.scheduling = scheduling;
+	}
+
+	public String getSourcePath() {
+		return sourcePath;
+	}
+
+	public void setSourcePath(String sourcePath) {
+		this.sourcePath = sourcePath;
+	}
+
+	public Long getSourceAccountId() {
+		return sourceAccountId;
+	}
+
+	public void setSourceAccountId(Long sourceAccountId) {
+		this.sourceAccountId = sourceAccountId;
+	}
+
+	public String getSourceHost() {
+		return sourceHost;
+	}
+
+	public void setSourceHost(String sourceHost) {
+		this.sourceHost = sourceHost;
+	}
+
+	public String getTargetPath() {
+		return targetPath;
+	}
+
+	public void setTargetPath(String targetPath) {
+		this.targetPath = targetPath;
+	}
+
+	public Long getTargetAccountId() {
+		return targetAccountId;
+	}
+
+	public void setTargetAccountId(Long targetAccountId) {
+		this.targetAccountId = targetAccountId;
+	}
+
+	public String getTargetHost() {
+		return targetHost;
+	}
+
+	public void setTargetHost(String targetHost) {
+		this.targetHost = targetHost;
+	}
+
+	public Long getDayBegin() {
+		return dayBegin;
+	}
+
+	public void setDayBegin(Long dayBegin) {
+		this.dayBegin = dayBegin;
+	}
+
+	public Long getDayEnd() {
+		return dayEnd;
+	}
+
+	public void setDayEnd(Long dayEnd) {
+		this.dayEnd = dayEnd;
+	}
+
+	public Date getStart() {
+		return start;
+	}
+
+	public void setStart(Date start) {
+		this.start = start;
+	}
+
+	public Date getEnd() {
+		return end;
+	}
+
+	public void setEnd(Date end) {
+		this.end = end;
+	}
+
+	public int getNbError() {
+		return nbError;
+	}
+
+	public void setNbError(int nbError) {
+		this.nbError = nbError;
+	}
+
+	public Long getFileSize() {
+		return fileSize;
+	}
+
+	public void setFileSize(Long fileSize) {
+		this.fileSize = fileSize;
+	}
+
+	public Long getDownloaded() {
+		return downloaded;
+	}
+
+	public void setDownloaded(Long downloaded) {
+		this.downloaded = downloaded;
+	}
+}
@@ -0,0 +1,79 @@
+package org.scb.downloader.service.bo;
+
+import org.scb.downloader.domain.enumeration.TransfertStatus;
+
+/**
+ * The progress of a transfert pushed to the web clients.
+ *
+ * @author S.Chassande
+ */
+public class TransfertProgressDelta {
+
+	private Long id;
+
+	private TransfertStatus status;
+
+	private long fileSize;
+
+	private long downloaded;
+
+	/** The transfert rate in bytes per second. */
+	private long rate;
+
+	public TransfertProgressDelta() {
+	}
+
+	public TransfertProgressDelta(Long id, TransfertStatus status, long fileSize, long downloaded, long rate) {
+		this.id = id;
+		this.status = status;
+		this.fileSize = fileSize;
+		this.downloaded = downloaded;
+		this.rate = rate;
+	}
+
+	public Long getId() {
+		return id;
+	}
+
+	public void setId(Long id) {
+		this.id = id;
+	}
+
+	public TransfertStatus getStatus() {
+		return status;
+	}
+
+	public void setStatus(TransfertStatus status) {
+		this.status = status;
+	}
+
+	public long getFileSize() {
+		return fileSize;
+	}
+
+	public void setFileSize(long fileSize) {
+		this.fileSize = fileSize;
+	}
+
+	public long getDownloaded() {
+		return downloaded;
+	}
+
+	public void setDownloaded(long downloaded) {
+		this.downloaded = downloaded;
+	}
+
+	public long getRate() {
+		return rate;
+	}
+
+	public void setRate(long rate) {
+		this.rate = rate;
+	}
+
+	@Override
+	public String toString() {
+		return "TransfertProgressDelta [id=" + id + ", status=" + status + ", fileSize=" + fileSize
+				+ ", downloaded=" + downloaded + ", rate=" + rate + "]";
+	}
+}
@@ -0,0 +1,96 @@
+package org.scb.downloader.web.rest;
+
+import javax.inject.Inject;
+
+import org.scb.downloader.service.BandwidthLimiter;
+import org.scb.downloader.web.rest.dto.BandwidthLimits;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.codahale.metrics.annotation.Timed;
+
+/**
+ * REST controller for managing the bandwidth caps of the transferts. The caps
+ * are in bytes per second, 0 means no limit. A cap set without rate goes back
+ * to the configuration.
+ */
+@RestController
+@RequestMapping("/api")
+public class BandwidthResource {
+
+	private final Logger log = LoggerFactory.getLogger(BandwidthResource.class);
+
+	@Inject
+	private BandwidthLimiter bandwidthLimiter;
+
+	/**
+	 * GET /bandwidth : get the current bandwidth caps.
+	 *
+	 * @return the current caps.
+	 */
+	@RequestMapping(value = "/bandwidth", method = RequestMethod.GET, produces = MediaType.APPLICATION_JSON_VALUE)
+	@Timed
+	public BandwidthLimits getBandwidthLimits() {
+		BandwidthLimits limits = new BandwidthLimits();
+		limits.setGlobalRate(bandwidthLimiter.getGlobalRate());
+		limits.setAccountRate(bandwidthLimiter.getDefaultAccountRate());
+		limits.setTransfertRate(bandwidthLimiter.getDefaultTransfertRate());
+		limits.setAccountRates(bandwidthLimiter.getAccountRates());
+		limits.setTransfertRates(bandwidthLimiter.getTransfertRates());
+		return limits;
+	}
+
+	/**
+	 * PUT /bandwidth/global : change the cap of all the transferts.
+	 *
+	 * @param rate
+	 *            the cap, or nothing to use the configuration
+	 * @return the current caps.
+	 */
+	@RequestMapping(value = "/bandwidth/global", method = RequestMethod.PUT, produces = MediaType.APPLICATION_JSON_VALUE)
+	@Timed
+	public BandwidthLimits setGlobalRate(@RequestParam(value = "rate", required = false) Long rate) {
+		log.debug("REST request to set the global bandwidth cap: {}", rate);
+		bandwidthLimiter.setGlobalRate(rate);
+		return getBandwidthLimits();
+	}
+
+	/**
+	 * PUT /bandwidth/accounts/:id : change the cap of the transferts of the
+	 * "id" account.
+	 *
+	 * @param rate
+	 *            the cap, or nothing to use the configuration
+	 * @return the current caps.
+	 */
+	@RequestMapping(value = "/bandwidth/accounts/{id}", method = RequestMethod.PUT, produces = MediaType.APPLICATION_JSON_VALUE)
+	@Timed
+	public BandwidthLimits setAccountRate(@PathVariable Long id,
+			@RequestParam(value = "rate", required = false) Long rate) {
+		log.debug("REST request to set the bandwidth cap of the account {}: {}", id, rate);
+		bandwidthLimiter.setAccountRate(id, rate);
+		return getBandwidthLimits();
+	}
+
+	/**
+	 * PUT /bandwidth/transferts/:id : change the cap of the "id" transfert.
+	 *
+	 * @param rate
+	 *            the cap, or nothing to use the configuration
+	 * @return the current caps.
+	 */
+	@RequestMapping(value = "/bandwidth/transferts/{id}", method = RequestMethod.PUT, produces = MediaType.APPLICATION_JSON_VALUE)
+	@Timed
+	public BandwidthLimits setTransfertRate(@PathVariable Long id,
+			@RequestParam(value = "rate", required = false) Long rate) {
+		log.debug("REST request to set the bandwidth cap of the transfert {}: {}", id, rate);
+		bandwidthLimiter.setTransfertRate(id, rate);
+		return getBandwidthLimits();
+	}
+}
@@ -4,23 +4,28 @@ import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.List;
 import java.util.Optional;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 
 import javax.inject.Inject;
 
 import org.scb.downloader.domain.DWFileInfo;
 import org.scb.downloader.domain.DWHostAccount;
 import org.scb.downloader.domain.DWTransfert;
+import org.scb.downloader.domain.enumeration.DWTransfertScheduling;
 import org.scb.downloader.domain.enumeration.TransfertStatus;
 import org.scb.downloader.repository.DWHostAccountRepository;
 import org.scb.downloader.repository.DWTransfertRepository;
+import org.scb.downloader.service.BandwidthLimiter;
+import org.scb.downloader.service.ConnectionServiceRegistry;
 import org.scb.downloader.service.DWTransfertService;
+import org.scb.downloader.service.TransfertProgressPublisher;
 import org.scb.downloader.service.TransfertSchedulerService;
+import org.scb.downloader.service.bo.DWTransfertSummary;
 import org.scb.downloader.service.bo.MultipleTransferts;
 import org.scb.downloader.web.rest.util.HeaderUtil;
+import org.scb.downloader.web.rest.util.PaginationUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
@@ -28,7 +33,10 @@ import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
 import com.codahale.metrics.annotation.Timed;
 
@@ -41,6 +49,9 @@ public class DWTransfertResource {
 
 	private final Logger log = LoggerFactory.getLogger(DWTransfertResource.class);
 
+	/** The maximal number of dWTransfert summaries of a page. */
+	private static final int MAX_PAGE_SIZE = 500;
+
 	@Inject
 	private DWTransfertRepository dWTransfertRepository;
 	@Inject
@@ -49,6 +60,12 @@ public class DWTransfertResource {
 	private DWTransfertService transfertService;
 	@Inject
 	private DWHostAccountRepository hostAccountRepository;
+	@Inject
+	private TransfertProgressPublisher progressPublisher;
+	@Inject
+	private ConnectionServiceRegistry connectionServiceRegistry;
+	@Inject
+	private BandwidthLimiter bandwidthLimiter;
 
 	/**
 	 * POST /d-w-transferts : Create a new dWTransfert.
@@ -72,8 +89,13 @@ public class DWTransfertResource {
 		}
 		getAccount(dWTransfert.getSource());
 		getAccount(dWTransfert.getTarget());
+		if (!connectionServiceRegistry.isWritable(dWTransfert.getTarget().getAccount())) {
+			return ResponseEntity.badRequest().headers(HeaderUtil.createFailureAlert("dWTransfert", "sourceonly",
+					"The target account cannot be written")).body(null);
+		}
 		log.info("Create transfert from {} to {}", dWTransfert.getSource(), dWTransfert.getTarget());
 		DWTransfert result = dWTransfertRepository.save(dWTransfert);
+		transfertSchedulerService.wakeUp();
 		return ResponseEntity.created(new URI("/api/d-w-transferts/" + result.getId()))
 				.headers(HeaderUtil.createEntityCreationAlert("dWTransfert", result.getId().toString())).body(result);
 	}
@@ -103,7 +125,13 @@ public class DWTransfertResource {
 			return ResponseEntity.badRequest().headers(HeaderUtil.createFailureAlert("dWTransfert", "idexists",
 					"A new dWTransfert cannot already have an ID")).body(null);
 		}
+		if (transferts.getTransferts().stream().anyMatch(t -> !connectionServiceRegistry
+				.isWritable(hostAccountRepository.getOne(t.getTarget().getAccount().getId())))) {
+			return ResponseEntity.badRequest().headers(HeaderUtil.createFailureAlert("dWTransfert", "sourceonly",
+					"The target account cannot be written")).body(null);
+		}
 		transfertService.create(transferts.getTransferts());
+		transfertSchedulerService.wakeUp();
 		return ResponseEntity.ok(transferts);
 	}
 
@@ -128,6 +156,7 @@ public class DWTransfertResource {
 			return createDWTransfert(dWTransfert);
 		}
 		DWTransfert result = dWTransfertRepository.save(dWTransfert);
+		transfertSchedulerService.wakeUp();
 		return ResponseEntity.ok()
 				.headers(HeaderUtil.createEntityUpdateAlert("dWTransfert", dWTransfert.getId().toString()))
 				.body(result);
@@ -147,6 +176,49 @@ public class DWTransfertResource {
 		return dWTransferts;
 	}
 
+	/**
+	 * GET /d-w-transferts-summaries : get a page of light dWTransferts,
+	 * ordered by rank. The next page is given by the Link header.
+	 *
+	 * @param status
+	 *            the status of the dWTransferts, optional
+	 * @param scheduling
+	 *            the scheduling of the dWTransferts, optional
+	 * @param accountId
+	 *            the source or target account of the dWTransferts, optional
+	 * @param afterRank
+	 *            the rank of the last dWTransfert of the previous page
+	 * @param afterId
+	 *            the id of the last dWTransfert of the previous page
+	 * @param size
+	 *            the size of the page
+	 * @return the ResponseEntity with status 200 (OK) and the list of
+	 *         dWTransfert summaries in body
+	 */
+	@RequestMapping(value = "/d-w-transferts-summaries", method = RequestMethod.GET, produces = MediaType.APPLICATION_JSON_VALUE)
+	@Timed
+	public ResponseEntity<List<DWTransfertSummary>> getDWTransfertSummaries(
+			@RequestParam(value = "status", required = false) TransfertStatus status,
+			@RequestParam(value = "scheduling", required = false) DWTransfertScheduling scheduling,
+			@RequestParam(value = "accountId", required = false) Long accountId,
+			@RequestParam(value = "afterRank", required = false) Long afterRank,
+			@RequestParam(value = "afterId", required = false) Long afterId,
+			@RequestParam(value = "size", defaultValue = "50") int size) {
+		log.debug("REST request to get DWTransfert summaries : status={}, scheduling={}, account={}, after={}/{}",
+				status, scheduling, accountId, afterRank, afterId);
+		int pageSize = Math.max(1, Math.min(size, MAX_PAGE_SIZE));
+		List<DWTransfertSummary> summaries = dWTransfertRepository.findSummaries(status, scheduling, accountId,
+				afterRank, afterId, pageSize);
+		HttpHeaders headers = new HttpHeaders();
+		if (!summaries.isEmpty()) {
+			DWTransfertSummary last = summaries.get(summaries.size() - 1);
+			headers = PaginationUtil.generateKeysetPaginationHttpHeaders(
+					ServletUriComponentsBuilder.fromCurrentRequest().toUriString(), summaries.size() == pageSize,
+					last.getRank(), last.getId(), pageSize);
+		}
+		return new ResponseEntity<>(summaries, headers, HttpStatus.OK);
+	}
+
 	/**
 	 * GET /d-w-transferts/:id : get the "id" dWTransfert.
 	 *
@@ -164,6 +236,18 @@ public class DWTransfertResource {
 				.orElse(new ResponseEntity<>(HttpStatus.NOT_FOUND));
 	}
 
+	/**
+	 * GET /d-w-transferts-progress : streams the progress of the transferts as
+	 * server-sent events.
+	 *
+	 * @return the emitter of the 'progress' events.
+	 */
+	@RequestMapping(value = "/d-w-transferts-progress", method = RequestMethod.GET, produces = "text/event-stream")
+	public SseEmitter streamProgress() {
+		log.debug("REST request to stream the transferts progress");
+		return progressPublisher.subscribe();
+	}
+
 	/**
 	 * Launch a transfert. /d-w-transferts/:id : get the "id" dWTransfert.
 	 *
@@ -174,14 +258,7 @@ public class DWTransfertResource {
 	@Timed
 	public void launchRunDWTransfert(@PathVariable Long id) {
 		log.debug("REST request to run asynchronously Transfert : {}", id);
-		ExecutorService executor = Executors.newSingleThreadExecutor();
-		executor.submit(() -> {
-			try {
-				transfertSchedulerService.runPersistentTransfert(id);
-			} catch (Exception e) {
-				log.warn(e.getMessage(), e);
-			}
-		});
+		transfertSchedulerService.launchPersistentTransfert(id);
 	}
 
 	/**
@@ -213,6 +290,7 @@ public class DWTransfertResource {
 	public ResponseEntity<Void> deleteDWTransfert(@PathVariable Long id) {
 		log.debug("REST request to delete DWTransfert : {}", id);
 		dWTransfertRepository.delete(id);
+		bandwidthLimiter.forget(id);
 		return ResponseEntity.ok().headers(HeaderUtil.createEntityDeletionAlert("dWTransfert", id.toString())).build();
 	}
 
@@ -1,13 +1,12 @@
 package org.scb.downloader.web.rest;
 
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 import org.scb.downloader.domain.DWHostAccount;
-import org.scb.downloader.domain.enumeration.DWProtocol;
+import org.scb.downloader.service.ConnectionPool;
 import org.scb.downloader.service.ConnectionService;
-import org.scb.downloader.service.ConnectionService.ConnectionSession;
+import org.scb.downloader.service.ConnectionServiceRegistry;
+import org.scb.downloader.service.DirectoryListingCache;
 import org.scb.downloader.web.rest.dto.BrowseRequest;
 import org.scb.downloader.web.rest.dto.BrowseResponse;
 import org.scb.downloader.web.rest.dto.FileInfo;
@@ -15,7 +14,6 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.MediaType;
-import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
@@ -33,13 +31,13 @@ public class FileBrowserResource {
 	private final Logger log = LoggerFactory.getLogger(FileBrowserResource.class);
 
 	@Autowired
-	private ConnectionService localFileSystemService;
-	@Autowired
-	private ConnectionService sshService;
+	private ConnectionServiceRegistry connectionServiceRegistry;
+
 	@Autowired
-	private ConnectionService ftpService;
+	private ConnectionPool connectionPool;
 
-	private Map<Long, SessionCacheEntry> account2session = new HashMap<Long, SessionCacheEntry>();
+	@Autowired
+	private DirectoryListingCache listingCache;
 
 	/**
 	 * GET /connect
@@ -49,16 +47,9 @@ public class FileBrowserResource {
 	public void connect(@RequestBody DWHostAccount account) {
 		log.debug("REST request to connect to {} as {}", account.getHost(), account.getUserName());
 		try {
-			ConnectionService cs = getConnectionService(account.getProtocol());
-			SessionCacheEntry ce = account2session.get(account.getId());
-			if (ce == null) {
-				log.debug("Establish a new connection session");
-				ce = new SessionCacheEntry(cs.connect(account));
-				log.debug("Register the new connection session");
-				account2session.put(account.getId(), ce);
-			} else {
-				log.debug("Connection session fetched.");
-			}
+			ConnectionService cs = connectionServiceRegistry.getConnectionService(account.getProtocol());
+			// establish a session in the pool for the next browse requests
+			connectionPool.release(connectionPool.borrow(cs, account), true);
 		} catch (Exception e) {
 			log.error(e.getMessage(), e);
 		}
@@ -72,13 +63,7 @@ public class FileBrowserResource {
 	public void disconnect(@RequestBody DWHostAccount account) {
 		log.debug("REST request to disconnect to {} as {}", account.getHost(), account.getUserName());
 		try {
-			SessionCacheEntry ce = account2session.get(account.getId());
-			if (ce != null) {
-				// forget session
-				account2session.remove(account.getId());
-				// Close connection session
-				ce.closeOrMarkAsToClose();
-			}
+			connectionPool.close(account.getId());
 		} catch (Exception e) {
 			log.error(e.getMessage(), e);
 		}
@@ -94,110 +79,33 @@ public class FileBrowserResource {
 		log.debug("REST request to browse file on {}:{}", browseRequest.getAccount().getHost(),
 				browseRequest.getPath());
 		try {
-			ConnectionService cs = getConnectionService(account.getProtocol());
-			SessionCacheEntry ce = account2session.get(account.getId());
-			if (ce == null) {
-				log.debug("Establish a new connection session");
-				ce = new SessionCacheEntry(cs.connect(account));
-				account2session.put(account.getId(), ce);
-			} else {
-				log.debug("Connection session fetched.");
-			}
-			try {
-				log.debug("Listing files in path {}", browseRequest.getPath());
-				List<ConnectionService.FileEntry> files = cs.listDir(ce.getSession(), browseRequest.getPath(),
-						browseRequest.getDirectoryOnly());
-				log.debug("{} files found.", files.size());
-				return new BrowseResponse(browseRequest, FileInfo.toFileInfo(files));
-			} catch (Exception e) {
-				account2session.remove(account.getId());
-				ce.closeOrMarkAsToClose();
-				throw e;
+			ConnectionService cs = connectionServiceRegistry.getConnectionService(account.getProtocol());
+			if (Boolean.TRUE.equals(browseRequest.getRefresh())) {
+				listingCache.invalidate(account.getId(), browseRequest.getPath());
 			}
+			log.debug("Listing files in path {}", browseRequest.getPath());
+			List<ConnectionService.FileEntry> files = listingCache.listDir(cs, account, browseRequest.getPath(),
+					Boolean.TRUE.equals(browseRequest.getDirectoryOnly()));
+			log.debug("{} files found.", files.size());
+			return new BrowseResponse(browseRequest, FileInfo.toFileInfo(files));
 		} catch (Exception e) {
 			return null;
 		}
 	}
 
-	@Scheduled(fixedDelay = 60 * 1000)
-	public void cleanCache() {
-		long limit = System.currentTimeMillis() - (10 * 60 * 1000);
-		// find sessions to close
-		Map<Long, SessionCacheEntry> toRemove = new HashMap<Long, SessionCacheEntry>();
-		for (Map.Entry<Long, SessionCacheEntry> me : this.account2session.entrySet()) {
-			if (me.getValue().getLastUsed() < limit) {
-				toRemove.put(me.getKey(), me.getValue());
-			}
-		}
-
-		// Close the sessions.
-		for (Map.Entry<Long, SessionCacheEntry> me : toRemove.entrySet()) {
-			account2session.remove(me.getKey());
-			// Now the session cannot be used by a new asker
-			// But the session could be still used => try to close the session
-			// or mark it as it has to be closed.
-			me.getValue().closeOrMarkAsToClose();
-			log.info("Cache entry {} cleaned.", me.getKey());
-		}
-	}
-
-	private ConnectionService getConnectionService(DWProtocol protocol) throws Exception {
-		switch (protocol) {
-		case LOCAL_FILE_SYSTEM:
-			return localFileSystemService;
-		case SSH:
-			return sshService;
-		case FTP:
-			return ftpService;
-		default:
-			throw new Exception("Protocol is not managed: " + protocol);
-		}
-	}
-
-	public ConnectionService getLocalFileSystemService() {
-		return localFileSystemService;
-	}
-
-	public void setLocalFileSystemService(ConnectionService localFileSystemService) {
-		this.localFileSystemService = localFileSystemService;
-	}
-
-	public ConnectionService getSshService() {
-		return sshService;
-	}
-
-	public void setSshService(ConnectionService sshService) {
-		this.sshService = sshService;
-	}
-
-	public ConnectionService getFtpService() {
-		return ftpService;
-	}
-
-	public void setFtpService(ConnectionService ftpService) {
-		this.ftpService = ftpService;
-	}
-}
-
-class SessionCacheEntry {
-	private long lastUsed = System.currentTimeMillis();
-	private ConnectionSession session;
-
-	public SessionCacheEntry(ConnectionSession session) {
-		super();
-		this.session = session;
+	public DirectoryListingCache getListingCache() {
+		return listingCache;
 	}
 
-	public ConnectionSession getSession() {
-		lastUsed = System.currentTimeMillis();
-		return session;
+	public void setListingCache(DirectoryListingCache listingCache) {
+		this.listingCache = listingCache;
 	}
 
-	public long getLastUsed() {
-		return lastUsed;
+	public ConnectionServiceRegistry getConnectionServiceRegistry() {
+		return connectionServiceRegistry;
 	}
 
-	public void closeOrMarkAsToClose() {
-		session.closeOrMarkAsToClose();
+	public void setConnectionServiceRegistry(ConnectionServiceRegistry connectionServiceRegistry) {
+		this.connectionServiceRegistry = connectionServiceRegistry;
 	}
 }
\ No newline at end of file
@@ -0,0 +1,65 @@
+package org.scb.downloader.web.rest.dto;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The current bandwidth caps in bytes per second. 0 means no limit.
+ */
+public class BandwidthLimits {
+
+	/** The cap of all the transferts. */
+	private long globalRate;
+
+	/** The cap of the accounts without specific cap. */
+	private long accountRate;
+
+	/** The cap of the transferts without specific cap. */
+	private long transfertRate;
+
+	/** The specific caps by account identifier. */
+	private Map<Long, Long> accountRates = new HashMap<>();
+
+	/** The specific caps by transfert identifier. */
+	private Map<Long, Long> transfertRates = new HashMap<>();
+
+	public long getGlobalRate() {
+		return globalRate;
+	}
+
+	public void setGlobalRate(long globalRate) {
+		this.globalRate = globalRate;
+	}
+
+	public long getAccountRate() {
+		return accountRate;
+	}
+
+	public void setAccountRate(long accountRate) {
+		this.accountRate = accountRate;
+	}
+
+	public long getTransfertRate() {
+		return transfertRate;
+	}
+
+	public void setTransfertRate(long transfertRate) {
+		this.transfertRate = transfertRate;
+	}
+
+	public Map<Long, Long> getAccountRates() {
+		return accountRates;
+	}
+
+	public void setAccountRates(Map<Long, Long> accountRates) {
+		this.accountRates = accountRates;
+	}
+
+	public Map<Long, Long> getTransfertRates() {
+		return transfertRates;
+	}
+
+	public void setTransfertRates(Map<Long, Long> transfertRates) {
+		this.transfertRates = transfertRates;
+	}
+}
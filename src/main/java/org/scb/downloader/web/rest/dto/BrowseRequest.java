@@ -7,6 +7,8 @@ public class BrowseRequest {
 	private DWHostAccount account;
 	private String path;
 	private Boolean directoryOnly;
+	/** True to list the directory again instead of using the cache. */
+	private Boolean refresh;
 
 	public BrowseRequest() {
 	}
@@ -15,6 +17,7 @@ public class BrowseRequest {
 		this.account = req.account;
 		this.path = req.path;
 		this.directoryOnly = req.directoryOnly;
+		this.refresh = req.refresh;
 	}
 
 	public DWHostAccount getAccount() {
@@ -40,4 +43,12 @@ public class BrowseRequest {
 	public void setDirectoryOnly(Boolean directoryOnly) {
 		this.directoryOnly = directoryOnly;
 	}
+
+	public Boolean getRefresh() {
+		return refresh;
+	}
+
+	public void setRefresh(Boolean refresh) {
+		this.refresh = refresh;
+	}
 }
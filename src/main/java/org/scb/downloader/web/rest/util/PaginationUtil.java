@@ -39,6 +39,28 @@ public class PaginationUtil {
         return headers;
     }
 
+    /**
+     * Generates the headers of a page read with keyset pagination: the link to the next page gives the sort keys
+     * of the last element of the page instead of a page number.
+     *
+     * @param baseUrl the url of the page, with its filter parameters
+     * @param full true if the page is full, so a next page may exist
+     * @param afterRank the rank of the last element of the page
+     * @param afterId the identifier of the last element of the page
+     * @param size the size of the page
+     */
+    public static HttpHeaders generateKeysetPaginationHttpHeaders(String baseUrl, boolean full, long afterRank,
+        long afterId, int size) {
+
+        HttpHeaders headers = new HttpHeaders();
+        if (full) {
+            String next = UriComponentsBuilder.fromUriString(baseUrl).replaceQueryParam("afterRank", afterRank)
+                .replaceQueryParam("afterId", afterId).replaceQueryParam("size", size).toUriString();
+            headers.add(HttpHeaders.LINK, "<" + next + ">; rel=\"next\"");
+        }
+        return headers;
+    }
+
     private static String generateUri(String baseUrl, int page, int size) throws URISyntaxException {
         return UriComponentsBuilder.fromUriString(baseUrl).queryParam("page", page).queryParam("size", size).toUriString();
     }
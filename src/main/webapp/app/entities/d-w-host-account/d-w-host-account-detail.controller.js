@@ -27,12 +27,13 @@
         	console.log('onBrowseFail!')
         }
         
-        function onBrowse() {
+        function onBrowse(refresh) {
         	var path = vm.path;
         	var req = {
         		path : vm.path,
         		account : vm.dWHostAccount,
-        		directoryOnly : false
+        		directoryOnly : false,
+        		refresh : refresh === true
         	}
         	FileBrowser.browse(req, onBrowseResponse, onBrowseFail);
         }
@@ -100,6 +100,12 @@
                                 userName: null,
                                 password: null,
                                 protocol: null,
+                                sshTransferMode: 'SFTP',
+                                sftpBulkRequests: 0,
+                                sftpBufferSize: 0,
+                                compressionLevel: 0,
+                                adaptiveCompression: false,
+                                ftpsImplicit: false,
                                 id: null
                             };
                         }
@@ -10,14 +10,57 @@
     function DWTransfertController ($scope, $state, DWTransfert) {
         var vm = this;
         
+        var pageSize = 50;
         vm.dWTransferts = [];
+        vm.hasMore = false;
+        vm.loadMore = loadMore;
 
-        loadAll();
+        loadMore();
+        listenProgress();
 
-        function loadAll() {
-            DWTransfert.query(function(result) {
-                vm.dWTransferts = result;
+        // the transferts are read by pages of light transferts, the next page
+        // starts after the last loaded transfert
+        function loadMore() {
+            var params = { size: pageSize };
+            if (vm.dWTransferts.length > 0) {
+                var last = vm.dWTransferts[vm.dWTransferts.length - 1];
+                params.afterRank = last.rank;
+                params.afterId = last.id;
+            }
+            DWTransfert.summaries(params, function(result) {
+                vm.dWTransferts = vm.dWTransferts.concat(result);
+                vm.hasMore = result.length === pageSize;
+            });
+        }
+
+        // the server pushes the progress of the transferts
+        function listenProgress() {
+            if (typeof EventSource === 'undefined') {
+                return;
+            }
+            var source = new EventSource('api/d-w-transferts-progress');
+            source.addEventListener('progress', function(event) {
+                var deltas = angular.fromJson(event.data);
+                $scope.$apply(function() {
+                    angular.forEach(deltas, applyProgress);
+                });
             });
+            $scope.$on('$destroy', function() {
+                source.close();
+            });
+        }
+
+        function applyProgress(delta) {
+            for (var i = 0; i < vm.dWTransferts.length; i++) {
+                var transfert = vm.dWTransferts[i];
+                if (transfert.id === delta.id) {
+                    transfert.status = delta.status;
+                    transfert.fileSize = delta.fileSize;
+                    transfert.downloaded = delta.downloaded;
+                    transfert.rate = delta.status === 'DOING' ? delta.rate : null;
+                    return;
+                }
+            }
         }
         
         vm.getFileName = function(path)
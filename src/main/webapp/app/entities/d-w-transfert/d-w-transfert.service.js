@@ -11,6 +11,11 @@
 
         return $resource(resourceUrl, {}, {
             'query': { method: 'GET', isArray: true},
+            'summaries': {
+            	url : 'api/d-w-transferts-summaries',
+            	method:'GET',
+            	isArray: true
+            },
             'get': {
                 method: 'GET',
                 transformResponse: function (data) {
@@ -98,6 +98,7 @@
                                 id: null,
                                 status: "CREATED",
                                 scheduling: "EVERY_DAY_WINDOW",
+                                syncMode: "COPY",
                                 rank: 0,
                                 source : {
                                 	account : {
@@ -0,0 +1,257 @@
+package org.scb.downloader.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.scb.downloader.domain.DWFileInfo;
+import org.scb.downloader.domain.DWHostAccount;
+import org.scb.downloader.domain.enumeration.DWProtocol;
+import org.scb.downloader.domain.enumeration.DWSyncMode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class AbstractConnectionServiceImplTest {
+
+	private File root;
+
+	private FakeRemoteService service;
+
+	/**
+	 * A remote server whose files are in a local directory.
+	 */
+	static class FakeRemoteService extends AbstractConnectionServiceImpl {
+		final File remoteRoot;
+		boolean failListing = false;
+		boolean refuseDirectory = false;
+
+		FakeRemoteService(File remoteRoot) {
+			this.remoteRoot = remoteRoot;
+		}
+
+		private File file(String path) {
+			return new File(remoteRoot, path);
+		}
+
+		private static FileEntry entry(File file) {
+			return new FileEntry() {
+				@Override
+				public String getFilename() {
+					return file.getName();
+				}
+
+				@Override
+				public boolean isDir() {
+					return file.isDirectory();
+				}
+
+				@Override
+				public long getSize() {
+					return file.length();
+				}
+
+				@Override
+				public long geLastModified() {
+					return file.lastModified();
+				}
+			};
+		}
+
+		@Override
+		protected Logger log() {
+			return LoggerFactory.getLogger(FakeRemoteService.class);
+		}
+
+		@Override
+		public Set<DWProtocol> getProtocols() {
+			return Collections.emptySet();
+		}
+
+		@Override
+		public ConnectionSession connect(DWHostAccount account) throws Exception {
+			return new ConnectionPoolTest.TestSession();
+		}
+
+		@Override
+		public List<FileEntry> listDir(ConnectionSession session, String path, boolean directoryOnly)
+				throws Exception {
+			if (failListing) {
+				throw new IOException("Listing failure");
+			}
+			List<FileEntry> entries = new ArrayList<>();
+			for (File child : file(path).listFiles()) {
+				entries.add(entry(child));
+			}
+			return entries;
+		}
+
+		@Override
+		public FileEntry stat(ConnectionSession session, String path) throws Exception {
+			File file = file(path);
+			return file.exists() ? entry(file) : null;
+		}
+
+		@Override
+		protected void createRemoteDirectory(String directory, ConnectionSession session) throws Exception {
+			file(directory).mkdirs();
+		}
+
+		@Override
+		protected boolean changeRemoteDirectory(String directory, ConnectionSession session) throws Exception {
+			return !refuseDirectory && file(directory).isDirectory();
+		}
+
+		@Override
+		protected void uploadFile(File localFile, String remoteTargetDirectory, ConnectionSession session,
+				ProgressHandler handler) throws Exception {
+			File target = new File(file(remoteTargetDirectory), localFile.getName());
+			FileUtils.copyFile(localFile, target);
+		}
+
+		@Override
+		protected void downloadFile(String remoteSourceFile, File localTargetDirectory, ConnectionSession session,
+				ProgressHandler handler) throws Exception {
+			File source = file(remoteSourceFile);
+			FileUtils.copyFile(source, new File(localTargetDirectory, source.getName()));
+		}
+
+		@Override
+		protected InputStream openRemoteInputStream(String remoteSourceFile, ConnectionSession session)
+				throws Exception {
+			return Files.newInputStream(file(remoteSourceFile).toPath());
+		}
+
+		@Override
+		protected OutputStream openRemoteOutputStream(String remoteTargetFile, ConnectionSession session)
+				throws Exception {
+			return Files.newOutputStream(file(remoteTargetFile).toPath());
+		}
+
+		@Override
+		protected void deleteRemoteFile(String remoteFile, ConnectionSession session) throws Exception {
+			Files.delete(file(remoteFile).toPath());
+		}
+
+		@Override
+		protected void deleteRemoteDirectory(String remoteDirectory, ConnectionSession session) throws Exception {
+			Files.delete(file(remoteDirectory).toPath());
+		}
+	}
+
+	@Before
+	public void setUp() throws Exception {
+		root = Files.createTempDirectory("syncmode").toFile();
+		service = new FakeRemoteService(new File(root, "remote"));
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		FileUtils.deleteDirectory(root);
+	}
+
+	private static File createFile(File file, String content) throws Exception {
+		file.getParentFile().mkdirs();
+		FileUtils.writeStringToFile(file, content);
+		file.setLastModified(1000000000000l);
+		return file;
+	}
+
+	private static DWFileInfo fileInfo(String path) {
+		DWFileInfo fileInfo = new DWFileInfo();
+		fileInfo.setPath(path);
+		return fileInfo;
+	}
+
+	/**
+	 * Downloads the remote directory 'dir' into the local directory 'local'
+	 * which already contains 'dir/same.txt', 'dir/changed.txt' and
+	 * 'dir/extra.txt'.
+	 */
+	private File download(DWSyncMode syncMode) throws Exception {
+		createFile(new File(service.remoteRoot, "dir/same.txt"), "same");
+		createFile(new File(service.remoteRoot, "dir/changed.txt"), "new content");
+		File local = new File(root, "local");
+		createFile(new File(local, "dir/same.txt"), "same");
+		createFile(new File(local, "dir/changed.txt"), "old");
+		createFile(new File(local, "dir/extra.txt"), "extra");
+		service.download(new ConnectionPoolTest.TestSession(), fileInfo("/dir"), local.getAbsolutePath(),
+				syncMode, null);
+		return new File(local, "dir");
+	}
+
+	@Test
+	public void testCopyKeepsTheExtraFiles() throws Exception {
+		File target = download(DWSyncMode.COPY);
+		assertEquals("new content", FileUtils.readFileToString(new File(target, "changed.txt")));
+		assertTrue(new File(target, "extra.txt").exists());
+	}
+
+	@Test
+	public void testSyncKeepsTheExtraFiles() throws Exception {
+		File target = download(DWSyncMode.SYNC);
+		assertEquals("same", FileUtils.readFileToString(new File(target, "same.txt")));
+		assertEquals("new content", FileUtils.readFileToString(new File(target, "changed.txt")));
+		assertTrue(new File(target, "extra.txt").exists());
+	}
+
+	@Test
+	public void testMirrorDeletesTheExtraFiles() throws Exception {
+		File target = download(DWSyncMode.MIRROR);
+		assertEquals("new content", FileUtils.readFileToString(new File(target, "changed.txt")));
+		assertFalse("The file missing in the source should be deleted", new File(target, "extra.txt").exists());
+	}
+
+	@Test
+	public void testMirrorEmptiesTheTargetOfAnEmptySource() throws Exception {
+		new File(service.remoteRoot, "empty").mkdirs();
+		File local = new File(root, "local");
+		createFile(new File(local, "empty/extra.txt"), "extra");
+		service.download(new ConnectionPoolTest.TestSession(), fileInfo("/empty"), local.getAbsolutePath(),
+				DWSyncMode.MIRROR, null);
+		assertEquals(0, new File(local, "empty").list().length);
+	}
+
+	@Test
+	public void testUploadFailsWhenTheDirectoryIsRefused() throws Exception {
+		File source = createFile(new File(root, "local/file.txt"), "content");
+		service.refuseDirectory = true;
+		try {
+			service.upload(new ConnectionPoolTest.TestSession(), source.getAbsolutePath(), fileInfo("target"), null,
+					null);
+			fail("The refused directory should be reported");
+		} catch (IOException e) {
+			assertEquals("Cannot change to the remote directory 'target': refused by the server", e.getMessage());
+		}
+		assertFalse(new File(service.remoteRoot, "target/file.txt").exists());
+	}
+
+	@Test
+	public void testMirrorKeepsTheTargetWhenTheListingFails() throws Exception {
+		service.failListing = true;
+		try {
+			download(DWSyncMode.MIRROR);
+			fail("The listing failure should be thrown");
+		} catch (IOException e) {
+			// expected
+		}
+		File target = new File(root, "local/dir");
+		assertTrue(new File(target, "same.txt").exists());
+		assertTrue(new File(target, "changed.txt").exists());
+		assertTrue(new File(target, "extra.txt").exists());
+	}
+}
@@ -0,0 +1,34 @@
+package org.scb.downloader.service;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class CompressibilityTest {
+
+	@Test
+	public void testExtension() {
+		assertFalse(Compressibility.isCompressible("archive.tar.GZ"));
+		assertFalse(Compressibility.isCompressible("photo.jpg"));
+		assertTrue(Compressibility.isCompressible("export.csv"));
+		assertTrue(Compressibility.isCompressible("README"));
+	}
+
+	@Test
+	public void testSample() {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; sb.length() < Compressibility.SAMPLE_SIZE; i++) {
+			sb.append("2026-10-18 12:00:00 INFO line ").append(i).append('\n');
+		}
+		byte[] text = sb.toString().getBytes(StandardCharsets.US_ASCII);
+		assertTrue(Compressibility.isCompressible(text, text.length));
+
+		byte[] random = new byte[Compressibility.SAMPLE_SIZE];
+		new Random(1).nextBytes(random);
+		assertFalse(Compressibility.isCompressible(random, random.length));
+	}
+}
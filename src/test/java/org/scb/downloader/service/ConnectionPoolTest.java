@@ -0,0 +1,169 @@
+package org.scb.downloader.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.scb.downloader.config.DownloaderProperties;
+import org.scb.downloader.domain.DWFileInfo;
+import org.scb.downloader.domain.DWHostAccount;
+import org.scb.downloader.domain.enumeration.DWProtocol;
+import org.scb.downloader.domain.enumeration.DWSyncMode;
+import org.scb.downloader.service.ConnectionService.ConnectionSession;
+
+public class ConnectionPoolTest {
+
+	private ConnectionPool pool;
+	private CountingConnectionService cs;
+
+	@Before
+	public void init() {
+		DownloaderProperties properties = new DownloaderProperties();
+		properties.getConnectionPool().setMaxPerAccount(2);
+		properties.getConnectionPool().setBorrowTimeout(1);
+		pool = new ConnectionPool();
+		pool.setDownloaderProperties(properties);
+		cs = new CountingConnectionService();
+	}
+
+	@Test
+	public void testReuseReleasedSession() throws Exception {
+		DWHostAccount account = buildAccount(1l);
+		ConnectionSession session = pool.borrow(cs, account);
+		assertTrue("Borrowed session should be used", session.isUsed());
+		pool.release(session, true);
+		assertFalse("Released session should be unused", session.isUsed());
+
+		assertSame("Released session should be reused", session, pool.borrow(cs, account));
+		assertEquals("Bad number of connections", 1, cs.nbConnection);
+	}
+
+	@Test
+	public void testDoNotReuseFailedSession() throws Exception {
+		DWHostAccount account = buildAccount(1l);
+		TestSession session = (TestSession) pool.borrow(cs, account);
+		pool.release(session, false);
+		assertTrue("Failed session should be closed", session.closed);
+		assertNotSame("Failed session should not be reused", session, pool.borrow(cs, account));
+	}
+
+	@Test
+	public void testDropInvalidSession() throws Exception {
+		DWHostAccount account = buildAccount(1l);
+		TestSession session = (TestSession) pool.borrow(cs, account);
+		pool.release(session, true);
+		session.valid = false;
+		assertNotSame("Invalid session should not be reused", session, pool.borrow(cs, account));
+		assertTrue("Invalid session should be closed", session.closed);
+	}
+
+	@Test
+	public void testMaxPerAccount() throws Exception {
+		DWHostAccount account = buildAccount(1l);
+		pool.borrow(cs, account);
+		pool.borrow(cs, account);
+		// another account is not limited
+		pool.borrow(cs, buildAccount(2l));
+		try {
+			pool.borrow(cs, account);
+			fail("The maximal number of sessions should be reached");
+		} catch (Exception e) {
+			assertEquals("Bad number of connections", 3, cs.nbConnection);
+		}
+	}
+
+	@Test
+	public void testTryBorrow() throws Exception {
+		DWHostAccount account = buildAccount(1l);
+		ConnectionSession first = pool.tryBorrow(cs, account);
+		assertNotNull(first);
+		assertNotNull(pool.tryBorrow(cs, account));
+		assertNull("The maximal number of sessions should be reached", pool.tryBorrow(cs, account));
+		pool.release(first, true);
+		assertSame("The released session should be reused", first, pool.tryBorrow(cs, account));
+	}
+
+	@Test
+	public void testCloseAccount() throws Exception {
+		DWHostAccount account = buildAccount(1l);
+		TestSession idle = (TestSession) pool.borrow(cs, account);
+		TestSession borrowed = (TestSession) pool.borrow(cs, account);
+		pool.release(idle, true);
+		pool.close(account.getId());
+		assertTrue("Idle session should be closed", idle.closed);
+		assertFalse("Borrowed session should not be closed", borrowed.closed);
+		pool.release(borrowed, true);
+		assertTrue("Released session should be closed", borrowed.closed);
+	}
+
+	private DWHostAccount buildAccount(Long id) {
+		DWHostAccount account = new DWHostAccount();
+		account.setId(id);
+		account.setProtocol(DWProtocol.SSH);
+		return account;
+	}
+
+	static class TestSession extends ConnectionService.ConnectionSession {
+		boolean valid = true;
+		boolean closed = false;
+
+		@Override
+		public boolean isValid() {
+			return valid;
+		}
+
+		@Override
+		protected void forceClose() {
+			closed = true;
+		}
+	}
+
+	static class CountingConnectionService implements ConnectionService {
+		int nbConnection = 0;
+
+		@Override
+		public Set<DWProtocol> getProtocols() {
+			return Collections.emptySet();
+		}
+
+		@Override
+		public ConnectionSession connect(DWHostAccount account) throws Exception {
+			nbConnection++;
+			return new TestSession();
+		}
+
+		@Override
+		public List<FileEntry> listDir(ConnectionSession session, String path, boolean directoryOnly)
+				throws Exception {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public FileEntry stat(ConnectionSession session, String path) throws Exception {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void upload(ConnectionSession session, String srcPath, DWFileInfo target, DWSyncMode syncMode,
+				ProgressHandler handler) throws Exception {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void download(ConnectionSession session, DWFileInfo source, String targetPath,
+				DWSyncMode syncMode, ProgressHandler handler) throws Exception {
+			throw new UnsupportedOperationException();
+		}
+	}
+}
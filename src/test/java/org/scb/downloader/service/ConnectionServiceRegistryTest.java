@@ -0,0 +1,89 @@
+package org.scb.downloader.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.scb.downloader.domain.DWHostAccount;
+import org.scb.downloader.domain.enumeration.DWProtocol;
+import org.scb.downloader.domain.enumeration.DWSyncMode;
+
+public class ConnectionServiceRegistryTest {
+
+	private ConnectionServiceRegistry registry;
+
+	private SshService sshService;
+
+	@Before
+	public void setUp() {
+		sshService = new SshService();
+		registry = new ConnectionServiceRegistry();
+		registry.setConnectionServices(
+				Arrays.asList(new LocalFileSystemService(), sshService, new FtpService(), new HttpService()));
+	}
+
+	private static DWHostAccount account(long id, DWProtocol protocol) {
+		DWHostAccount account = new DWHostAccount();
+		account.setId(id);
+		account.setProtocol(protocol);
+		return account;
+	}
+
+	@Test
+	public void testServicesByProtocol() throws Exception {
+		assertSame(sshService, registry.getConnectionService(DWProtocol.SSH));
+		assertSame(registry.getConnectionService(DWProtocol.FTP), registry.getConnectionService(DWProtocol.FTPS));
+		assertTrue(registry.isLocal(account(1, DWProtocol.LOCAL_FILE_SYSTEM)));
+		assertFalse(registry.isLocal(account(2, DWProtocol.FTP)));
+		assertTrue(registry.getCapabilities(DWProtocol.SSH).isServerSideCopy());
+		assertFalse(registry.getCapabilities(DWProtocol.FTP).isServerSideCopy());
+	}
+
+	@Test
+	public void testUnmanagedProtocol() {
+		try {
+			new ConnectionServiceRegistry().getConnectionService(DWProtocol.SSH);
+			fail("The protocol should not be managed");
+		} catch (Exception e) {
+			assertEquals("Protocol is not managed: SSH", e.getMessage());
+		}
+	}
+
+	@Test
+	public void testChooseStrategy() throws Exception {
+		DWHostAccount local = account(1, DWProtocol.LOCAL_FILE_SYSTEM);
+		DWHostAccount ssh = account(2, DWProtocol.SSH);
+		DWHostAccount otherSsh = account(3, DWProtocol.SSH);
+		DWHostAccount ftp = account(4, DWProtocol.FTP);
+
+		assertEquals(TransfertStrategy.UPLOAD, registry.chooseStrategy(local, ssh, null, true));
+		assertEquals(TransfertStrategy.DOWNLOAD, registry.chooseStrategy(ftp, local, null, true));
+		assertEquals(TransfertStrategy.SERVER_SIDE_COPY,
+				registry.chooseStrategy(ssh, account(2, DWProtocol.SSH), DWSyncMode.COPY, true));
+		assertEquals("The server-side copy does not synchronize", TransfertStrategy.RELAY,
+				registry.chooseStrategy(ssh, ssh, DWSyncMode.SYNC, true));
+		assertEquals(TransfertStrategy.RELAY, registry.chooseStrategy(ssh, otherSsh, null, true));
+		assertEquals(TransfertStrategy.LOCAL_COPY, registry.chooseStrategy(ssh, ftp, null, false));
+		assertEquals(TransfertStrategy.RELAY, registry.chooseStrategy(account(5, DWProtocol.HTTPS), ftp, null, true));
+	}
+
+	@Test
+	public void testSourceOnlyTarget() throws Exception {
+		DWHostAccount http = account(5, DWProtocol.HTTP);
+		assertFalse(registry.isWritable(http));
+		assertTrue(registry.isWritable(account(2, DWProtocol.SSH)));
+		try {
+			registry.chooseStrategy(account(2, DWProtocol.SSH), http, null, true);
+			fail("An HTTP account cannot be the target of a transfert");
+		} catch (IOException e) {
+			assertEquals("The HTTP accounts can only be the source of a transfert.", e.getMessage());
+		}
+	}
+}
@@ -0,0 +1,207 @@
+package org.scb.downloader.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+
+import javax.inject.Inject;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.scb.downloader.DownloaderApp;
+import org.scb.downloader.domain.DWFileInfo;
+import org.scb.downloader.domain.DWHostAccount;
+import org.scb.downloader.domain.DWTransfert;
+import org.scb.downloader.domain.enumeration.DWProtocol;
+import org.scb.downloader.domain.enumeration.DWTransfertScheduling;
+import org.scb.downloader.domain.enumeration.TransfertStatus;
+import org.scb.downloader.repository.DWHostAccountRepository;
+import org.scb.downloader.repository.DWTransfertRepository;
+import org.springframework.boot.test.IntegrationTest;
+import org.springframework.boot.test.SpringApplicationConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.test.context.web.WebAppConfiguration;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Test class for the claim of the transferts to perform.
+ *
+ * @see DWTransfertService
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@SpringApplicationConfiguration(classes = DownloaderApp.class)
+@WebAppConfiguration
+@IntegrationTest
+@Transactional
+public class DWTransfertServiceIntTest {
+
+	@Inject
+	private DWTransfertService transfertService;
+
+	@Inject
+	private DWTransfertRepository transfertRepository;
+
+	@Inject
+	private DWHostAccountRepository hostAccountRepository;
+
+	@Inject
+	private TransfertProgressRegistry progressRegistry;
+
+	@PersistenceContext
+	private EntityManager em;
+
+	private DWHostAccount createAccount(DWProtocol protocol) {
+		DWHostAccount account = new DWHostAccount();
+		account.setHost("host");
+		account.setProtocol(protocol);
+		return hostAccountRepository.saveAndFlush(account);
+	}
+
+	private DWTransfert createTransfert(long rank, DWHostAccount source, DWHostAccount target) {
+		DWTransfert transfert = new DWTransfert();
+		transfert.setStatus(TransfertStatus.CREATED);
+		transfert.setScheduling(DWTransfertScheduling.IMMEDIATLY);
+		transfert.setRank(rank);
+		DWFileInfo sourceInfo = new DWFileInfo();
+		sourceInfo.setPath("/source/" + rank);
+		sourceInfo.setAccount(source);
+		transfert.setSource(sourceInfo);
+		DWFileInfo targetInfo = new DWFileInfo();
+		targetInfo.setPath("/target");
+		targetInfo.setAccount(target);
+		transfert.setTarget(targetInfo);
+		return transfertRepository.saveAndFlush(transfert);
+	}
+
+	@Test
+	public void claimNextSkipsRunningTransferts() {
+		DWHostAccount local = createAccount(DWProtocol.LOCAL_FILE_SYSTEM);
+		DWTransfert first = createTransfert(1, local, local);
+		DWTransfert second = createTransfert(2, local, local);
+
+		// no running transfert: the empty exclusions exclude nothing
+		DWTransfert claimed = transfertService.claimNext(Collections.emptySet(), Collections.emptySet());
+		assertThat(claimed.getId()).isEqualTo(first.getId());
+		assertThat(claimed.getStatus()).isEqualTo(TransfertStatus.DOING);
+		assertThat(claimed.getStart()).isNotNull();
+
+		// the claimed transfert is running: it is not claimed twice
+		claimed = transfertService.claimNext(Collections.singleton(first.getId()), Collections.emptySet());
+		assertThat(claimed.getId()).isEqualTo(second.getId());
+
+		claimed = transfertService.claimNext(new HashSet<>(Arrays.asList(first.getId(), second.getId())),
+				Collections.emptySet());
+		assertThat(claimed).isNull();
+
+		// an interrupted transfert comes before a new one of lower rank
+		first.setStatus(TransfertStatus.CREATED);
+		transfertRepository.saveAndFlush(first);
+		claimed = transfertService.claimNext(Collections.emptySet(), Collections.emptySet());
+		assertThat(claimed.getId()).isEqualTo(second.getId());
+	}
+
+	@Test
+	public void claimNextSkipsBusyAccounts() {
+		DWHostAccount local = createAccount(DWProtocol.LOCAL_FILE_SYSTEM);
+		DWHostAccount busy = createAccount(DWProtocol.SSH);
+		DWHostAccount free = createAccount(DWProtocol.SSH);
+		DWTransfert first = createTransfert(1, busy, local);
+		DWTransfert second = createTransfert(2, local, free);
+
+		DWTransfert claimed = transfertService.claimNext(Collections.emptySet(), Collections.singleton(busy.getId()));
+		assertThat(claimed.getId()).isEqualTo(second.getId());
+
+		// the account is busy as a source or as a target
+		claimed = transfertService.claimNext(new HashSet<>(Arrays.asList(second.getId())),
+				new HashSet<>(Arrays.asList(busy.getId(), free.getId())));
+		assertThat(claimed).isNull();
+
+		claimed = transfertService.claimNext(Collections.singleton(second.getId()), Collections.emptySet());
+		assertThat(claimed.getId()).isEqualTo(first.getId());
+	}
+
+	@Test
+	public void claimNextWaitsForTheNextAttempt() {
+		DWHostAccount local = createAccount(DWProtocol.LOCAL_FILE_SYSTEM);
+		DWTransfert failed = createTransfert(1, local, local);
+		failed.setStatus(TransfertStatus.DOING);
+		failed.setNextAttempt(new Date(System.currentTimeMillis() + 60000));
+		transfertRepository.saveAndFlush(failed);
+		DWTransfert created = createTransfert(2, local, local);
+
+		// the failed transfert waits for its next attempt
+		DWTransfert claimed = transfertService.claimNext(Collections.emptySet(), Collections.emptySet());
+		assertThat(claimed.getId()).isEqualTo(created.getId());
+		assertThat(transfertService.findNextAttempt().getTime()).isEqualTo(failed.getNextAttempt().getTime());
+
+		failed.setNextAttempt(new Date(System.currentTimeMillis() - 1000));
+		transfertRepository.saveAndFlush(failed);
+		claimed = transfertService.claimNext(Collections.singleton(created.getId()), Collections.emptySet());
+		assertThat(claimed.getId()).isEqualTo(failed.getId());
+		assertThat(transfertService.findNextAttempt()).isNull();
+	}
+
+	@Test
+	public void transfertOnErrorDelaysTheNextAttempt() {
+		DWHostAccount local = createAccount(DWProtocol.LOCAL_FILE_SYSTEM);
+		DWTransfert transfert = createTransfert(1, local, local);
+		transfertService.transfertStarted(transfert);
+
+		long before = System.currentTimeMillis();
+		transfertService.transfertOnError(transfert, "first error");
+		long delay = transfertService.getRetryDelay(1) * 1000;
+		assertThat(transfert.getStatus()).isEqualTo(TransfertStatus.DOING);
+		assertThat(transfert.getNextAttempt().getTime()).isBetween(before + delay,
+				System.currentTimeMillis() + delay);
+
+		// the delay is doubled at each error
+		assertThat(transfertService.getRetryDelay(2)).isEqualTo(2 * transfertService.getRetryDelay(1));
+		transfertService.transfertOnError(transfert, "second error");
+		assertThat(transfert.getNextAttempt().getTime()).isGreaterThanOrEqualTo(before + 2 * delay);
+
+		// a new attempt clears the delay
+		transfertService.transfertStarted(transfert);
+		assertThat(transfertRepository.findOne(transfert.getId()).getNextAttempt()).isNull();
+	}
+
+	@Test
+	public void flushProgressOfRunningTransferts() {
+		DWHostAccount local = createAccount(DWProtocol.LOCAL_FILE_SYSTEM);
+		DWTransfert running = createTransfert(1, local, local);
+		running.setStatus(TransfertStatus.DOING);
+		transfertRepository.saveAndFlush(running);
+		DWTransfert done = createTransfert(2, local, local);
+		done.setStatus(TransfertStatus.DONE);
+		transfertRepository.saveAndFlush(done);
+
+		TransfertProgress runningProgress = progressRegistry.register(running);
+		TransfertProgress doneProgress = progressRegistry.register(done);
+		try {
+			runningProgress.fileStarted("/source/1", 100);
+			runningProgress.validator("\"v1\"");
+			runningProgress.progress(40, 40);
+			doneProgress.fileStarted("/source/2", 100);
+			doneProgress.progress(60, 60);
+			progressRegistry.flush();
+		} finally {
+			progressRegistry.unregister(running);
+			progressRegistry.unregister(done);
+		}
+
+		// the progress is written by a bulk update
+		em.clear();
+		DWTransfert saved = transfertRepository.findOne(running.getId());
+		assertThat(saved.getFileSize()).isEqualTo(100l);
+		assertThat(saved.getDownloaded()).isEqualTo(40l);
+		assertThat(saved.getResumeFile()).isEqualTo("/source/1");
+		assertThat(saved.getResumeOffset()).isEqualTo(40l);
+		assertThat(saved.getResumeValidator()).isEqualTo("\"v1\"");
+		// a finished transfert is not overwritten by a late progress
+		assertThat(transfertRepository.findOne(done.getId()).getDownloaded()).isEqualTo(0l);
+	}
+}
@@ -0,0 +1,233 @@
+package org.scb.downloader.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.scb.downloader.config.DownloaderProperties;
+import org.scb.downloader.domain.DWHostAccount;
+import org.scb.downloader.domain.enumeration.DWProtocol;
+import org.scb.downloader.service.ConnectionService.FileEntry;
+import org.scb.downloader.service.DirectoryListingCache.CachedFileEntry;
+
+public class DirectoryListingCacheTest {
+
+	private DownloaderProperties properties;
+	private ListingService cs;
+	private DirectoryListingCache cache;
+	private ExecutorService executor;
+
+	/**
+	 * Lists a file named after the number of listings and a directory. A
+	 * listing can be blocked until it is released.
+	 */
+	static class ListingService extends ConnectionPoolTest.CountingConnectionService {
+		final AtomicInteger nbListing = new AtomicInteger();
+		ProtocolCapabilities capabilities = ProtocolCapabilities.NONE;
+		volatile boolean fail = false;
+		/** Counted down when a blocked listing is running. */
+		volatile CountDownLatch entered;
+		/** Blocks the listings while not null. */
+		volatile CountDownLatch blocked;
+
+		@Override
+		public ProtocolCapabilities getCapabilities() {
+			return capabilities;
+		}
+
+		@Override
+		public List<FileEntry> listDir(ConnectionSession session, String path, boolean directoryOnly)
+				throws Exception {
+			int listing = nbListing.incrementAndGet();
+			CountDownLatch block = blocked;
+			if (block != null) {
+				entered.countDown();
+				block.await(5, TimeUnit.SECONDS);
+			}
+			if (fail) {
+				throw new IOException("Listing failure");
+			}
+			return Arrays.asList(new CachedFileEntry("file" + listing, false, listing, 0),
+					new CachedFileEntry("dir", true, 0, 0));
+		}
+
+		void block() {
+			entered = new CountDownLatch(1);
+			blocked = new CountDownLatch(1);
+		}
+
+		void release() {
+			CountDownLatch block = blocked;
+			blocked = null;
+			block.countDown();
+		}
+	}
+
+	@Before
+	public void setUp() {
+		properties = new DownloaderProperties();
+		properties.getListingCache().setTtl(60);
+		properties.getListingCache().setMaxStaleness(600);
+		ConnectionPool pool = new ConnectionPool();
+		pool.setDownloaderProperties(properties);
+		cs = new ListingService();
+		cache = new DirectoryListingCache();
+		cache.setDownloaderProperties(properties);
+		cache.setConnectionPool(pool);
+		cache.init();
+		executor = Executors.newSingleThreadExecutor();
+	}
+
+	@After
+	public void tearDown() {
+		executor.shutdownNow();
+		cache.destroy();
+	}
+
+	private static DWHostAccount account(long id) {
+		DWHostAccount account = new DWHostAccount();
+		account.setId(id);
+		account.setProtocol(DWProtocol.SSH);
+		return account;
+	}
+
+	private String list(long accountId, String path) throws Exception {
+		return cache.listDir(cs, account(accountId), path, false).get(0).getFilename();
+	}
+
+	@Test
+	public void testCachedListing() throws Exception {
+		assertEquals("file1", list(1, "/a"));
+		assertEquals("The trailing separator is ignored", "file1", list(1, "/a/"));
+		assertEquals("The listings are cached by account", "file2", list(2, "/a"));
+		List<FileEntry> directories = cache.listDir(cs, account(1), "/a", true);
+		assertEquals(1, directories.size());
+		assertEquals("dir", directories.get(0).getFilename());
+		assertEquals(2, cs.nbListing.get());
+	}
+
+	@Test
+	public void testLocalNotCached() throws Exception {
+		cs.capabilities = ProtocolCapabilities.NONE.withLocal();
+		list(1, "/a");
+		list(1, "/a");
+		assertEquals(2, cs.nbListing.get());
+	}
+
+	@Test
+	public void testInvalidatePath() throws Exception {
+		for (String path : Arrays.asList("/a", "/a/b", "/a/b/c", "/a/bc", "/x")) {
+			list(1, path);
+		}
+		list(2, "/a/b");
+		cache.invalidate(1l, "/a/b/");
+
+		// the path, its sub directories and its parent are listed again
+		assertEquals("file7", list(1, "/a"));
+		assertEquals("file8", list(1, "/a/b"));
+		assertEquals("file9", list(1, "/a/b/c"));
+		assertEquals("file4", list(1, "/a/bc"));
+		assertEquals("file5", list(1, "/x"));
+		assertEquals("The other accounts are kept", "file6", list(2, "/a/b"));
+
+		cache.invalidate(1l);
+		assertEquals("file10", list(1, "/x"));
+		assertEquals("file6", list(2, "/a/b"));
+	}
+
+	@Test
+	public void testLeastRecentlyUsedEviction() throws Exception {
+		properties.getListingCache().setMaxEntries(2);
+		cache.destroy();
+		cache.init();
+		list(1, "/1");
+		list(1, "/2");
+		list(1, "/1");
+		list(1, "/3");
+		assertEquals("file1", list(1, "/1"));
+		assertEquals("The least recently used listing is evicted", "file4", list(1, "/2"));
+	}
+
+	@Test
+	public void testListingInvalidatedWhileRead() throws Exception {
+		cs.block();
+		Future<String> reading = executor.submit(() -> list(1, "/a"));
+		assertTrue(cs.entered.await(5, TimeUnit.SECONDS));
+		cache.invalidate(1l, "/a");
+		cs.release();
+		assertEquals("file1", reading.get(5, TimeUnit.SECONDS));
+
+		assertEquals("The listing read before the invalidation is not cached", "file2", list(1, "/a"));
+		assertEquals("file2", list(1, "/a"));
+	}
+
+	@Test
+	public void testRefreshInBackground() throws Exception {
+		properties.getListingCache().setTtl(1);
+		list(1, "/a");
+		Thread.sleep(1100);
+
+		cs.block();
+		assertEquals("The expired listing is served while refreshed", "file1", list(1, "/a"));
+		assertTrue(cs.entered.await(5, TimeUnit.SECONDS));
+		assertEquals("A single refresh is requested", "file1", list(1, "/a"));
+		cs.release();
+		waitForListings(2);
+		assertEquals("file2", list(1, "/a"));
+		assertEquals(2, cs.nbListing.get());
+	}
+
+	@Test
+	public void testFailedRefresh() throws Exception {
+		properties.getListingCache().setTtl(1);
+		list(1, "/a");
+		Thread.sleep(1100);
+
+		cs.fail = true;
+		assertEquals("file1", list(1, "/a"));
+		waitForListings(2);
+		try {
+			for (int i = 0; i < 50; i++) {
+				// the failed refresh drops the stale listing
+				list(1, "/a");
+				Thread.sleep(100);
+			}
+			fail("The stale listing should be dropped");
+		} catch (IOException e) {
+			// expected
+		}
+		cs.fail = false;
+		assertEquals("file4", list(1, "/a"));
+	}
+
+	@Test
+	public void testMaxStaleness() throws Exception {
+		properties.getListingCache().setTtl(1);
+		properties.getListingCache().setMaxStaleness(1);
+		list(1, "/a");
+		Thread.sleep(1100);
+		assertEquals("A listing older than the maximal staleness is read again", "file2", list(1, "/a"));
+	}
+
+	private void waitForListings(int nbListing) throws InterruptedException {
+		for (int i = 0; i < 50 && cs.nbListing.get() < nbListing; i++) {
+			Thread.sleep(100);
+		}
+		assertEquals(nbListing, cs.nbListing.get());
+		// let the refresh end
+		Thread.sleep(200);
+	}
+}
@@ -27,6 +27,7 @@ import org.junit.After;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
+import org.scb.downloader.config.DownloaderProperties;
 import org.scb.downloader.domain.DWFileInfo;
 import org.scb.downloader.domain.DWHostAccount;
 import org.scb.downloader.domain.enumeration.DWProtocol;
@@ -204,6 +205,48 @@ public class FtpServiceTest {
 		}
 	}
 
+	@Test
+	public void testTransfertTo_Tree_Parallel_Ftpd() throws Exception {
+		DownloaderProperties properties = new DownloaderProperties();
+		ConnectionPool connectionPool = new ConnectionPool();
+		connectionPool.setDownloaderProperties(properties);
+		ftpService.setDownloaderProperties(properties);
+		ftpService.setConnectionPool(connectionPool);
+
+		final File sendDir = new File("." + buildTempDirString()).getCanonicalFile();
+		final List<File> sourceFiles = createTempFiles(sendDir, 2000, 3000, 4000, 5000, 6000);
+		File fooDir = new File(sendDir, "foo");
+		final List<File> fooFiles = createTempFiles(fooDir, 2100, 3100, 4100);
+		File joeDir = new File(fooDir, "joe");
+		final List<File> joeFiles = createTempFiles(joeDir, 2300, 3300, 4300);
+		final File receivDir = new File("." + buildTempDirString()).getCanonicalFile();
+
+		DWHostAccount account = buildAcount1();
+		String remotePath = buildTempDirString();
+		new File("." + remotePath).getCanonicalFile().mkdirs();
+		ConnectionSession session = null;
+		try {
+			session = ftpService.connect(account);
+			ftpService.upload(session, sendDir.getCanonicalPath(), buildFileInfo(account, remotePath));
+
+			ftpService.download(session, buildFileInfo(account, remotePath + "/" + sendDir.getName()),
+					receivDir.getAbsolutePath());
+			checkReceivedFiles(sourceFiles, sendDir.getName(), receivDir);
+			checkReceivedFiles(fooFiles, sendDir.getName() + '/' + fooDir.getName(), receivDir);
+			checkReceivedFiles(joeFiles, sendDir.getName() + '/' + fooDir.getName() + '/' + joeDir.getName(),
+					receivDir);
+		} finally {
+			try {
+				session.close();
+			} catch (Throwable t) {
+			}
+			log.debug("Removing tmp files");
+			FileUtils.deleteQuietly(sendDir);
+			FileUtils.deleteQuietly(receivDir);
+			FileUtils.deleteQuietly(new File("." + remotePath));
+		}
+	}
+
 	private void checkReceivedFiles(List<File> sourceFiles, String hierarchy, File receivDir) {
 		for (File sourceFile : sourceFiles) {
 			File receivedFile = new File(new File(receivDir, hierarchy), sourceFile.getName());
@@ -0,0 +1,174 @@
+package org.scb.downloader.service;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.security.KeyStore;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.TrustManagerFactory;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.ftpserver.FtpServer;
+import org.apache.ftpserver.FtpServerFactory;
+import org.apache.ftpserver.ftplet.Authority;
+import org.apache.ftpserver.ftplet.UserManager;
+import org.apache.ftpserver.listener.ListenerFactory;
+import org.apache.ftpserver.ssl.SslConfigurationFactory;
+import org.apache.ftpserver.usermanager.PropertiesUserManagerFactory;
+import org.apache.ftpserver.usermanager.SaltedPasswordEncryptor;
+import org.apache.ftpserver.usermanager.impl.BaseUser;
+import org.apache.ftpserver.usermanager.impl.WritePermission;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.scb.downloader.domain.DWFileInfo;
+import org.scb.downloader.domain.DWHostAccount;
+import org.scb.downloader.domain.enumeration.DWProtocol;
+import org.scb.downloader.service.ConnectionService.ConnectionSession;
+
+/**
+ * Transferts with an explicit FTPS server. The server certificate is in the
+ * test keystore.
+ */
+public class FtpsServiceTest {
+
+	private final static String LOGIN = "Clive";
+	private final static String PASSWORD = "Johnson";
+
+	private final static int FTPSD_PORT = 2990;
+
+	private static final String KEYSTORE = "/ftps/keystore.jks";
+	private static final String KEYSTORE_PASSWORD = "password";
+
+	private File root;
+	private FtpServer ftpsd;
+	private FtpService ftpService;
+
+	@Before
+	public void init() throws Exception {
+		root = Files.createTempDirectory("ftps").toFile();
+		File home = new File(root, "home");
+		home.mkdirs();
+		File keystore = new File(root, "keystore.jks");
+		try (InputStream in = getClass().getResourceAsStream(KEYSTORE)) {
+			FileUtils.copyInputStreamToFile(in, keystore);
+		}
+
+		// explicit FTPS server
+		FtpServerFactory serverFactory = new FtpServerFactory();
+		ListenerFactory factory = new ListenerFactory();
+		factory.setPort(FTPSD_PORT);
+		SslConfigurationFactory ssl = new SslConfigurationFactory();
+		ssl.setKeystoreFile(keystore);
+		ssl.setKeystorePassword(KEYSTORE_PASSWORD);
+		factory.setSslConfiguration(ssl.createSslConfiguration());
+		factory.setImplicitSsl(false);
+		serverFactory.addListener("default", factory.createListener());
+
+		PropertiesUserManagerFactory userManagerFactory = new PropertiesUserManagerFactory();
+		userManagerFactory.setPasswordEncryptor(new SaltedPasswordEncryptor());
+		UserManager um = userManagerFactory.createUserManager();
+		BaseUser user = new BaseUser();
+		user.setName(LOGIN);
+		user.setPassword(PASSWORD);
+		user.setEnabled(true);
+		List<Authority> authorities = new ArrayList<Authority>();
+		authorities.add(new WritePermission());
+		user.setAuthorities(authorities);
+		user.setHomeDirectory(home.getCanonicalPath());
+		um.save(user);
+		serverFactory.setUserManager(um);
+		ftpsd = serverFactory.createServer();
+		ftpsd.start();
+
+		// the client trusts the certificate of the server
+		KeyStore trustStore = KeyStore.getInstance("JKS");
+		try (InputStream in = getClass().getResourceAsStream(KEYSTORE)) {
+			trustStore.load(in, KEYSTORE_PASSWORD.toCharArray());
+		}
+		TrustManagerFactory tmf = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+		tmf.init(trustStore);
+		SSLContext context = SSLContext.getInstance("TLS");
+		context.init(null, tmf.getTrustManagers(), null);
+		ftpService = new FtpService();
+		ftpService.setSslContext(context);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		if (ftpsd != null) {
+			ftpsd.stop();
+			ftpsd = null;
+		}
+		FileUtils.deleteDirectory(root);
+	}
+
+	private DWHostAccount buildAccount() {
+		DWHostAccount account = new DWHostAccount();
+		account.setProtocol(DWProtocol.FTPS);
+		account.setFtpsImplicit(false);
+		account.setHost("localhost");
+		account.setPort(Integer.toString(FTPSD_PORT));
+		account.setUserName(LOGIN);
+		account.setPassword(PASSWORD);
+		return account;
+	}
+
+	private static DWFileInfo fileInfo(String path) {
+		DWFileInfo fileInfo = new DWFileInfo();
+		fileInfo.setPath(path);
+		return fileInfo;
+	}
+
+	@Test
+	public void testResumeDownload() throws Exception {
+		byte[] content = new byte[300000];
+		new Random(1).nextBytes(content);
+		Files.write(new File(root, "home/file.bin").toPath(), content);
+		// a previous attempt has transfered the first bytes
+		File target = new File(root, "target");
+		target.mkdirs();
+		Files.write(new File(target, "file.bin").toPath(), Arrays.copyOf(content, 100000));
+
+		final long[] counted = { 0 };
+		ProgressHandler handler = new ProgressHandler() {
+			@Override
+			public void start(String file, long max) {
+			}
+
+			@Override
+			public boolean count(long count) {
+				counted[0] = count;
+				return true;
+			}
+
+			@Override
+			public void end() {
+			}
+
+			@Override
+			public long getResumeOffset(String file, long size, long transfered, long transferedLastModified) {
+				return transfered;
+			}
+		};
+		ConnectionSession session = ftpService.connect(buildAccount());
+		try {
+			assertTrue("The data connections should reuse the TLS session",
+					ResumingFtpsClient.isSessionReuseEnabled());
+			ftpService.download(session, fileInfo("/file.bin"), target.getAbsolutePath(), null, handler);
+		} finally {
+			session.close();
+		}
+		assertArrayEquals(content, Files.readAllBytes(new File(target, "file.bin").toPath()));
+		assertEquals(content.length, counted[0]);
+	}
+}
@@ -0,0 +1,261 @@
+package org.scb.downloader.service;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.scb.downloader.config.DownloaderProperties;
+import org.scb.downloader.domain.DWFileInfo;
+import org.scb.downloader.domain.DWHostAccount;
+import org.scb.downloader.domain.enumeration.DWProtocol;
+import org.scb.downloader.service.ConnectionService.ConnectionSession;
+import org.scb.downloader.service.LocalFileSystemServiceTest.RecordingHandler;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+public class HttpServiceTest {
+
+	private static final String PATH = "/files/data.bin";
+
+	private HttpServer server;
+
+	/** The content of the served file. */
+	private volatile byte[] content;
+
+	private volatile String etag = "\"v1\"";
+
+	/** The Range headers received by the server. */
+	private final List<String> ranges = new CopyOnWriteArrayList<>();
+
+	/** The client ports of the connections received by the server. */
+	private final Set<Integer> clientPorts = ConcurrentHashMap.newKeySet();
+
+	private File target;
+
+	private HttpService service;
+
+	private ConnectionSession session;
+
+	@Before
+	public void setUp() throws Exception {
+		content = new byte[300000];
+		new Random(1).nextBytes(content);
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/files", this::serve);
+		server.start();
+
+		target = Files.createTempDirectory("http").toFile();
+		service = new HttpService();
+		service.setDownloaderProperties(new DownloaderProperties());
+		DWHostAccount account = new DWHostAccount();
+		account.setProtocol(DWProtocol.HTTP);
+		account.setHost("127.0.0.1");
+		account.setPort(String.valueOf(server.getAddress().getPort()));
+		session = service.connect(account);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		server.stop(0);
+		FileUtils.deleteDirectory(target);
+	}
+
+	/**
+	 * Serves the file with the range requests.
+	 */
+	private void serve(HttpExchange exchange) throws IOException {
+		clientPorts.add(exchange.getRemoteAddress().getPort());
+		if (!PATH.equals(exchange.getRequestURI().getPath())) {
+			exchange.sendResponseHeaders(404, -1);
+			exchange.close();
+			return;
+		}
+		byte[] data = content;
+		int start = 0;
+		int end = data.length - 1;
+		String range = exchange.getRequestHeaders().getFirst("Range");
+		String ifRange = exchange.getRequestHeaders().getFirst("If-Range");
+		boolean partial = range != null && (ifRange == null || ifRange.equals(etag));
+		if (range != null) {
+			ranges.add(range);
+		}
+		if (partial) {
+			String[] bounds = range.substring("bytes=".length()).split("-", -1);
+			start = Integer.parseInt(bounds[0]);
+			end = bounds[1].isEmpty() ? end : Integer.parseInt(bounds[1]);
+			exchange.getResponseHeaders().set("Content-Range", "bytes " + start + "-" + end + "/" + data.length);
+		}
+		exchange.getResponseHeaders().set("ETag", etag);
+		exchange.getResponseHeaders().set("Accept-Ranges", "bytes");
+		int length = end - start + 1;
+		if ("HEAD".equals(exchange.getRequestMethod())) {
+			exchange.getResponseHeaders().set("Content-Length", String.valueOf(length));
+			exchange.sendResponseHeaders(200, -1);
+		} else {
+			exchange.sendResponseHeaders(partial ? 206 : 200, length);
+			try (OutputStream out = exchange.getResponseBody()) {
+				out.write(data, start, length);
+			}
+		}
+		exchange.close();
+	}
+
+	private static DWFileInfo fileInfo(String path) {
+		DWFileInfo fileInfo = new DWFileInfo();
+		fileInfo.setPath(path);
+		return fileInfo;
+	}
+
+	private byte[] downloaded() throws IOException {
+		return Files.readAllBytes(new File(target, "data.bin").toPath());
+	}
+
+	@Test
+	public void testDownload() throws Exception {
+		RecordingHandler handler = new RecordingHandler();
+		service.download(session, fileInfo(PATH + "?token=abc"), target.getAbsolutePath(), null, handler);
+
+		assertArrayEquals(content, downloaded());
+		assertEquals(content.length, handler.count);
+		assertTrue("No range request expected: " + ranges, ranges.isEmpty());
+		assertNull(service.stat(session, "/files/unknown.bin"));
+	}
+
+	@Test
+	public void testKeepAlive() throws Exception {
+		for (int i = 0; i < 3; i++) {
+			try (InputStream in = service.openRemoteInputStream(PATH, session)) {
+				assertArrayEquals(content, IOUtils.toByteArray(in));
+			}
+		}
+		assertEquals("The connection should be reused", 1, clientPorts.size());
+	}
+
+	@Test
+	public void testDownloadBySegments() throws Exception {
+		service.getDownloaderProperties().getHttp().setSegmentThreshold(100000);
+		service.getDownloaderProperties().getHttp().setSegments(4);
+		RecordingHandler handler = new RecordingHandler();
+		service.download(session, fileInfo(PATH), target.getAbsolutePath(), null, handler);
+
+		assertArrayEquals(content, downloaded());
+		assertEquals(content.length, handler.count);
+		assertEquals(new HashSet<>(Arrays.asList("bytes=0-74999", "bytes=75000-149999", "bytes=150000-224999",
+				"bytes=225000-299999")), new HashSet<>(ranges));
+	}
+
+	@Test
+	public void testInterruptedSegments() throws Exception {
+		service.getDownloaderProperties().getHttp().setSegmentThreshold(100000);
+		service.getDownloaderProperties().getHttp().setSegments(4);
+		byte[] previous = new byte[content.length];
+		Files.write(new File(target, "data.bin").toPath(), previous);
+		boolean[] notResumable = new boolean[1];
+		RecordingHandler handler = new RecordingHandler() {
+			@Override
+			public synchronized boolean count(long count) {
+				super.count(count);
+				return count < 100000;
+			}
+
+			@Override
+			public void notResumable() {
+				notResumable[0] = true;
+			}
+		};
+		try {
+			service.download(session, fileInfo(PATH), target.getAbsolutePath(), null, handler);
+			fail("The cancelled download should fail");
+		} catch (IOException e) {
+			// expected
+		}
+
+		assertTrue("The segments should not be resumed", notResumable[0]);
+		assertArrayEquals("The previous file should be kept", previous, downloaded());
+		assertFalse("The part file should be deleted", new File(target, "data.bin.part").exists());
+	}
+
+	/** Resumes from the size of the partial copy. */
+	/**
+	 * Resumes the partial copy downloaded when the file had the ETag "v1".
+	 */
+	static class ResumingHandler extends RecordingHandler {
+		String validator = "\"v1\"";
+
+		@Override
+		public long getResumeOffset(String file, long size, long transfered, long transferedLastModified) {
+			return transfered;
+		}
+
+		@Override
+		public String getResumeValidator(String file) {
+			return validator;
+		}
+
+		@Override
+		public void validator(String file, String validator) {
+			this.validator = validator;
+		}
+	}
+
+	@Test
+	public void testResume() throws Exception {
+		Files.write(new File(target, "data.bin").toPath(), Arrays.copyOf(content, 100000));
+		ResumingHandler handler = new ResumingHandler();
+		service.download(session, fileInfo(PATH), target.getAbsolutePath(), null, handler);
+
+		assertArrayEquals(content, downloaded());
+		assertEquals(Arrays.asList("bytes=100000-"), ranges);
+		assertEquals(content.length, handler.count);
+	}
+
+	@Test
+	public void testResumeModifiedFile() throws Exception {
+		Files.write(new File(target, "data.bin").toPath(), Arrays.copyOf(content, 100000));
+		// the ETag of the partial copy is not the ETag of the file anymore
+		byte[] newContent = content.clone();
+		newContent[10] ^= 1;
+		content = newContent;
+		etag = "\"v2\"";
+		ResumingHandler handler = new ResumingHandler();
+		service.download(session, fileInfo(PATH), target.getAbsolutePath(), null, handler);
+
+		assertArrayEquals("The whole file should be downloaded again", newContent, downloaded());
+		assertEquals("The new version should be recorded", "\"v2\"", handler.validator);
+	}
+
+	@Test
+	public void testResumeUnknownVersion() throws Exception {
+		Files.write(new File(target, "data.bin").toPath(), Arrays.copyOf(content, 100000));
+		ResumingHandler handler = new ResumingHandler();
+		handler.validator = null;
+		service.download(session, fileInfo(PATH), target.getAbsolutePath(), null, handler);
+
+		assertArrayEquals(content, downloaded());
+		assertTrue("The file should be downloaded again: " + ranges, ranges.isEmpty());
+		assertEquals("\"v1\"", handler.validator);
+	}
+}
@@ -0,0 +1,150 @@
+package org.scb.downloader.service;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Random;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.scb.downloader.config.DownloaderProperties;
+import org.scb.downloader.domain.DWFileInfo;
+import org.scb.downloader.domain.enumeration.DWSyncMode;
+
+public class LocalFileSystemServiceTest {
+
+	private File root;
+
+	private LocalFileSystemService service;
+
+	/** Records the progress seen by a transfert. */
+	static class RecordingHandler implements ProgressHandler {
+		long max = 0;
+		long count = 0;
+		int nbStart = 0;
+
+		@Override
+		public void start(String file, long max) {
+			this.max += max;
+			nbStart++;
+		}
+
+		@Override
+		public synchronized boolean count(long count) {
+			this.count = count;
+			return true;
+		}
+
+		@Override
+		public void end() {
+		}
+	}
+
+	@Before
+	public void setUp() throws Exception {
+		root = Files.createTempDirectory("localfs").toFile();
+		service = new LocalFileSystemService();
+		service.setDownloaderProperties(new DownloaderProperties());
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		FileUtils.deleteDirectory(root);
+	}
+
+	private byte[] createFile(File file, int size) throws Exception {
+		byte[] content = new byte[size];
+		new Random(size).nextBytes(content);
+		file.getParentFile().mkdirs();
+		Files.write(file.toPath(), content);
+		return content;
+	}
+
+	private static DWFileInfo fileInfo(String path) {
+		DWFileInfo fileInfo = new DWFileInfo();
+		fileInfo.setPath(path);
+		return fileInfo;
+	}
+
+	@Test
+	public void testCopyDirectoryInParallel() throws Exception {
+		File source = new File(root, "source");
+		byte[] a = createFile(new File(source, "a.bin"), 100000);
+		byte[] b = createFile(new File(source, "sub/b.bin"), 20000);
+		byte[] c = createFile(new File(source, "sub/c.bin"), 0);
+		File target = new File(root, "target");
+		target.mkdirs();
+
+		RecordingHandler handler = new RecordingHandler();
+		service.upload(null, source.getAbsolutePath(), fileInfo(target.getAbsolutePath()), null, handler);
+
+		assertArrayEquals(a, Files.readAllBytes(new File(target, "a.bin").toPath()));
+		assertArrayEquals(b, Files.readAllBytes(new File(target, "sub/b.bin").toPath()));
+		assertArrayEquals(c, Files.readAllBytes(new File(target, "sub/c.bin").toPath()));
+		assertEquals("The directory should be seen as a single file", 1, handler.nbStart);
+		assertEquals(120000, handler.max);
+		assertEquals(120000, handler.count);
+	}
+
+	@Test
+	public void testCopyFileIntoDirectory() throws Exception {
+		File source = new File(root, "file.bin");
+		byte[] content = createFile(source, 50000);
+		File target = new File(root, "target");
+		target.mkdirs();
+
+		RecordingHandler handler = new RecordingHandler();
+		service.download(null, fileInfo(source.getAbsolutePath()), target.getAbsolutePath(), null, handler);
+
+		File copy = new File(target, "file.bin");
+		assertArrayEquals(content, Files.readAllBytes(copy.toPath()));
+		assertEquals(source.lastModified(), copy.lastModified());
+		assertEquals(50000, handler.count);
+	}
+
+	@Test
+	public void testHardLink() throws Exception {
+		service.getDownloaderProperties().getLocal().setHardLink(true);
+		File source = new File(root, "file.bin");
+		createFile(source, 1000);
+		File target = new File(root, "target");
+		target.mkdirs();
+
+		RecordingHandler handler = new RecordingHandler();
+		service.download(null, fileInfo(source.getAbsolutePath()), target.getAbsolutePath(), null, handler);
+
+		File copy = new File(target, "file.bin");
+		assertTrue("The copy should be a link to the source", Files.isSameFile(source.toPath(), copy.toPath()));
+		assertEquals(1000, handler.count);
+	}
+	@Test
+	public void testSyncAndMirrorDirectory() throws Exception {
+		File source = new File(root, "source");
+		createFile(new File(source, "same.bin"), 1000);
+		byte[] changed = createFile(new File(source, "sub/changed.bin"), 2000);
+		File target = new File(root, "target");
+		createFile(new File(target, "same.bin"), 1000);
+		createFile(new File(target, "sub/changed.bin"), 1500);
+		createFile(new File(target, "sub/extra.bin"), 10);
+		new File(target, "same.bin").setLastModified(new File(source, "same.bin").lastModified());
+
+		RecordingHandler handler = new RecordingHandler();
+		service.upload(null, source.getAbsolutePath(), fileInfo(target.getAbsolutePath()), DWSyncMode.SYNC,
+				handler);
+		assertArrayEquals(changed, Files.readAllBytes(new File(target, "sub/changed.bin").toPath()));
+		assertTrue("SYNC should keep the extra files", new File(target, "sub/extra.bin").exists());
+		assertEquals("Only the changed file should be copied", 2000, handler.max);
+
+		handler = new RecordingHandler();
+		service.upload(null, source.getAbsolutePath(), fileInfo(target.getAbsolutePath()), DWSyncMode.MIRROR,
+				handler);
+		assertFalse("MIRROR should delete the extra files", new File(target, "sub/extra.bin").exists());
+		assertEquals("All the files should be up to date", 0, handler.max);
+	}
+}
@@ -0,0 +1,54 @@
+package org.scb.downloader.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class ParallelProgressHandlerTest {
+
+	@Test
+	public void testAggregateWorkers() {
+		final long[] progress = new long[2];
+		ParallelProgressHandler parallel = new ParallelProgressHandler(new ProgressHandler() {
+			@Override
+			public void start(String file, long max) {
+				progress[0] = max;
+			}
+
+			@Override
+			public boolean count(long count) {
+				progress[1] = count;
+				return true;
+			}
+
+			@Override
+			public void end() {
+			}
+		});
+		parallel.start("dir", 300);
+		ProgressHandler worker1 = parallel.newWorkerHandler();
+		ProgressHandler worker2 = parallel.newWorkerHandler();
+		worker1.start("file1", 100);
+		worker2.start("file2", 150);
+		assertTrue(worker1.count(40));
+		assertTrue(worker2.count(50));
+		assertTrue(worker1.count(100));
+		worker1.end();
+		worker1.start("file3", 50);
+		assertTrue(worker1.count(20));
+		assertEquals("Bad total size", 300, progress[0]);
+		assertEquals("Bad aggregated progress", 170, progress[1]);
+	}
+
+	@Test
+	public void testCancel() {
+		ParallelProgressHandler parallel = new ParallelProgressHandler(null);
+		ProgressHandler worker = parallel.newWorkerHandler();
+		worker.start("file", 100);
+		assertTrue(worker.count(10));
+		parallel.cancel();
+		assertFalse("A cancelled worker should stop", worker.count(20));
+	}
+}
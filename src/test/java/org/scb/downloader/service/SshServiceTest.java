@@ -9,9 +9,11 @@ import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.sshd.SshServer;
@@ -31,10 +33,13 @@ import org.bouncycastle.util.Arrays;
 import org.junit.After;
 import org.junit.Assert;
 import org.junit.Before;
+import org.junit.Ignore;
 import org.junit.Test;
+import org.scb.downloader.config.DownloaderProperties;
 import org.scb.downloader.domain.DWFileInfo;
 import org.scb.downloader.domain.DWHostAccount;
 import org.scb.downloader.domain.enumeration.DWProtocol;
+import org.scb.downloader.domain.enumeration.DWSshTransferMode;
 import org.scb.downloader.service.ConnectionService.ConnectionSession;
 import org.scb.downloader.service.ConnectionService.FileEntry;
 import org.slf4j.Logger;
@@ -207,10 +212,10 @@ public class SshServiceTest implements PasswordAuthenticator {
 		ConnectionSession session = null;
 		try {
 			session = sshService.connect(account);
-			sshService.upload(session, sourceFile.getAbsolutePath(), buildFileInfo(account, remotePath));
+			sshService.upload(session, sourceFile.getAbsolutePath(), buildFileInfo(account, remotePath), null, null);
 
 			sshService.download(session, buildFileInfo(account, remotePath + sourceFile.getName()),
-					tmpDir2.getAbsolutePath());
+					tmpDir2.getAbsolutePath(), null, null);
 			File receivedFile = new File(tmpDir2, sourceFile.getName());
 			assertTrue("Received file does not exist", receivedFile.exists());
 			assertEquals("Bad file length", sourceFile.length(), receivedFile.length());
@@ -244,10 +249,10 @@ public class SshServiceTest implements PasswordAuthenticator {
 		ConnectionSession session = null;
 		try {
 			session = sshService.connect(account);
-			sshService.upload(session, sourceFile.getAbsolutePath(), buildFileInfo(account, remotePath));
+			sshService.upload(session, sourceFile.getAbsolutePath(), buildFileInfo(account, remotePath), null, null);
 
 			sshService.download(session, buildFileInfo(account, remotePath + sourceFile.getName()),
-					tmpDir2.getAbsolutePath());
+					tmpDir2.getAbsolutePath(), null, null);
 			File receivedFile = new File(tmpDir2, sourceFile.getName());
 			assertTrue("Received file does not exist", receivedFile.exists());
 			assertEquals("Bad file length", sourceFile.length(), receivedFile.length());
@@ -268,6 +273,133 @@ public class SshServiceTest implements PasswordAuthenticator {
 		}
 	}
 
+	@Test
+	public void testResumeUpload_Sshd() throws Exception {
+		final File tmpDir = new File("." + buildTempDirString()).getAbsoluteFile();
+		tmpDir.mkdirs();
+		final File sourceFile = new File(tmpDir, "resumed.bin");
+		byte[] data = new byte[1000000];
+		new Random(6).nextBytes(data);
+		FileUtils.writeByteArrayToFile(sourceFile, data);
+
+		DWHostAccount account = buildAcount1();
+		String remotePath = buildTempDirString() + '/';
+		String remoteFile = remotePath + sourceFile.getName();
+		ConnectionSession session = null;
+		try {
+			session = sshService.connect(account);
+			// the first attempt is interrupted
+			List<String> started = new ArrayList<>();
+			ProgressHandler interrupted = new ProgressHandler() {
+				@Override
+				public void start(String file, long max) {
+					started.add(file + ':' + max);
+				}
+
+				@Override
+				public boolean count(long count) {
+					return count < 300000;
+				}
+
+				@Override
+				public void end() {
+				}
+			};
+			try {
+				sshService.upload(session, sourceFile.getAbsolutePath(), buildFileInfo(account, remotePath), null,
+						interrupted);
+			} catch (Exception e) {
+				// the interruption may be reported as an error
+			}
+			assertEquals(Collections.singletonList(sourceFile.getAbsolutePath() + ':' + data.length), started);
+			long partialSize = sshService.stat(session, remoteFile).getSize();
+			assertTrue("The remote file should be partial: " + partialSize,
+					partialSize > 0 && partialSize < data.length);
+
+			// the retry appends the missing bytes only
+			long[] counts = { -1, 0 };
+			ProgressHandler resuming = new ProgressHandler() {
+				@Override
+				public long getResumeOffset(String file, long size, long transfered, long transferedLastModified) {
+					return transfered;
+				}
+
+				@Override
+				public void start(String file, long max) {
+				}
+
+				@Override
+				public boolean count(long count) {
+					if (counts[0] < 0) {
+						counts[0] = count;
+					}
+					counts[1] = count;
+					return true;
+				}
+
+				@Override
+				public void end() {
+				}
+			};
+			sshService.upload(session, sourceFile.getAbsolutePath(), buildFileInfo(account, remotePath), null,
+					resuming);
+			assertTrue("The first count should follow the offset", counts[0] > partialSize);
+			assertEquals(data.length, counts[1]);
+			assertEquals("The remote file should not be written twice", data.length,
+					sshService.stat(session, remoteFile).getSize());
+
+			final File tmpDir2 = new File(tmpDir, "received");
+			sshService.download(session, buildFileInfo(account, remoteFile), tmpDir2.getAbsolutePath(), null, null);
+			assertTrue("Bad content of the resumed file",
+					FileUtils.contentEquals(sourceFile, new File(tmpDir2, sourceFile.getName())));
+		} finally {
+			try {
+				session.close();
+			} catch (Throwable t) {
+			}
+			FileUtils.deleteQuietly(tmpDir);
+			FileUtils.deleteQuietly(new File("." + remotePath));
+		}
+	}
+
+	@Test
+	public void testSegmentedDownload_Sshd() throws Exception {
+		DownloaderProperties properties = new DownloaderProperties();
+		properties.getSftp().setSegmentThreshold(100000);
+		properties.getSftp().setSegments(4);
+		sshService.setDownloaderProperties(properties);
+
+		final File tmpDir = new File("." + buildTempDirString()).getAbsoluteFile();
+		tmpDir.mkdirs();
+		final File sourceFile = new File(tmpDir, "segmented.bin");
+		byte[] data = new byte[1000003];
+		new Random(5).nextBytes(data);
+		FileUtils.writeByteArrayToFile(sourceFile, data);
+
+		DWHostAccount account = buildAcount1();
+		String remotePath = buildTempDirString() + '/';
+		ConnectionSession session = null;
+		try {
+			session = sshService.connect(account);
+			sshService.upload(session, sourceFile.getAbsolutePath(), buildFileInfo(account, remotePath), null, null);
+
+			final File tmpDir2 = new File(tmpDir, "received");
+			sshService.download(session, buildFileInfo(account, remotePath + sourceFile.getName()),
+					tmpDir2.getAbsolutePath(), null, null);
+			File receivedFile = new File(tmpDir2, sourceFile.getName());
+			assertTrue("Bad content of the file downloaded by segments",
+					FileUtils.contentEquals(sourceFile, receivedFile));
+			assertEquals("The part file should be renamed", 1, tmpDir2.list().length);
+		} finally {
+			try {
+				session.close();
+			} catch (Throwable t) {
+			}
+			FileUtils.deleteQuietly(tmpDir);
+			FileUtils.deleteQuietly(new File("." + remotePath));
+		}
+	}
+
 	@Test
 	public void testTransfertTo_Directory_RealServer() throws Exception {
 		final File sendDir = new File("." + buildTempDirString()).getAbsoluteFile();
@@ -281,10 +413,10 @@ public class SshServiceTest implements PasswordAuthenticator {
 		ConnectionSession session = null;
 		try {
 			session = sshService.connect(account);
-			sshService.upload(session, sendDir.getAbsolutePath(), buildFileInfo(account, remotePath));
+			sshService.upload(session, sendDir.getAbsolutePath(), buildFileInfo(account, remotePath), null, null);
 
 			sshService.download(session, buildFileInfo(account, remotePath + sendDir.getName()),
-					receivDir.getAbsolutePath());
+					receivDir.getAbsolutePath(), null, null);
 
 			for (File sourceFile : sourceFiles) {
 				File receivedFile = new File(new File(receivDir, sendDir.getName()), sourceFile.getName());
@@ -322,10 +454,10 @@ public class SshServiceTest implements PasswordAuthenticator {
 		ConnectionSession session = null;
 		try {
 			session = sshService.connect(account);
-			sshService.upload(session, sendDir.getAbsolutePath(), buildFileInfo(account, remotePath));
+			sshService.upload(session, sendDir.getAbsolutePath(), buildFileInfo(account, remotePath), null, null);
 
 			sshService.download(session, buildFileInfo(account, remotePath + sendDir.getName()),
-					receivDir.getAbsolutePath());
+					receivDir.getAbsolutePath(), null, null);
 			checkReceivedFiles(sourceFiles, sendDir.getName(), receivDir);
 		} finally {
 			try {
@@ -366,10 +498,10 @@ public class SshServiceTest implements PasswordAuthenticator {
 		ConnectionSession session = null;
 		try {
 			session = sshService.connect(account);
-			sshService.upload(session, sendDir.getAbsolutePath(), buildFileInfo(account, remotePath));
+			sshService.upload(session, sendDir.getAbsolutePath(), buildFileInfo(account, remotePath), null, null);
 
 			sshService.download(session, buildFileInfo(account, remotePath + sendDir.getName()),
-					receivDir.getAbsolutePath());
+					receivDir.getAbsolutePath(), null, null);
 			checkReceivedFiles(sourceFiles, sendDir.getName(), receivDir);
 			checkReceivedFiles(fooFiles, sendDir.getName() + '/' + fooDir.getName(), receivDir);
 			checkReceivedFiles(barFiles, sendDir.getName() + '/' + barDir.getName(), receivDir);
@@ -392,6 +524,86 @@ public class SshServiceTest implements PasswordAuthenticator {
 		}
 	}
 
+	@Test
+	public void testTransfertTo_Tree_Scp_Shhd() throws Exception {
+		final File sendDir = new File("." + buildTempDirString()).getAbsoluteFile();
+		final List<File> sourceFiles = createTempFiles(sendDir, 2000, 3000, 4000);
+		File fooDir = new File(sendDir, "foo");
+		final List<File> fooFiles = createTempFiles(fooDir, 2100, 3100, 4100);
+		File joeDir = new File(fooDir, "joe");
+		final List<File> joeFiles = createTempFiles(joeDir, 2300, 3300, 4300);
+
+		final File receivDir = new File("." + buildTempDirString()).getAbsoluteFile();
+
+		DWHostAccount account = buildAcount1();
+		account.setSshTransferMode(DWSshTransferMode.SCP);
+
+		String remotePath = buildTempDirString() + '/';
+		ConnectionSession session = null;
+		try {
+			session = sshService.connect(account);
+			sshService.upload(session, sendDir.getAbsolutePath(), buildFileInfo(account, remotePath), null, null);
+
+			sshService.download(session, buildFileInfo(account, remotePath + sendDir.getName()),
+					receivDir.getAbsolutePath(), null, null);
+			checkReceivedFiles(sourceFiles, sendDir.getName(), receivDir);
+			checkReceivedFiles(fooFiles, sendDir.getName() + '/' + fooDir.getName(), receivDir);
+			checkReceivedFiles(joeFiles, sendDir.getName() + '/' + fooDir.getName() + '/' + joeDir.getName(),
+					receivDir);
+		} finally {
+			try {
+				session.close();
+			} catch (Throwable t) {
+			}
+			log.debug("Removing tmp files");
+			try {
+				FileUtils.deleteDirectory(sendDir);
+			} catch (Throwable t) {
+			}
+			try {
+				FileUtils.deleteDirectory(receivDir);
+			} catch (Throwable t) {
+			}
+		}
+	}
+
+	/**
+	 * Compares the time of the transferts with SFTP and with SCP. The server
+	 * is local, so the latency of a real link is not measured. It only logs the
+	 * times, so it is run on demand.
+	 */
+	@Ignore("Benchmark moving 16 MB per mode, run on demand")
+	@Test
+	public void testBenchmark_SftpVsScp_Sshd() throws Exception {
+		final File sendDir = new File("." + buildTempDirString()).getAbsoluteFile();
+		final List<File> sourceFiles = createTempFiles(sendDir, 4000000, 4000001, 4000002, 4000003);
+		try {
+			for (DWSshTransferMode mode : DWSshTransferMode.values()) {
+				final File receivDir = new File("." + buildTempDirString()).getAbsoluteFile();
+				DWHostAccount account = buildAcount1();
+				account.setSshTransferMode(mode);
+				String remotePath = buildTempDirString() + '/';
+				ConnectionSession session = sshService.connect(account);
+				try {
+					long begin = System.currentTimeMillis();
+					sshService.upload(session, sendDir.getAbsolutePath(), buildFileInfo(account, remotePath), null, null);
+					long uploaded = System.currentTimeMillis();
+					sshService.download(session, buildFileInfo(account, remotePath + sendDir.getName()),
+							receivDir.getAbsolutePath(), null, null);
+					long downloaded = System.currentTimeMillis();
+					log.info("{}: upload in {} ms, download in {} ms", mode, uploaded - begin,
+							downloaded - uploaded);
+					checkReceivedFiles(sourceFiles, sendDir.getName(), receivDir);
+				} finally {
+					session.close();
+					FileUtils.deleteQuietly(receivDir);
+				}
+			}
+		} finally {
+			FileUtils.deleteQuietly(sendDir);
+		}
+	}
+
 	private void checkReceivedFiles(List<File> sourceFiles, String hierarchy, File receivDir) {
 		for (File sourceFile : sourceFiles) {
 			File receivedFile = new File(new File(receivDir, hierarchy), sourceFile.getName());
@@ -0,0 +1,69 @@
+package org.scb.downloader.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.junit.Test;
+
+public class StreamChecksumTest {
+
+	private static final byte[] DATA = "The quick brown fox jumps over the lazy dog".getBytes(StandardCharsets.US_ASCII);
+
+	@Test
+	public void testDisabled() {
+		assertNull(StreamChecksum.create(null));
+		assertNull(StreamChecksum.create("none"));
+	}
+
+	@Test
+	public void testSha256OfWrittenBytes() throws Exception {
+		StreamChecksum checksum = StreamChecksum.create("sha-256");
+		try (OutputStream out = checksum.wrap(new ByteArrayOutputStream())) {
+			out.write(DATA, 0, 10);
+			out.write(DATA, 10, DATA.length - 10);
+		}
+		assertEquals("SHA-256:d7a8fbb307d7809469ca9abcb0082e4f8d5651e46d3cdb762d02d0bf37c9e592", checksum.toString());
+	}
+
+	@Test
+	public void testCrc32OfReadBytes() throws Exception {
+		StreamChecksum checksum = StreamChecksum.create("CRC32");
+		byte[] buffer = new byte[7];
+		try (InputStream in = checksum.wrap(new ByteArrayInputStream(DATA))) {
+			while (in.read(buffer) >= 0) {
+				// read all
+			}
+		}
+		assertEquals("CRC32:414fa339", checksum.toString());
+	}
+
+	@Test
+	public void testCombine() {
+		Map<String, String> checksums = new HashMap<>();
+		assertNull(StreamChecksum.combine(checksums));
+		checksums.put("/dir/b", "CRC32:0000000f");
+		assertEquals("CRC32:0000000f", StreamChecksum.combine(checksums));
+		checksums.put("/dir/a", "CRC32:000000f0");
+		String combined = StreamChecksum.combine(checksums);
+		assertEquals("Order should not matter", combined, StreamChecksum.combine(new TreeMap<>(checksums)));
+
+		// the file of a checksum matters
+		Map<String, String> swapped = new HashMap<>();
+		swapped.put("/dir/a", "CRC32:0000000f");
+		swapped.put("/dir/b", "CRC32:000000f0");
+		assertNotEquals(combined, StreamChecksum.combine(swapped));
+
+		checksums.put("/dir/c", null);
+		assertNull("An unknown checksum should give an unknown total", StreamChecksum.combine(checksums));
+	}
+}
@@ -0,0 +1,72 @@
+package org.scb.downloader.service;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class StreamRelayTest {
+
+	@Test
+	public void testRelayBiggerThanBuffer() throws Exception {
+		byte[] data = new byte[100000];
+		new Random(1).nextBytes(data);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		final long[] progress = new long[1];
+		try (StreamRelay relay = new StreamRelay("test-relay", 1000)) {
+			long length = relay.relay(new ByteArrayInputStream(data), out, new ProgressHandler() {
+				@Override
+				public void start(String file, long max) {
+				}
+
+				@Override
+				public boolean count(long count) {
+					progress[0] = count;
+					return true;
+				}
+
+				@Override
+				public void end() {
+				}
+			});
+			assertEquals("Bad relayed length", data.length, length);
+		}
+		assertEquals("Bad progress", data.length, progress[0]);
+		assertArrayEquals("Bad relayed data", data, out.toByteArray());
+	}
+
+	@Test
+	public void testRelaySeveralStreams() throws Exception {
+		try (StreamRelay relay = new StreamRelay("test-relay", 7)) {
+			for (int i = 0; i < 10; i++) {
+				byte[] data = ("content of the file " + i).getBytes();
+				ByteArrayOutputStream out = new ByteArrayOutputStream();
+				relay.relay(new ByteArrayInputStream(data), out, null);
+				assertArrayEquals("Bad relayed data", data, out.toByteArray());
+			}
+		}
+	}
+
+	@Test
+	public void testRelayReadError() throws Exception {
+		InputStream in = new InputStream() {
+			@Override
+			public int read() throws IOException {
+				throw new IOException("connection lost");
+			}
+		};
+		try (StreamRelay relay = new StreamRelay("test-relay", 1000)) {
+			relay.relay(in, new ByteArrayOutputStream(), null);
+			fail("Relay should fail when the source cannot be read");
+		} catch (IOException e) {
+			assertEquals("Error when reading the source: connection lost", e.getMessage());
+		}
+	}
+}
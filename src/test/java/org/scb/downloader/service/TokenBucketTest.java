@@ -0,0 +1,81 @@
+package org.scb.downloader.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.time.LocalTime;
+import java.util.Arrays;
+
+import org.junit.Test;
+import org.scb.downloader.config.DownloaderProperties;
+import org.scb.downloader.config.DownloaderProperties.Bandwidth;
+import org.scb.downloader.config.DownloaderProperties.Profile;
+
+public class TokenBucketTest {
+
+	/** A bucket with a manual clock. */
+	static class ManualTokenBucket extends TokenBucket {
+		long now = 0;
+
+		ManualTokenBucket(long rate) {
+			super(rate);
+		}
+
+		@Override
+		protected long nanoTime() {
+			return now;
+		}
+	}
+
+	@Test
+	public void testDebtIsPaidAtTheRate() {
+		ManualTokenBucket bucket = new ManualTokenBucket(1000);
+		assertEquals("The first second should be available", 0, bucket.reserve(1000));
+		assertEquals("Bad delay for 500 bytes in debt", 500000000l, bucket.reserve(500));
+		bucket.now = 1000000000l;
+		// 1000 tokens refilled, 500 of them pay the debt
+		assertEquals(0, bucket.reserve(500));
+		assertEquals(250000000l, bucket.reserve(250));
+	}
+
+	@Test
+	public void testNoLimit() {
+		ManualTokenBucket bucket = new ManualTokenBucket(0);
+		assertEquals(0, bucket.reserve(1000000));
+		bucket.setRate(100);
+		assertEquals(0, bucket.reserve(0));
+		assertEquals("A limited bucket should start empty", 1000000000l, bucket.reserve(100));
+	}
+
+	@Test
+	public void testProfiles() {
+		Bandwidth bandwidth = new Bandwidth();
+		bandwidth.setGlobalRate(100);
+		Profile day = new Profile();
+		day.setBegin("08:00");
+		day.setEnd("19:00");
+		day.setGlobalRate(10);
+		Profile night = new Profile();
+		night.setBegin("23:00");
+		night.setEnd("02:00");
+		night.setGlobalRate(1000);
+		bandwidth.setProfiles(Arrays.asList(day, night));
+		assertEquals(10, BandwidthLimiter.getCaps(bandwidth, LocalTime.of(8, 0)).globalRate);
+		assertEquals(100, BandwidthLimiter.getCaps(bandwidth, LocalTime.of(19, 0)).globalRate);
+		assertEquals(1000, BandwidthLimiter.getCaps(bandwidth, LocalTime.of(1, 30)).globalRate);
+		assertEquals(100, BandwidthLimiter.getCaps(bandwidth, LocalTime.of(2, 0)).globalRate);
+	}
+
+	@Test
+	public void testRuntimeTransfertCap() {
+		BandwidthLimiter limiter = new BandwidthLimiter();
+		limiter.setDownloaderProperties(new DownloaderProperties());
+		limiter.init();
+		limiter.setTransfertRate(1l, 1000l);
+		limiter.release(1l);
+		assertEquals("The cap is kept for the next attempts", 1000l, limiter.getTransfertRate(1l));
+		limiter.forget(1l);
+		assertEquals(0, limiter.getTransfertRate(1l));
+		assertTrue(limiter.getTransfertRates().isEmpty());
+	}
+}
@@ -0,0 +1,56 @@
+package org.scb.downloader.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+
+import org.junit.Test;
+import org.scb.downloader.service.LocalFileSystemServiceTest.RecordingHandler;
+
+public class TransferCounterTest {
+
+	@Test
+	public void testCountWrittenBytesAfterOffset() throws Exception {
+		RecordingHandler handler = new RecordingHandler();
+		TransferCounter counter = new TransferCounter(handler, "file.bin", 100);
+		counter.start(1100);
+		ByteArrayOutputStream target = new ByteArrayOutputStream();
+		try (OutputStream out = counter.wrap(target)) {
+			out.write(new byte[600]);
+			out.write(new byte[400], 0, 400);
+		}
+		counter.end();
+		assertEquals(1000, target.size());
+		assertEquals(1100, handler.max);
+		assertEquals(1100, handler.count);
+		assertEquals(1000, counter.getTransfered());
+		assertTrue(counter.getRate() > 0);
+	}
+
+	@Test
+	public void testCancelWhileReading() throws Exception {
+		RecordingHandler handler = new RecordingHandler() {
+			@Override
+			public synchronized boolean count(long count) {
+				super.count(count);
+				return count < 10;
+			}
+		};
+		TransferCounter counter = new TransferCounter(handler, "file.bin", 0);
+		counter.start(20);
+		byte[] buffer = new byte[8];
+		try (InputStream in = counter.wrap(new ByteArrayInputStream(new byte[20]))) {
+			assertEquals(8, in.read(buffer));
+			in.read(buffer);
+			throw new AssertionError("The transfert should be cancelled");
+		} catch (InterruptedIOException e) {
+			assertEquals(16, handler.count);
+			assertEquals("The counting is not ended", -1, counter.getRate());
+		}
+	}
+}
@@ -0,0 +1,68 @@
+package org.scb.downloader.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.scb.downloader.config.DownloaderProperties;
+
+public class TransferWorkersTest {
+
+	private TransferWorkers transferWorkers;
+
+	@Before
+	public void setUp() {
+		DownloaderProperties properties = new DownloaderProperties();
+		properties.getTransfert().setWorkerThreads(1);
+		transferWorkers = new TransferWorkers();
+		transferWorkers.setDownloaderProperties(properties);
+		transferWorkers.init();
+	}
+
+	@After
+	public void tearDown() {
+		transferWorkers.destroy();
+	}
+
+	private static List<Callable<Void>> workers(int nb, Callable<Void> worker) {
+		List<Callable<Void>> workers = new ArrayList<>();
+		for (int i = 0; i < nb; i++) {
+			workers.add(worker);
+		}
+		return workers;
+	}
+
+	@Test
+	public void testNestedWorkers() throws Exception {
+		// the segments of the files of a directory with a single thread
+		AtomicInteger segments = new AtomicInteger();
+		transferWorkers.runInParallel(workers(3, () -> {
+			transferWorkers.runInParallel(workers(4, () -> {
+				segments.incrementAndGet();
+				return null;
+			}), new ParallelProgressHandler(null), "file");
+			return null;
+		}), new ParallelProgressHandler(null), "directory");
+		assertEquals(12, segments.get());
+	}
+
+	@Test
+	public void testFailedWorker() throws Exception {
+		ParallelProgressHandler progress = new ParallelProgressHandler(null);
+		try {
+			transferWorkers.runInParallel(workers(2, () -> {
+				throw new IllegalStateException("failed");
+			}), progress, "directory");
+			fail("The error of the workers should be thrown");
+		} catch (IllegalStateException e) {
+			assertEquals("failed", e.getMessage());
+		}
+	}
+}
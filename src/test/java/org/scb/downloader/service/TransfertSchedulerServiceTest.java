@@ -0,0 +1,136 @@
+package org.scb.downloader.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.scb.downloader.config.DownloaderProperties;
+import org.scb.downloader.domain.DWTransfert;
+
+public class TransfertSchedulerServiceTest {
+
+	/**
+	 * Gives the transferts to perform and records the started ones. The
+	 * transferts have no source, so they fail once started.
+	 */
+	static class FakeTransfertService extends DWTransfertService {
+		final Map<Long, DWTransfert> transferts = new ConcurrentHashMap<>();
+		final Queue<DWTransfert> toClaim = new ConcurrentLinkedQueue<>();
+		final BlockingQueue<Long> started = new LinkedBlockingQueue<>();
+		/** Blocks the start of the first transfert. */
+		final CountDownLatch firstStart = new CountDownLatch(1);
+
+		DWTransfert add(long id) {
+			DWTransfert transfert = new DWTransfert();
+			transfert.setId(id);
+			transferts.put(id, transfert);
+			return transfert;
+		}
+
+		@Override
+		public DWTransfert getTransfert(Long transfertId) {
+			return transferts.get(transfertId);
+		}
+
+		@Override
+		public DWTransfert claimNext(Collection<Long> runningIds, Collection<Long> busyAccountIds) {
+			return toClaim.poll();
+		}
+
+		@Override
+		public Date findNextWindowOpening() {
+			return null;
+		}
+
+		@Override
+		public Date findNextAttempt() {
+			return null;
+		}
+
+		@Override
+		public void transfertStarted(DWTransfert transfert) {
+			started.add(transfert.getId());
+			if (transfert.getId() == 1) {
+				try {
+					firstStart.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		}
+
+		@Override
+		public void transfertOnError(DWTransfert transfert, String errorMessage) {
+		}
+
+		@Override
+		public void transfertFinished(DWTransfert transfert) {
+		}
+	}
+
+	private FakeTransfertService transfertService;
+	private TransfertSchedulerService scheduler;
+
+	@Before
+	public void setUp() {
+		DownloaderProperties properties = new DownloaderProperties();
+		properties.getTransfert().setMaxConcurrentTransferts(1);
+		transfertService = new FakeTransfertService();
+		TransfertProgressRegistry progressRegistry = new TransfertProgressRegistry();
+		TransfertProgressPublisher progressPublisher = new TransfertProgressPublisher();
+		progressPublisher.setProgressRegistry(progressRegistry);
+		BandwidthLimiter bandwidthLimiter = new BandwidthLimiter();
+		bandwidthLimiter.setDownloaderProperties(properties);
+		scheduler = new TransfertSchedulerService();
+		scheduler.setDownloaderProperties(properties);
+		scheduler.setTransfertService(transfertService);
+		scheduler.setProgressRegistry(progressRegistry);
+		scheduler.setProgressPublisher(progressPublisher);
+		scheduler.setBandwidthLimiter(bandwidthLimiter);
+		scheduler.init();
+	}
+
+	@After
+	public void tearDown() {
+		transfertService.firstStart.countDown();
+		scheduler.destroy();
+	}
+
+	@Test
+	public void testLaunchWaitsForAFreeWorker() throws Exception {
+		transfertService.toClaim.add(transfertService.add(1));
+		transfertService.add(2);
+		scheduler.runPersistentTransferts();
+		assertEquals(Long.valueOf(1), transfertService.started.poll(5, TimeUnit.SECONDS));
+
+		scheduler.launchPersistentTransfert(2l);
+		assertNull("The launched transfert should wait for a free worker",
+				transfertService.started.poll(500, TimeUnit.MILLISECONDS));
+
+		// the end of the first transfert frees its worker
+		transfertService.firstStart.countDown();
+		assertEquals(Long.valueOf(2), transfertService.started.poll(5, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void testLaunchComesFirst() throws Exception {
+		transfertService.toClaim.add(transfertService.add(3));
+		transfertService.add(2);
+		scheduler.launchPersistentTransfert(2l);
+		assertEquals(Long.valueOf(2), transfertService.started.poll(5, TimeUnit.SECONDS));
+		assertEquals(Long.valueOf(3), transfertService.started.poll(5, TimeUnit.SECONDS));
+	}
+}
@@ -1,13 +1,17 @@
 package org.scb.downloader.web.rest;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.hasItem;
+import static org.hamcrest.Matchers.hasSize;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 import java.text.DateFormat;
@@ -23,8 +27,16 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.MockitoAnnotations;
 import org.scb.downloader.DownloaderApp;
+import org.scb.downloader.domain.DWFileInfo;
+import org.scb.downloader.domain.DWHostAccount;
 import org.scb.downloader.domain.DWTransfert;
+import org.scb.downloader.domain.enumeration.DWProtocol;
+import org.scb.downloader.domain.enumeration.DWTransfertScheduling;
+import org.scb.downloader.domain.enumeration.TransfertStatus;
+import org.scb.downloader.repository.DWHostAccountRepository;
 import org.scb.downloader.repository.DWTransfertRepository;
+import org.scb.downloader.service.BandwidthLimiter;
+import org.scb.downloader.service.TransfertProgressPublisher;
 import org.springframework.boot.test.IntegrationTest;
 import org.springframework.boot.test.SpringApplicationConfiguration;
 import org.springframework.data.web.PageableHandlerMethodArgumentResolver;
@@ -34,6 +46,7 @@ import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 import org.springframework.test.context.web.WebAppConfiguration;
 import org.springframework.test.util.ReflectionTestUtils;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -61,12 +74,21 @@ public class DWTransfertResourceIntTest {
 	@Inject
 	private DWTransfertRepository dWTransfertRepository;
 
+	@Inject
+	private DWHostAccountRepository dWHostAccountRepository;
+
 	@Inject
 	private MappingJackson2HttpMessageConverter jacksonMessageConverter;
 
 	@Inject
 	private PageableHandlerMethodArgumentResolver pageableArgumentResolver;
 
+	@Inject
+	private TransfertProgressPublisher progressPublisher;
+
+	@Inject
+	private BandwidthLimiter bandwidthLimiter;
+
 	private MockMvc restDWTransfertMockMvc;
 
 	private DWTransfert dWTransfert;
@@ -76,6 +98,8 @@ public class DWTransfertResourceIntTest {
 		MockitoAnnotations.initMocks(this);
 		DWTransfertResource dWTransfertResource = new DWTransfertResource();
 		ReflectionTestUtils.setField(dWTransfertResource, "dWTransfertRepository", dWTransfertRepository);
+		ReflectionTestUtils.setField(dWTransfertResource, "progressPublisher", progressPublisher);
+		ReflectionTestUtils.setField(dWTransfertResource, "bandwidthLimiter", bandwidthLimiter);
 		this.restDWTransfertMockMvc = MockMvcBuilders.standaloneSetup(dWTransfertResource)
 				.setCustomArgumentResolvers(pageableArgumentResolver).setMessageConverters(jacksonMessageConverter)
 				.build();
@@ -134,6 +158,77 @@ public class DWTransfertResourceIntTest {
 				.andExpect(jsonPath("$.end").value(DEFAULT_END_STR));
 	}
 
+	private DWTransfert createDWTransfert(long rank, DWHostAccount account) {
+		DWTransfert transfert = new DWTransfert();
+		transfert.setStatus(TransfertStatus.CREATED);
+		transfert.setScheduling(DWTransfertScheduling.IMMEDIATLY);
+		transfert.setRank(rank);
+		DWFileInfo source = new DWFileInfo();
+		source.setPath("/source");
+		source.setAccount(account);
+		transfert.setSource(source);
+		DWFileInfo target = new DWFileInfo();
+		target.setPath("/target");
+		transfert.setTarget(target);
+		return dWTransfertRepository.saveAndFlush(transfert);
+	}
+
+	@Test
+	@Transactional
+	public void getDWTransfertSummariesByKeyset() throws Exception {
+		// Initialize the database: the transferts having the same rank are
+		// ordered by id
+		DWHostAccount account = new DWHostAccount();
+		account.setProtocol(DWProtocol.SSH);
+		dWHostAccountRepository.saveAndFlush(account);
+		DWTransfert last = createDWTransfert(8, account);
+		DWTransfert first = createDWTransfert(7, account);
+		DWTransfert second = createDWTransfert(7, account);
+		DWTransfert third = createDWTransfert(7, account);
+
+		// Get the first page
+		restDWTransfertMockMvc
+				.perform(get("/api/d-w-transferts-summaries?accountId={accountId}&size=2", account.getId()))
+				.andExpect(status().isOk()).andExpect(jsonPath("$", hasSize(2)))
+				.andExpect(jsonPath("$[0].id").value(first.getId().intValue()))
+				.andExpect(jsonPath("$[1].id").value(second.getId().intValue()))
+				.andExpect(header().string("Link", containsString("afterRank=7")))
+				.andExpect(header().string("Link", containsString("afterId=" + second.getId())));
+
+		// Get the next page from the middle of the equal ranks
+		restDWTransfertMockMvc
+				.perform(get("/api/d-w-transferts-summaries?accountId={accountId}&afterRank=7&afterId={afterId}&size=2",
+						account.getId(), second.getId()))
+				.andExpect(status().isOk()).andExpect(jsonPath("$", hasSize(2)))
+				.andExpect(jsonPath("$[0].id").value(third.getId().intValue()))
+				.andExpect(jsonPath("$[1].id").value(last.getId().intValue()));
+
+		// Get the page after the last transfert
+		restDWTransfertMockMvc
+				.perform(get("/api/d-w-transferts-summaries?accountId={accountId}&afterRank=8&afterId={afterId}&size=2",
+						account.getId(), last.getId()))
+				.andExpect(status().isOk()).andExpect(jsonPath("$").isEmpty())
+				.andExpect(header().doesNotExist("Link"));
+	}
+
+	@Test
+	@Transactional
+	public void streamDWTransfertsProgress() throws Exception {
+		// Initialize the database
+		dWTransfert.setStatus(TransfertStatus.DONE);
+		dWTransfert.setScheduling(DWTransfertScheduling.IMMEDIATLY);
+		dWTransfertRepository.saveAndFlush(dWTransfert);
+
+		// Subscribe to the progress events
+		MvcResult result = restDWTransfertMockMvc.perform(get("/api/d-w-transferts-progress"))
+				.andExpect(request().asyncStarted()).andReturn();
+		progressPublisher.statusChanged(dWTransfert);
+		progressPublisher.push();
+
+		assertThat(result.getResponse().getContentAsString()).contains("event:progress")
+				.contains("\"id\":" + dWTransfert.getId()).contains("\"status\":\"DONE\"");
+	}
+
 	@Test
 	@Transactional
 	public void getNonExistingDWTransfert() throws Exception {